@@ -0,0 +1,94 @@
+/*
+ * AbstractPriorityScheduler.java
+ * 
+ * Copyright (C) 2010 Leo Osvald <leo.osvald@gmail.com>
+ * 
+ * This file is part of SGLJ.
+ * 
+ * SGLJ is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * SGLJ is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sglj.util;
+
+/**
+ * Skeletal implementation of the {@link PriorityScheduler} interface
+ * which keeps the "tasks" and their relative priorities (weights) in
+ * slots of parallel arrays, and finds the slot of each "task" through
+ * a hash table. The subclasses decide how the slots are assigned and
+ * how the arrays grow, and must keep the {@link #totalWeight}
+ * up to date.
+ * 
+ * @author Leo Osvald
+ * @version 1.0
+ * @param <T> type of "task"
+ */
+abstract class AbstractPriorityScheduler<T> implements PriorityScheduler<T> {
+	
+	static final int INITIAL_CAPACITY = 16;
+	
+	// the state of the tasks, by slot
+	Object[] tasks = new Object[INITIAL_CAPACITY];
+	int[] weights = new int[INITIAL_CAPACITY];
+	long totalWeight;
+	// maps each task to its slot + 1
+	final ObjectIntCounter<T> slots = new ObjectIntCounter<T>();
+	
+	@Override
+	public short getPriority(T task) {
+		int slot = slotOf(task);
+		if(slot != -1) {
+			return absolutePriority(weights[slot]);
+		}
+		return NORMAL_PRIORITY;
+	}
+	
+	/**
+	 * Returns the number of scheduled "tasks".
+	 * @return the number of "tasks"
+	 */
+	public int size() {
+		return slots.size();
+	}
+	
+	protected int relativePriority(short priority) {
+		return -priority - Short.MIN_VALUE;
+	}
+	
+	protected short absolutePriority(int relativePriority) {
+		return (short) -(relativePriority + Short.MIN_VALUE);
+	}
+	
+	/**
+	 * Returns the slot of the specified "task".
+	 * @param task "task"
+	 * @return the slot, or <code>-1</code> if the task is not scheduled
+	 */
+	int slotOf(T task) {
+		return slots.count(task) - 1;
+	}
+	
+	/**
+	 * Returns the ratio of the weight of the specified "task" and
+	 * the total weight of all the "tasks", in constant time.
+	 * @param task "task"
+	 * @return share (real number from range [0, 1])
+	 */
+	double share(T task) {
+		int slot = slotOf(task);
+		if(slot == -1)
+			return 0;
+		return (double)weights[slot]/totalWeight;
+	}
+	
+}
@@ -0,0 +1,133 @@
+/*
+ * AbstractRingBuffer.java
+ *
+ * Copyright (C) 2011 Leo Osvald <leo.osvald@gmail.com>
+ *
+ * This file is part of SGLJ.
+ *
+ * SGLJ is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SGLJ is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sglj.util;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Abstract implementation of the {@link RingBuffer} interface which
+ * holds elements in an array whose length is a power of two, indexed
+ * by the head (consumer) and tail (producer) sequences masked by the
+ * capacity.<br>
+ * Blocking operations are implemented on top of the non-blocking ones
+ * and wait according to the {@link WaitStrategy} specified in the
+ * constructor.
+ *
+ * @author Leo Osvald
+ * @version 1.0
+ *
+ * @param <E> the type of elements held in the buffer
+ */
+public abstract class AbstractRingBuffer<E> implements RingBuffer<E> {
+
+	protected final AtomicReferenceArray<E> buffer;
+	protected final int mask;
+
+	/**
+	 * The sequence of the next element to be removed.
+	 */
+	protected final PaddedAtomicLong head = new PaddedAtomicLong(0);
+
+	/**
+	 * The sequence at which the next element will be inserted.
+	 */
+	protected final PaddedAtomicLong tail = new PaddedAtomicLong(0);
+
+	private final WaitStrategy waitStrategy;
+
+	/**
+	 * Creates the buffer which can hold at least the specified number
+	 * of elements.
+	 * @param capacity the minimum capacity (rounded up to a power of two)
+	 * @param waitStrategy the strategy used by blocking operations
+	 */
+	public AbstractRingBuffer(int capacity, WaitStrategy waitStrategy) {
+		if (capacity <= 0 || capacity > (1 << 30))
+			throw new IllegalArgumentException("Illegal capacity: " + capacity);
+		if (waitStrategy == null)
+			throw new NullPointerException("Wait strategy cannot be null");
+		int n = 1;
+		while (n < capacity)
+			n <<= 1;
+		this.buffer = new AtomicReferenceArray<E>(n);
+		this.mask = n - 1;
+		this.waitStrategy = waitStrategy;
+	}
+
+	@Override
+	public void put(E e) throws InterruptedException {
+		for (int idleCount = 0; !offer(e); ) {
+			if (Thread.interrupted())
+				throw new InterruptedException();
+			idleCount = waitStrategy.idle(idleCount);
+		}
+	}
+
+	@Override
+	public E take() throws InterruptedException {
+		E e;
+		for (int idleCount = 0; (e = poll()) == null; ) {
+			if (Thread.interrupted())
+				throw new InterruptedException();
+			idleCount = waitStrategy.idle(idleCount);
+		}
+		return e;
+	}
+
+	@Override
+	public int drainTo(Collection<? super E> c) {
+		return drainTo(c, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public int size() {
+		// read head first, so that the difference is never negative
+		long h = head.get();
+		long size = tail.get() - h;
+		return size > capacity() ? capacity() : (int) size;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return head.get() == tail.get();
+	}
+
+	@Override
+	public int capacity() {
+		return mask + 1;
+	}
+
+	/**
+	 * Returns the wait strategy used by the blocking operations.
+	 * @return the wait strategy
+	 */
+	public WaitStrategy getWaitStrategy() {
+		return waitStrategy;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[size = " + size()
+		+ ", capacity = " + capacity() + "]";
+	}
+}
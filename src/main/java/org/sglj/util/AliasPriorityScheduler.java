@@ -0,0 +1,179 @@
+/*
+ * AliasPriorityScheduler.java
+ * 
+ * Copyright (C) 2010 Leo Osvald <leo.osvald@gmail.com>
+ * 
+ * This file is part of SGLJ.
+ * 
+ * SGLJ is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * SGLJ is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sglj.util;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * <p>Implementation of {@link PriorityScheduler} interface which,
+ * as the {@link RandomPriorityScheduler}, chooses the outcomes at random
+ * with probabilities proportional to their priorities, but is meant for
+ * the sets of outcomes whose priorities rarely change.</p>
+ * <p>The outcomes are chosen using the alias method (Walker, 1977; in
+ * the variant of Vose, 1991): the table of outcomes is divided into
+ * columns of equal probability, each of which is split between at most
+ * two outcomes. So the method {@link #get()} draws a single random number
+ * and takes constant time. The table is rebuilt in linear time by the
+ * first call of {@link #get()} after the outcomes or their priorities have
+ * changed; the other methods take constant expected time.<br>
+ * Each outcome is scheduled at most once; adding an outcome which
+ * is already scheduled only changes its priority.</p>
+ * 
+ * @author Leo Osvald
+ * @version 1.0
+ * @param <T> type of outcome ("task")
+ */
+public class AliasPriorityScheduler<T> extends AbstractPriorityScheduler<T> {
+	
+	// the tasks occupy the first size slots
+	private int size;
+	
+	// the alias table, valid only if it is not dirty
+	private double[] probability = new double[0];
+	private int[] alias = new int[0];
+	private boolean dirty;
+	
+	private final Random random;
+	
+	public AliasPriorityScheduler() {
+		this(new Random());
+	}
+	
+	/**
+	 * Creates the scheduler which draws the outcomes using the
+	 * specified random number generator.
+	 * @param random the random number generator
+	 */
+	public AliasPriorityScheduler(Random random) {
+		this.random = random;
+	}
+	
+	/**
+	 * Gets the outcome which occurred by calling this method.
+	 * @return outcome
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public T get() {
+		if(size == 0)
+			return null;
+		if(dirty)
+			rebuild();
+		double u = random.nextDouble() * size;
+		int column = (int) u;
+		if(column == size) // guards against rounding
+			--column;
+		return (T) tasks[u - column < probability[column] 
+		                 ? column : alias[column]];
+	}
+	
+	@Override
+	public void add(T task, short priority) {
+		if(slots.containsKey(task)) {
+			setPriority(task, priority);
+			return;
+		}
+		if(size == tasks.length) {
+			tasks = Arrays.copyOf(tasks, size << 1);
+			weights = Arrays.copyOf(weights, size << 1);
+		}
+		tasks[size] = task;
+		weights[size] = relativePriority(priority);
+		totalWeight += weights[size];
+		slots.addTo(task, ++size);
+		dirty = true;
+	}
+	
+	@SuppressWarnings("unchecked")
+	@Override
+	public void remove(T task) {
+		int index = slots.remove(task) - 1;
+		if(index != -1) {
+			totalWeight -= weights[index];
+			// move the last task into the vacated index
+			if(index != --size) {
+				tasks[index] = tasks[size];
+				weights[index] = weights[size];
+				slots.addTo((T) tasks[index], index - size);
+			}
+			tasks[size] = null;
+			dirty = true;
+		}
+	}
+	
+	@Override
+	public void setPriority(T task, short priority) {
+		int index = slotOf(task);
+		if(index != -1) {
+			int weight = relativePriority(priority);
+			totalWeight += weight - weights[index];
+			weights[index] = weight;
+			dirty = true;
+		}
+	}
+	
+	/**
+	 * Returns the probability that this outcome will occur.
+	 * @param outcome outcome ("task")
+	 * @return probability (real number from range [0, 1])
+	 */
+	public double getProbability(T outcome) {
+		return share(outcome);
+	}
+	
+	private void rebuild() {
+		if(probability.length < size) {
+			probability = new double[tasks.length];
+			alias = new int[tasks.length];
+		}
+		// the columns which are under-full and over-full, respectively
+		int[] small = new int[size];
+		int[] large = new int[size];
+		int smallCount = 0, largeCount = 0;
+		for(int i = 0; i < size; ++i) {
+			probability[i] = (double) weights[i] * size / totalWeight;
+			if(probability[i] < 1)
+				small[smallCount++] = i;
+			else
+				large[largeCount++] = i;
+		}
+		while(smallCount > 0 && largeCount > 0) {
+			int s = small[--smallCount];
+			int l = large[largeCount - 1];
+			// fill the rest of the small column by the large outcome
+			alias[s] = l;
+			probability[l] -= 1 - probability[s];
+			if(probability[l] < 1) {
+				--largeCount;
+				small[smallCount++] = l;
+			}
+		}
+		// the remaining columns are full (up to rounding errors)
+		while(largeCount > 0)
+			probability[large[--largeCount]] = 1;
+		while(smallCount > 0)
+			probability[small[--smallCount]] = 1;
+		dirty = false;
+	}
+	
+}
@@ -21,13 +21,24 @@
 package org.sglj.util;
 
 import java.util.AbstractList;
+import java.util.Collection;
 import java.util.List;
 import java.util.RandomAccess;
 
 /**
+ * A list which is decomposed into O(sqrt(n)) buckets of O(sqrt(n))
+ * elements, each of which is a {@link RandomAccessDeque}. All buckets
+ * except the last one are full, so the random access takes constant time,
+ * while the positional insertion and removal take O(sqrt(n)) time.<br>
+ * Bulk operations ({@link #addAll(int, Collection)},
+ * {@link #removeRange(int, int)} and hence <code>subList(...).clear()</code>,
+ * and {@link #splice(int, BucketList)}) leave the buckets in front of
+ * the affected range intact and lay out the rest of the list bucket
+ * by bucket, which takes time linear in the size of the range and the
+ * number of elements behind it (rather than O(sqrt(n)) per element).
  * 
  * @author Leo Osvald
- * @version 0.02
+ * @version 0.03
  * 
  * @param <E> the type of elements held in this collection
  */
@@ -161,6 +172,176 @@ implements RandomAccess {
 		return oldValue;
 	}
 	
+	@Override
+	public boolean addAll(Collection<? extends E> c) {
+		return addAll(size(), c);
+	}
+
+	@Override
+	public boolean addAll(int index, Collection<? extends E> c) {
+		final int size = size();
+		if (index < 0 || index > size)
+			throw new IndexOutOfBoundsException("Index: " + index);
+		Object[] a = c.toArray();
+		if (a.length == 0)
+			return false;
+		if (prefersPerElement(index, a.length)) {
+			for (Object e : a) {
+				@SuppressWarnings("unchecked")
+				E element = (E) e;
+				add(index++, element);
+			}
+		} else {
+			replaceRange(index, index, a);
+		}
+		return true;
+	}
+
+	@Override
+	protected void removeRange(int fromIndex, int toIndex) {
+		if (fromIndex < 0 || toIndex > size() || fromIndex > toIndex)
+			throw new IndexOutOfBoundsException("From index: " + fromIndex
+					+ ", to index: " + toIndex);
+		if (fromIndex == toIndex)
+			return ;
+		if (prefersPerElement(fromIndex, toIndex - fromIndex)) {
+			for (int i = toIndex - fromIndex; i > 0; --i)
+				remove(fromIndex);
+		} else {
+			replaceRange(fromIndex, toIndex, EMPTY);
+		}
+	}
+
+	/**
+	 * Moves all elements of the specified list into this list, inserting
+	 * them at the specified position. The specified list becomes empty.
+	 * <br>
+	 * If the elements are appended to the list whose buckets are all full
+	 * and the both lists have the same bucket size, the buckets of the
+	 * other list are moved as a whole, which takes O(sqrt(n)) time.
+	 * 
+	 * @param index the index at which the elements should be inserted
+	 * @param other the list whose elements are moved
+	 * @throws IllegalArgumentException if the other list is this list
+	 */
+	public void splice(int index, BucketList<? extends E> other) {
+		if (other == this)
+			throw new IllegalArgumentException("Cannot splice into itself");
+		final int size = size();
+		if (index < 0 || index > size)
+			throw new IndexOutOfBoundsException("Index: " + index);
+		if (other.isEmpty())
+			return ;
+
+		final int bucketSize = 1 << bucketSizeLog;
+		if (index == size && (size & (bucketSize - 1)) == 0
+				&& other.bucketSizeLog == bucketSizeLog
+				&& bucketCount + other.bucketCount <= b.length) {
+			// move whole buckets
+			for (int i = 0; i < other.bucketCount; ++i) {
+				@SuppressWarnings("unchecked")
+				RandomAccessDeque<E> bucket = (RandomAccessDeque<E>) other.b[i];
+				b[bucketCount++] = bucket;
+				other.b[i] = null;
+			}
+			other.bucketCount = 0;
+			++modCount;
+			++other.modCount;
+			return ;
+		}
+
+		Object[] a = other.toArray();
+		other.clear();
+		replaceRange(index, index, a);
+	}
+
+	/**
+	 * Decides whether inserting/removing the specified number of elements
+	 * one by one is cheaper than laying out the rest of the list again.
+	 */
+	private boolean prefersPerElement(int index, int count) {
+		long shiftedBuckets = bucketCount - (index >>> bucketSizeLog);
+		return count * shiftedBuckets <= (long) size() - index + count;
+	}
+
+	/**
+	 * Replaces the elements in the range [fromIndex, toIndex) with the
+	 * specified ones. The buckets in front of the bucket which contains
+	 * the element at <code>fromIndex</code> are kept (unless the bucket
+	 * size has to change), and the remaining elements are laid out
+	 * into full buckets again.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private void replaceRange(int fromIndex, int toIndex, Object[] inserted) {
+		final int size = size();
+		final int newSize = size - (toIndex - fromIndex) + inserted.length;
+		int log = bucketSizeLog;
+		int firstBucket = fromIndex >>> log;
+		if (!fits(newSize, log)) {
+			log = optimalBucketSizeLog(newSize);
+			firstBucket = 0;
+		}
+
+		// collect the elements behind the kept buckets
+		final int start = firstBucket << bucketSizeLog;
+		Object[] rest = new Object[newSize - start];
+		int p = 0;
+		for (int i = start; i < fromIndex; ++i)
+			rest[p++] = get(i);
+		System.arraycopy(inserted, 0, rest, p, inserted.length);
+		p += inserted.length;
+		for (int i = toIndex; i < size; ++i)
+			rest[p++] = get(i);
+		assert p == rest.length;
+
+		// lay them out into full buckets
+		final int bucketSize = 1 << log;
+		RandomAccessDeque<E>[] newArr = b;
+		if (b.length != (2 << log)) {
+			newArr = new RandomAccessDeque[2 << log];
+			System.arraycopy(b, 0, newArr, 0, firstBucket);
+		}
+		int count = firstBucket;
+		for (int i = 0; i < rest.length; i += bucketSize) {
+			RandomAccessDeque<E> bucket = null;
+			if (newArr == b && count < bucketCount) {
+				bucket = b[count];
+				bucket.clear();
+			} else {
+				bucket = new RandomAccessDeque<E>(bucketSize);
+			}
+			for (int j = i, end = Math.min(i + bucketSize, rest.length);
+			j < end; ++j)
+				bucket.addLast((E) rest[j]);
+			newArr[count++] = bucket;
+		}
+		for (int i = count; i < bucketCount && i < newArr.length; ++i)
+			newArr[i] = null;
+
+		b = newArr;
+		bucketCount = count;
+		bucketSizeLog = log;
+		++modCount;
+	}
+
+	/**
+	 * Checks whether the specified number of elements can be held
+	 * in buckets of size 2^log, without triggering expansion or shrinking.
+	 */
+	private static boolean fits(int numElements, int log) {
+		int count = (int) (((long) numElements + (1 << log) - 1) >>> log);
+		return count <= (2 << log) && (count > ((1 << log) >>> 2) || log == 0);
+	}
+
+	private static int optimalBucketSizeLog(int numElements) {
+		int log = 0;
+		while (!fits(numElements, log))
+			++log;
+		return log;
+	}
+
+	private static final Object[] EMPTY = new Object[0];
+
 	protected int getBufferCount() {
 		return bucketCount;
 	}
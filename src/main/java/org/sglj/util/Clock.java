@@ -0,0 +1,51 @@
+/*
+ * Clock.java
+ *
+ * Copyright (C) 2011 Leo Osvald <leo.osvald@gmail.com>
+ *
+ * This file is part of SGLJ.
+ *
+ * SGLJ is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SGLJ is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sglj.util;
+
+/**
+ * A source of the current time, in milliseconds.<br>
+ * Time-based collections take a clock instead of calling
+ * {@link System#currentTimeMillis()} directly, so that the time can
+ * be supplied by the caller (e.g. a cached or a simulated time).
+ *
+ * @author Leo Osvald
+ * @version 1.0
+ */
+public interface Clock {
+
+	/**
+	 * The clock which delegates to {@link System#currentTimeMillis()}.
+	 */
+	static final Clock SYSTEM = new Clock() {
+		@Override
+		public long currentTimeMillis() {
+			return System.currentTimeMillis();
+		}
+	};
+
+	/**
+	 * Returns the current time in milliseconds. Subsequent calls
+	 * should never return a smaller value.
+	 * @return the current time in milliseconds
+	 */
+	long currentTimeMillis();
+}
@@ -0,0 +1,573 @@
+/*
+ * CompactHashMultiMap.java
+ * 
+ * Copyright (C) 2010 Leo Osvald <leo.osvald@gmail.com>
+ * 
+ * This file is part of SGLJ.
+ * 
+ * SGLJ is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * SGLJ is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sglj.util;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An implementation of the {@link MultiMap} interface based
+ * on {@link HashMap}, which stores the values of each key in the
+ * most compact of the following forms:
+ * <ul>
+ * <li>a single value is stored directly in the map, without any
+ * additional objects,</li>
+ * <li>up to {@value #SMALL_SET_MAX_SIZE} values are stored in an array
+ * which is searched linearly,</li>
+ * <li>more values are stored in a {@link HashSet}.</li>
+ * </ul>
+ * Unlike {@link HashMultiMap}, which creates a hash set per key,
+ * this map needs no objects per key besides the entry of the map when
+ * the key has a single value, which makes it suitable when most
+ * of the keys have only a few values.<br>
+ * The values are compared using their {@link #hashCode()} and
+ * {@link #equals(Object)} method, as in the {@link AbstractMultiMap}.
+ * 
+ * @param <K> type of the key
+ * @param <V> type of values stored by the map
+ * 
+ * @author Leo Osvald
+ * @version 1.0
+ */
+public class CompactHashMultiMap<K, V> implements MultiMap<K, V>, Serializable {
+
+	private static final long serialVersionUID = -5096154384405718436L;
+
+	/**
+	 * The maximum number of values of a key which are stored in an array.
+	 */
+	public static final int SMALL_SET_MAX_SIZE = 8;
+
+	// stands for the null value, since null means an absent key in the map
+	private static final Object NULL = new Object();
+
+	private transient int size;
+	// the value is a masked value, an array of masked values padded
+	// with nulls, or a LargeSet
+	private transient HashMap<K, Object> map;
+
+	public CompactHashMultiMap() {
+		map = new HashMap<K, Object>();
+	}
+
+	public CompactHashMultiMap(int initialCapacity) {
+		map = new HashMap<K, Object>(initialCapacity);
+	}
+
+	public CompactHashMultiMap(Map<? extends K, ? extends V> map) {
+		this(map.size());
+		putAll(map);
+	}
+
+	@Override
+	public Set<V> getAll(K key) {
+		if (!map.containsKey(key))
+			return null;
+		return new ValueSet(key);
+	}
+
+	@Override
+	public Set<V> removeAll(K key) {
+		Object values = map.remove(key);
+		if (values == null)
+			return null;
+		Set<V> removed = new HashSet<V>();
+		for (Object value : valuesOf(values))
+			removed.add(unmask(value));
+		size -= removed.size();
+		return removed;
+	}
+
+	@Override
+	public int getValueCount(K key) {
+		return valueCount(map.get(key));
+	}
+
+	@Override
+	public boolean containsEntry(K key, V value) {
+		return contains(map.get(key), mask(value));
+	}
+
+	@Override
+	public boolean removeEntry(K key, V value) {
+		return removeMasked(key, mask(value));
+	}
+
+	@Override
+	public void clear() {
+		map.clear();
+		size = 0;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return map.containsKey(key);
+	}
+
+	@Override
+	public boolean containsValue(Object value) {
+		Object masked = mask(value);
+		for (Object values : map.values())
+			if (contains(values, masked))
+				return true;
+		return false;
+	}
+
+	/**
+	 * Returns the view of the key-value mappings, which contains an entry
+	 * for each value of each key. The entries do not support
+	 * {@link java.util.Map.Entry#setValue(Object)}.
+	 */
+	@Override
+	public Set<Map.Entry<K, V>> entrySet() {
+		return new EntrySet();
+	}
+
+	@Override
+	public V get(Object key) {
+		Object values = map.get(key);
+		if (values == null)
+			return null;
+		if (values instanceof LargeSet)
+			return unmask(((LargeSet) values).iterator().next());
+		if (values instanceof Object[])
+			return unmask(((Object[]) values)[0]);
+		return unmask(values);
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return map.isEmpty();
+	}
+
+	@Override
+	public Set<K> keySet() {
+		return Collections.unmodifiableSet(map.keySet());
+	}
+
+	@Override
+	public V put(K key, V value) {
+		boolean existed = map.containsKey(key);
+		add(key, mask(value));
+		return existed ? value : null;
+	}
+
+	@Override
+	public void putAll(Map<? extends K, ? extends V> m) {
+		for (Entry<? extends K, ? extends V> e : m.entrySet())
+			put(e.getKey(), e.getValue());
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public V remove(Object key) {
+		Object values = map.get(key);
+		if (values == null)
+			return null;
+		Object someVal = valuesOf(values)[0];
+		removeMasked((K) key, someVal);
+		return unmask(someVal);
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public Collection<V> values() {
+		ArrayList<V> vals = new ArrayList<V>(size);
+		for (Object values : map.values())
+			for (Object value : valuesOf(values))
+				vals.add(unmask(value));
+		return vals;
+	}
+
+	@Override
+	public String toString() {
+		if (map.isEmpty())
+			return "{}";
+		StringBuffer sb = new StringBuffer("{");
+		boolean first = true;
+		for (K key : map.keySet()) {
+			if (!first) {
+				sb.append(", ");
+			} else {
+				first = false;
+			}
+			sb.append(key).append("=>").append(new ValueSet(key));
+		}
+		sb.append("}");
+		return sb.toString();
+	}
+
+	private boolean add(K key, Object value) {
+		Object values = map.get(key);
+		if (values == null) {
+			// an array value has to be wrapped to be told apart
+			map.put(key, value instanceof Object[]
+					? new Object[] {value} : value);
+		} else if (values instanceof LargeSet) {
+			if (!((LargeSet) values).add(value))
+				return false;
+		} else if (values instanceof Object[]) {
+			Object[] a = (Object[]) values;
+			int n = 0;
+			for (; n < a.length && a[n] != null; ++n)
+				if (a[n].equals(value))
+					return false;
+			if (n < a.length) {
+				a[n] = value;
+			} else if (n < SMALL_SET_MAX_SIZE) {
+				a = Arrays.copyOf(a, Math.min(2 * n, SMALL_SET_MAX_SIZE));
+				a[n] = value;
+				map.put(key, a);
+			} else {
+				LargeSet set = new LargeSet(Arrays.asList(a));
+				set.add(value);
+				map.put(key, set);
+			}
+		} else {
+			if (values.equals(value))
+				return false;
+			map.put(key, new Object[] {values, value});
+		}
+		++size;
+		return true;
+	}
+
+	private boolean removeMasked(K key, Object value) {
+		Object values = map.get(key);
+		if (values == null)
+			return false;
+		if (values instanceof LargeSet) {
+			LargeSet set = (LargeSet) values;
+			if (!set.remove(value))
+				return false;
+			if (set.isEmpty())
+				map.remove(key);
+		} else if (values instanceof Object[]) {
+			Object[] a = (Object[]) values;
+			int i = 0;
+			while (i < a.length && a[i] != null && !a[i].equals(value))
+				++i;
+			if (i == a.length || a[i] == null)
+				return false;
+			int n = i + 1;
+			for (; n < a.length && a[n] != null; ++n)
+				a[n - 1] = a[n];
+			a[n - 1] = null;
+			if (n == 1)
+				map.remove(key);
+			else if (n == 2 && !(a[0] instanceof Object[]))
+				map.put(key, a[0]);
+		} else {
+			if (!values.equals(value))
+				return false;
+			map.remove(key);
+		}
+		--size;
+		return true;
+	}
+
+	private static boolean contains(Object values, Object value) {
+		if (values == null)
+			return false;
+		if (values instanceof LargeSet)
+			return ((LargeSet) values).contains(value);
+		if (values instanceof Object[]) {
+			for (Object x : (Object[]) values) {
+				if (x == null)
+					return false;
+				if (x.equals(value))
+					return true;
+			}
+			return false;
+		}
+		return values.equals(value);
+	}
+
+	private static int valueCount(Object values) {
+		if (values == null)
+			return 0;
+		if (values instanceof LargeSet)
+			return ((LargeSet) values).size();
+		if (values instanceof Object[]) {
+			Object[] a = (Object[]) values;
+			int n = 0;
+			while (n < a.length && a[n] != null)
+				++n;
+			return n;
+		}
+		return 1;
+	}
+
+	/**
+	 * Returns the (masked) values in a new array.
+	 */
+	private static Object[] valuesOf(Object values) {
+		if (values instanceof LargeSet)
+			return ((LargeSet) values).toArray();
+		if (values instanceof Object[])
+			return Arrays.copyOf((Object[]) values, valueCount(values));
+		return new Object[] {values};
+	}
+
+	private static Object mask(Object value) {
+		return value == null ? NULL : value;
+	}
+
+	@SuppressWarnings("unchecked")
+	private V unmask(Object value) {
+		return value == NULL ? null : (V) value;
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		out.writeInt(map.size());
+		for (Entry<K, Object> e : map.entrySet()) {
+			out.writeObject(e.getKey());
+			Object[] values = valuesOf(e.getValue());
+			out.writeInt(values.length);
+			for (Object value : values)
+				out.writeObject(unmask(value));
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void readObject(ObjectInputStream in)
+	throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		int keyCount = in.readInt();
+		map = new HashMap<K, Object>(Math.max(2 * keyCount, 16));
+		for (int i = 0; i < keyCount; ++i) {
+			K key = (K) in.readObject();
+			for (int n = in.readInt(); n > 0; --n)
+				add(key, mask(in.readObject()));
+		}
+	}
+
+	private static class LargeSet extends HashSet<Object> {
+
+		private static final long serialVersionUID = 4436436385429398733L;
+
+		public LargeSet(Collection<Object> c) {
+			super(2 * c.size());
+			addAll(c);
+		}
+	}
+
+	/**
+	 * The view of the values of a key, which is backed by the map.
+	 */
+	private class ValueSet extends AbstractSet<V> {
+
+		private final K key;
+
+		public ValueSet(K key) {
+			this.key = key;
+		}
+
+		@Override
+		public int size() {
+			return valueCount(map.get(key));
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return CompactHashMultiMap.contains(map.get(key), mask(o));
+		}
+
+		@Override
+		public boolean add(V e) {
+			return CompactHashMultiMap.this.add(key, mask(e));
+		}
+
+		@Override
+		public boolean remove(Object o) {
+			return removeMasked(key, mask(o));
+		}
+
+		@Override
+		public void clear() {
+			CompactHashMultiMap.this.removeAll(key);
+		}
+
+		@Override
+		public Iterator<V> iterator() {
+			final Object values = map.get(key);
+			if (values instanceof LargeSet) {
+				final Iterator<Object> it = ((LargeSet) values).iterator();
+				return new Iterator<V>() {
+					@Override
+					public boolean hasNext() {
+						return it.hasNext();
+					}
+
+					@Override
+					public V next() {
+						return unmask(it.next());
+					}
+
+					@Override
+					public void remove() {
+						it.remove();
+						--size;
+						if (((LargeSet) values).isEmpty())
+							map.remove(key);
+					}
+				};
+			}
+
+			// small sets are iterated over a copy, since a removal
+			// can change their representation
+			final Object[] a = values == null ? new Object[0] : valuesOf(values);
+			return new Iterator<V>() {
+				int cursor;
+				boolean canRemove;
+
+				@Override
+				public boolean hasNext() {
+					return cursor < a.length;
+				}
+
+				@Override
+				public V next() {
+					if (cursor == a.length)
+						throw new NoSuchElementException();
+					canRemove = true;
+					return unmask(a[cursor++]);
+				}
+
+				@Override
+				public void remove() {
+					if (!canRemove)
+						throw new IllegalStateException();
+					canRemove = false;
+					removeMasked(key, a[cursor - 1]);
+				}
+			};
+		}
+	}
+
+	/**
+	 * The view of all the mappings, which is backed by the map.
+	 */
+	private class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public boolean contains(Object o) {
+			if (!(o instanceof Map.Entry))
+				return false;
+			Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+			return CompactHashMultiMap.contains(map.get(e.getKey()),
+					mask(e.getValue()));
+		}
+
+		@Override
+		public boolean add(Map.Entry<K, V> e) {
+			return CompactHashMultiMap.this.add(e.getKey(),
+					mask(e.getValue()));
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public boolean remove(Object o) {
+			if (!(o instanceof Map.Entry))
+				return false;
+			Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+			return removeMasked((K) e.getKey(), mask(e.getValue()));
+		}
+
+		@Override
+		public void clear() {
+			CompactHashMultiMap.this.clear();
+		}
+
+		@Override
+		public Iterator<Map.Entry<K, V>> iterator() {
+			final Iterator<Entry<K, Object>> keyIt = map.entrySet().iterator();
+			return new Iterator<Map.Entry<K, V>>() {
+				K key;
+				// the values of the key are iterated over a copy, since
+				// a removal can change their representation
+				Object[] a = new Object[0];
+				int cursor;
+				boolean canRemove;
+
+				@Override
+				public boolean hasNext() {
+					return cursor < a.length || keyIt.hasNext();
+				}
+
+				@Override
+				public Map.Entry<K, V> next() {
+					if (cursor == a.length) {
+						Entry<K, Object> e = keyIt.next();
+						key = e.getKey();
+						a = valuesOf(e.getValue());
+						cursor = 0;
+					}
+					canRemove = true;
+					return new AbstractMap.SimpleImmutableEntry<K, V>(key,
+							unmask(a[cursor++]));
+				}
+
+				@Override
+				public void remove() {
+					if (!canRemove)
+						throw new IllegalStateException();
+					canRemove = false;
+					Object values = map.get(key);
+					if (valueCount(values) == 1) {
+						// the key is removed through the iterator of the map
+						keyIt.remove();
+						--size;
+					} else {
+						removeMasked(key, a[cursor - 1]);
+					}
+				}
+			};
+		}
+	}
+
+}
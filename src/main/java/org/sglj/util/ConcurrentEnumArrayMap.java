@@ -0,0 +1,113 @@
+/*
+ * ConcurrentEnumArrayMap.java
+ * 
+ * Copyright (C) 2010 Leo Osvald <leo.osvald@gmail.com>
+ * 
+ * This file is part of SGLJ.
+ * 
+ * SGLJ is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * SGLJ is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sglj.util;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Thread-safe counterpart of the {@link EnumArrayMap}.<br>
+ * The values are kept in an {@link AtomicReferenceArray}, and a key
+ * which is not contained in the map is marked by a sentinel value
+ * instead of a flag in a separate array, so that all the operations
+ * are atomic and lock-free. As in the {@link EnumArrayMap},
+ * a key can be mapped to <code>null</code>.
+ * 
+ * @author Leo Osvald
+ * @version 1.0
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class ConcurrentEnumArrayMap<K extends Enum<K>, V> {
+
+	private static final Object ABSENT = new Object();
+
+	private final AtomicReferenceArray<Object> arr;
+
+	/**
+	 * Constructs a new array-based map with capacity equal to <code>valueCount</code>.
+	 * @param valueCount number of values in the enumeration (can be obtained
+	 * by calling .values().length method)
+	 */
+	public ConcurrentEnumArrayMap(int valueCount) {
+		arr = new AtomicReferenceArray<Object>(valueCount);
+		for (int i = 0; i < valueCount; ++i)
+			arr.set(i, ABSENT);
+	}
+
+	public V get(K key) {
+		return unmask(arr.get(key.ordinal()));
+	}
+
+	public V put(K key, V value) {
+		return unmask(arr.getAndSet(key.ordinal(), value));
+	}
+
+	/**
+	 * Maps the key to the specified value if it is not contained
+	 * in the map.
+	 * @param key key
+	 * @param value value
+	 * @return <code>true</code> if the value was put, <code>false</code>
+	 * if the key was already contained
+	 */
+	public boolean putIfAbsent(K key, V value) {
+		return arr.compareAndSet(key.ordinal(), ABSENT, value);
+	}
+
+	/**
+	 * Maps the key to the new value only if it is currently mapped to
+	 * the expected value (compared by identity).
+	 * @param key key
+	 * @param expect the expected value
+	 * @param update the new value
+	 * @return <code>true</code> if the value was replaced,
+	 * <code>false</code> otherwise
+	 */
+	public boolean replace(K key, V expect, V update) {
+		return arr.compareAndSet(key.ordinal(), expect, update);
+	}
+
+	public boolean containsKey(K key) {
+		return arr.get(key.ordinal()) != ABSENT;
+	}
+
+	/**
+	 * Removes all the mappings. This operation is not atomic.
+	 */
+	public void clear() {
+		for (int i = 0; i < arr.length(); ++i)
+			arr.set(i, ABSENT);
+	}
+
+	public V remove(K key) {
+		if (key == null)
+			return null;
+		return unmask(arr.getAndSet(key.ordinal(), ABSENT));
+	}
+
+	@SuppressWarnings("unchecked")
+	private V unmask(Object value) {
+		return value == ABSENT ? null : (V) value;
+	}
+
+}
@@ -0,0 +1,486 @@
+/*
+ * ConcurrentHashMultiMap.java
+ * 
+ * Copyright (C) 2010 Leo Osvald <leo.osvald@gmail.com>
+ * 
+ * This file is part of SGLJ.
+ * 
+ * SGLJ is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * SGLJ is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sglj.util;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>A thread-safe implementation of the {@link MultiMap} interface based
+ * on {@link ConcurrentHashMap}.</p>
+ * <p>The values of each key are kept in a concurrent set, so the lookups
+ * ({@link #containsEntry(Object, Object)}, {@link #getAll(Object)} and
+ * the iteration over the values) never block. The updates of the values
+ * of a key are serialized by the lock of that key's set only, so there is
+ * no global lock, and the updates of different keys do not contend
+ * (except within the outer map, whose segments stripe the contention).
+ * The lock makes {@link #put(Object, Object)} and
+ * {@link #removeEntry(Object, Object)} atomic: a value is never added to
+ * a set which is being removed from the map because its last value has
+ * been removed.</p>
+ * <p>The set returned by {@link #getAll(Object)} is a weakly consistent
+ * view of the values of the key (as is {@link #entrySet()} of all the
+ * mappings): it reflects the values which are mapped
+ * at the time of each operation (even if the key is removed and mapped
+ * again meanwhile), and its iterators, as those of the
+ * {@link ConcurrentHashMap}, never throw the
+ * {@link java.util.ConcurrentModificationException}.
+ * The bulk operations ({@link #clear()}, {@link #putAll(Map)},
+ * {@link #values()}) are not atomic, and {@link #size()} is exact only
+ * when no updates are in progress.</p>
+ * <p>This map does not permit <code>null</code> keys or values.</p>
+ * 
+ * @param <K> type of the key
+ * @param <V> type of values stored by the map
+ * 
+ * @author Leo Osvald
+ * @version 1.0
+ */
+public class ConcurrentHashMultiMap<K, V>
+implements MultiMap<K, V>, Serializable {
+
+	private static final long serialVersionUID = 3877510306618211025L;
+
+	private transient AtomicInteger size;
+	private transient ConcurrentMap<K, ValueSet<V>> map;
+
+	public ConcurrentHashMultiMap() {
+		this(16);
+	}
+
+	public ConcurrentHashMultiMap(int initialCapacity) {
+		size = new AtomicInteger();
+		map = new ConcurrentHashMap<K, ValueSet<V>>(initialCapacity);
+	}
+
+	public ConcurrentHashMultiMap(Map<? extends K, ? extends V> map) {
+		this(Math.max(2 * map.size(), 16));
+		putAll(map);
+	}
+
+	@Override
+	public Set<V> getAll(K key) {
+		if (!map.containsKey(key))
+			return null;
+		return new ValueView(key);
+	}
+
+	@Override
+	public Set<V> removeAll(K key) {
+		ValueSet<V> set = map.get(key);
+		if (set == null)
+			return null;
+		synchronized (set) {
+			if (set.removed)
+				return null;
+			set.removed = true;
+			map.remove(key, set);
+			size.addAndGet(-set.values.size());
+			Set<V> removed = new HashSet<V>(set.values);
+			set.values.clear();
+			return removed;
+		}
+	}
+
+	@Override
+	public int getValueCount(K key) {
+		ValueSet<V> set = map.get(key);
+		return set != null ? set.values.size() : 0;
+	}
+
+	@Override
+	public boolean containsEntry(K key, V value) {
+		ValueSet<V> set = map.get(key);
+		return set != null && set.values.contains(value);
+	}
+
+	@Override
+	public boolean removeEntry(K key, V value) {
+		while (true) {
+			ValueSet<V> set = map.get(key);
+			if (set == null)
+				return false;
+			synchronized (set) {
+				// retry if the set has just been removed (the key may
+				// have been mapped again)
+				if (!set.removed) {
+					if (!set.values.remove(value))
+						return false;
+					size.decrementAndGet();
+					if (set.values.isEmpty()) {
+						set.removed = true;
+						map.remove(key, set);
+					}
+					return true;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds the specified value to the values of the specified key.
+	 * @param key key
+	 * @param value value
+	 * @return <code>true</code> if the value was added,
+	 * <code>false</code> if it was already mapped by the key
+	 */
+	public boolean putEntry(K key, V value) {
+		if (value == null)
+			throw new NullPointerException();
+		while (true) {
+			ValueSet<V> set = map.get(key);
+			if (set == null) {
+				// count the value before it can be removed, so that
+				// the size never drops below zero
+				size.incrementAndGet();
+				set = map.putIfAbsent(key, new ValueSet<V>(value));
+				if (set == null)
+					return true;
+				size.decrementAndGet();
+			}
+			synchronized (set) {
+				// retry if the set has just been removed
+				if (!set.removed) {
+					if (!set.values.add(value))
+						return false;
+					size.incrementAndGet();
+					return true;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes all the mappings. This operation is not atomic; the
+	 * mappings which are concurrently added may be retained.
+	 */
+	@Override
+	public void clear() {
+		for (K key : map.keySet())
+			removeAll(key);
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return map.containsKey(key);
+	}
+
+	@Override
+	public boolean containsValue(Object value) {
+		for (ValueSet<V> set : map.values())
+			if (set.values.contains(value))
+				return true;
+		return false;
+	}
+
+	/**
+	 * Returns a weakly consistent view of the key-value mappings, which
+	 * contains an entry for each value of each key. The entries do not
+	 * support {@link java.util.Map.Entry#setValue(Object)}.
+	 */
+	@Override
+	public Set<Map.Entry<K, V>> entrySet() {
+		return new EntryView();
+	}
+
+	@Override
+	public V get(Object key) {
+		ValueSet<V> set = map.get(key);
+		if (set != null)
+			for (V val : set.values)
+				return val;
+		return null;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return map.isEmpty();
+	}
+
+	@Override
+	public Set<K> keySet() {
+		return Collections.unmodifiableSet(map.keySet());
+	}
+
+	/**
+	 * Maps the specified value by the specified key, in addition to the
+	 * values which the key already maps.
+	 * @return the value if the key already mapped some value,
+	 * or <code>null</code> otherwise
+	 * @see #putEntry(Object, Object)
+	 */
+	@Override
+	public V put(K key, V value) {
+		boolean existed = map.containsKey(key);
+		putEntry(key, value);
+		return existed ? value : null;
+	}
+
+	@Override
+	public void putAll(Map<? extends K, ? extends V> m) {
+		for (Entry<? extends K, ? extends V> e : m.entrySet())
+			putEntry(e.getKey(), e.getValue());
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public V remove(Object key) {
+		while (true) {
+			V someVal = get(key);
+			if (someVal == null)
+				return null;
+			if (removeEntry((K) key, someVal))
+				return someVal;
+		}
+	}
+
+	@Override
+	public int size() {
+		return size.get();
+	}
+
+	@Override
+	public Collection<V> values() {
+		ArrayList<V> vals = new ArrayList<V>();
+		for (ValueSet<V> set : map.values())
+			vals.addAll(set.values);
+		return vals;
+	}
+
+	@Override
+	public String toString() {
+		StringBuffer sb = new StringBuffer("{");
+		boolean first = true;
+		for (Entry<K, ValueSet<V>> e : map.entrySet()) {
+			if (!first) {
+				sb.append(", ");
+			} else {
+				first = false;
+			}
+			sb.append(e.getKey()).append("=>").append(e.getValue().values);
+		}
+		sb.append("}");
+		return sb.toString();
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		for (Entry<K, ValueSet<V>> e : map.entrySet()) {
+			Object[] values = e.getValue().values.toArray();
+			if (values.length > 0) {
+				out.writeObject(e.getKey());
+				out.writeInt(values.length);
+				for (Object value : values)
+					out.writeObject(value);
+			}
+		}
+		out.writeObject(null);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void readObject(ObjectInputStream in)
+	throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		size = new AtomicInteger();
+		map = new ConcurrentHashMap<K, ValueSet<V>>();
+		for (K key; (key = (K) in.readObject()) != null; )
+			for (int n = in.readInt(); n > 0; --n)
+				putEntry(key, (V) in.readObject());
+	}
+
+	private static class ValueSet<V> {
+		final Set<V> values = Collections.newSetFromMap(
+				new ConcurrentHashMap<V, Boolean>(4));
+		// whether the set has been removed from the map, guarded by this
+		boolean removed;
+
+		ValueSet(V value) {
+			values.add(value);
+		}
+	}
+
+	/**
+	 * The weakly consistent view of the values of a key.
+	 */
+	private class ValueView extends AbstractSet<V> {
+
+		private final K key;
+
+		public ValueView(K key) {
+			this.key = key;
+		}
+
+		@Override
+		public int size() {
+			return getValueCount(key);
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public boolean contains(Object o) {
+			return containsEntry(key, (V) o);
+		}
+
+		@Override
+		public boolean add(V e) {
+			return putEntry(key, e);
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public boolean remove(Object o) {
+			return removeEntry(key, (V) o);
+		}
+
+		@Override
+		public void clear() {
+			ConcurrentHashMultiMap.this.removeAll(key);
+		}
+
+		@Override
+		public Iterator<V> iterator() {
+			ValueSet<V> set = map.get(key);
+			final Iterator<V> it = set != null ? set.values.iterator()
+					: Collections.<V>emptySet().iterator();
+			return new Iterator<V>() {
+				V last;
+
+				@Override
+				public boolean hasNext() {
+					return it.hasNext();
+				}
+
+				@Override
+				public V next() {
+					return last = it.next();
+				}
+
+				@Override
+				public void remove() {
+					if (last == null)
+						throw new IllegalStateException();
+					removeEntry(key, last);
+					last = null;
+				}
+			};
+		}
+	}
+
+	/**
+	 * The weakly consistent view of all the mappings.
+	 */
+	private class EntryView extends AbstractSet<Map.Entry<K, V>> {
+
+		@Override
+		public int size() {
+			return ConcurrentHashMultiMap.this.size();
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return map.isEmpty();
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public boolean contains(Object o) {
+			if (!(o instanceof Map.Entry))
+				return false;
+			Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+			return containsEntry((K) e.getKey(), (V) e.getValue());
+		}
+
+		@Override
+		public boolean add(Map.Entry<K, V> e) {
+			return putEntry(e.getKey(), e.getValue());
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public boolean remove(Object o) {
+			if (!(o instanceof Map.Entry))
+				return false;
+			Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+			return removeEntry((K) e.getKey(), (V) e.getValue());
+		}
+
+		@Override
+		public void clear() {
+			ConcurrentHashMultiMap.this.clear();
+		}
+
+		@Override
+		public Iterator<Map.Entry<K, V>> iterator() {
+			final Iterator<Entry<K, ValueSet<V>>> keyIt =
+					map.entrySet().iterator();
+			return new Iterator<Map.Entry<K, V>>() {
+				K key;
+				Iterator<V> valueIt = Collections.<V>emptySet().iterator();
+				Map.Entry<K, V> last;
+
+				@Override
+				public boolean hasNext() {
+					while (!valueIt.hasNext()) {
+						if (!keyIt.hasNext())
+							return false;
+						Entry<K, ValueSet<V>> e = keyIt.next();
+						key = e.getKey();
+						valueIt = e.getValue().values.iterator();
+					}
+					return true;
+				}
+
+				@Override
+				public Map.Entry<K, V> next() {
+					if (!hasNext())
+						throw new NoSuchElementException();
+					return last = new AbstractMap.SimpleImmutableEntry<K, V>(
+							key, valueIt.next());
+				}
+
+				@Override
+				public void remove() {
+					if (last == null)
+						throw new IllegalStateException();
+					removeEntry(last.getKey(), last.getValue());
+					last = null;
+				}
+			};
+		}
+	}
+
+}
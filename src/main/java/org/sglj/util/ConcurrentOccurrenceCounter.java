@@ -0,0 +1,260 @@
+/*
+ * ConcurrentOccurrenceCounter.java
+ *
+ * Copyright (C) 2011 Leo Osvald <leo.osvald@gmail.com>
+ *
+ * This file is part of SGLJ.
+ *
+ * SGLJ is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SGLJ is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sglj.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>A thread-safe counterpart of the {@link OccurrenceMap}, meant for
+ * counting the occurrences under high contention, which also keeps track
+ * of the <code>k</code> most frequent keys (the heavy hitters).</p>
+ * <p>The counts are kept in a {@link ConcurrentHashMap} (whose segments
+ * stripe the contention on the map itself). The count of each key is
+ * a base {@link AtomicLong}, and once two threads collide on it, a small
+ * array of cells padded to the cache line size, one of which is chosen
+ * by the thread. So the increments of the hot keys do not fight over
+ * a single cache line, at the cost of summing the cells when the count
+ * is read.</p>
+ * <p>The top-k summary follows the Space-Saving algorithm (Metwally,
+ * Agrawal and El Abbadi, 2005): <code>k</code> keys are monitored, and
+ * when the count of an unmonitored key exceeds the smallest count among
+ * the monitored ones, it replaces that key. Since the counts here are
+ * exact, no overestimation error is introduced. The monitored keys carry
+ * a flag, so their increments never touch the summary; only the
+ * increments which push an unmonitored key above the (cached) smallest
+ * monitored count take the lock of the summary. Hence the summary
+ * can be read in O(k log k) time, without scanning the counts.
+ * Under concurrent updates, the summary is accurate up to the increments
+ * which are in progress.</p>
+ *
+ * @author Leo Osvald
+ * @version 1.0
+ * @param <K> type which is counted
+ */
+public class ConcurrentOccurrenceCounter<K> {
+
+	private static final int MAX_CELLS = Math.min(64, Integer.highestOneBit(
+			Math.max(1, Runtime.getRuntime().availableProcessors() - 1)) << 1);
+
+	private final ConcurrentMap<K, Count<K>> counts;
+
+	private final int k;
+	private final Object summaryLock = new Object();
+	// the monitored counts, guarded by the summaryLock
+	private final List<Count<K>> monitored;
+	// the smallest monitored count when it was last computed
+	// (0 while less than k keys are monitored)
+	private volatile long threshold;
+
+	/**
+	 * Creates a counter which keeps track of the specified number of
+	 * the most frequent keys.
+	 * @param k the number of keys in the top-k summary
+	 */
+	public ConcurrentOccurrenceCounter(int k) {
+		this(k, 16);
+	}
+
+	/**
+	 * Creates a counter which keeps track of the specified number of
+	 * the most frequent keys, with the specified concurrency level of the
+	 * underlying map.
+	 * @param k the number of keys in the top-k summary
+	 * @param concurrencyLevel the estimated number of updating threads
+	 */
+	public ConcurrentOccurrenceCounter(int k, int concurrencyLevel) {
+		if (k < 1)
+			throw new IllegalArgumentException("Illegal k: " + k);
+		this.k = k;
+		this.monitored = new ArrayList<Count<K>>(k);
+		this.counts = new ConcurrentHashMap<K, Count<K>>(16, 0.75f,
+				concurrencyLevel);
+	}
+
+	/**
+	 * Increments the number of occurrences for the specified key.
+	 * @param key object which is counted
+	 */
+	public void increment(K key) {
+		add(key, 1);
+	}
+
+	/**
+	 * Adds the specified number of occurrences for the specified key.
+	 * @param key object which is counted
+	 * @param delta the number of occurrences, which must be positive
+	 * (the top-k summary relies on the counts never decreasing)
+	 * @throws IllegalArgumentException if delta is not positive
+	 */
+	public void add(K key, long delta) {
+		if (delta <= 0)
+			throw new IllegalArgumentException("Illegal delta: " + delta);
+		Count<K> count = counts.get(key);
+		if (count == null) {
+			Count<K> newCount = new Count<K>(key);
+			count = counts.putIfAbsent(key, newCount);
+			if (count == null)
+				count = newCount;
+		}
+		count.add(delta);
+		if (!count.monitored && count.sum() > threshold)
+			offer(count);
+	}
+
+	/**
+	 * Returns the number of occurrences for specified key.
+	 * @param key object which is counted
+	 * @return number of occurrences (0 if there are no occurrences)
+	 */
+	public long count(K key) {
+		Count<K> count = counts.get(key);
+		return count != null ? count.sum() : 0;
+	}
+
+	/**
+	 * Returns the number of distinct keys counted so far.
+	 * @return number of keys
+	 */
+	public int size() {
+		return counts.size();
+	}
+
+	public int getK() {
+		return k;
+	}
+
+	/**
+	 * Returns (at most) <code>k</code> most frequent keys with their counts,
+	 * in descending order of the counts.
+	 * @return the list of (key, count) pairs
+	 */
+	public List<Pair<K, Long>> topK() {
+		List<Pair<K, Long>> ret;
+		synchronized (summaryLock) {
+			ret = new ArrayList<Pair<K, Long>>(monitored.size());
+			for (Count<K> count : monitored)
+				ret.add(new Pair<K, Long>(count.key, count.sum()));
+		}
+		Collections.sort(ret, new Comparator<Pair<K, Long>>() {
+			@Override
+			public int compare(Pair<K, Long> a, Pair<K, Long> b) {
+				return b.second().compareTo(a.second());
+			}
+		});
+		return ret;
+	}
+
+	private void offer(Count<K> count) {
+		synchronized (summaryLock) {
+			if (count.monitored)
+				return ;
+			if (monitored.size() < k) {
+				monitored.add(count);
+				count.monitored = true;
+				if (monitored.size() == k)
+					updateThreshold();
+				return ;
+			}
+			int minIndex = updateThreshold();
+			if (count.sum() > threshold) {
+				monitored.get(minIndex).monitored = false;
+				monitored.set(minIndex, count);
+				count.monitored = true;
+				updateThreshold();
+			}
+		}
+	}
+
+	/**
+	 * Recomputes the threshold, which must be called with the lock held.
+	 * @return the index of the monitored count with the smallest sum
+	 */
+	private int updateThreshold() {
+		int minIndex = 0;
+		long min = Long.MAX_VALUE;
+		for (int i = 0; i < monitored.size(); ++i) {
+			long sum = monitored.get(i).sum();
+			if (sum < min) {
+				min = sum;
+				minIndex = i;
+			}
+		}
+		threshold = min;
+		return minIndex;
+	}
+
+	/**
+	 * The count of a key: the base value, plus the sum of the cells
+	 * which are created once an update of the base fails due to contention.
+	 */
+	private static final class Count<K> extends AtomicLong {
+
+		private static final long serialVersionUID = -4602549707282580651L;
+
+		final K key;
+		volatile boolean monitored;
+		private volatile PaddedAtomicLong[] cells;
+
+		Count(K key) {
+			this.key = key;
+		}
+
+		void add(long delta) {
+			PaddedAtomicLong[] cs = cells;
+			if (cs == null) {
+				long v = get();
+				if (compareAndSet(v, v + delta))
+					return ;
+				cs = createCells();
+			}
+			int h = ObjectIntCounter.mix((int) Thread.currentThread().getId());
+			cs[h & (cs.length - 1)].addAndGet(delta);
+		}
+
+		long sum() {
+			long sum = get();
+			PaddedAtomicLong[] cs = cells;
+			if (cs != null) {
+				for (PaddedAtomicLong c : cs)
+					sum += c.get();
+			}
+			return sum;
+		}
+
+		private synchronized PaddedAtomicLong[] createCells() {
+			PaddedAtomicLong[] cs = cells;
+			if (cs == null) {
+				cs = new PaddedAtomicLong[MAX_CELLS];
+				for (int i = 0; i < cs.length; ++i)
+					cs[i] = new PaddedAtomicLong(0);
+				cells = cs;
+			}
+			return cs;
+		}
+	}
+}
@@ -0,0 +1,336 @@
+/*
+ * ConcurrentTimeoutQueue.java
+ *
+ * Copyright (C) 2011 Leo Osvald <leo.osvald@gmail.com>
+ *
+ * This file is part of SGLJ.
+ *
+ * SGLJ is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SGLJ is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sglj.util;
+
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.List;
+
+import org.sglj.util.TimingWheelTimeoutQueue.Timeout;
+
+/**
+ * <p>A thread-safe {@link TimeoutQueue} which expires its elements on
+ * a dedicated ticker thread, and delivers them to an
+ * {@link ExpirationListener} in batches.</p>
+ * <p>Unlike the {@link LazyTimeoutQueue}, the expired elements do not stay
+ * in the queue until it is modified, and the threads which insert or
+ * remove elements never expire them. The elements are kept in a
+ * {@link TimingWheelTimeoutQueue} (so each element can have its own
+ * deadline, and insertion and cancellation take constant time), whose
+ * time is advanced only by the ticker thread, once per tick. All the
+ * elements which have expired by a tick are delivered together, in a single
+ * call of the listener, which is made by the ticker thread without holding
+ * the lock of the queue. Hence the listener may access the queue, but it
+ * should return quickly, since it delays the subsequent ticks.</p>
+ * <p>The ticker thread is started by {@link #start()}, so the elements
+ * do not expire until it is called.</p>
+ * <p>The iterators return the snapshots of the queue, and are never
+ * invalidated by the concurrent modifications. Their
+ * {@link Iterator#remove()} method removes the returned element itself
+ * (if it is still in the queue), not an element equal to it.</p>
+ *
+ * @author Leo Osvald
+ * @version 1.0
+ *
+ * @param <E> the type of elements held in the queue
+ */
+public class ConcurrentTimeoutQueue<E> extends AbstractQueue<E>
+implements TimeoutQueue<E> {
+
+	/**
+	 * The listener which is notified of the expired elements.
+	 *
+	 * @param <E> the type of the elements
+	 */
+	public interface ExpirationListener<E> {
+
+		/**
+		 * Called by the ticker thread with the elements which have
+		 * expired within the same tick, in the order of expiration.
+		 * @param elements the expired elements (never empty)
+		 */
+		void expired(List<E> elements);
+	}
+
+	private final Object lock = new Object();
+	private final Clock clock;
+	private final ExpirationListener<E> listener;
+	private volatile long timeout;
+	// the time up to which the wheel has been advanced by the ticker
+	private volatile long tickTime;
+	// guarded by the lock
+	private final TimingWheelTimeoutQueue<E> wheel;
+	private final Thread ticker;
+	private volatile boolean shutdown;
+
+	/**
+	 * Creates the timeout queue, whose ticker thread is not started.
+	 * @param timeout the default timeout in milliseconds
+	 * @param tickDuration the duration of a tick in milliseconds
+	 * @param clock the clock which determines the current time
+	 * @param listener the listener which is notified of the expired
+	 * elements
+	 */
+	public ConcurrentTimeoutQueue(long timeout, long tickDuration,
+			Clock clock, ExpirationListener<E> listener) {
+		if (clock == null)
+			throw new NullPointerException("Clock cannot be null");
+		if (listener == null)
+			throw new NullPointerException("Listener cannot be null");
+		this.clock = clock;
+		this.listener = listener;
+		setTimeout(timeout);
+		this.tickTime = clock.currentTimeMillis();
+		this.wheel = new TimingWheelTimeoutQueue<E>(timeout, tickDuration,
+				new Clock() {
+					@Override
+					public long currentTimeMillis() {
+						return tickTime;
+					}
+				});
+		this.ticker = new Ticker(tickDuration);
+	}
+
+	/**
+	 * Creates the timeout queue which uses the system clock, whose ticker
+	 * thread is not started.
+	 * @param timeout the default timeout in milliseconds
+	 * @param tickDuration the duration of a tick in milliseconds
+	 * @param listener the listener which is notified of the expired
+	 * elements
+	 */
+	public ConcurrentTimeoutQueue(long timeout, long tickDuration,
+			ExpirationListener<E> listener) {
+		this(timeout, tickDuration, Clock.SYSTEM, listener);
+	}
+
+	/**
+	 * Starts the ticker thread.
+	 * @throws IllegalStateException if the ticker thread has already
+	 * been started or the queue has been shut down
+	 */
+	public void start() {
+		synchronized (lock) {
+			if (shutdown)
+				throw new IllegalStateException("Queue has been shut down");
+			if (ticker.getState() != Thread.State.NEW)
+				throw new IllegalStateException("Ticker already started");
+			ticker.start();
+		}
+	}
+
+	/**
+	 * Sets the default timeout, which applies to the elements inserted
+	 * afterwards.
+	 * @param timeout time interval in milliseconds
+	 */
+	@Override
+	public void setTimeout(long timeout) {
+		if (timeout < 0)
+			throw new IllegalArgumentException("Timeout cannot be negative");
+		this.timeout = timeout;
+	}
+
+	@Override
+	public long getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * Inserts the element with the default timeout.
+	 */
+	@Override
+	public boolean offer(E e) {
+		schedule(e, timeout);
+		return true;
+	}
+
+	/**
+	 * Inserts the element which expires after the specified timeout.
+	 * @param e the element
+	 * @param timeout the timeout in milliseconds
+	 * @return the handle through which the element can be removed
+	 */
+	public Timeout<E> schedule(E e, long timeout) {
+		if (timeout < 0)
+			throw new IllegalArgumentException("Timeout cannot be negative");
+		long now = clock.currentTimeMillis();
+		long deadline = now + timeout >= now ? now + timeout : Long.MAX_VALUE;
+		Timeout<E> timeoutHandle;
+		synchronized (lock) {
+			timeoutHandle = wheel.scheduleAt(e, deadline);
+		}
+		return new LockedTimeout(timeoutHandle);
+	}
+
+	@Override
+	public E poll() {
+		synchronized (lock) {
+			return wheel.poll();
+		}
+	}
+
+	@Override
+	public E peek() {
+		synchronized (lock) {
+			return wheel.peek();
+		}
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		synchronized (lock) {
+			return wheel.remove(o);
+		}
+	}
+
+	@Override
+	public int size() {
+		synchronized (lock) {
+			return wheel.size();
+		}
+	}
+
+	@Override
+	public void clear() {
+		synchronized (lock) {
+			wheel.clear();
+		}
+	}
+
+	@Override
+	public Iterator<E> iterator() {
+		final Iterator<Timeout<E>> it;
+		synchronized (lock) {
+			it = wheel.timeouts().iterator();
+		}
+		return new Iterator<E>() {
+			Timeout<E> last;
+
+			@Override
+			public boolean hasNext() {
+				return it.hasNext();
+			}
+
+			@Override
+			public E next() {
+				last = it.next();
+				return last.get();
+			}
+
+			@Override
+			public void remove() {
+				if (last == null)
+					throw new IllegalStateException();
+				synchronized (lock) {
+					last.cancel();
+				}
+				last = null;
+			}
+		};
+	}
+
+	/**
+	 * Stops the ticker thread (or prevents it from being started).
+	 * The elements which are in the queue afterwards never expire.
+	 */
+	public void shutdown() {
+		shutdown = true;
+		ticker.interrupt();
+	}
+
+	public boolean isShutdown() {
+		return shutdown;
+	}
+
+	/**
+	 * Advances the wheel to the current time, and notifies the listener
+	 * of the expired elements.
+	 * @return the number of the expired elements
+	 */
+	int tick() {
+		List<E> expired;
+		synchronized (lock) {
+			tickTime = Math.max(tickTime, clock.currentTimeMillis());
+			expired = wheel.popExpired();
+		}
+		if (!expired.isEmpty())
+			listener.expired(expired);
+		return expired.size();
+	}
+
+	private class Ticker extends Thread {
+		private final long tickDuration;
+
+		Ticker(long tickDuration) {
+			super("timeout-queue-ticker");
+			setDaemon(true);
+			this.tickDuration = tickDuration;
+		}
+
+		@Override
+		public void run() {
+			while (!shutdown) {
+				try {
+					Thread.sleep(tickDuration);
+				} catch (InterruptedException e) {
+					continue;
+				}
+				try {
+					tick();
+				} catch (RuntimeException e) {
+					// a failing listener must not stop the expiration
+					getUncaughtExceptionHandler().uncaughtException(this, e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The handle which cancels the element under the lock of the queue.
+	 */
+	private class LockedTimeout implements Timeout<E> {
+		private final Timeout<E> timeout;
+
+		LockedTimeout(Timeout<E> timeout) {
+			this.timeout = timeout;
+		}
+
+		@Override
+		public E get() {
+			return timeout.get();
+		}
+
+		@Override
+		public long getDeadline() {
+			return timeout.getDeadline();
+		}
+
+		@Override
+		public boolean cancel() {
+			synchronized (lock) {
+				return timeout.cancel();
+			}
+		}
+	}
+
+}
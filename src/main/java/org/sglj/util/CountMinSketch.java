@@ -0,0 +1,254 @@
+/*
+ * CountMinSketch.java
+ *
+ * Copyright (C) 2011 Leo Osvald <leo.osvald@gmail.com>
+ *
+ * This file is part of SGLJ.
+ *
+ * SGLJ is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SGLJ is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sglj.util;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * <p>Approximately counts the number of occurrences of objects in fixed
+ * memory, regardless of the number of distinct objects (unlike the
+ * {@link OccurrenceMap} and {@link ObjectIntCounter}).</p>
+ * <p>This is the count-min sketch (Cormode and Muthukrishnan, 2005) with
+ * the conservative update: there are <code>depth</code> rows of
+ * <code>width</code> counters, each key is hashed to one counter per row,
+ * an update raises only those of its counters which are below the new
+ * estimate, and the estimate of a count is the minimum of its counters.
+ * </p>
+ * <p><b>Error bound.</b> The estimate never underestimates the true count.
+ * If the sketch is created with the parameters <code>epsilon</code> and
+ * <code>delta</code> (that is, <code>width = ceil(e / epsilon)</code>,
+ * rounded up to a power of two, and <code>depth = ceil(ln(1 / delta))</code>),
+ * then with probability at least <code>1 - delta</code> the estimate exceeds
+ * the true count by at most <code>epsilon * total()</code>, where
+ * <code>total()</code> is the sum of all the counts. The conservative
+ * update only makes the overestimation smaller.</p>
+ * <p>The keys are hashed by their {@link Object#hashCode()}, so sketches
+ * which are built by different processes can be merged only if the hash
+ * codes of the keys are the same in all of them (such as those of
+ * strings and boxed primitives). The keys with equal hash codes share
+ * their counts. The sketches being merged must also have been created
+ * with the same dimensions and seed.
+ * This class is not thread-safe; each thread should update its own sketch,
+ * and the sketches can then be merged.</p>
+ *
+ * @author Leo Osvald
+ * @version 1.0
+ */
+public class CountMinSketch implements Serializable {
+
+	private static final long serialVersionUID = -2981274411950237468L;
+
+	private static final long DEFAULT_SEED = 0x5DEECE66DL;
+
+	private final int width;
+	private final int depth;
+	private final long seed;
+	// the counter of the column c of the row r is at the index r * width + c
+	private final long[] counters;
+	private long total;
+
+	/**
+	 * Creates a sketch whose estimates exceed the true counts by at most
+	 * <code>epsilon * total()</code>, with probability at least
+	 * <code>1 - delta</code>.
+	 * @param epsilon the relative error (with respect to the total count)
+	 * @param delta the probability that the error is exceeded
+	 * @throws IllegalArgumentException if a parameter is not in (0, 1)
+	 */
+	public CountMinSketch(double epsilon, double delta) {
+		this(widthFor(epsilon), depthFor(delta), DEFAULT_SEED);
+	}
+
+	/**
+	 * Creates a sketch with the specified dimensions.
+	 * @param width the number of counters per row, which is rounded up
+	 * to a power of two
+	 * @param depth the number of rows
+	 * @param seed the seed of the hash functions
+	 * @throws IllegalArgumentException if a dimension is not positive,
+	 * or if there would be more than {@link Integer#MAX_VALUE} counters
+	 */
+	public CountMinSketch(int width, int depth, long seed) {
+		if (width < 1 || width > 1 << 30 || depth < 1)
+			throw new IllegalArgumentException("Illegal dimensions: "
+					+ width + "x" + depth);
+		this.width = width > 1 ? Integer.highestOneBit(width - 1) << 1 : 1;
+		if ((long) this.width * depth > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Too many counters: "
+					+ this.width + "x" + depth);
+		this.depth = depth;
+		this.seed = seed;
+		this.counters = new long[this.width * depth];
+	}
+
+	/**
+	 * Increments the number of occurrences of the specified key.
+	 * @param key object which is counted
+	 * @return <code>true</code> if this is certainly the first occurrence,
+	 * <code>false</code> otherwise
+	 */
+	public boolean increment(Object key) {
+		return addHashed(hash(key), 1) == 1;
+	}
+
+	/**
+	 * Adds the specified number of occurrences of the specified key.
+	 * @param key object which is counted
+	 * @param delta the number of occurrences, which must not be negative
+	 * @return the new estimate of the count
+	 */
+	public long add(Object key, long delta) {
+		return addHashed(hash(key), delta);
+	}
+
+	/**
+	 * Returns the estimate of the number of occurrences of the
+	 * specified key, which is never less than the true count.
+	 * @param key object which is counted
+	 * @return the estimated number of occurrences
+	 */
+	public long count(Object key) {
+		return countHashed(hash(key));
+	}
+
+	/**
+	 * Increments the number of occurrences of the specified
+	 * <code>long</code> key, such as an identifier or a hash.
+	 * @param key the key which is counted
+	 * @return <code>true</code> if this is certainly the first occurrence,
+	 * <code>false</code> otherwise
+	 */
+	public boolean increment(long key) {
+		return addHashed(mix64(key ^ seed), 1) == 1;
+	}
+
+	/**
+	 * Adds the specified number of occurrences of the specified
+	 * <code>long</code> key.
+	 * @param key the key which is counted
+	 * @param delta the number of occurrences, which must not be negative
+	 * @return the new estimate of the count
+	 */
+	public long add(long key, long delta) {
+		return addHashed(mix64(key ^ seed), delta);
+	}
+
+	/**
+	 * Returns the estimate of the number of occurrences of the
+	 * specified <code>long</code> key.
+	 * @param key the key which is counted
+	 * @return the estimated number of occurrences
+	 */
+	public long count(long key) {
+		return countHashed(mix64(key ^ seed));
+	}
+
+	/**
+	 * Adds the counts of the other sketch to this one. The estimates of
+	 * the merged sketch are upper bounds of the sums of the true counts.
+	 * @param other the sketch to merge
+	 * @throws IllegalArgumentException if the sketches have different
+	 * dimensions or seeds
+	 */
+	public void merge(CountMinSketch other) {
+		if (other.width != width || other.depth != depth
+				|| other.seed != seed)
+			throw new IllegalArgumentException("Incompatible sketches");
+		for (int i = 0; i < counters.length; ++i)
+			counters[i] += other.counters[i];
+		total += other.total;
+	}
+
+	/**
+	 * Returns the sum of all the counts added to this sketch.
+	 * @return the total count
+	 */
+	public long total() {
+		return total;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	public void clear() {
+		Arrays.fill(counters, 0);
+		total = 0;
+	}
+
+	private long addHashed(long hash, long delta) {
+		if (delta < 0)
+			throw new IllegalArgumentException("Illegal delta: " + delta);
+		long estimate = countHashed(hash) + delta;
+		// conservative update: raise only the counters below the estimate
+		int h1 = (int) hash, h2 = (int) (hash >>> 32) | 1;
+		for (int row = 0, offset = 0; row < depth; ++row, offset += width) {
+			int index = offset + ((h1 + row * h2) & (width - 1));
+			if (counters[index] < estimate)
+				counters[index] = estimate;
+		}
+		total += delta;
+		return estimate;
+	}
+
+	private long countHashed(long hash) {
+		// the row hashes are derived by double hashing
+		int h1 = (int) hash, h2 = (int) (hash >>> 32) | 1;
+		long min = Long.MAX_VALUE;
+		for (int row = 0, offset = 0; row < depth; ++row, offset += width)
+			min = Math.min(min, counters[offset + ((h1 + row * h2) & (width - 1))]);
+		return min;
+	}
+
+	private long hash(Object key) {
+		return mix64(key.hashCode() ^ seed);
+	}
+
+	/**
+	 * The finalizer of the MurmurHash3, which makes each bit of the result
+	 * depend on each bit of the argument.
+	 */
+	private static long mix64(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		return h ^ (h >>> 33);
+	}
+
+	private static int widthFor(double epsilon) {
+		if (!(epsilon > 0 && epsilon < 1))
+			throw new IllegalArgumentException("Illegal epsilon: " + epsilon);
+		return (int) Math.ceil(Math.E / epsilon);
+	}
+
+	private static int depthFor(double delta) {
+		if (!(delta > 0 && delta < 1))
+			throw new IllegalArgumentException("Illegal delta: " + delta);
+		return (int) Math.ceil(Math.log(1 / delta));
+	}
+}
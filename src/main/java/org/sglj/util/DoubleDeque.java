@@ -0,0 +1,480 @@
+/*
+ * DoubleDeque.java
+ *
+ * Copyright (C) 2011 Leo Osvald <leo.osvald@gmail.com>
+ *
+ * This file is part of SGLJ.
+ *
+ * SGLJ is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SGLJ is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sglj.util;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * A double-ended queue of primitive <code>double</code> values, with the
+ * deque and random access operations of the {@link RandomAccessDeque}.<br>
+ * The elements are stored in a circular array whose length is always
+ * a power of two, so that all deque operations and the random access
+ * through {@link #get(int)} and {@link #set(int, double)} take constant
+ * (amortized) time without boxing.<br>
+ * Since the elements are primitive, emptiness is determined
+ * from head and tail indices only (as opposed to the
+ * {@link RandomAccessDeque} which relies on <code>null</code> slots).
+ *
+ * @author Leo Osvald
+ * @version 1.0
+ */
+public class DoubleDeque implements Cloneable, Serializable {
+
+	private static final long serialVersionUID = 4218675563820148201L;
+
+	/**
+	 * The minimum capacity that we'll use for a newly created deque.
+	 * Must be a power of 2.
+	 */
+	private static final int MIN_INITIAL_CAPACITY = 8;
+
+	/**
+	 * The array in which the elements are stored. Its length is always
+	 * a power of two and it is never full (except transiently within
+	 * an add method), so head == tail if and only if the deque is empty.
+	 */
+	private transient double[] elements;
+
+	/**
+	 * The index of the first element, or an arbitrary number equal to tail
+	 * if the deque is empty.
+	 */
+	private transient int head;
+
+	/**
+	 * The index at which the next element would be added to the tail.
+	 */
+	private transient int tail;
+
+	/**
+	 * Constructs an empty deque with an initial capacity sufficient
+	 * to hold 16 elements.
+	 */
+	public DoubleDeque() {
+		elements = new double[16];
+	}
+
+	/**
+	 * Constructs an empty deque with an initial capacity sufficient
+	 * to hold the specified number of elements.
+	 *
+	 * @param numElements lower bound on initial capacity of the deque
+	 */
+	public DoubleDeque(int numElements) {
+		elements = new double[capacityFor(numElements)];
+	}
+
+	/**
+	 * Constructs a deque containing the elements of the specified array,
+	 * in the same order.
+	 *
+	 * @param a the array whose elements are to be placed into the deque
+	 */
+	public DoubleDeque(double[] a) {
+		this(a.length);
+		addAll(a);
+	}
+
+	private static int capacityFor(int numElements) {
+		int initialCapacity = MIN_INITIAL_CAPACITY;
+		// Find the best power of two to hold elements.
+		// Tests "<=" because arrays aren't kept full.
+		if (numElements >= initialCapacity) {
+			initialCapacity = numElements;
+			initialCapacity |= (initialCapacity >>>  1);
+			initialCapacity |= (initialCapacity >>>  2);
+			initialCapacity |= (initialCapacity >>>  4);
+			initialCapacity |= (initialCapacity >>>  8);
+			initialCapacity |= (initialCapacity >>> 16);
+			initialCapacity++;
+
+			if (initialCapacity < 0)   // Too many elements, must back off
+				initialCapacity >>>= 1;
+		}
+		return initialCapacity;
+	}
+
+	/**
+	 * Doubles the capacity of this deque. Call only when full, i.e.,
+	 * when head and tail have wrapped around to become equal.
+	 */
+	private void doubleCapacity() {
+		assert head == tail;
+		int p = head;
+		int n = elements.length;
+		int r = n - p; // number of elements to the right of p
+		int newCapacity = n << 1;
+		if (newCapacity < 0)
+			throw new IllegalStateException("Sorry, deque too big");
+		double[] a = new double[newCapacity];
+		System.arraycopy(elements, p, a, 0, r);
+		System.arraycopy(elements, 0, a, r, p);
+		elements = a;
+		head = 0;
+		tail = n;
+	}
+
+	/**
+	 * Ensures that the specified number of elements can be held without
+	 * resizing.
+	 *
+	 * @param minCapacity the number of elements
+	 */
+	public void ensureCapacity(int minCapacity) {
+		if (minCapacity < elements.length)
+			return ;
+		int newCapacity = capacityFor(minCapacity);
+		if (newCapacity <= minCapacity)
+			throw new IllegalStateException("Sorry, deque too big");
+		int size = size();
+		elements = copyElements(new double[newCapacity]);
+		head = 0;
+		tail = size;
+	}
+
+	/**
+	 * Copies the elements into the specified array, in order (from first
+	 * to last element). It is assumed that the array is large enough.
+	 *
+	 * @return its argument
+	 */
+	private double[] copyElements(double[] a) {
+		if (head < tail) {
+			System.arraycopy(elements, head, a, 0, size());
+		} else if (head > tail) {
+			int headPortionLen = elements.length - head;
+			System.arraycopy(elements, head, a, 0, headPortionLen);
+			System.arraycopy(elements, 0, a, headPortionLen, tail);
+		}
+		return a;
+	}
+
+	/**
+	 * Inserts the specified element at the front of this deque.
+	 *
+	 * @param e the element to add
+	 */
+	public void addFirst(double e) {
+		elements[head = (head - 1) & (elements.length - 1)] = e;
+		if (head == tail)
+			doubleCapacity();
+	}
+
+	/**
+	 * Inserts the specified element at the end of this deque.
+	 *
+	 * @param e the element to add
+	 */
+	public void addLast(double e) {
+		elements[tail] = e;
+		if ( (tail = (tail + 1) & (elements.length - 1)) == head)
+			doubleCapacity();
+	}
+
+	/**
+	 * Inserts the specified element at the end of this deque.
+	 * This method is equivalent to {@link #addLast(double)}.
+	 *
+	 * @param e the element to add
+	 */
+	public void add(double e) {
+		addLast(e);
+	}
+
+	/**
+	 * Appends all elements of the specified array to the end of this
+	 * deque, in the same order.
+	 *
+	 * @param a the array whose elements should be added
+	 */
+	public void addAll(double[] a) {
+		addAll(a, 0, a.length);
+	}
+
+	/**
+	 * Appends <code>len</code> elements of the specified array, starting
+	 * at the index <code>off</code>, to the end of this deque.
+	 *
+	 * @param a the array whose elements should be added
+	 * @param off the index of the first element to be added
+	 * @param len the number of elements to be added
+	 */
+	public void addAll(double[] a, int off, int len) {
+		if (off < 0 || len < 0 || off + len > a.length || off + len < 0)
+			throw new IndexOutOfBoundsException();
+		ensureCapacity(size() + len);
+		int r = Math.min(len, elements.length - tail);
+		System.arraycopy(a, off, elements, tail, r);
+		System.arraycopy(a, off + r, elements, 0, len - r);
+		tail = (tail + len) & (elements.length - 1);
+	}
+
+	/**
+	 * Removes and returns the first element of this deque.
+	 *
+	 * @return the first element
+	 * @throws NoSuchElementException if this deque is empty
+	 */
+	public double removeFirst() {
+		int h = head;
+		if (h == tail)
+			throw new NoSuchElementException();
+		head = (h + 1) & (elements.length - 1);
+		return elements[h];
+	}
+
+	/**
+	 * Removes and returns the last element of this deque.
+	 *
+	 * @return the last element
+	 * @throws NoSuchElementException if this deque is empty
+	 */
+	public double removeLast() {
+		if (head == tail)
+			throw new NoSuchElementException();
+		return elements[tail = (tail - 1) & (elements.length - 1)];
+	}
+
+	/**
+	 * Returns, but does not remove, the first element of this deque.
+	 *
+	 * @return the first element
+	 * @throws NoSuchElementException if this deque is empty
+	 */
+	public double getFirst() {
+		if (head == tail)
+			throw new NoSuchElementException();
+		return elements[head];
+	}
+
+	/**
+	 * Returns, but does not remove, the last element of this deque.
+	 *
+	 * @return the last element
+	 * @throws NoSuchElementException if this deque is empty
+	 */
+	public double getLast() {
+		if (head == tail)
+			throw new NoSuchElementException();
+		return elements[(tail - 1) & (elements.length - 1)];
+	}
+
+	/**
+	 * Pushes an element onto the stack represented by this deque.
+	 * This method is equivalent to {@link #addFirst(double)}.
+	 *
+	 * @param e the element to push
+	 */
+	public void push(double e) {
+		addFirst(e);
+	}
+
+	/**
+	 * Pops an element from the stack represented by this deque.
+	 * This method is equivalent to {@link #removeFirst()}.
+	 *
+	 * @return the element at the front of this deque
+	 * @throws NoSuchElementException if this deque is empty
+	 */
+	public double pop() {
+		return removeFirst();
+	}
+
+	/**
+	 * Returns the element at the specified position.
+	 *
+	 * @param index index of the element (0 is the first element)
+	 * @return the element at the specified position
+	 * @throws IndexOutOfBoundsException if the index is out of range
+	 */
+	public double get(int index) {
+		rangeCheck(index);
+		return elements[(head + index) & (elements.length - 1)];
+	}
+
+	/**
+	 * Replaces the element at the specified position.
+	 *
+	 * @param index index of the element (0 is the first element)
+	 * @param element the new element
+	 * @return the element previously at the specified position
+	 * @throws IndexOutOfBoundsException if the index is out of range
+	 */
+	public double set(int index, double element) {
+		rangeCheck(index);
+		int i = (head + index) & (elements.length - 1);
+		double oldValue = elements[i];
+		elements[i] = element;
+		return oldValue;
+	}
+
+	/**
+	 * Returns the index of the first occurrence of the specified element,
+	 * or -1 if this deque does not contain it.
+	 *
+	 * @param e the element to search for
+	 * @return the index of the first occurrence, or -1
+	 */
+	public int indexOf(double e) {
+		final int mask = elements.length - 1;
+		for (int i = head, index = 0; i != tail; i = (i + 1) & mask, ++index) {
+			if (Double.doubleToLongBits(elements[i])
+					== Double.doubleToLongBits(e))
+				return index;
+		}
+		return -1;
+	}
+
+	/**
+	 * Checks whether this deque contains the specified element.
+	 *
+	 * @param e the element
+	 * @return <code>true</code> if it does, <code>false</code> otherwise
+	 */
+	public boolean contains(double e) {
+		return indexOf(e) != -1;
+	}
+
+	/**
+	 * Returns the number of elements in this deque.
+	 *
+	 * @return the number of elements in this deque
+	 */
+	public int size() {
+		return (tail - head) & (elements.length - 1);
+	}
+
+	/**
+	 * Returns <code>true</code> if this deque contains no elements.
+	 *
+	 * @return <code>true</code> if this deque contains no elements
+	 */
+	public boolean isEmpty() {
+		return head == tail;
+	}
+
+	/**
+	 * Removes all of the elements from this deque. The capacity
+	 * is retained.
+	 */
+	public void clear() {
+		head = tail = 0;
+	}
+
+	/**
+	 * Returns an array containing all of the elements in this deque
+	 * in proper sequence (from first to last element).
+	 *
+	 * @return an array containing all of the elements in this deque
+	 */
+	public double[] toArray() {
+		return copyElements(new double[size()]);
+	}
+
+	/**
+	 * Returns a copy of this deque.
+	 *
+	 * @return a copy of this deque
+	 */
+	@Override
+	public DoubleDeque clone() {
+		try {
+			DoubleDeque result = (DoubleDeque) super.clone();
+			result.elements = Arrays.copyOf(elements, elements.length);
+			return result;
+		} catch (CloneNotSupportedException e) {
+			throw new AssertionError();
+		}
+	}
+
+	@Override
+	public int hashCode() {
+		int ret = 1;
+		final int mask = elements.length - 1;
+		for (int i = head; i != tail; i = (i + 1) & mask) {
+			long bits = Double.doubleToLongBits(elements[i]);
+			ret = 31 * ret + (int) (bits ^ (bits >>> 32));
+		}
+		return ret;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == this)
+			return true;
+		if (!(obj instanceof DoubleDeque))
+			return false;
+		DoubleDeque other = (DoubleDeque) obj;
+		int size = size();
+		if (size != other.size())
+			return false;
+		for (int i = 0; i < size; ++i) {
+			if (Double.doubleToLongBits(get(i))
+					!= Double.doubleToLongBits(other.get(i)))
+				return false;
+		}
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(toArray());
+	}
+
+	private void rangeCheck(int index) {
+		if (index < 0 || index >= size())
+			throw new IndexOutOfBoundsException("Index: " + index);
+	}
+
+	/**
+	 * Serialize this deque.
+	 *
+	 * @serialData The current size (<tt>int</tt>) of the deque,
+	 * followed by all of its elements in first-to-last order.
+	 */
+	private void writeObject(ObjectOutputStream s) throws IOException {
+		s.defaultWriteObject();
+		s.writeInt(size());
+		final int mask = elements.length - 1;
+		for (int i = head; i != tail; i = (i + 1) & mask)
+			s.writeDouble(elements[i]);
+	}
+
+	/**
+	 * Deserialize this deque.
+	 */
+	private void readObject(ObjectInputStream s)
+	throws IOException, ClassNotFoundException {
+		s.defaultReadObject();
+		int size = s.readInt();
+		elements = new double[capacityFor(size)];
+		head = 0;
+		tail = size;
+		for (int i = 0; i < size; ++i)
+			elements[i] = s.readDouble();
+	}
+}
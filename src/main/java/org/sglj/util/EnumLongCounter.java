@@ -0,0 +1,124 @@
+/*
+ * EnumLongCounter.java
+ * 
+ * Copyright (C) 2010 Leo Osvald <leo.osvald@gmail.com>
+ * 
+ * This file is part of SGLJ.
+ * 
+ * SGLJ is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * SGLJ is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sglj.util;
+
+import java.util.EnumMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe array-based counter for enumerations, which is meant
+ * for the counting on hot paths (such as counting the messages per type),
+ * since it involves neither a map lookup nor boxing.<br>
+ * Each count occupies its own cache line of an {@link AtomicLongArray},
+ * so the threads which update the counts of different keys do not
+ * invalidate each other's caches.
+ * 
+ * @author Leo Osvald
+ * @version 1.0
+ *
+ * @param <K> key type
+ */
+public class EnumLongCounter<K extends Enum<K>> {
+
+	// the number of longs per cache line
+	private static final int PAD = 8;
+
+	private final Class<K> keyType;
+	private final AtomicLongArray counts;
+
+	/**
+	 * Constructs a new counter with all the counts equal to zero.
+	 * @param keyType the class of the enumeration
+	 */
+	public EnumLongCounter(Class<K> keyType) {
+		this.keyType = keyType;
+		// the leading padding keeps the first count off the array header
+		this.counts = new AtomicLongArray(
+				(keyType.getEnumConstants().length + 1) * PAD);
+	}
+
+	public long increment(K key) {
+		return counts.incrementAndGet(index(key));
+	}
+
+	public long decrement(K key) {
+		return counts.decrementAndGet(index(key));
+	}
+
+	public long add(K key, long delta) {
+		return counts.addAndGet(index(key), delta);
+	}
+
+	public long get(K key) {
+		return counts.get(index(key));
+	}
+
+	/**
+	 * Sets the count of the specified key to zero.
+	 * @param key key
+	 * @return the count before the reset
+	 */
+	public long reset(K key) {
+		return counts.getAndSet(index(key), 0);
+	}
+
+	/**
+	 * Sets all the counts to zero. This operation is not atomic.
+	 */
+	public void clear() {
+		for (K key : keyType.getEnumConstants())
+			reset(key);
+	}
+
+	/**
+	 * Returns the sum of all the counts. This operation is not atomic.
+	 * @return the total count
+	 */
+	public long sum() {
+		long sum = 0;
+		for (K key : keyType.getEnumConstants())
+			sum += get(key);
+		return sum;
+	}
+
+	/**
+	 * Returns the current counts of all the keys.
+	 * This operation is not atomic.
+	 * @return the map from each key to its count
+	 */
+	public EnumMap<K, Long> snapshot() {
+		EnumMap<K, Long> snapshot = new EnumMap<K, Long>(keyType);
+		for (K key : keyType.getEnumConstants())
+			snapshot.put(key, get(key));
+		return snapshot;
+	}
+
+	@Override
+	public String toString() {
+		return snapshot().toString();
+	}
+
+	private static int index(Enum<?> key) {
+		return (key.ordinal() + 1) * PAD;
+	}
+
+}
@@ -0,0 +1,459 @@
+/*
+ * FrozenPATTrie.java
+ *
+ * Copyright (C) 2011 Leo Osvald <leo.osvald@gmail.com>
+ *
+ * This file is part of SGLJ.
+ *
+ * SGLJ is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SGLJ is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sglj.util;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>An immutable counterpart of the {@link PATTrie}, which is created by
+ * the {@link PATTrie#freeze()} method, and meant for the tries which are
+ * built once and queried many times.</p>
+ * <p>The nodes are numbered in preorder, and all their fields are kept in
+ * a flat <code>int</code> array: the ranges of the edges in a shared
+ * character array, the ranges of the children (whose first characters
+ * are kept in a sorted character array, which is binary searched), and
+ * the ranges of the values. Since the values are laid out in preorder
+ * as well, the values of each subtree form a contiguous range, so
+ * {@link #findPrefix(String, Collection)} takes time proportional to the
+ * length of the prefix plus the size of the result, without traversing
+ * the subtree.<br>
+ * The values are stored once each, in a table which the nodes refer to
+ * by index.</p>
+ * <p>The trie can be written to a file by the {@link #writeTo(File)}
+ * method and loaded by the {@link #map(File)} method, which maps the
+ * arrays into memory instead of reading them (only the table of values
+ * is read; the values which are all integers or all strings are read
+ * without the object serialization). The trie is also
+ * {@link Serializable}.</p>
+ *
+ * @author Leo Osvald
+ * @version 1.0
+ *
+ * @param <E> type of the elements which are stored
+ */
+public class FrozenPATTrie<E> implements Serializable {
+
+	private static final long serialVersionUID = 6418259130570021472L;
+
+	private static final int MAGIC = 0x50415446; // "PATF"
+	private static final int FORMAT_VERSION = 1;
+	private static final int HEADER_BYTES = 6 * 4;
+	
+	// how the values are written to a file
+	private static final int SERIALIZED_VALUES = 0;
+	private static final int INTEGER_VALUES = 1;
+	private static final int STRING_VALUES = 2;
+
+	private transient int nodeCount;
+	private transient int valueRefCount;
+	/*
+	 * The sections of the int array (n is the number of nodes, including
+	 * the root, which is the node 0):
+	 * edgeStart[n], edgeLength[n], subtreeEnd[n], valueStart[n + 1],
+	 * childStart[n + 1], childNodes[n - 1], valueRefs[valueRefCount].
+	 * The sections of the char array: labels[n - 1] (the first characters
+	 * of the children), edgeChars.
+	 */
+	private transient IntBuffer ints;
+	private transient CharBuffer chars;
+	private transient Object[] valueTable;
+
+	private FrozenPATTrie() {
+	}
+
+	FrozenPATTrie(int nodeCount, int valueRefCount, int[] ints, char[] chars,
+			Object[] valueTable) {
+		init(nodeCount, valueRefCount, IntBuffer.wrap(ints),
+				CharBuffer.wrap(chars), valueTable);
+	}
+
+	private void init(int nodeCount, int valueRefCount, IntBuffer ints,
+			CharBuffer chars, Object[] valueTable) {
+		this.nodeCount = nodeCount;
+		this.valueRefCount = valueRefCount;
+		this.ints = ints;
+		this.chars = chars;
+		this.valueTable = valueTable;
+	}
+
+	static int intCount(int nodeCount, int valueRefCount) {
+		return 6 * nodeCount + 1 + valueRefCount;
+	}
+
+	// the offsets of the sections
+	
+	static int edgeStartOffset(int n) {
+		return 0;
+	}
+
+	static int edgeLengthOffset(int n) {
+		return n;
+	}
+
+	static int subtreeEndOffset(int n) {
+		return 2 * n;
+	}
+
+	static int valueStartOffset(int n) {
+		return 3 * n;
+	}
+
+	static int childStartOffset(int n) {
+		return 4 * n + 1;
+	}
+
+	static int childNodesOffset(int n) {
+		return 5 * n + 2;
+	}
+
+	static int valueRefsOffset(int n) {
+		return 6 * n + 1;
+	}
+
+	static int edgeCharsOffset(int n) {
+		return n - 1;
+	}
+
+	/**
+	 * Returns the node of the key, or, if the key need not be exact,
+	 * the highest node whose key starts with the specified one.
+	 * @return the node, or -1 if there is none
+	 */
+	private int findNode(String key, boolean exact) {
+		int n = nodeCount;
+		int node = 0;
+		int ind = 0;
+		while(ind < key.length()) {
+			// binary search of the child by its first character
+			char c = key.charAt(ind);
+			int lo = ints.get(childStartOffset(n) + node);
+			int hi = ints.get(childStartOffset(n) + node + 1) - 1;
+			int child = -1;
+			while(lo <= hi) {
+				int mid = (lo + hi) >>> 1;
+				char label = chars.get(mid);
+				if(label < c) {
+					lo = mid + 1;
+				} else if(label > c) {
+					hi = mid - 1;
+				} else {
+					child = ints.get(childNodesOffset(n) + mid);
+					break;
+				}
+			}
+			if(child == -1)
+				return -1;
+			
+			int edgeStart = edgeCharsOffset(n) 
+					+ ints.get(edgeStartOffset(n) + child);
+			int edgeLength = ints.get(edgeLengthOffset(n) + child);
+			int i = 1;
+			while(i < edgeLength && ind + i < key.length()
+					&& chars.get(edgeStart + i) == key.charAt(ind + i))
+				++i;
+			if(i < edgeLength && (exact || ind + i < key.length()))
+				return -1;
+			ind += i;
+			node = child;
+		}
+		return node;
+	}
+
+	/**
+	 * Returns collection of values associated with the specified key.<br>
+	 * If there are no associated values, an immutable empty collection
+	 * will be returned.<br>
+	 * @param key key
+	 * @return collection of values mapped by this key
+	 */
+	public Collection<E> getValues(final String key) {
+		int node = findNode(key, true);
+		if(node == -1)
+			return Collections.emptyList();
+		int valueStart = valueStartOffset(nodeCount) + node;
+		return values(ints.get(valueStart), ints.get(valueStart + 1));
+	}
+
+	/**
+	 * Checks whether the specified value is associated with
+	 * the specified key.
+	 * @param key key
+	 * @param value value
+	 * @return <code>true</code> if it is, <code>false</code> otherwise.
+	 */
+	public boolean contains(final String key, final E value) {
+		return getValues(key).contains(value);
+	}
+
+	/**
+	 * Retrieves all values mapped by the keys whose prefix is the one
+	 * specified.
+	 * @param prefix key prefix
+	 * @param result collection where retrieved values should be added
+	 * @return <code>true</code> if the collection changed
+	 */
+	public boolean findPrefix(final String prefix, Collection<E> result) {
+		int node = findNode(prefix, false);
+		if(node == -1)
+			return false;
+		int n = nodeCount;
+		int subtreeEnd = ints.get(subtreeEndOffset(n) + node);
+		return result.addAll(values(ints.get(valueStartOffset(n) + node),
+				ints.get(valueStartOffset(n) + subtreeEnd)));
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<E> values(int from, int to) {
+		if(from == to)
+			return Collections.emptyList();
+		List<E> values = new ArrayList<E>(to - from);
+		int refs = valueRefsOffset(nodeCount);
+		for(int i = from; i < to; ++i)
+			values.add((E) valueTable[ints.get(refs + i)]);
+		return values;
+	}
+
+	/**
+	 * Returns the number of values contained by this collection.
+	 * @return total number of values
+	 */
+	public int size() {
+		return valueRefCount;
+	}
+
+	public boolean isEmpty() {
+		return valueRefCount == 0;
+	}
+
+	/**
+	 * Returns the number of nodes in the trie (not counting the root),
+	 * as {@link PATTrie#nodeCount()} does.
+	 * @return number of nodes in the trie
+	 */
+	public int nodeCount() {
+		return nodeCount - 1;
+	}
+
+	/**
+	 * Writes the trie to the specified file, from which it can be
+	 * loaded by the {@link #map(File)} method.
+	 * @param file the file
+	 * @throws IOException if an I/O error occurs
+	 */
+	public void writeTo(File file) throws IOException {
+		OutputStream out = new FileOutputStream(file);
+		try {
+			write(out);
+		} finally {
+			out.close();
+		}
+	}
+
+	private void write(OutputStream out) throws IOException {
+		DataOutputStream data = new DataOutputStream(
+				new BufferedOutputStream(out));
+		data.writeInt(MAGIC);
+		data.writeInt(FORMAT_VERSION);
+		data.writeInt(nodeCount);
+		data.writeInt(valueRefCount);
+		data.writeInt(chars.limit());
+		int valueKind = valueKind();
+		data.writeInt(valueKind);
+		for(int i = 0; i < ints.limit(); ++i)
+			data.writeInt(ints.get(i));
+		for(int i = 0; i < chars.limit(); ++i)
+			data.writeChar(chars.get(i));
+		
+		if(valueKind == SERIALIZED_VALUES) {
+			data.flush();
+			ObjectOutputStream objects = new ObjectOutputStream(out);
+			objects.writeObject(valueTable);
+			objects.flush();
+			return;
+		}
+		data.writeInt(valueTable.length);
+		for(Object value : valueTable) {
+			if(valueKind == INTEGER_VALUES) {
+				data.writeInt((Integer) value);
+			} else {
+				String s = (String) value;
+				data.writeInt(s.length());
+				data.writeChars(s);
+			}
+		}
+		data.flush();
+	}
+	
+	private int valueKind() {
+		boolean integers = true, strings = true;
+		for(Object value : valueTable) {
+			integers &= value instanceof Integer;
+			strings &= value instanceof String;
+		}
+		return integers ? INTEGER_VALUES 
+				: strings ? STRING_VALUES : SERIALIZED_VALUES;
+	}
+
+	/**
+	 * Loads the trie from the file written by the {@link #writeTo(File)}
+	 * method. The arrays of the trie are mapped into memory, so only
+	 * the values need to be deserialized.
+	 * @param file the file
+	 * @return the trie
+	 * @throws IOException if an I/O error occurs or the file is not
+	 * a valid trie
+	 */
+	public static <E> FrozenPATTrie<E> map(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		MappedByteBuffer buffer;
+		try {
+			// the mapping stays valid after the file is closed
+			buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0,
+					raf.length());
+		} finally {
+			raf.close();
+		}
+		FrozenPATTrie<E> trie = new FrozenPATTrie<E>();
+		trie.read(buffer);
+		return trie;
+	}
+
+	private void read(ByteBuffer buffer) throws IOException {
+		if(buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC)
+			throw new StreamCorruptedException("Not a frozen trie");
+		if(buffer.getInt() != FORMAT_VERSION)
+			throw new StreamCorruptedException("Unsupported version");
+		int n = buffer.getInt();
+		int refCount = buffer.getInt();
+		int charCount = buffer.getInt();
+		int valueKind = buffer.getInt();
+		if(n < 1 || refCount < 0 || charCount < 0)
+			throw new StreamCorruptedException("Invalid header");
+		
+		// as many ints as intCount(n, refCount), without the overflow
+		IntBuffer ints = section(buffer, 
+				4 * (6L * n + 1 + refCount)).asIntBuffer();
+		CharBuffer chars = section(buffer, 2L * charCount).asCharBuffer();
+		
+		init(n, refCount, ints, chars, readValues(buffer, valueKind));
+	}
+	
+	/**
+	 * Returns the section of the specified length which starts at the
+	 * current position of the buffer, and skips it.
+	 * @throws StreamCorruptedException if the buffer is too short
+	 */
+	private static ByteBuffer section(ByteBuffer buffer, long bytes) 
+	throws StreamCorruptedException {
+		if(bytes > buffer.remaining())
+			throw new StreamCorruptedException("Truncated section");
+		ByteBuffer section = buffer.slice();
+		section.limit((int) bytes);
+		buffer.position(buffer.position() + (int) bytes);
+		return section;
+	}
+	
+	private static Object[] readValues(ByteBuffer buffer, int valueKind) 
+	throws IOException {
+		if(valueKind == SERIALIZED_VALUES) {
+			byte[] objectBytes = new byte[buffer.remaining()];
+			buffer.get(objectBytes);
+			ObjectInputStream objects = new ObjectInputStream(
+					new ByteArrayInputStream(objectBytes));
+			try {
+				return (Object[]) objects.readObject();
+			} catch(ClassNotFoundException e) {
+				throw new IOException("Cannot read the values: " + e);
+			}
+		}
+		
+		int count = section(buffer, 4).getInt();
+		// each value takes at least four bytes
+		if(count < 0 || 4L * count > buffer.remaining())
+			throw new StreamCorruptedException("Invalid number of values");
+		Object[] values = new Object[count];
+		if(valueKind == INTEGER_VALUES) {
+			IntBuffer ints = buffer.asIntBuffer();
+			for(int i = 0; i < values.length; ++i)
+				values[i] = ints.get(i);
+		} else if(valueKind == STRING_VALUES) {
+			char[] chars = new char[256];
+			for(int i = 0; i < values.length; ++i) {
+				int length = section(buffer, 4).getInt();
+				if(length < 0)
+					throw new StreamCorruptedException("Invalid string");
+				if(length > chars.length)
+					chars = new char[Math.max(length, 2 * chars.length)];
+				section(buffer, 2L * length).asCharBuffer().get(
+						chars, 0, length);
+				values[i] = new String(chars, 0, length);
+			}
+		} else {
+			throw new StreamCorruptedException("Unknown value kind");
+		}
+		return values;
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		int[] intArray = new int[ints.limit()];
+		ints.duplicate().get(intArray);
+		char[] charArray = new char[chars.limit()];
+		chars.duplicate().get(charArray);
+		out.writeInt(nodeCount);
+		out.writeInt(valueRefCount);
+		out.writeObject(intArray);
+		out.writeObject(charArray);
+		out.writeObject(valueTable);
+	}
+
+	private void readObject(ObjectInputStream in)
+	throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		int n = in.readInt();
+		int refCount = in.readInt();
+		init(n, refCount, IntBuffer.wrap((int[]) in.readObject()),
+				CharBuffer.wrap((char[]) in.readObject()),
+				(Object[]) in.readObject());
+	}
+
+}
@@ -0,0 +1,243 @@
+/*
+ * IntIntCounter.java
+ *
+ * Copyright (C) 2011 Leo Osvald <leo.osvald@gmail.com>
+ *
+ * This file is part of SGLJ.
+ *
+ * SGLJ is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SGLJ is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sglj.util;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * <p>Counts the number of occurrences of <code>int</code> keys, without
+ * boxing either the keys or the counts. This is the <code>int</code>
+ * key counterpart of the {@link ObjectIntCounter}: the keys and the counts
+ * are kept in two parallel arrays of an open-addressing hash table with
+ * linear probing, and each update finds the slot of the key only once.</p>
+ * <p>Only the keys with a non-zero count are kept (a slot with a zero
+ * count is free), so an entry whose count drops to zero is removed.</p>
+ * 
+ * @author Leo Osvald
+ * @version 1.0
+ */
+public class IntIntCounter implements Serializable {
+
+	private static final long serialVersionUID = 2905561862718937324L;
+
+	private static final int DEFAULT_EXPECTED_SIZE = 16;
+
+	private int[] keys;
+	private int[] counts;
+	private int size;
+	private int threshold;
+
+	public IntIntCounter() {
+		this(DEFAULT_EXPECTED_SIZE);
+	}
+
+	/**
+	 * Creates an empty counter which can hold the specified number
+	 * of keys without growing.
+	 * @param expectedSize the expected number of keys
+	 */
+	public IntIntCounter(int expectedSize) {
+		if (expectedSize < 0)
+			throw new IllegalArgumentException("Illegal expected size: "
+					+ expectedSize);
+		allocate(ObjectIntCounter.tableSizeFor(expectedSize));
+	}
+
+	/**
+	 * Increments the number of occurrences of the specified key.
+	 * @param key the key which is counted
+	 * @return <code>true</code> if this is the first occurrence,
+	 * <code>false</code> otherwise
+	 */
+	public boolean increment(int key) {
+		return addTo(key, 1) == 1;
+	}
+
+	/**
+	 * Decrements the number of occurrences of the specified key.
+	 * If this was the last occurrence, the key is removed.
+	 * @param key the key which is counted
+	 * @return <code>true</code> if the key was removed,
+	 * <code>false</code> otherwise
+	 */
+	public boolean decrement(int key) {
+		int slot = find(key);
+		if (slot < 0 || --counts[slot] != 0)
+			return false;
+		removeAt(slot);
+		return true;
+	}
+
+	/**
+	 * Adds the specified amount to the count of the specified key.
+	 * If the resulting count is zero, the key is removed.
+	 * @param key the key which is counted
+	 * @param delta the amount to add (may be negative)
+	 * @return the new count
+	 */
+	public int addTo(int key, int delta) {
+		int mask = keys.length - 1;
+		int slot = ObjectIntCounter.mix(key) & mask;
+		for (; counts[slot] != 0; slot = (slot + 1) & mask) {
+			if (keys[slot] == key) {
+				int count = counts[slot] += delta;
+				if (count == 0)
+					removeAt(slot);
+				return count;
+			}
+		}
+		if (delta != 0) {
+			keys[slot] = key;
+			counts[slot] = delta;
+			if (++size > threshold)
+				rehash(keys.length << 1);
+		}
+		return delta;
+	}
+
+	/**
+	 * Returns the number of occurrences of the specified key.
+	 * @param key the key which is counted
+	 * @return number of occurrences (0 if there are no occurrences)
+	 */
+	public int count(int key) {
+		int slot = find(key);
+		return slot >= 0 ? counts[slot] : 0;
+	}
+
+	public boolean containsKey(int key) {
+		return find(key) >= 0;
+	}
+
+	/**
+	 * Removes the specified key regardless of its count.
+	 * @param key the key which is counted
+	 * @return the count the key had (0 if it was not present)
+	 */
+	public int remove(int key) {
+		int slot = find(key);
+		if (slot < 0)
+			return 0;
+		int count = counts[slot];
+		removeAt(slot);
+		return count;
+	}
+
+	/**
+	 * Returns the number of distinct keys.
+	 * @return the number of keys
+	 */
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		if (size != 0) {
+			Arrays.fill(counts, 0);
+			size = 0;
+		}
+	}
+
+	/**
+	 * Returns all the keys, in unspecified order.
+	 * @return the array of keys
+	 */
+	public int[] keys() {
+		int[] ret = new int[size];
+		for (int slot = 0, i = 0; i < size; ++slot)
+			if (counts[slot] != 0)
+				ret[i++] = keys[slot];
+		return ret;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("{");
+		for (int slot = 0; slot < keys.length; ++slot) {
+			if (counts[slot] != 0) {
+				if (sb.length() > 1)
+					sb.append(", ");
+				sb.append(keys[slot]).append('=').append(counts[slot]);
+			}
+		}
+		return sb.append('}').toString();
+	}
+
+	private int find(int key) {
+		int mask = keys.length - 1;
+		for (int slot = ObjectIntCounter.mix(key) & mask; counts[slot] != 0;
+				slot = (slot + 1) & mask) {
+			if (keys[slot] == key)
+				return slot;
+		}
+		return -1;
+	}
+
+	/**
+	 * Removes the entry at the specified slot, and moves back the entries
+	 * of the same probe sequence, so that they remain reachable.
+	 */
+	private void removeAt(int slot) {
+		int mask = keys.length - 1;
+		for (int next = (slot + 1) & mask; counts[next] != 0;
+				next = (next + 1) & mask) {
+			int ideal = ObjectIntCounter.mix(keys[next]) & mask;
+			// the entry can be moved unless its ideal slot is cyclically
+			// in (slot, next]
+			if (slot <= next ? ideal <= slot || ideal > next
+					: ideal <= slot && ideal > next) {
+				keys[slot] = keys[next];
+				counts[slot] = counts[next];
+				slot = next;
+			}
+		}
+		counts[slot] = 0;
+		--size;
+	}
+
+	private void rehash(int capacity) {
+		int[] oldKeys = keys;
+		int[] oldCounts = counts;
+		allocate(capacity);
+		int mask = capacity - 1;
+		for (int i = 0; i < oldKeys.length; ++i) {
+			if (oldCounts[i] != 0) {
+				int slot = ObjectIntCounter.mix(oldKeys[i]) & mask;
+				while (counts[slot] != 0)
+					slot = (slot + 1) & mask;
+				keys[slot] = oldKeys[i];
+				counts[slot] = oldCounts[i];
+			}
+		}
+	}
+
+	private void allocate(int capacity) {
+		keys = new int[capacity];
+		counts = new int[capacity];
+		threshold = capacity - (capacity >> 2) - 1;
+	}
+}
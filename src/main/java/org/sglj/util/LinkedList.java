@@ -51,7 +51,29 @@ public class LinkedList<E> extends AbstractSequentialList<E> implements
 
     transient Link<E> voidLink;
 
-    private static final class Link<ET> {
+    /**
+     * A stable reference to an element of a {@link LinkedList}, which is
+     * returned by the {@link LinkedList#addFirstHandle(Object)} and
+     * {@link LinkedList#addLastHandle(Object)} methods.
+     * It allows the element to be removed or moved in constant time.<br>
+     * A handle is valid only until its element is removed from the list
+     * (after {@link LinkedList#concatenate(LinkedList)}, the handles of
+     * the appended list belong to the list it was appended to).
+     * Instead of removing an element and adding another one, the handle
+     * can be reused by {@link LinkedList#set(Handle, Object)} and
+     * {@link LinkedList#moveToFront(Handle)}, which does not allocate.
+     */
+    public interface Handle<E> {
+
+        /**
+         * Returns the element referenced by this handle.
+         *
+         * @return the element
+         */
+        E get();
+    }
+
+    private static final class Link<ET> implements Handle<ET> {
         ET data;
         Link<ET> previous, next;
         Link(ET o, Link<ET> p, Link<ET> n) {
@@ -59,6 +81,10 @@ public class LinkedList<E> extends AbstractSequentialList<E> implements
             previous = p;
             next = n;
         }
+
+        public ET get() {
+            return data;
+        }
     }
 
     private static final class LinkIterator<ET> implements ListIterator<ET> {
@@ -160,6 +186,7 @@ public class LinkedList<E> extends AbstractSequentialList<E> implements
                         pos--;
                     }
                     link = previous;
+                    lastLink.previous = lastLink.next = null;
                     lastLink = null;
                     expectedModCount++;
                     list.size--;
@@ -404,6 +431,13 @@ public class LinkedList<E> extends AbstractSequentialList<E> implements
     @Override
     public void clear() {
         if (size > 0) {
+            // unlink every link, so that the handles become stale
+            Link<E> link = voidLink.next;
+            while (link != voidLink) {
+                Link<E> next = link.next;
+                link.previous = link.next = null;
+                link = next;
+            }
             size = 0;
             voidLink.next = voidLink;
             voidLink.previous = voidLink;
@@ -611,6 +645,7 @@ public class LinkedList<E> extends AbstractSequentialList<E> implements
             Link<E> next = link.next;
             previous.next = next;
             next.previous = previous;
+            link.previous = link.next = null;
             size--;
             modCount++;
             return link.data;
@@ -637,6 +672,7 @@ public class LinkedList<E> extends AbstractSequentialList<E> implements
         Link<E> previous = link.previous;
         previous.next = next;
         next.previous = previous;
+        link.previous = link.next = null;
         size--;
         modCount++;
         return true;
@@ -655,6 +691,7 @@ public class LinkedList<E> extends AbstractSequentialList<E> implements
             Link<E> next = first.next;
             voidLink.next = next;
             next.previous = voidLink;
+            first.previous = first.next = null;
             size--;
             modCount++;
             return first.data;
@@ -675,6 +712,7 @@ public class LinkedList<E> extends AbstractSequentialList<E> implements
             Link<E> previous = last.previous;
             voidLink.previous = previous;
             previous.next = voidLink;
+            last.previous = last.next = null;
             size--;
             modCount++;
             return last.data;
@@ -820,6 +858,120 @@ public class LinkedList<E> extends AbstractSequentialList<E> implements
     	++list.modCount;
     }
     
+    /**
+     * Adds the specified object at the beginning of this {@code LinkedList}
+     * and returns the handle by which it can later be removed or moved
+     * in constant time.
+     *
+     * @param object
+     *            the object to add.
+     * @return the handle of the added object.
+     */
+    public Handle<E> addFirstHandle(E object) {
+        Link<E> oldFirst = voidLink.next;
+        Link<E> newLink = new Link<E>(object, voidLink, oldFirst);
+        voidLink.next = newLink;
+        oldFirst.previous = newLink;
+        size++;
+        modCount++;
+        return newLink;
+    }
+
+    /**
+     * Adds the specified object at the end of this {@code LinkedList}
+     * and returns the handle by which it can later be removed or moved
+     * in constant time.
+     *
+     * @param object
+     *            the object to add.
+     * @return the handle of the added object.
+     */
+    public Handle<E> addLastHandle(E object) {
+        Link<E> oldLast = voidLink.previous;
+        Link<E> newLink = new Link<E>(object, oldLast, voidLink);
+        voidLink.previous = newLink;
+        oldLast.next = newLink;
+        size++;
+        modCount++;
+        return newLink;
+    }
+
+    /**
+     * Removes the element referenced by the specified handle in constant
+     * time. The handle must have been obtained from this list. After this
+     * method returns, the handle is stale.
+     *
+     * @param handle
+     *            the handle of the element to remove.
+     * @return the removed element.
+     * @throws IllegalArgumentException
+     *             if the element of the handle has already been removed.
+     */
+    public E remove(Handle<E> handle) {
+        Link<E> link = checkHandle(handle);
+        Link<E> previous = link.previous;
+        Link<E> next = link.next;
+        previous.next = next;
+        next.previous = previous;
+        link.previous = link.next = null;
+        size--;
+        modCount++;
+        return link.data;
+    }
+
+    /**
+     * Replaces the element referenced by the specified handle in constant
+     * time. The handle must have been obtained from this list and remains
+     * valid.
+     *
+     * @param handle
+     *            the handle of the element to replace.
+     * @param object
+     *            the object to store.
+     * @return the replaced element.
+     * @throws IllegalArgumentException
+     *             if the element of the handle has already been removed.
+     */
+    public E set(Handle<E> handle, E object) {
+        Link<E> link = checkHandle(handle);
+        E result = link.data;
+        link.data = object;
+        return result;
+    }
+
+    /**
+     * Moves the element referenced by the specified handle to the
+     * beginning of this {@code LinkedList} in constant time. The handle
+     * must have been obtained from this list and remains valid.
+     *
+     * @param handle
+     *            the handle of the element to move.
+     * @throws IllegalArgumentException
+     *             if the element of the handle has already been removed.
+     */
+    public void moveToFront(Handle<E> handle) {
+        Link<E> link = checkHandle(handle);
+        if (voidLink.next == link) {
+            return;
+        }
+        link.previous.next = link.next;
+        link.next.previous = link.previous;
+        Link<E> oldFirst = voidLink.next;
+        link.previous = voidLink;
+        link.next = oldFirst;
+        voidLink.next = link;
+        oldFirst.previous = link;
+        modCount++;
+    }
+
+    private Link<E> checkHandle(Handle<E> handle) {
+        Link<E> link = (Link<E>) handle;
+        if (link.previous == null) {
+            throw new IllegalArgumentException("Stale handle");
+        }
+        return link;
+    }
+
     // Deque operations
     /**
      * Inserts the specified element at the front of this list.
@@ -959,6 +1111,7 @@ public class LinkedList<E> extends AbstractSequentialList<E> implements
         Link<E> previous = link.previous;
         previous.next = next;
         next.previous = previous;
+        link.previous = link.next = null;
         size--;
         modCount++;
         return true;
@@ -0,0 +1,144 @@
+/*
+ * MpscRingBuffer.java
+ *
+ * Copyright (C) 2011 Leo Osvald <leo.osvald@gmail.com>
+ *
+ * This file is part of SGLJ.
+ *
+ * SGLJ is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SGLJ is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sglj.util;
+
+import java.util.Collection;
+
+/**
+ * A lock-free {@link RingBuffer} for any number of producer threads and
+ * exactly one consumer thread.<br>
+ * Producers claim a slot by advancing the tail sequence with
+ * a compare-and-set, and then publish the element by writing it to the
+ * claimed slot; the consumer treats a <code>null</code> slot as not yet
+ * published. Producers cache the head sequence, so that the contended
+ * shared state is only the tail sequence in the common case.<br>
+ * The behavior is undefined if more than one thread removes elements.
+ *
+ * @author Leo Osvald
+ * @version 1.0
+ *
+ * @param <E> the type of elements held in the buffer
+ */
+public class MpscRingBuffer<E> extends AbstractRingBuffer<E> {
+
+	/**
+	 * A recent value of the head sequence, shared by producers.
+	 */
+	private final PaddedAtomicLong headCache = new PaddedAtomicLong(0);
+
+	/**
+	 * Creates the buffer which can hold at least the specified number
+	 * of elements and waits according to the {@link WaitStrategy#BACK_OFF}
+	 * strategy.
+	 * @param capacity the minimum capacity (rounded up to a power of two)
+	 */
+	public MpscRingBuffer(int capacity) {
+		this(capacity, WaitStrategy.BACK_OFF);
+	}
+
+	/**
+	 * Creates the buffer which can hold at least the specified number
+	 * of elements.
+	 * @param capacity the minimum capacity (rounded up to a power of two)
+	 * @param waitStrategy the strategy used by blocking operations
+	 */
+	public MpscRingBuffer(int capacity, WaitStrategy waitStrategy) {
+		super(capacity, waitStrategy);
+	}
+
+	@Override
+	public boolean offer(E e) {
+		if (e == null)
+			throw new NullPointerException();
+		long t;
+		do {
+			t = tail.get();
+			if (t - headCache.get() > mask) {
+				long h = head.get();
+				if (t - h > mask)
+					return false;
+				headCache.lazySet(h);
+			}
+		} while (!tail.compareAndSet(t, t + 1));
+		buffer.lazySet((int) t & mask, e);
+		return true;
+	}
+
+	@Override
+	public E poll() {
+		final long h = head.get();
+		final int index = (int) h & mask;
+		E e = buffer.get(index);
+		if (e == null) {
+			if (h == tail.get())
+				return null;
+			// the slot is claimed, but the element is not published yet
+			e = awaitPublished(index);
+		}
+		buffer.lazySet(index, null);
+		head.lazySet(h + 1);
+		return e;
+	}
+
+	@Override
+	public E peek() {
+		final long h = head.get();
+		final int index = (int) h & mask;
+		E e = buffer.get(index);
+		if (e == null) {
+			if (h == tail.get())
+				return null;
+			e = awaitPublished(index);
+		}
+		return e;
+	}
+
+	/**
+	 * Waits according to the wait strategy until the element of the
+	 * claimed slot is published.
+	 */
+	private E awaitPublished(int index) {
+		WaitStrategy waitStrategy = getWaitStrategy();
+		E e;
+		for (int idleCount = 0; (e = buffer.get(index)) == null; )
+			idleCount = waitStrategy.idle(idleCount);
+		return e;
+	}
+
+	@Override
+	public int drainTo(Collection<? super E> c, int maxElements) {
+		final long h = head.get();
+		int n = 0;
+		for (; n < maxElements; ++n) {
+			final int index = (int) (h + n) & mask;
+			E e = buffer.get(index);
+			if (e == null) // empty or not published yet
+				break;
+			c.add(e);
+			buffer.lazySet(index, null);
+		}
+		// publish the whole batch at once
+		if (n > 0)
+			head.lazySet(h + n);
+		return n;
+	}
+}
@@ -22,19 +22,31 @@
 package org.sglj.util;
 
 import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
 
 
 /**
  * A set of methods for calculating nth smallest/largest element
  * in linear time (proportional to the range being searched).<br>
+ * The multiSelect methods select several ranks at once, and the
+ * parallelMultiSelect methods also partition the large ranges on all
+ * the available processors.
  *
  * @author Leo Osvald
  *
  */
 public class NthOrderStatistic {
 
+	/**
+	 * The minimum number of elements a range must have in order to be
+	 * partitioned in parallel.
+	 */
+	public static final int PARALLEL_THRESHOLD = 1 << 17;
+
+	static final int INSERTIONSORT_THRESHOLD = 16;
+
 	public static int nthElement(int[] a, int n, int fromIndex, int toIndex) {
-		rangeCheck(a, fromIndex, toIndex);
+		rangeCheck(a.length, fromIndex, toIndex);
 		nthElement0(a, n + fromIndex, fromIndex, toIndex);
 		ArrayUtils.swap(a, fromIndex, n + fromIndex);
 		return a[fromIndex + n];
@@ -105,8 +117,836 @@ public class NthOrderStatistic {
 		return ;
 	}
 
-	private static void rangeCheck(int[] a, int fromIndex, int toIndex) {
-		if (fromIndex < 0 || toIndex > a.length)
+	/**
+	 * Rearranges the range [fromIndex, toIndex) of the array so that for
+	 * each of the specified ranks <code>k</code>, the element at
+	 * <code>fromIndex + k</code> is the one which would be there if the range
+	 * were sorted, no element before it is greater and no element after it
+	 * is smaller.<br>
+	 * The range is partitioned once around each pivot, and only the parts
+	 * which contain some of the requested ranks are partitioned further,
+	 * so selecting several ranks takes O(n) expected time, not much more
+	 * than selecting one.
+	 * 
+	 * @param a the array
+	 * @param fromIndex the index of the first element (inclusive)
+	 * @param toIndex the index of the last element (exclusive)
+	 * @param ranks the ranks relative to fromIndex, in ascending order
+	 * @return the selected elements, in the order of the ranks
+	 * @throws IllegalArgumentException if the ranks are not sorted
+	 * @throws IndexOutOfBoundsException if the range or a rank is invalid
+	 */
+	public static int[] multiSelect(int[] a, int fromIndex, int toIndex,
+			int... ranks) {
+		return multiSelect(a, fromIndex, toIndex, ranks, null, 1);
+	}
+
+	/**
+	 * Does the same as the {@link #multiSelect(int[], int, int, int...)}
+	 * method, except that the ranges larger than
+	 * {@value #PARALLEL_THRESHOLD} elements are partitioned on all
+	 * the available processors, using O(n) additional memory.
+	 * 
+	 * @param a the array
+	 * @param fromIndex the index of the first element (inclusive)
+	 * @param toIndex the index of the last element (exclusive)
+	 * @param ranks the ranks relative to fromIndex, in ascending order
+	 * @return the selected elements, in the order of the ranks
+	 * @throws IllegalArgumentException if the ranks are not sorted
+	 * @throws IndexOutOfBoundsException if the range or a rank is invalid
+	 */
+	public static int[] parallelMultiSelect(int[] a, int fromIndex,
+			int toIndex, int... ranks) {
+		if (toIndex - fromIndex < PARALLEL_THRESHOLD
+				|| Sorter.PARALLELISM < 2)
+			return multiSelect(a, fromIndex, toIndex, ranks);
+		ExecutorService executor = Sorter.newExecutor(Sorter.PARALLELISM);
+		try {
+			return multiSelect(a, fromIndex, toIndex, ranks, executor,
+					Sorter.PARALLELISM);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Does the same as the {@link #multiSelect(int[], int, int, int...)}
+	 * method, except that the ranges larger than
+	 * {@value #PARALLEL_THRESHOLD} elements are partitioned by the
+	 * specified number of tasks run by the executor.
+	 * 
+	 * @param a the array
+	 * @param fromIndex the index of the first element (inclusive)
+	 * @param toIndex the index of the last element (exclusive)
+	 * @param executor the executor which runs the tasks
+	 * @param parallelism the number of tasks per partitioning
+	 * @param ranks the ranks relative to fromIndex, in ascending order
+	 * @return the selected elements, in the order of the ranks
+	 * @throws IllegalArgumentException if the ranks are not sorted
+	 * @throws IndexOutOfBoundsException if the range or a rank is invalid
+	 */
+	public static int[] parallelMultiSelect(int[] a, int fromIndex,
+			int toIndex, ExecutorService executor, int parallelism,
+			int... ranks) {
+		return multiSelect(a, fromIndex, toIndex, ranks, executor,
+				parallelism);
+	}
+
+	private static int[] multiSelect(int[] a, int fromIndex, int toIndex,
+			int[] ranks, ExecutorService executor, int parallelism) {
+		rangeCheck(a.length, fromIndex, toIndex);
+		int[] indices = toIndices(ranks, fromIndex, toIndex);
+		int len = toIndex - fromIndex;
+		if (executor != null && parallelism > 1
+				&& len >= PARALLEL_THRESHOLD) {
+			parallelSelect0(a, new int[len], fromIndex, fromIndex, toIndex,
+					indices, 0, indices.length, depthLimit(len), executor,
+					parallelism);
+		} else {
+			select0(a, fromIndex, toIndex, indices, 0, indices.length,
+					depthLimit(len));
+		}
+		int[] ret = new int[indices.length];
+		for (int i = 0; i < ret.length; ++i)
+			ret[i] = a[indices[i]];
+		return ret;
+	}
+
+	/**
+	 * Selects the elements at the indices [rankFrom, rankTo) of the
+	 * sorted array of indices, all of which are within [fromIndex, toIndex).
+	 */
+	private static void select0(int[] a, int fromIndex, int toIndex,
+			int[] indices, int rankFrom, int rankTo, int depth) {
+		while (rankFrom < rankTo) {
+			if (toIndex - fromIndex <= INSERTIONSORT_THRESHOLD) {
+				insertionSort(a, fromIndex, toIndex);
+				return ;
+			}
+			if (--depth < 0) { // bad pivots, fall back to O(n log n)
+				Arrays.sort(a, fromIndex, toIndex);
+				return ;
+			}
+
+			// three-way partition: [fromIndex, lt) < pivot,
+			// [lt, gt) == pivot, [gt, toIndex) > pivot
+			int pivot = pivot(a, fromIndex, toIndex);
+			int lt = fromIndex, gt = toIndex;
+			for (int i = fromIndex; i < gt; ) {
+				int x = a[i];
+				if (x < pivot) {
+					a[i++] = a[lt];
+					a[lt++] = x;
+				} else if (x > pivot) {
+					a[i] = a[--gt];
+					a[gt] = x;
+				} else {
+					++i;
+				}
+			}
+
+			int leftTo = lowerBound(indices, rankFrom, rankTo, lt);
+			int rightFrom = lowerBound(indices, leftTo, rankTo, gt);
+			// recurse into the smaller part, iterate over the larger one
+			if (lt - fromIndex < toIndex - gt) {
+				select0(a, fromIndex, lt, indices, rankFrom, leftTo, depth);
+				fromIndex = gt;
+				rankFrom = rightFrom;
+			} else {
+				select0(a, gt, toIndex, indices, rightFrom, rankTo, depth);
+				toIndex = lt;
+				rankTo = leftTo;
+			}
+		}
+	}
+
+	/**
+	 * Does the same as the select0 method, but the large ranges are
+	 * partitioned in parallel via the buffer, whose element at index
+	 * <code>i - offset</code> corresponds to the element of the array
+	 * at index <code>i</code>.
+	 */
+	private static void parallelSelect0(final int[] a, final int[] buf,
+			final int offset, final int fromIndex, final int toIndex,
+			int[] indices, int rankFrom, int rankTo, int depth,
+			ExecutorService executor, int parallelism) {
+		if (rankFrom >= rankTo)
+			return ;
+		int len = toIndex - fromIndex;
+		if (len < PARALLEL_THRESHOLD) {
+			select0(a, fromIndex, toIndex, indices, rankFrom, rankTo, depth);
+			return ;
+		}
+		if (--depth < 0) { // bad pivots, fall back to O(n log n)
+			Arrays.sort(a, fromIndex, toIndex);
+			return ;
+		}
+
+		// count the elements of each chunk which are less than, equal to
+		// and greater than the pivot, then copy them to their places
+		// in the buffer and back
+		final int pivot = pivot(a, fromIndex, toIndex);
+		final int[][] counts = new int[parallelism][3];
+		Sorter.forEachChunk(executor, parallelism, len, new Sorter.ChunkTask() {
+			@Override
+			void run(int chunk, int from, int to) {
+				int[] count = counts[chunk];
+				for (int i = fromIndex + from; i < fromIndex + to; ++i)
+					++count[a[i] < pivot ? 0 : a[i] > pivot ? 2 : 1];
+			}
+		});
+		int lt = fromIndex, gt = fromIndex;
+		for (int[] count : counts)
+			gt += count[0];
+		lt = gt;
+		for (int[] count : counts)
+			gt += count[1];
+		int[] next = {fromIndex, lt, gt};
+		for (int[] count : counts) {
+			for (int k = 0; k < 3; ++k) {
+				int c = count[k];
+				count[k] = next[k];
+				next[k] += c;
+			}
+		}
+		Sorter.forEachChunk(executor, parallelism, len, new Sorter.ChunkTask() {
+			@Override
+			void run(int chunk, int from, int to) {
+				int[] pos = counts[chunk];
+				for (int i = fromIndex + from; i < fromIndex + to; ++i) {
+					int x = a[i];
+					buf[pos[x < pivot ? 0 : x > pivot ? 2 : 1]++ - offset] = x;
+				}
+			}
+		});
+		Sorter.forEachChunk(executor, parallelism, len, new Sorter.ChunkTask() {
+			@Override
+			void run(int chunk, int from, int to) {
+				System.arraycopy(buf, fromIndex + from - offset,
+						a, fromIndex + from, to - from);
+			}
+		});
+
+		int leftTo = lowerBound(indices, rankFrom, rankTo, lt);
+		int rightFrom = lowerBound(indices, leftTo, rankTo, gt);
+		parallelSelect0(a, buf, offset, fromIndex, lt, indices,
+				rankFrom, leftTo, depth, executor, parallelism);
+		parallelSelect0(a, buf, offset, gt, toIndex, indices,
+				rightFrom, rankTo, depth, executor, parallelism);
+	}
+
+	/**
+	 * Returns the median of three medians of three elements spread
+	 * over the range.
+	 */
+	private static int pivot(int[] a, int fromIndex, int toIndex) {
+		int step = (toIndex - fromIndex) >>> 3;
+		int mid = (fromIndex + toIndex) >>> 1;
+		return median(
+				median(a[fromIndex], a[fromIndex + step], a[fromIndex + 2 * step]),
+				median(a[mid - step], a[mid], a[mid + step]),
+				median(a[toIndex - 1 - 2 * step], a[toIndex - 1 - step],
+						a[toIndex - 1]));
+	}
+
+	private static int median(int x, int y, int z) {
+		return x < y ? (y < z ? y : x < z ? z : x)
+				: (x < z ? x : y < z ? z : y);
+	}
+
+	private static void insertionSort(int[] a, int fromIndex, int toIndex) {
+		for (int i = fromIndex + 1; i < toIndex; ++i) {
+			int x = a[i];
+			int j = i;
+			for (; j > fromIndex && x < a[j - 1]; --j)
+				a[j] = a[j - 1];
+			a[j] = x;
+		}
+	}
+
+	/**
+	 * Rearranges the range [fromIndex, toIndex) of the array so that for
+	 * each of the specified ranks <code>k</code>, the element at
+	 * <code>fromIndex + k</code> is the one which would be there if the range
+	 * were sorted, no element before it is greater and no element after it
+	 * is smaller.<br>
+	 * The range is partitioned once around each pivot, and only the parts
+	 * which contain some of the requested ranks are partitioned further,
+	 * so selecting several ranks takes O(n) expected time, not much more
+	 * than selecting one.
+	 * 
+	 * @param a the array
+	 * @param fromIndex the index of the first element (inclusive)
+	 * @param toIndex the index of the last element (exclusive)
+	 * @param ranks the ranks relative to fromIndex, in ascending order
+	 * @return the selected elements, in the order of the ranks
+	 * @throws IllegalArgumentException if the ranks are not sorted
+	 * @throws IndexOutOfBoundsException if the range or a rank is invalid
+	 */
+	public static long[] multiSelect(long[] a, int fromIndex, int toIndex,
+			int... ranks) {
+		return multiSelect(a, fromIndex, toIndex, ranks, null, 1);
+	}
+
+	/**
+	 * Does the same as the {@link #multiSelect(long[], int, int, int...)}
+	 * method, except that the ranges larger than
+	 * {@value #PARALLEL_THRESHOLD} elements are partitioned on all
+	 * the available processors, using O(n) additional memory.
+	 * 
+	 * @param a the array
+	 * @param fromIndex the index of the first element (inclusive)
+	 * @param toIndex the index of the last element (exclusive)
+	 * @param ranks the ranks relative to fromIndex, in ascending order
+	 * @return the selected elements, in the order of the ranks
+	 * @throws IllegalArgumentException if the ranks are not sorted
+	 * @throws IndexOutOfBoundsException if the range or a rank is invalid
+	 */
+	public static long[] parallelMultiSelect(long[] a, int fromIndex,
+			int toIndex, int... ranks) {
+		if (toIndex - fromIndex < PARALLEL_THRESHOLD
+				|| Sorter.PARALLELISM < 2)
+			return multiSelect(a, fromIndex, toIndex, ranks);
+		ExecutorService executor = Sorter.newExecutor(Sorter.PARALLELISM);
+		try {
+			return multiSelect(a, fromIndex, toIndex, ranks, executor,
+					Sorter.PARALLELISM);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Does the same as the {@link #multiSelect(long[], int, int, int...)}
+	 * method, except that the ranges larger than
+	 * {@value #PARALLEL_THRESHOLD} elements are partitioned by the
+	 * specified number of tasks run by the executor.
+	 * 
+	 * @param a the array
+	 * @param fromIndex the index of the first element (inclusive)
+	 * @param toIndex the index of the last element (exclusive)
+	 * @param executor the executor which runs the tasks
+	 * @param parallelism the number of tasks per partitioning
+	 * @param ranks the ranks relative to fromIndex, in ascending order
+	 * @return the selected elements, in the order of the ranks
+	 * @throws IllegalArgumentException if the ranks are not sorted
+	 * @throws IndexOutOfBoundsException if the range or a rank is invalid
+	 */
+	public static long[] parallelMultiSelect(long[] a, int fromIndex,
+			int toIndex, ExecutorService executor, int parallelism,
+			int... ranks) {
+		return multiSelect(a, fromIndex, toIndex, ranks, executor,
+				parallelism);
+	}
+
+	public static long nthElement(long[] a, int n, int fromIndex, int toIndex) {
+		return multiSelect(a, fromIndex, toIndex, n)[0];
+	}
+
+	public static long nthElement(long[] a, int n) {
+		return nthElement(a, n, 0, a.length);
+	}
+
+	private static long[] multiSelect(long[] a, int fromIndex, int toIndex,
+			int[] ranks, ExecutorService executor, int parallelism) {
+		rangeCheck(a.length, fromIndex, toIndex);
+		int[] indices = toIndices(ranks, fromIndex, toIndex);
+		int len = toIndex - fromIndex;
+		if (executor != null && parallelism > 1
+				&& len >= PARALLEL_THRESHOLD) {
+			parallelSelect0(a, new long[len], fromIndex, fromIndex, toIndex,
+					indices, 0, indices.length, depthLimit(len), executor,
+					parallelism);
+		} else {
+			select0(a, fromIndex, toIndex, indices, 0, indices.length,
+					depthLimit(len));
+		}
+		long[] ret = new long[indices.length];
+		for (int i = 0; i < ret.length; ++i)
+			ret[i] = a[indices[i]];
+		return ret;
+	}
+
+	/**
+	 * Selects the elements at the indices [rankFrom, rankTo) of the
+	 * sorted array of indices, all of which are within [fromIndex, toIndex).
+	 */
+	private static void select0(long[] a, int fromIndex, int toIndex,
+			int[] indices, int rankFrom, int rankTo, int depth) {
+		while (rankFrom < rankTo) {
+			if (toIndex - fromIndex <= INSERTIONSORT_THRESHOLD) {
+				insertionSort(a, fromIndex, toIndex);
+				return ;
+			}
+			if (--depth < 0) { // bad pivots, fall back to O(n log n)
+				Arrays.sort(a, fromIndex, toIndex);
+				return ;
+			}
+
+			// three-way partition: [fromIndex, lt) < pivot,
+			// [lt, gt) == pivot, [gt, toIndex) > pivot
+			long pivot = pivot(a, fromIndex, toIndex);
+			int lt = fromIndex, gt = toIndex;
+			for (int i = fromIndex; i < gt; ) {
+				long x = a[i];
+				if (x < pivot) {
+					a[i++] = a[lt];
+					a[lt++] = x;
+				} else if (x > pivot) {
+					a[i] = a[--gt];
+					a[gt] = x;
+				} else {
+					++i;
+				}
+			}
+
+			int leftTo = lowerBound(indices, rankFrom, rankTo, lt);
+			int rightFrom = lowerBound(indices, leftTo, rankTo, gt);
+			// recurse into the smaller part, iterate over the larger one
+			if (lt - fromIndex < toIndex - gt) {
+				select0(a, fromIndex, lt, indices, rankFrom, leftTo, depth);
+				fromIndex = gt;
+				rankFrom = rightFrom;
+			} else {
+				select0(a, gt, toIndex, indices, rightFrom, rankTo, depth);
+				toIndex = lt;
+				rankTo = leftTo;
+			}
+		}
+	}
+
+	/**
+	 * Does the same as the select0 method, but the large ranges are
+	 * partitioned in parallel via the buffer, whose element at index
+	 * <code>i - offset</code> corresponds to the element of the array
+	 * at index <code>i</code>.
+	 */
+	private static void parallelSelect0(final long[] a, final long[] buf,
+			final int offset, final int fromIndex, final int toIndex,
+			int[] indices, int rankFrom, int rankTo, int depth,
+			ExecutorService executor, int parallelism) {
+		if (rankFrom >= rankTo)
+			return ;
+		int len = toIndex - fromIndex;
+		if (len < PARALLEL_THRESHOLD) {
+			select0(a, fromIndex, toIndex, indices, rankFrom, rankTo, depth);
+			return ;
+		}
+		if (--depth < 0) { // bad pivots, fall back to O(n log n)
+			Arrays.sort(a, fromIndex, toIndex);
+			return ;
+		}
+
+		// count the elements of each chunk which are less than, equal to
+		// and greater than the pivot, then copy them to their places
+		// in the buffer and back
+		final long pivot = pivot(a, fromIndex, toIndex);
+		final int[][] counts = new int[parallelism][3];
+		Sorter.forEachChunk(executor, parallelism, len, new Sorter.ChunkTask() {
+			@Override
+			void run(int chunk, int from, int to) {
+				int[] count = counts[chunk];
+				for (int i = fromIndex + from; i < fromIndex + to; ++i)
+					++count[a[i] < pivot ? 0 : a[i] > pivot ? 2 : 1];
+			}
+		});
+		int lt = fromIndex, gt = fromIndex;
+		for (int[] count : counts)
+			gt += count[0];
+		lt = gt;
+		for (int[] count : counts)
+			gt += count[1];
+		int[] next = {fromIndex, lt, gt};
+		for (int[] count : counts) {
+			for (int k = 0; k < 3; ++k) {
+				int c = count[k];
+				count[k] = next[k];
+				next[k] += c;
+			}
+		}
+		Sorter.forEachChunk(executor, parallelism, len, new Sorter.ChunkTask() {
+			@Override
+			void run(int chunk, int from, int to) {
+				int[] pos = counts[chunk];
+				for (int i = fromIndex + from; i < fromIndex + to; ++i) {
+					long x = a[i];
+					buf[pos[x < pivot ? 0 : x > pivot ? 2 : 1]++ - offset] = x;
+				}
+			}
+		});
+		Sorter.forEachChunk(executor, parallelism, len, new Sorter.ChunkTask() {
+			@Override
+			void run(int chunk, int from, int to) {
+				System.arraycopy(buf, fromIndex + from - offset,
+						a, fromIndex + from, to - from);
+			}
+		});
+
+		int leftTo = lowerBound(indices, rankFrom, rankTo, lt);
+		int rightFrom = lowerBound(indices, leftTo, rankTo, gt);
+		parallelSelect0(a, buf, offset, fromIndex, lt, indices,
+				rankFrom, leftTo, depth, executor, parallelism);
+		parallelSelect0(a, buf, offset, gt, toIndex, indices,
+				rightFrom, rankTo, depth, executor, parallelism);
+	}
+
+	/**
+	 * Returns the median of three medians of three elements spread
+	 * over the range.
+	 */
+	private static long pivot(long[] a, int fromIndex, int toIndex) {
+		int step = (toIndex - fromIndex) >>> 3;
+		int mid = (fromIndex + toIndex) >>> 1;
+		return median(
+				median(a[fromIndex], a[fromIndex + step], a[fromIndex + 2 * step]),
+				median(a[mid - step], a[mid], a[mid + step]),
+				median(a[toIndex - 1 - 2 * step], a[toIndex - 1 - step],
+						a[toIndex - 1]));
+	}
+
+	private static long median(long x, long y, long z) {
+		return x < y ? (y < z ? y : x < z ? z : x)
+				: (x < z ? x : y < z ? z : y);
+	}
+
+	private static void insertionSort(long[] a, int fromIndex, int toIndex) {
+		for (int i = fromIndex + 1; i < toIndex; ++i) {
+			long x = a[i];
+			int j = i;
+			for (; j > fromIndex && x < a[j - 1]; --j)
+				a[j] = a[j - 1];
+			a[j] = x;
+		}
+	}
+
+	/**
+	 * Rearranges the range [fromIndex, toIndex) of the array so that for
+	 * each of the specified ranks <code>k</code>, the element at
+	 * <code>fromIndex + k</code> is the one which would be there if the range
+	 * were sorted, no element before it is greater and no element after it
+	 * is smaller.
+	 * As in {@link Arrays#sort(double[])}, NaNs are considered greater than
+	 * any other element, but -0.0 and 0.0 are considered equal.<br>
+	 * The range is partitioned once around each pivot, and only the parts
+	 * which contain some of the requested ranks are partitioned further,
+	 * so selecting several ranks takes O(n) expected time, not much more
+	 * than selecting one.
+	 * 
+	 * @param a the array
+	 * @param fromIndex the index of the first element (inclusive)
+	 * @param toIndex the index of the last element (exclusive)
+	 * @param ranks the ranks relative to fromIndex, in ascending order
+	 * @return the selected elements, in the order of the ranks
+	 * @throws IllegalArgumentException if the ranks are not sorted
+	 * @throws IndexOutOfBoundsException if the range or a rank is invalid
+	 */
+	public static double[] multiSelect(double[] a, int fromIndex, int toIndex,
+			int... ranks) {
+		return multiSelect(a, fromIndex, toIndex, ranks, null, 1);
+	}
+
+	/**
+	 * Does the same as the {@link #multiSelect(double[], int, int, int...)}
+	 * method, except that the ranges larger than
+	 * {@value #PARALLEL_THRESHOLD} elements are partitioned on all
+	 * the available processors, using O(n) additional memory.
+	 * 
+	 * @param a the array
+	 * @param fromIndex the index of the first element (inclusive)
+	 * @param toIndex the index of the last element (exclusive)
+	 * @param ranks the ranks relative to fromIndex, in ascending order
+	 * @return the selected elements, in the order of the ranks
+	 * @throws IllegalArgumentException if the ranks are not sorted
+	 * @throws IndexOutOfBoundsException if the range or a rank is invalid
+	 */
+	public static double[] parallelMultiSelect(double[] a, int fromIndex,
+			int toIndex, int... ranks) {
+		if (toIndex - fromIndex < PARALLEL_THRESHOLD
+				|| Sorter.PARALLELISM < 2)
+			return multiSelect(a, fromIndex, toIndex, ranks);
+		ExecutorService executor = Sorter.newExecutor(Sorter.PARALLELISM);
+		try {
+			return multiSelect(a, fromIndex, toIndex, ranks, executor,
+					Sorter.PARALLELISM);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Does the same as the {@link #multiSelect(double[], int, int, int...)}
+	 * method, except that the ranges larger than
+	 * {@value #PARALLEL_THRESHOLD} elements are partitioned by the
+	 * specified number of tasks run by the executor.
+	 * 
+	 * @param a the array
+	 * @param fromIndex the index of the first element (inclusive)
+	 * @param toIndex the index of the last element (exclusive)
+	 * @param executor the executor which runs the tasks
+	 * @param parallelism the number of tasks per partitioning
+	 * @param ranks the ranks relative to fromIndex, in ascending order
+	 * @return the selected elements, in the order of the ranks
+	 * @throws IllegalArgumentException if the ranks are not sorted
+	 * @throws IndexOutOfBoundsException if the range or a rank is invalid
+	 */
+	public static double[] parallelMultiSelect(double[] a, int fromIndex,
+			int toIndex, ExecutorService executor, int parallelism,
+			int... ranks) {
+		return multiSelect(a, fromIndex, toIndex, ranks, executor,
+				parallelism);
+	}
+
+	public static double nthElement(double[] a, int n, int fromIndex, int toIndex) {
+		return multiSelect(a, fromIndex, toIndex, n)[0];
+	}
+
+	public static double nthElement(double[] a, int n) {
+		return nthElement(a, n, 0, a.length);
+	}
+
+	private static double[] multiSelect(double[] a, int fromIndex, int toIndex,
+			int[] ranks, ExecutorService executor, int parallelism) {
+		rangeCheck(a.length, fromIndex, toIndex);
+		int[] indices = toIndices(ranks, fromIndex, toIndex);
+		// NaNs are greater than any other double, so they are moved to
+		// the end, which also makes the requested ranks there selected
+		int nanFrom = toIndex;
+		for (int i = fromIndex; i < nanFrom; ) {
+			if (Double.isNaN(a[i])) {
+				double x = a[i];
+				a[i] = a[--nanFrom];
+				a[nanFrom] = x;
+			} else {
+				++i;
+			}
+		}
+		if (nanFrom < toIndex) {
+			return multiSelectNonNaN(a, fromIndex, nanFrom, indices,
+					executor, parallelism);
+		}
+		int len = toIndex - fromIndex;
+		if (executor != null && parallelism > 1
+				&& len >= PARALLEL_THRESHOLD) {
+			parallelSelect0(a, new double[len], fromIndex, fromIndex, toIndex,
+					indices, 0, indices.length, depthLimit(len), executor,
+					parallelism);
+		} else {
+			select0(a, fromIndex, toIndex, indices, 0, indices.length,
+					depthLimit(len));
+		}
+		double[] ret = new double[indices.length];
+		for (int i = 0; i < ret.length; ++i)
+			ret[i] = a[indices[i]];
+		return ret;
+	}
+
+	/**
+	 * Selects the elements at the indices [rankFrom, rankTo) of the
+	 * sorted array of indices, all of which are within [fromIndex, toIndex).
+	 */
+	private static void select0(double[] a, int fromIndex, int toIndex,
+			int[] indices, int rankFrom, int rankTo, int depth) {
+		while (rankFrom < rankTo) {
+			if (toIndex - fromIndex <= INSERTIONSORT_THRESHOLD) {
+				insertionSort(a, fromIndex, toIndex);
+				return ;
+			}
+			if (--depth < 0) { // bad pivots, fall back to O(n log n)
+				Arrays.sort(a, fromIndex, toIndex);
+				return ;
+			}
+
+			// three-way partition: [fromIndex, lt) < pivot,
+			// [lt, gt) == pivot, [gt, toIndex) > pivot
+			double pivot = pivot(a, fromIndex, toIndex);
+			int lt = fromIndex, gt = toIndex;
+			for (int i = fromIndex; i < gt; ) {
+				double x = a[i];
+				if (x < pivot) {
+					a[i++] = a[lt];
+					a[lt++] = x;
+				} else if (x > pivot) {
+					a[i] = a[--gt];
+					a[gt] = x;
+				} else {
+					++i;
+				}
+			}
+
+			int leftTo = lowerBound(indices, rankFrom, rankTo, lt);
+			int rightFrom = lowerBound(indices, leftTo, rankTo, gt);
+			// recurse into the smaller part, iterate over the larger one
+			if (lt - fromIndex < toIndex - gt) {
+				select0(a, fromIndex, lt, indices, rankFrom, leftTo, depth);
+				fromIndex = gt;
+				rankFrom = rightFrom;
+			} else {
+				select0(a, gt, toIndex, indices, rightFrom, rankTo, depth);
+				toIndex = lt;
+				rankTo = leftTo;
+			}
+		}
+	}
+
+	/**
+	 * Does the same as the select0 method, but the large ranges are
+	 * partitioned in parallel via the buffer, whose element at index
+	 * <code>i - offset</code> corresponds to the element of the array
+	 * at index <code>i</code>.
+	 */
+	private static void parallelSelect0(final double[] a, final double[] buf,
+			final int offset, final int fromIndex, final int toIndex,
+			int[] indices, int rankFrom, int rankTo, int depth,
+			ExecutorService executor, int parallelism) {
+		if (rankFrom >= rankTo)
+			return ;
+		int len = toIndex - fromIndex;
+		if (len < PARALLEL_THRESHOLD) {
+			select0(a, fromIndex, toIndex, indices, rankFrom, rankTo, depth);
+			return ;
+		}
+		if (--depth < 0) { // bad pivots, fall back to O(n log n)
+			Arrays.sort(a, fromIndex, toIndex);
+			return ;
+		}
+
+		// count the elements of each chunk which are less than, equal to
+		// and greater than the pivot, then copy them to their places
+		// in the buffer and back
+		final double pivot = pivot(a, fromIndex, toIndex);
+		final int[][] counts = new int[parallelism][3];
+		Sorter.forEachChunk(executor, parallelism, len, new Sorter.ChunkTask() {
+			@Override
+			void run(int chunk, int from, int to) {
+				int[] count = counts[chunk];
+				for (int i = fromIndex + from; i < fromIndex + to; ++i)
+					++count[a[i] < pivot ? 0 : a[i] > pivot ? 2 : 1];
+			}
+		});
+		int lt = fromIndex, gt = fromIndex;
+		for (int[] count : counts)
+			gt += count[0];
+		lt = gt;
+		for (int[] count : counts)
+			gt += count[1];
+		int[] next = {fromIndex, lt, gt};
+		for (int[] count : counts) {
+			for (int k = 0; k < 3; ++k) {
+				int c = count[k];
+				count[k] = next[k];
+				next[k] += c;
+			}
+		}
+		Sorter.forEachChunk(executor, parallelism, len, new Sorter.ChunkTask() {
+			@Override
+			void run(int chunk, int from, int to) {
+				int[] pos = counts[chunk];
+				for (int i = fromIndex + from; i < fromIndex + to; ++i) {
+					double x = a[i];
+					buf[pos[x < pivot ? 0 : x > pivot ? 2 : 1]++ - offset] = x;
+				}
+			}
+		});
+		Sorter.forEachChunk(executor, parallelism, len, new Sorter.ChunkTask() {
+			@Override
+			void run(int chunk, int from, int to) {
+				System.arraycopy(buf, fromIndex + from - offset,
+						a, fromIndex + from, to - from);
+			}
+		});
+
+		int leftTo = lowerBound(indices, rankFrom, rankTo, lt);
+		int rightFrom = lowerBound(indices, leftTo, rankTo, gt);
+		parallelSelect0(a, buf, offset, fromIndex, lt, indices,
+				rankFrom, leftTo, depth, executor, parallelism);
+		parallelSelect0(a, buf, offset, gt, toIndex, indices,
+				rightFrom, rankTo, depth, executor, parallelism);
+	}
+
+	/**
+	 * Returns the median of three medians of three elements spread
+	 * over the range.
+	 */
+	private static double pivot(double[] a, int fromIndex, int toIndex) {
+		int step = (toIndex - fromIndex) >>> 3;
+		int mid = (fromIndex + toIndex) >>> 1;
+		return median(
+				median(a[fromIndex], a[fromIndex + step], a[fromIndex + 2 * step]),
+				median(a[mid - step], a[mid], a[mid + step]),
+				median(a[toIndex - 1 - 2 * step], a[toIndex - 1 - step],
+						a[toIndex - 1]));
+	}
+
+	private static double median(double x, double y, double z) {
+		return x < y ? (y < z ? y : x < z ? z : x)
+				: (x < z ? x : y < z ? z : y);
+	}
+
+	private static void insertionSort(double[] a, int fromIndex, int toIndex) {
+		for (int i = fromIndex + 1; i < toIndex; ++i) {
+			double x = a[i];
+			int j = i;
+			for (; j > fromIndex && x < a[j - 1]; --j)
+				a[j] = a[j - 1];
+			a[j] = x;
+		}
+	}
+
+	/**
+	 * Selects the ranks of a range whose NaNs have already been moved
+	 * to its end, starting at nanFrom.
+	 */
+	private static double[] multiSelectNonNaN(double[] a, int fromIndex,
+			int nanFrom, int[] indices, ExecutorService executor,
+			int parallelism) {
+		int nonNaN = lowerBound(indices, 0, indices.length, nanFrom);
+		int[] ranks = new int[nonNaN];
+		for (int i = 0; i < nonNaN; ++i)
+			ranks[i] = indices[i] - fromIndex;
+		double[] ret = new double[indices.length];
+		System.arraycopy(multiSelect(a, fromIndex, nanFrom, ranks, executor,
+				parallelism), 0, ret, 0, nonNaN);
+		Arrays.fill(ret, nonNaN, ret.length, Double.NaN);
+		return ret;
+	}
+
+	/**
+	 * Converts the ranks relative to fromIndex to the array indices,
+	 * checking that they are sorted and within the range.
+	 */
+	private static int[] toIndices(int[] ranks, int fromIndex, int toIndex) {
+		int[] indices = new int[ranks.length];
+		for (int i = 0; i < ranks.length; ++i) {
+			if (ranks[i] < 0 || ranks[i] >= toIndex - fromIndex)
+				throw new IndexOutOfBoundsException("Rank: " + ranks[i]);
+			if (i > 0 && ranks[i] < ranks[i - 1])
+				throw new IllegalArgumentException("Ranks are not sorted");
+			indices[i] = fromIndex + ranks[i];
+		}
+		return indices;
+	}
+
+	/**
+	 * Returns the first position in [from, to) of the sorted array whose
+	 * value is not less than the key, or <code>to</code> if there is none.
+	 */
+	private static int lowerBound(int[] a, int from, int to, int key) {
+		while (from < to) {
+			int mid = (from + to) >>> 1;
+			if (a[mid] < key)
+				from = mid + 1;
+			else
+				to = mid;
+		}
+		return from;
+	}
+
+	private static int depthLimit(int len) {
+		return 2 * (32 - Integer.numberOfLeadingZeros(len));
+	}
+
+	private static void rangeCheck(int length, int fromIndex, int toIndex) {
+		if (fromIndex < 0 || toIndex > length)
 			throw new IndexOutOfBoundsException();
 		if (fromIndex > toIndex)
 			throw new IllegalArgumentException();
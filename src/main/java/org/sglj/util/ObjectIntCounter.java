@@ -0,0 +1,301 @@
+/*
+ * ObjectIntCounter.java
+ *
+ * Copyright (C) 2011 Leo Osvald <leo.osvald@gmail.com>
+ *
+ * This file is part of SGLJ.
+ *
+ * SGLJ is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SGLJ is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sglj.util;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * <p>Counts the number of occurrences of objects, like the
+ * {@link OccurrenceMap}, but without boxing the counts.<br>
+ * The keys and the counts are kept in two parallel arrays of an
+ * open-addressing hash table with linear probing, so each of the
+ * {@link #increment(Object)}, {@link #decrement(Object)} and
+ * {@link #addTo(Object, int)} methods finds the slot of the key only
+ * once and allocates nothing (unless the table has to grow).</p>
+ * <p>Only the keys with a non-zero count are kept; an entry whose count
+ * drops to zero is removed (the following entries are shifted back,
+ * so no tombstones are left behind). The keys cannot be <code>null</code>.
+ * The iteration order is unspecified.</p>
+ * 
+ * @author Leo Osvald
+ * @version 1.0
+ * @param <K> type which is counted
+ */
+public class ObjectIntCounter<K> implements Iterable<K>, Serializable {
+
+	private static final long serialVersionUID = -5123808212375420467L;
+
+	private static final int DEFAULT_EXPECTED_SIZE = 16;
+
+	private Object[] keys;
+	private int[] counts;
+	private int size;
+	private int threshold;
+
+	public ObjectIntCounter() {
+		this(DEFAULT_EXPECTED_SIZE);
+	}
+
+	/**
+	 * Creates an empty counter which can hold the specified number
+	 * of keys without growing.
+	 * @param expectedSize the expected number of keys
+	 */
+	public ObjectIntCounter(int expectedSize) {
+		if (expectedSize < 0)
+			throw new IllegalArgumentException("Illegal expected size: "
+					+ expectedSize);
+		allocate(tableSizeFor(expectedSize));
+	}
+
+	/**
+	 * Increments the number of occurrences of the specified key.
+	 * @param key object which is counted
+	 * @return <code>true</code> if this is the first occurrence,
+	 * <code>false</code> otherwise
+	 */
+	public boolean increment(K key) {
+		return addTo(key, 1) == 1;
+	}
+
+	/**
+	 * Decrements the number of occurrences of the specified key.
+	 * If this was the last occurrence, the key is removed.
+	 * @param key object which is counted
+	 * @return <code>true</code> if the key was removed,
+	 * <code>false</code> otherwise
+	 */
+	public boolean decrement(K key) {
+		int slot = find(key);
+		if (slot < 0 || --counts[slot] != 0)
+			return false;
+		removeAt(slot);
+		return true;
+	}
+
+	/**
+	 * Adds the specified amount to the count of the specified key.
+	 * If the resulting count is zero, the key is removed.
+	 * @param key object which is counted
+	 * @param delta the amount to add (may be negative)
+	 * @return the new count
+	 */
+	public int addTo(K key, int delta) {
+		int mask = keys.length - 1;
+		int slot = hash(key) & mask;
+		for (Object k; (k = keys[slot]) != null; slot = (slot + 1) & mask) {
+			if (k.equals(key)) {
+				int count = counts[slot] += delta;
+				if (count == 0)
+					removeAt(slot);
+				return count;
+			}
+		}
+		if (delta != 0) {
+			keys[slot] = key;
+			counts[slot] = delta;
+			if (++size > threshold)
+				rehash(keys.length << 1);
+		}
+		return delta;
+	}
+
+	/**
+	 * Returns the number of occurrences of the specified key.
+	 * @param key object which is counted
+	 * @return number of occurrences (0 if there are no occurrences)
+	 */
+	public int count(Object key) {
+		int slot = find(key);
+		return slot >= 0 ? counts[slot] : 0;
+	}
+
+	public boolean containsKey(Object key) {
+		return find(key) >= 0;
+	}
+
+	/**
+	 * Removes the specified key regardless of its count.
+	 * @param key object which is counted
+	 * @return the count the key had (0 if it was not present)
+	 */
+	public int remove(Object key) {
+		int slot = find(key);
+		if (slot < 0)
+			return 0;
+		int count = counts[slot];
+		removeAt(slot);
+		return count;
+	}
+
+	/**
+	 * Returns the number of distinct keys.
+	 * @return the number of keys
+	 */
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		if (size != 0) {
+			Arrays.fill(keys, null);
+			Arrays.fill(counts, 0);
+			size = 0;
+		}
+	}
+
+	/**
+	 * Returns an iterator over the keys. The iterator does not support
+	 * removal, and the counter must not be modified during the iteration.
+	 */
+	@Override
+	public Iterator<K> iterator() {
+		return new Iterator<K>() {
+			private int slot = advance(0);
+
+			@Override
+			public boolean hasNext() {
+				return slot < keys.length;
+			}
+
+			@Override
+			@SuppressWarnings("unchecked")
+			public K next() {
+				if (slot >= keys.length)
+					throw new NoSuchElementException();
+				K key = (K) keys[slot];
+				slot = advance(slot + 1);
+				return key;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+
+			private int advance(int slot) {
+				while (slot < keys.length && keys[slot] == null)
+					++slot;
+				return slot;
+			}
+		};
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("{");
+		for (int slot = 0; slot < keys.length; ++slot) {
+			if (keys[slot] != null) {
+				if (sb.length() > 1)
+					sb.append(", ");
+				sb.append(keys[slot]).append('=').append(counts[slot]);
+			}
+		}
+		return sb.append('}').toString();
+	}
+
+	private int find(Object key) {
+		int mask = keys.length - 1;
+		for (int slot = hash(key) & mask; keys[slot] != null;
+				slot = (slot + 1) & mask) {
+			if (keys[slot].equals(key))
+				return slot;
+		}
+		return -1;
+	}
+
+	/**
+	 * Removes the entry at the specified slot, and moves back the entries
+	 * of the same probe sequence, so that they remain reachable.
+	 */
+	private void removeAt(int slot) {
+		int mask = keys.length - 1;
+		for (int next = (slot + 1) & mask; keys[next] != null;
+				next = (next + 1) & mask) {
+			int ideal = hash(keys[next]) & mask;
+			// the entry can be moved unless its ideal slot is cyclically
+			// in (slot, next]
+			if (slot <= next ? ideal <= slot || ideal > next
+					: ideal <= slot && ideal > next) {
+				keys[slot] = keys[next];
+				counts[slot] = counts[next];
+				slot = next;
+			}
+		}
+		keys[slot] = null;
+		counts[slot] = 0;
+		--size;
+	}
+
+	private void rehash(int capacity) {
+		Object[] oldKeys = keys;
+		int[] oldCounts = counts;
+		allocate(capacity);
+		int mask = capacity - 1;
+		for (int i = 0; i < oldKeys.length; ++i) {
+			if (oldKeys[i] != null) {
+				int slot = hash(oldKeys[i]) & mask;
+				while (keys[slot] != null)
+					slot = (slot + 1) & mask;
+				keys[slot] = oldKeys[i];
+				counts[slot] = oldCounts[i];
+			}
+		}
+	}
+
+	private void allocate(int capacity) {
+		keys = new Object[capacity];
+		counts = new int[capacity];
+		threshold = capacity - (capacity >> 2) - 1;
+	}
+
+	/**
+	 * Returns the smallest power of two table size whose load factor
+	 * stays below 3/4 with the specified number of keys.
+	 */
+	static int tableSizeFor(int expectedSize) {
+		int capacity = 4;
+		while (capacity - (capacity >> 2) - 1 < expectedSize)
+			capacity <<= 1;
+		return capacity;
+	}
+
+	private static int hash(Object key) {
+		return mix(key.hashCode());
+	}
+
+	/**
+	 * Spreads the bits of the hash code, so that the keys whose hash codes
+	 * differ only in the upper bits do not collide in a small table.
+	 */
+	static int mix(int h) {
+		h *= 0x9e3779b9;
+		return h ^ (h >>> 16);
+	}
+}
@@ -22,11 +22,13 @@
 package org.sglj.util;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
-import java.util.TreeMap;
 
 /**
  * <p>Implementation of PAT trie.<br>
@@ -42,21 +44,67 @@ import java.util.TreeMap;
  * the size of the elements removed/inserted.
  * Prefix query takes linear time proportional to the size of the result set
  * matching that query.</p> 
+ * <p>The nodes are stored compactly: the children of a node are kept
+ * in an array sorted by the first characters of their edges (which is
+ * binary searched), or, when there are many children with nearby first
+ * characters, in a table directly indexed by the character. The edges
+ * are not strings, but ranges of a single character buffer shared by
+ * the whole trie (splitting an edge does not copy any characters).</p>
+ * <p>If constructed with {@link #PATTrie(int)}, each value is given
+ * a score and each node caches the best scored values in its subtree,
+ * so that {@link #topK(String, int)} finds the best completions of
+ * a prefix without visiting the subtree. The caches are updated on
+ * the path from the modified node to the root, which stops at the
+ * first node whose cache has not changed.</p>
  * 
  * @author Leo Osvald
  *
  * @param <E> type of the elements which are stored
  * 
- * @version 0.71
+ * @version 0.9
  */
 public class PATTrie<E> {
 
+	private static final int INITIAL_EDGE_CAPACITY = 64;
+	
 	protected Node root;
 	
+	/*
+	 * The characters of the edges; the edge of each node is the range
+	 * [edgeStart, edgeStart + edgeLength) of this buffer. The ranges
+	 * of the removed nodes are reclaimed when the buffer would grow
+	 * while more than half of it is unused.
+	 */
+	private char[] edgeChars = new char[INITIAL_EDGE_CAPACITY];
+	private int edgeCharCount;
+	// the total length of the edges of the nodes in the trie
+	private int liveEdgeChars;
+	
+	// the number of the best completions cached in each node
+	private final int maxCompletions;
+	// whether the cache of the last updated node has changed
+	private boolean completionsChanged;
+	
+	private static final Completion[] NO_COMPLETIONS = new Completion[0];
+	
 	protected static final boolean REMOVE = false;
 	protected static final boolean ADD = true;
 
 	public PATTrie(final Collection<E> added, final Collection<E> removed) {
+		this(0);
+	}
+	
+	/**
+	 * Creates a trie which keeps the scores of the values and caches
+	 * the specified number of the best completions in each node.
+	 * @param maxCompletions the greatest <code>k</code> for which
+	 * {@link #topK(String, int)} can be called (if zero, the scores
+	 * are not kept)
+	 */
+	public PATTrie(int maxCompletions) {
+		if(maxCompletions < 0)
+			throw new IllegalArgumentException("Negative completion count");
+		this.maxCompletions = maxCompletions;
 		root = new Node();
 	}
 	
@@ -64,46 +112,122 @@ public class PATTrie<E> {
 		this(null, null);
 	}
 	
-	private int getDifferenceIndex(String a, String b) {
+	/**
+	 * Returns the length of the common prefix of the edge of the node
+	 * and the suffix of the key which starts at the specified index.
+	 */
+	private int getDifferenceIndex(String key, int ind, Node node) {
 		int diffInd = 0;
-		while(diffInd < a.length() && diffInd < b.length() 
-		&& a.charAt(diffInd) == b.charAt(diffInd)) 
+		int maxInd = Math.min(node.edgeLength, key.length() - ind);
+		while(diffInd < maxInd && key.charAt(ind + diffInd) 
+				== edgeChars[node.edgeStart + diffInd]) 
 			++diffInd;
 		return diffInd;
 	}
 	
-	private boolean insert(final String key, final E value, int ind, Node node) {
+	/**
+	 * Appends the suffix of the key which starts at the specified index
+	 * to the edge buffer.
+	 * @return the start of the appended range
+	 */
+	private int appendEdge(String key, int ind) {
+		reserveEdgeChars(key.length() - ind);
+		int start = edgeCharCount;
+		key.getChars(ind, key.length(), edgeChars, start);
+		edgeCharCount += key.length() - ind;
+		return start;
+	}
+	
+	/**
+	 * Returns the start of a range which holds the edge of the first
+	 * node followed by the edge of the second one, which is appended
+	 * to the edge buffer unless the edges are already adjacent.
+	 */
+	private int concatEdges(Node first, Node second) {
+		if(first.edgeStart + first.edgeLength == second.edgeStart)
+			return first.edgeStart;
+		reserveEdgeChars(first.edgeLength + second.edgeLength);
+		int start = edgeCharCount;
+		System.arraycopy(edgeChars, first.edgeStart, edgeChars, start, 
+				first.edgeLength);
+		System.arraycopy(edgeChars, second.edgeStart, edgeChars, 
+				start + first.edgeLength, second.edgeLength);
+		edgeCharCount += first.edgeLength + second.edgeLength;
+		return start;
+	}
+	
+	private void reserveEdgeChars(int count) {
+		if(edgeCharCount + count <= edgeChars.length)
+			return;
+		int capacity = edgeChars.length;
+		if(liveEdgeChars + count <= capacity / 2) {
+			// more than half of the buffer is unused, so reclaim it
+			compactEdges(capacity);
+		} else {
+			while(capacity < liveEdgeChars + count)
+				capacity <<= 1;
+			compactEdges(capacity << 1);
+		}
+	}
+	
+	/**
+	 * Copies the edges of all the nodes into a new buffer of the specified
+	 * capacity, without the unused ranges.
+	 */
+	private void compactEdges(int capacity) {
+		char[] chars = new char[capacity];
+		int count = 0;
+		ArrayList<Node> stack = new ArrayList<Node>();
+		stack.add(root);
+		while(!stack.isEmpty()) {
+			Node node = stack.remove(stack.size() - 1);
+			System.arraycopy(edgeChars, node.edgeStart, chars, count, 
+					node.edgeLength);
+			node.edgeStart = count;
+			count += node.edgeLength;
+			for(int i = node.nextChild(0); i != -1; i = node.nextChild(i + 1))
+				stack.add(node.children[i]);
+		}
+		edgeChars = chars;
+		edgeCharCount = count;
+	}
+	
+	private boolean insert(final String key, final E value, long score, 
+			boolean rescore, int ind, Node node) {
 		if(ind >= key.length()) {
-			if(node.addData(value)) {
+			boolean added = node.addData(value);
+			if(added)
 				++node.prefixCount;
-				return true;
+			if(maxCompletions > 0 && value != null && (added || rescore)) {
+				node.putScore(value, score);
+				completionsChanged = node.updateBest();
 			}
-			return false;
+			return added;
 		}
 		
-		String s = key.substring(ind);
 		int splitInd = 1;
 		
 		Node subtree = node.getChild(key.charAt(ind));
 		if(subtree == null) {
-			subtree = new Node(node, s);
-			splitInd = s.length();
+			splitInd = key.length() - ind;
+			subtree = new Node(node, appendEdge(key, ind), splitInd);
 		}
 		else {
 			//inace, pogledaj gdje treba rasdvojiti
-			splitInd = getDifferenceIndex(s, subtree.edge);
-			if(splitInd < subtree.edge.length()) {
+			splitInd = getDifferenceIndex(key, ind, subtree);
+			if(splitInd < subtree.edgeLength) {
 				subtree = subtree.splitEdge(splitInd);
 			}
 		}
 		
-//		System.out.println("->" + subtree.edge.substring(0, splitInd)
-//				+ "\t" + subtree.prefixCount);
-		boolean ret = insert(key, value, ind+splitInd, subtree);
+		Completion[] subtreeBest = subtree.best;
+		boolean ret = insert(key, value, score, rescore, ind+splitInd, subtree);
 		
 		if(ret) {
 			++node.prefixCount;
 		}
+		if(completionsChanged)
+			completionsChanged = node.updateBest(subtree, subtreeBest);
 		
 		return ret;
 	}
@@ -117,7 +241,29 @@ public class PATTrie<E> {
 	 * <code>false</code> otherwise.
 	 */
 	public boolean put(final String key, final E value) {
-		return insert(key, value, 0, root);
+		completionsChanged = false;
+		return insert(key, value, 0, false, 0, root);
+	}
+	
+	/**
+	 * Associates specified value with the specified key and gives it
+	 * the specified score, replacing the score it had if it was already
+	 * associated. The values associated by {@link #put(String, Object)}
+	 * have zero score.
+	 * @param key key
+	 * @param value value
+	 * @param score score by which the value is ranked by
+	 * {@link #topK(String, int)}
+	 * @return <code>true</code> if entry was inserted, 
+	 * <code>false</code> otherwise.
+	 * @throws UnsupportedOperationException if this trie does not keep
+	 * the scores
+	 */
+	public boolean put(final String key, final E value, long score) {
+		if(maxCompletions == 0)
+			throw new UnsupportedOperationException("Scores are not kept");
+		completionsChanged = false;
+		return insert(key, value, score, true, 0, root);
 	}
 	
 	private Node getNode(final String key, int ind, final Node node) {
@@ -127,10 +273,10 @@ public class PATTrie<E> {
 		Node subtree = node.getChild(key.charAt(ind));
 		if(subtree == null) return null;
 		
-		String s = key.substring(ind);
-		if(!s.startsWith(subtree.edge)) return null;
+		if(getDifferenceIndex(key, ind, subtree) < subtree.edgeLength) 
+			return null;
 		
-		return getNode(key, ind+subtree.edge.length(), subtree);
+		return getNode(key, ind+subtree.edgeLength, subtree);
 	}
 	
 	/**
@@ -142,7 +288,7 @@ public class PATTrie<E> {
 	 */
 	public Collection<E> getValues(final String key) {
 		Node node = getNode(key, 0, root);
-		if(node.isEmpty()) return Collections.emptyList();
+		if(node == null || node.isEmpty()) return Collections.emptyList();
 		return new ArrayList<E>(node.data);
 	}
 	
@@ -154,7 +300,8 @@ public class PATTrie<E> {
 	 * @return <code>true</code> if it is, <code>false</code> otherwise.
 	 */
 	public boolean contains(final String key, final E value) {
-		return getNode(key, 0, root).containsData(value);
+		Node node = getNode(key, 0, root);
+		return node != null && node.containsData(value);
 	}
 	
 	private Node getNodeMatchingPrefix(final String prefix, int ind, Node node) {
@@ -164,12 +311,11 @@ public class PATTrie<E> {
 		Node subtree = node.getChild(prefix.charAt(ind));
 		if(subtree == null) return null;
 		
-		String s = prefix.substring(ind);
-		int diffInd = getDifferenceIndex(subtree.edge, s);
+		int diffInd = getDifferenceIndex(prefix, ind, subtree);
 		//if one is not the prefix of another one, there are no results
-		if(diffInd < s.length() && diffInd < subtree.edge.length()) return null;
+		if(ind + diffInd < prefix.length() && diffInd < subtree.edgeLength) 
+			return null;
 		
-//		System.out.println("->" + subtree.edge + "\t" + subtree.prefixCount);
 		return getNodeMatchingPrefix(prefix, ind+diffInd, subtree);
 	}
 	
@@ -183,10 +329,10 @@ public class PATTrie<E> {
 		Node subtree = node.getChild(prefix.charAt(ind));
 		if(subtree == null) return false;
 		
-		String s = prefix.substring(ind);
-		int diffInd = getDifferenceIndex(subtree.edge, s);
+		int diffInd = getDifferenceIndex(prefix, ind, subtree);
 		//if one is not the prefix of another one, there are no results
-		if(diffInd < s.length() && diffInd < subtree.edge.length()) return false;
+		if(ind + diffInd < prefix.length() && diffInd < subtree.edgeLength) 
+			return false;
 			
 		return findPrefix(prefix, ind+diffInd, subtree, added);
 	}
@@ -202,19 +348,51 @@ public class PATTrie<E> {
 		return findPrefix(prefix, 0, root, result);
 	}
 	
+	/**
+	 * Returns the values with the highest scores among the values
+	 * mapped by the keys whose prefix is the one specified, ordered by
+	 * descending score (a value mapped by several such keys is returned
+	 * once for each of them).<br>
+	 * It takes time proportional to the prefix length and <code>k</code>,
+	 * since the best completions are cached in the nodes.
+	 * @param prefix key prefix
+	 * @param k the maximum number of values to return
+	 * @return list of at most <code>k</code> values
+	 * @throws IllegalArgumentException if <code>k</code> is negative
+	 * or greater than the number of completions cached in the nodes
+	 * @see #PATTrie(int)
+	 */
+	@SuppressWarnings("unchecked")
+	public List<E> topK(final String prefix, int k) {
+		if(k < 0 || k > maxCompletions)
+			throw new IllegalArgumentException("Cannot find " + k 
+					+ " best completions (at most " + maxCompletions 
+					+ " are cached)");
+		Node node = getNodeMatchingPrefix(prefix, 0, root);
+		if(node == null) return Collections.emptyList();
+		int count = Math.min(k, node.best.length);
+		List<E> result = new ArrayList<E>(count);
+		for(int i = 0; i < count; ++i)
+			result.add((E) node.best[i].value);
+		return result;
+	}
+	
 	private boolean remove(final String key, final E value, int ind, Node node) {
 		if(ind >= key.length()) {
 			if(node.removeData(value)) {
-				if(node.isEmpty()) {
+				--node.prefixCount;
+				if(maxCompletions > 0) {
+					node.removeScore(value);
+					completionsChanged = node.updateBest();
+				}
+				if(node.isEmpty() && node != root) {
 					if(node.hasSingleChild()) {
 						node.getOnlyChild().mergeWithParent();
 					}
 					else if(node.isLeaf()) {
-//						System.out.println("Removing subtree: " + node.edge);
 						node.destroy();
 					}
 				}
-				else --node.prefixCount;
 				
 				return true;
 			}
@@ -225,17 +403,21 @@ public class PATTrie<E> {
 		Node subtree = node.getChild(key.charAt(ind));
 		if(subtree == null) return false;
 		
-		String s = key.substring(ind);
-		int diffInd = getDifferenceIndex(subtree.edge, s);
-		//if one is not the prefix of another one, there are no results
-		if(diffInd < s.length() && diffInd < subtree.edge.length()) return false;
+		//the key has to contain the whole edge
+		int diffInd = getDifferenceIndex(key, ind, subtree);
+		if(diffInd < subtree.edgeLength) 
+			return false;
 		
-//		System.out.println("->" + subtree.edge + "\t" + subtree.prefixCount);
+		Completion[] subtreeBest = subtree.best;
 		boolean ret = remove(key, value, ind+diffInd, subtree);
 		
 		if(ret) {
 //			System.out.println("UP: " + node.edge);
 			--node.prefixCount;
+			// if the subtree was merged with its only child, the child
+			// took its place and has the same completions
+			if(completionsChanged)
+				completionsChanged = node.updateBest(subtree, subtreeBest);
 			if(node != root && node.isEmpty() && node.hasSingleChild())
 				node.getOnlyChild().mergeWithParent();
 		}
@@ -252,15 +434,13 @@ public class PATTrie<E> {
 	 * otherwise.
 	 */
 	public boolean remove(final String key, final E value) {
+		completionsChanged = false;
 		return remove(key, value, 0, root);
 	}
 	
 	private void clear(final Node node) {
-		if(node.next != null) {
-			Collection<Node> children = node.next.values();
-			for(Node subtree : children)
-				clear(subtree);
-		}
+		for(int i = node.nextChild(0); i != -1; i = node.nextChild(i + 1))
+			clear(node.children[i]);
 		
 		node.purgeNext();
 		node.purgeData();
@@ -277,6 +457,9 @@ public class PATTrie<E> {
 		clear(root);
 		nodeCount = 0;
 		root = new Node();
+		edgeChars = new char[INITIAL_EDGE_CAPACITY];
+		edgeCharCount = 0;
+		liveEdgeChars = 0;
 	}
 	
 	private boolean updateCollection(final Collection<E> addedOrRemoved, 
@@ -290,9 +473,8 @@ public class PATTrie<E> {
 				ret |= addedOrRemoved.addAll(node.data);
 		}
 		
-		if(node.next != null)
-			for(Node subtree : node.next.values())
-				ret |= updateCollection(addedOrRemoved, subtree);
+		for(int i = node.nextChild(0); i != -1; i = node.nextChild(i + 1))
+			ret |= updateCollection(addedOrRemoved, node.children[i]);
 		
 		return ret;
 	}
@@ -302,7 +484,10 @@ public class PATTrie<E> {
 		boolean ret = false;
 		for(Node curr = lower; curr != higher && curr != root; curr = curr.parent) {
 			//add/remove all from other subtrees
-			for(Node sibling : curr.parent.next.values()) {
+			Node parent = curr.parent;
+			for(int i = parent.nextChild(0); i != -1; 
+					i = parent.nextChild(i + 1)) {
+				Node sibling = parent.children[i];
 				if(sibling != curr) {
 //					int oldCnt = (result != null ? result.size() : 0);
 					ret |= updateCollection(addedOrRemoved, sibling);					
@@ -419,6 +604,92 @@ public class PATTrie<E> {
 		return ret;
 	}
 	
+	/**
+	 * Creates an immutable copy of this trie, which is more compact
+	 * and faster to query, and which can be written to a file and
+	 * mapped into memory.
+	 * @return the frozen trie
+	 * @see FrozenPATTrie
+	 */
+	public FrozenPATTrie<E> freeze() {
+		Freezer freezer = new Freezer();
+		freezer.freeze(root);
+		return freezer.create();
+	}
+	
+	/**
+	 * Lays out the nodes in preorder into the arrays of a frozen trie.
+	 */
+	private class Freezer {
+		private int n;
+		private int refCount;
+		private int charCount;
+		private int[] ints;
+		private char[] chars;
+		private final HashMap<E, Integer> valueIds = new HashMap<E, Integer>();
+		private final ArrayList<E> valueTable = new ArrayList<E>();
+		// the number of nodes, children, values and edge characters laid out
+		private int nodeInd, childInd, refInd, charInd;
+		
+		Freezer() {
+			count(root);
+			ints = new int[FrozenPATTrie.intCount(n, refCount)];
+			chars = new char[n - 1 + charCount];
+		}
+		
+		private void count(Node node) {
+			++n;
+			charCount += node.edgeLength;
+			if(node.data != null)
+				refCount += node.data.size();
+			for(int i = node.nextChild(0); i != -1; i = node.nextChild(i + 1))
+				count(node.children[i]);
+		}
+		
+		int freeze(Node node) {
+			int ind = nodeInd++;
+			ints[FrozenPATTrie.edgeStartOffset(n) + ind] = charInd;
+			ints[FrozenPATTrie.edgeLengthOffset(n) + ind] = node.edgeLength;
+			System.arraycopy(edgeChars, node.edgeStart, chars, 
+					FrozenPATTrie.edgeCharsOffset(n) + charInd, node.edgeLength);
+			charInd += node.edgeLength;
+			
+			ints[FrozenPATTrie.valueStartOffset(n) + ind] = refInd;
+			if(node.data != null) {
+				for(E value : node.data) {
+					Integer id = valueIds.get(value);
+					if(id == null) {
+						id = valueTable.size();
+						valueIds.put(value, id);
+						valueTable.add(value);
+					}
+					ints[FrozenPATTrie.valueRefsOffset(n) + refInd++] = id;
+				}
+			}
+			
+			// the children are reserved a contiguous range before
+			// their subtrees are laid out
+			int firstChild = childInd;
+			ints[FrozenPATTrie.childStartOffset(n) + ind] = firstChild;
+			childInd += node.childCount;
+			int k = firstChild;
+			for(int i = node.nextChild(0); i != -1; i = node.nextChild(i + 1)) {
+				Node child = node.children[i];
+				chars[k] = edgeChars[child.edgeStart];
+				ints[FrozenPATTrie.childNodesOffset(n) + k++] = freeze(child);
+			}
+			ints[FrozenPATTrie.subtreeEndOffset(n) + ind] = nodeInd;
+			return ind;
+		}
+		
+		FrozenPATTrie<E> create() {
+			ints[FrozenPATTrie.valueStartOffset(n) + n] = refInd;
+			ints[FrozenPATTrie.childStartOffset(n) + n] = childInd;
+			return new FrozenPATTrie<E>(n, refCount, ints, chars, 
+					valueTable.toArray());
+		}
+	}
+	
 	/**
 	 * Returns the number of values contained by this collection.
 	 * This value is greater than or equal to the one 
@@ -459,6 +730,26 @@ public class PATTrie<E> {
 	}
 	
 	protected int nodeCount = 0;
+	
+	/**
+	 * A value with its score. It is immutable, so the arrays of
+	 * the best completions can be shared.
+	 */
+	private static final class Completion implements Comparable<Completion> {
+		final long score;
+		final Object value;
+		
+		Completion(long score, Object value) {
+			this.score = score;
+			this.value = value;
+		}
+		
+		@Override
+		public int compareTo(Completion other) {
+			// the higher scores come first
+			return score > other.score ? -1 : (score < other.score ? 1 : 0);
+		}
+	}
 
 	/**
 	 * Node of the trie.
@@ -468,36 +759,61 @@ public class PATTrie<E> {
 	 */
 	private class Node {
 		private Set<E> data;
-		private TreeMap<Character, Node> next;
+		/*
+		 * The children, either sorted by the first characters of their
+		 * edges, which are kept in labels, or (if labels is null) in
+		 * a table indexed by the first character minus tableBase.
+		 */
+		private char[] labels;
+		private Node[] children;
+		private int childCount;
+		private char tableBase;
 		private Node parent;
-		private String edge;
+		private int edgeStart;
+		private int edgeLength;
 		private int prefixCount;
+		// the scored values of this node (if the scores are kept)
+		private HashMap<E, Completion> scores;
+		// the best completions in the subtree, by descending score
+		private Completion[] best = NO_COMPLETIONS;
 		
 		private static final int INIT_DATA_CAPACITY = 2;
+		private static final int INIT_CHILDREN_CAPACITY = 2;
+		/**
+		 * The number of children above which a table is used, provided
+		 * that it is at most TABLE_SPAN_FACTOR times larger than
+		 * the number of children.
+		 */
+		private static final int MAX_SORTED_CHILDREN = 8;
+		private static final int TABLE_SPAN_FACTOR = 4;
 		
 		public Node() { }
 		
 		/**
 		 * Creates node which is doubly-linked with its parent node.
 		 * @param parent parent node
-		 * @param edgeFromParent edge from parent node
+		 * @param edgeStart the start of the edge from parent node
+		 * in the edge buffer
+		 * @param edgeLength the length of the edge from parent node
 		 */
-		public Node(Node parent, String edgeFromParent) {
+		public Node(Node parent, int edgeStart, int edgeLength) {
 			++nodeCount;
-			parent.link(edgeFromParent, this);
+			parent.link(edgeStart, edgeLength, this);
 			prefixCount = 0;
 		}
 		
 		/**
 		 * Creates double link to its future child.
-		 * @param edge edge which represent the link
+		 * @param edgeStart the start of the edge which represent the link
+		 * @param edgeLength the length of the edge
 		 * @param child child node which should be created and linked
 		 */
-		public void link(String edge, Node child) {
-			if(next == null) next = new TreeMap<Character, Node>();
-			next.put(edge.charAt(0), child);
+		public void link(int edgeStart, int edgeLength, Node child) {
+			liveEdgeChars += edgeLength - child.edgeLength;
 			child.parent = this;
-			child.edge = edge;
+			child.edgeStart = edgeStart;
+			child.edgeLength = edgeLength;
+			putChild(edgeChars[edgeStart], child);
 		}
 		
 		/**
@@ -506,16 +822,13 @@ public class PATTrie<E> {
 		 */
 		public void destroy() {
 			// TODO maybe links from children to this node should be destroyed??
-//			System.out.println("Destroy: " + edge);
 			--nodeCount;
 			if(this.parent != null) {
-				this.parent.next.remove(edge.charAt(0));
-				if(this.parent.next.isEmpty()) {
-					this.parent.purgeNext();
-				}
+				this.parent.removeChild(edgeChars[edgeStart]);
 				this.parent = null;
 			}
-			edge = null;
+			liveEdgeChars -= edgeLength;
+			edgeLength = 0;
 			//
 			//let GC deallocate memory
 			purgeNext();
@@ -529,17 +842,12 @@ public class PATTrie<E> {
 		 * @return node new node that was created
 		 */
 		public Node splitEdge(int splitInd) {
-			//napravi link s parentom->splitNode
-			parent.next.remove(edge.charAt(0));
-			Node splitNode = new Node(parent, edge.substring(0, splitInd));
+			//napravi link s parentom->splitNode (zamjenjuje ovaj cvor)
+			Node splitNode = new Node(parent, edgeStart, splitInd);
 			//napravi link splitNode -> this
 			splitNode.prefixCount = prefixCount;
-			splitNode.link(edge.substring(splitInd), this);
-			
-//			System.out.println("Splitnode(" + splitNode.edge
-//					+ ")\tchild(" + edge + ")");
-			
-			
+			splitNode.best = best;
+			splitNode.link(edgeStart + splitInd, edgeLength - splitInd, this);
 			return splitNode;
 		}
 		
@@ -547,14 +855,14 @@ public class PATTrie<E> {
 		 * Merges this node with its parent. 
 		 */
 		public void mergeWithParent() {
-//			System.out.println("Merge(" + parent.edge + "+" + edge + ")");
 			addData(parent.data);
 			//prespoji edgeve (izbrisi parenta i spoji ovog na grandparenta)
 			Node grandParent = parent.parent;
-			String edgeToParent = parent.edge;
+			int mergedStart = concatEdges(parent, this);
+			int mergedLength = parent.edgeLength + edgeLength;
 			parent.destroy();
 			parent = null; //TODO UNTESTED
-			grandParent.link(edgeToParent + edge, this);
+			grandParent.link(mergedStart, mergedLength, this);
 		}
 		
 		/**
@@ -572,7 +880,7 @@ public class PATTrie<E> {
 		 * <code>false</code> otherwise.
 		 */
 		public boolean isLeaf() {
-			return this != root && (next == null || next.isEmpty());
+			return this != root && childCount == 0;
 		}
 		
 		/**
@@ -581,7 +889,7 @@ public class PATTrie<E> {
 		 * <code>false</code> otherwise.
 		 */
 		public boolean hasSingleChild() {
-			return next != null && next.size() == 1;
+			return childCount == 1;
 		}
 		
 		/**
@@ -590,12 +898,135 @@ public class PATTrie<E> {
 		 * <code>null</code> if the node has no children.
 		 */
 		public Node getOnlyChild() {
-			return next.firstEntry().getValue();
+			int i = nextChild(0);
+			return i != -1 ? children[i] : null;
+		}
+		
+		public Node getChild(char c) {
+			if(children == null)
+				return null;
+			if(labels != null) {
+				int i = Arrays.binarySearch(labels, 0, childCount, c);
+				return i >= 0 ? children[i] : null;
+			}
+			int i = c - tableBase;
+			return i >= 0 && i < children.length ? children[i] : null;
+		}
+		
+		/**
+		 * Returns the smallest index of a child in the children array
+		 * which is not less than the specified one. The children are
+		 * ordered by their first characters.
+		 * @param from index from which to search
+		 * @return index of the child, or <code>-1</code> if there is none
+		 */
+		public int nextChild(int from) {
+			if(labels != null || children == null)
+				return from < childCount ? from : -1;
+			for(int i = from; i < children.length; ++i)
+				if(children[i] != null)
+					return i;
+			return -1;
+		}
+		
+		/**
+		 * Links the child by the specified character, replacing the
+		 * child which was linked by it (if any).
+		 */
+		private void putChild(char c, Node child) {
+			if(children == null) {
+				labels = new char[INIT_CHILDREN_CAPACITY];
+				children = newNodeArray(INIT_CHILDREN_CAPACITY);
+			}
+			if(labels == null) {
+				int i = c - tableBase;
+				if(i >= 0 && i < children.length) {
+					if(children[i] == null)
+						++childCount;
+					children[i] = child;
+					return;
+				}
+				toSorted(childCount + 1);
+			}
+			int i = Arrays.binarySearch(labels, 0, childCount, c);
+			if(i >= 0) {
+				children[i] = child;
+				return;
+			}
+			i = -i - 1;
+			if(childCount == labels.length) {
+				labels = Arrays.copyOf(labels, childCount << 1);
+				children = Arrays.copyOf(children, childCount << 1);
+			}
+			System.arraycopy(labels, i, labels, i + 1, childCount - i);
+			System.arraycopy(children, i, children, i + 1, childCount - i);
+			labels[i] = c;
+			children[i] = child;
+			if(++childCount > MAX_SORTED_CHILDREN)
+				toTable();
+		}
+		
+		private void removeChild(char c) {
+			if(children == null)
+				return;
+			if(labels != null) {
+				int i = Arrays.binarySearch(labels, 0, childCount, c);
+				if(i < 0)
+					return;
+				--childCount;
+				System.arraycopy(labels, i + 1, labels, i, childCount - i);
+				System.arraycopy(children, i + 1, children, i, childCount - i);
+				children[childCount] = null;
+			} else {
+				int i = c - tableBase;
+				if(i < 0 || i >= children.length || children[i] == null)
+					return;
+				children[i] = null;
+				if(--childCount <= MAX_SORTED_CHILDREN / 2)
+					toSorted(childCount);
+			}
+			if(childCount == 0)
+				purgeNext();
 		}
 		
-		public Node getChild(Character c) {
-			//TODO Character -> String
-			return next == null ? null : next.get(c);
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		private Node[] newNodeArray(int length) {
+			return (Node[]) new PATTrie.Node[length];
+		}
+		
+		/**
+		 * Moves the children to a table, if it is not too sparse.
+		 */
+		private void toTable() {
+			char lo = labels[0], hi = labels[childCount - 1];
+			int span = hi - lo + 1;
+			if(span > TABLE_SPAN_FACTOR * childCount)
+				return;
+			Node[] table = newNodeArray(span);
+			for(int i = 0; i < childCount; ++i)
+				table[labels[i] - lo] = children[i];
+			labels = null;
+			children = table;
+			tableBase = lo;
+		}
+		
+		/**
+		 * Moves the children from the table to sorted arrays of the
+		 * specified capacity.
+		 */
+		private void toSorted(int capacity) {
+			char[] sortedLabels = new char[Math.max(capacity, 
+					INIT_CHILDREN_CAPACITY)];
+			Node[] sortedChildren = newNodeArray(sortedLabels.length);
+			int count = 0;
+			for(int i = 0; i < children.length; ++i) {
+				if(children[i] != null) {
+					sortedLabels[count] = (char) (tableBase + i);
+					sortedChildren[count++] = children[i];
+				}
+			}
+			labels = sortedLabels;
+			children = sortedChildren;
 		}
 		
 		/**
@@ -662,6 +1093,91 @@ public class PATTrie<E> {
 			return this.data.contains(data);
 		}		
 		
+		/**
+		 * Sets the score of the specified value of this node.
+		 */
+		public void putScore(E value, long score) {
+			if(scores == null)
+				scores = new HashMap<E, Completion>(INIT_DATA_CAPACITY);
+			Completion old = scores.get(value);
+			if(old == null || old.score != score)
+				scores.put(value, new Completion(score, value));
+		}
+		
+		public void removeScore(Object value) {
+			if(scores == null) return;
+			scores.remove(value);
+			if(scores.isEmpty()) scores = null;
+		}
+		
+		/**
+		 * Recomputes the best completions in the subtree by merging
+		 * the scored values of this node with the best completions
+		 * of the children.
+		 * @return <code>true</code> if the best completions have changed,
+		 * <code>false</code> otherwise.
+		 */
+		public boolean updateBest() {
+			Completion[][] lists = new Completion[childCount + 1][];
+			lists[0] = NO_COMPLETIONS;
+			if(scores != null) {
+				lists[0] = scores.values().toArray(
+						new Completion[scores.size()]);
+				if(lists[0].length > 1)
+					Arrays.sort(lists[0]);
+			}
+			int listCount = 1;
+			for(int i = nextChild(0); i != -1; i = nextChild(i + 1))
+				lists[listCount++] = children[i].best;
+			
+			int[] heads = new int[listCount];
+			Completion[] merged = new Completion[maxCompletions];
+			int count = 0;
+			boolean changed = false;
+			for(; count < merged.length; ++count) {
+				int top = -1;
+				for(int j = 0; j < listCount; ++j) {
+					if(heads[j] < lists[j].length && (top == -1 
+							|| lists[j][heads[j]].score 
+							> lists[top][heads[top]].score))
+						top = j;
+				}
+				if(top == -1) break;
+				merged[count] = lists[top][heads[top]++];
+				changed |= count >= best.length || merged[count] != best[count];
+			}
+			if(!changed && count == best.length)
+				return false;
+			best = count < merged.length ? Arrays.copyOf(merged, count) : merged;
+			return true;
+		}
+		
+		/**
+		 * Updates the best completions after the best completions of
+		 * the specified child (or of the node which took its place)
+		 * have changed.
+		 * @param child the child
+		 * @param oldChildBest the best completions the child had
+		 * @return <code>true</code> if the best completions have changed,
+		 * <code>false</code> otherwise.
+		 */
+		public boolean updateBest(Node child, Completion[] oldChildBest) {
+			if(best.length < maxCompletions)
+				return updateBest();
+			// if the completions which are not below the worst one are
+			// the same, the merge would pick the same ones
+			long cutoff = best[best.length - 1].score;
+			Completion[] childBest = child.best;
+			int i = 0;
+			for(; i < oldChildBest.length && oldChildBest[i].score >= cutoff; ++i) {
+				if(i >= childBest.length || childBest[i] != oldChildBest[i])
+					return updateBest();
+			}
+			if(i < childBest.length && childBest[i].score >= cutoff)
+				return updateBest();
+			return false;
+		}
+		
 		/**
 		 * Initialization of collection which holds values.
 		 */
@@ -677,16 +1193,16 @@ public class PATTrie<E> {
 				this.data.clear();
 				this.data = null;
 			}
+			scores = null;
 		}
 		
 		/**
 		 * Removes all links to children (but not from children).
 		 */
 		public void purgeNext() {
-			if(this.next != null) {
-				this.next.clear();
-				this.next = null;
-			}
+			labels = null;
+			children = null;
+			childCount = 0;
 		}
 		
 	}
@@ -0,0 +1,43 @@
+/*
+ * PaddedAtomicLong.java
+ *
+ * Copyright (C) 2011 Leo Osvald <leo.osvald@gmail.com>
+ *
+ * This file is part of SGLJ.
+ *
+ * SGLJ is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SGLJ is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sglj.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An {@link AtomicLong} padded to (at least) the size of a cache line,
+ * so that sequences updated by different threads do not share a line
+ * (which would cause false sharing).
+ *
+ * @author Leo Osvald
+ */
+class PaddedAtomicLong extends AtomicLong {
+
+	private static final long serialVersionUID = 5316183264306851932L;
+
+	// padding, not meant to be used
+	volatile long p1, p2, p3, p4, p5, p6 = 7L;
+
+	PaddedAtomicLong(long initialValue) {
+		super(initialValue);
+	}
+}
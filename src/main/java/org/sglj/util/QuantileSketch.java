@@ -0,0 +1,367 @@
+/*
+ * QuantileSketch.java
+ *
+ * Copyright (C) 2011 Leo Osvald <leo.osvald@gmail.com>
+ *
+ * This file is part of SGLJ.
+ *
+ * SGLJ is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SGLJ is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sglj.util;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * <p>A streaming sketch which estimates the quantiles of a stream of
+ * <code>double</code> samples in bounded memory, without storing
+ * the samples (unlike the {@link NthOrderStatistic}, which needs all
+ * of them in an array).</p>
+ * <p>This is the KLL sketch (Karnin, Lang and Liberty, 2016): the samples
+ * are kept in a hierarchy of compactors, where a sample at level
+ * <code>h</code> stands for <code>2^h</code> samples of the stream.
+ * When a level becomes full, it is sorted and every other sample
+ * (starting at a random offset) is promoted to the next level, while
+ * the rest are discarded. The capacities of the levels decrease
+ * geometrically from the top, so at most about <code>3k</code> samples
+ * are retained.</p>
+ * <p>The rank error is proportional to <code>1 / k</code>; with the
+ * default <code>k = 200</code>, the rank of the estimated quantile is
+ * typically within 1% of the requested one. Adding a sample takes O(1)
+ * amortized time, apart from an O(log k) factor spent in sorting the
+ * compacted levels.</p>
+ * <p>The sketches with the same <code>k</code> are mergeable, so
+ * the sketches built by different threads (or machines, since they are
+ * serializable) can be combined into one with the same accuracy.
+ * This class is not thread-safe.</p>
+ *
+ * @author Leo Osvald
+ * @version 1.0
+ */
+public class QuantileSketch implements Serializable {
+
+	private static final long serialVersionUID = 6143307812458961073L;
+
+	public static final int DEFAULT_K = 200;
+
+	private static final int MIN_K = 8;
+
+	private static final double CAPACITY_RATIO = 2.0 / 3.0;
+
+	private final int k;
+	private final Random random;
+
+	// the samples of level h are levels[h][0..sizes[h])
+	private double[][] levels;
+	private int[] sizes;
+	private int levelCount;
+
+	// the number of retained samples, and the sum of the capacities
+	// of all the levels, which triggers the compaction
+	private int size;
+	private int maxSize;
+
+	private long count;
+	private double min;
+	private double max;
+
+	// all the retained samples in ascending order, together with
+	// the cumulative weights; built on demand by the queries
+	private transient double[] sortedValues;
+	private transient long[] cumulativeWeights;
+
+	public QuantileSketch() {
+		this(DEFAULT_K);
+	}
+
+	/**
+	 * Creates a sketch with the specified accuracy parameter.
+	 * @param k the capacity of the top level, which is proportional
+	 * to both the memory used and the accuracy
+	 * @throws IllegalArgumentException if k is less than 8
+	 */
+	public QuantileSketch(int k) {
+		this(k, new Random());
+	}
+
+	/**
+	 * Creates a sketch with the specified accuracy parameter, which
+	 * uses the specified random generator to choose which samples
+	 * are promoted (for reproducible results).
+	 * @param k the capacity of the top level, which is proportional
+	 * to both the memory used and the accuracy
+	 * @param random the random generator
+	 * @throws IllegalArgumentException if k is less than 8
+	 */
+	public QuantileSketch(int k, Random random) {
+		if (k < MIN_K)
+			throw new IllegalArgumentException("k must be at least " + MIN_K);
+		this.k = k;
+		this.random = random;
+		clear();
+	}
+
+	/**
+	 * Adds the sample to this sketch.
+	 * @param value the sample
+	 * @throws IllegalArgumentException if the sample is NaN
+	 */
+	public void add(double value) {
+		if (Double.isNaN(value))
+			throw new IllegalArgumentException("NaN cannot be added");
+		append(0, value);
+		++size;
+		++count;
+		if (value < min)
+			min = value;
+		if (value > max)
+			max = value;
+		sortedValues = null;
+		if (size >= maxSize)
+			compress();
+	}
+
+	/**
+	 * Adds all the samples of the other sketch to this one.
+	 * The other sketch is not modified.
+	 * @param other the sketch to merge
+	 * @throws IllegalArgumentException if the other sketch is this sketch
+	 * or has a different <code>k</code>
+	 */
+	public void merge(QuantileSketch other) {
+		if (other == this)
+			throw new IllegalArgumentException("Cannot merge with itself");
+		if (other.k != k)
+			throw new IllegalArgumentException("Different k: " + other.k);
+		while (levelCount < other.levelCount)
+			grow();
+		for (int h = 0; h < other.levelCount; ++h) {
+			for (int i = 0; i < other.sizes[h]; ++i)
+				append(h, other.levels[h][i]);
+			size += other.sizes[h];
+		}
+		count += other.count;
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+		sortedValues = null;
+		while (size >= maxSize)
+			compress();
+	}
+
+	/**
+	 * Returns the estimate of the specified quantile, that is, of the
+	 * sample which would be at the index <code>q * (count() - 1)</code>
+	 * if all the samples were sorted. The quantiles 0 and 1 are the exact
+	 * minimum and maximum.
+	 * @param q the quantile, between 0 and 1 inclusive
+	 * @return the estimated quantile
+	 * @throws IllegalArgumentException if q is not in [0, 1]
+	 * @throws NoSuchElementException if the sketch is empty
+	 */
+	public double quantile(double q) {
+		if (!(q >= 0 && q <= 1))
+			throw new IllegalArgumentException("Illegal quantile: " + q);
+		checkNotEmpty();
+		if (q == 0)
+			return min;
+		if (q == 1)
+			return max;
+		ensureSorted();
+		long rank = (long) (q * (count - 1));
+		// the first sample whose cumulative weight exceeds the rank
+		int lo = 0, hi = sortedValues.length - 1;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (cumulativeWeights[mid] > rank)
+				hi = mid;
+			else
+				lo = mid + 1;
+		}
+		return sortedValues[lo];
+	}
+
+	/**
+	 * Returns the estimate of the fraction of the samples which are
+	 * less than or equal to the specified value.
+	 * @param value the value
+	 * @return the estimated normalized rank, between 0 and 1 inclusive
+	 * @throws NoSuchElementException if the sketch is empty
+	 */
+	public double rank(double value) {
+		checkNotEmpty();
+		ensureSorted();
+		int lo = 0, hi = sortedValues.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (sortedValues[mid] <= value)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo == 0 ? 0 : (double) cumulativeWeights[lo - 1] / count;
+	}
+
+	/**
+	 * Returns the number of samples added to this sketch
+	 * (including the merged ones).
+	 * @return the number of samples
+	 */
+	public long count() {
+		return count;
+	}
+
+	public boolean isEmpty() {
+		return count == 0;
+	}
+
+	/**
+	 * Returns the smallest sample.
+	 * @return the minimum
+	 * @throws NoSuchElementException if the sketch is empty
+	 */
+	public double min() {
+		checkNotEmpty();
+		return min;
+	}
+
+	/**
+	 * Returns the largest sample.
+	 * @return the maximum
+	 * @throws NoSuchElementException if the sketch is empty
+	 */
+	public double max() {
+		checkNotEmpty();
+		return max;
+	}
+
+	/**
+	 * Returns the number of samples currently retained by this sketch,
+	 * which is bounded by about <code>3k</code>.
+	 * @return the number of retained samples
+	 */
+	public int retained() {
+		return size;
+	}
+
+	public int getK() {
+		return k;
+	}
+
+	public void clear() {
+		levels = new double[1][];
+		sizes = new int[1];
+		levelCount = 0;
+		size = 0;
+		count = 0;
+		min = Double.POSITIVE_INFINITY;
+		max = Double.NEGATIVE_INFINITY;
+		sortedValues = null;
+		grow();
+	}
+
+	private int capacity(int level) {
+		int depth = levelCount - level - 1;
+		return Math.max(2, (int) Math.ceil(Math.pow(CAPACITY_RATIO, depth) * k));
+	}
+
+	private void grow() {
+		if (levelCount == levels.length) {
+			levels = Arrays.copyOf(levels, levelCount << 1);
+			sizes = Arrays.copyOf(sizes, levelCount << 1);
+		}
+		++levelCount;
+		maxSize = 0;
+		for (int h = 0; h < levelCount; ++h)
+			maxSize += capacity(h);
+	}
+
+	private void append(int level, double value) {
+		double[] a = levels[level];
+		int n = sizes[level];
+		if (a == null || n == a.length)
+			levels[level] = a = Arrays.copyOf(a != null ? a : new double[0],
+					Math.max(n << 1, capacity(level) + 1));
+		a[n] = value;
+		sizes[level] = n + 1;
+	}
+
+	/**
+	 * Compacts the lowest level which is full, and continues with
+	 * the upper ones if the sketch is still too large.
+	 */
+	private void compress() {
+		for (int h = 0; h < levelCount; ++h) {
+			if (sizes[h] >= capacity(h)) {
+				if (h + 1 == levelCount)
+					grow();
+				compact(h);
+				if (size < maxSize)
+					break;
+			}
+		}
+	}
+
+	private void compact(int level) {
+		double[] a = levels[level];
+		int n = sizes[level];
+		Arrays.sort(a, 0, n);
+		// with an odd number of samples, the largest one stays
+		int even = n & ~1;
+		for (int i = random.nextBoolean() ? 1 : 0; i < even; i += 2)
+			append(level + 1, a[i]);
+		if (even < n)
+			a[0] = a[n - 1];
+		sizes[level] = n - even;
+		size -= even >> 1;
+	}
+
+	private void ensureSorted() {
+		if (sortedValues != null)
+			return ;
+		// merge the sorted levels one by one, keeping the weights
+		double[] values = new double[0];
+		long[] weights = new long[0];
+		for (int h = 0; h < levelCount; ++h) {
+			int n = sizes[h];
+			double[] level = Arrays.copyOf(levels[h] != null ? levels[h]
+					: new double[0], n);
+			Arrays.sort(level);
+			double[] mergedValues = new double[values.length + n];
+			long[] mergedWeights = new long[values.length + n];
+			for (int i = 0, j = 0, m = 0; m < mergedValues.length; ++m) {
+				if (j == n || i < values.length && values[i] <= level[j]) {
+					mergedValues[m] = values[i];
+					mergedWeights[m] = weights[i++];
+				} else {
+					mergedValues[m] = level[j++];
+					mergedWeights[m] = 1L << h;
+				}
+			}
+			values = mergedValues;
+			weights = mergedWeights;
+		}
+		for (int i = 1; i < weights.length; ++i)
+			weights[i] += weights[i - 1];
+		sortedValues = values;
+		cumulativeWeights = weights;
+	}
+
+	private void checkNotEmpty() {
+		if (count == 0)
+			throw new NoSuchElementException();
+	}
+}
@@ -875,7 +875,7 @@ implements DequeList<E>, RandomAccess, Cloneable, Serializable {
 			System.arraycopy(elements, 0, elements, 1, tail);
 			elements[0] = elements[mask];
 			System.arraycopy(elements, index, elements, index + 1,
-					elements.length - index);
+					mask - index);
 		}
 		elements[index] = element;
 		if ( (tail = (tail + 1) & (elements.length - 1)) == head)
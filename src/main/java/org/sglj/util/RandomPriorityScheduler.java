@@ -21,7 +21,7 @@
 
 package org.sglj.util;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Random;
 
 /**
@@ -32,75 +32,95 @@ import java.util.Random;
  * that is, the probability that a certain value will be chosen.
  * The greater the priority the greater the probability that
  * the certain value will be chosen (returned by {@link #get()} method).</p> 
- * <p>Method {@link #get()} is implemented efficiently and 
- * takes logarithmic time complexity, unlike other methods which
- * takes time linear to the number of outcomes ("tasks").<br>
- * </p>
+ * <p>The weights of the outcomes are kept in slots of a primitive
+ * Fenwick tree, and the slot of each outcome is found through a hash
+ * table, so all the methods take logarithmic time complexity
+ * (amortized, as the tables grow) and nothing is boxed. The slots
+ * of removed outcomes are reused.<br>
+ * Each outcome is scheduled at most once; adding an outcome which
+ * is already scheduled only changes its priority.</p>
  * 
  * @author Leo Osvald
- * @version 0.9
+ * @version 1.0
  * @param <T> type of outcome ("task")
  */
-public class RandomPriorityScheduler<T> implements PriorityScheduler<T> {
+public class RandomPriorityScheduler<T> extends AbstractPriorityScheduler<T> {
 	
-	private final ArrayList<Integer> sum = new ArrayList<Integer>();
-	private final ArrayList<T> tasks = new ArrayList<T>();
-	private final Random random = new Random();
+	// the 1-based Fenwick tree over the weights of the slots
+	private long[] tree = new long[INITIAL_CAPACITY + 1];
+	private final IntDeque freeSlots = new IntDeque();
+	private int usedSlots;
+	private final Random random;
+	
+	public RandomPriorityScheduler() {
+		this(new Random());
+	}
+	
+	/**
+	 * Creates the scheduler which draws the outcomes using the
+	 * specified random number generator.
+	 * @param random the random number generator
+	 */
+	public RandomPriorityScheduler(Random random) {
+		this.random = random;
+	}
 	
 	/**
 	 * Gets the outcome which occurred by calling this method.
 	 * @return outcome
 	 */
+	@SuppressWarnings("unchecked")
 	@Override
 	public T get() {
-		if(sum.isEmpty())
+		if(totalWeight == 0)
 			return null;
-		int totalSum = sum.get(sum.size()-1);
-		int target = random.nextInt(totalSum);
-		int lo = 0, hi = sum.size()-1;
-		while(lo < hi) {
-			int mid = lo + (hi-lo-1)/2;
-			if(target < sum.get(mid))
-				hi = mid;
-			else
-				lo = mid+1;
+		long target = (random.nextLong() >>> 1) % totalWeight;
+		// find the last slot whose prefix sum does not exceed the target
+		int pos = 0;
+		for(int step = Integer.highestOneBit(weights.length); step > 0;
+				step >>>= 1) {
+			if(pos + step <= weights.length && tree[pos + step] <= target) {
+				pos += step;
+				target -= tree[pos];
+			}
 		}
-		return tasks.get(lo);
+		return (T) tasks[pos];
 	}
 	
-	
 	@Override
 	public void add(T task, short priority) {
-		int s = relativePriority(priority) 
-		+ (!sum.isEmpty() ? sum.get(sum.size()-1) : 0);
-		tasks.add(task);
-		sum.add(s);
-	}
-	
-	@Override
-	public short getPriority(T task) {
-		int ind = tasks.indexOf(task);
-		if(ind != -1) {
-			return absolutePriority(relativePriorityAt(ind));
+		if(slots.containsKey(task)) {
+			setPriority(task, priority);
+			return;
 		}
-		return NORMAL_PRIORITY;
+		int slot;
+		if(!freeSlots.isEmpty()) {
+			slot = freeSlots.removeLast();
+		} else {
+			if(usedSlots == weights.length)
+				grow();
+			slot = usedSlots++;
+		}
+		tasks[slot] = task;
+		slots.addTo(task, slot + 1);
+		update(slot, relativePriority(priority));
 	}
 	
 	@Override
 	public void remove(T task) {
-		int ind = tasks.indexOf(task);
-		if(ind != -1) {
-			int d = relativePriorityAt(ind);
-			sum.remove(ind);
-			tasks.remove(ind);
-			fix(ind, -d);
+		int slot = slots.remove(task) - 1;
+		if(slot != -1) {
+			update(slot, -weights[slot]);
+			tasks[slot] = null;
+			freeSlots.addLast(slot);
 		}
 	}
+	
 	@Override
 	public void setPriority(T task, short priority) {
-		int ind = tasks.indexOf(task);
-		if(ind != -1) {
-			fix(ind, relativePriority(priority) - relativePriorityAt(ind));
+		int slot = slotOf(task);
+		if(slot != -1) {
+			update(slot, relativePriority(priority) - weights[slot]);
 		}
 	}
 	
@@ -110,28 +130,30 @@ public class RandomPriorityScheduler<T> implements PriorityScheduler<T> {
 	 * @return probability (real number from range [0, 1])
 	 */
 	public double getProbability(T outcome) {
-		int ind = tasks.indexOf(outcome);
-		if(ind == -1)
-			return 0;
-		return (double)relativePriorityAt(ind)/sum.get(sum.size()-1);
+		return share(outcome);
 	}
 	
-	protected int relativePriority(short priority) {
-		return (int)-priority - Short.MIN_VALUE;  
+	private void update(int slot, int delta) {
+		weights[slot] += delta;
+		totalWeight += delta;
+		for(int i = slot + 1; i < tree.length; i += i & -i)
+			tree[i] += delta;
 	}
 	
-	protected short absolutePriority(int relativePriority) {
-		return (short) -(relativePriority + Short.MIN_VALUE);
-	}
-	
-	private void fix(int from, int sumDiff) {
-		for(int i = from; i < sum.size(); ++i)
-			sum.set(i, sum.get(i)+sumDiff);
-	}
-	
-	private int relativePriorityAt(int index) {
-		return sum.get(index) 
-		- (index > 0 ? sum.get(index-1) : 0);
+	/**
+	 * Doubles the number of slots, rebuilding the tree in linear time.
+	 */
+	private void grow() {
+		int capacity = weights.length << 1;
+		weights = Arrays.copyOf(weights, capacity);
+		tasks = Arrays.copyOf(tasks, capacity);
+		tree = new long[capacity + 1];
+		for(int i = 1; i <= capacity; ++i) {
+			tree[i] += weights[i - 1];
+			int parent = i + (i & -i);
+			if(parent <= capacity)
+				tree[parent] += tree[i];
+		}
 	}
 	
 }
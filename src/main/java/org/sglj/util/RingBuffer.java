@@ -0,0 +1,116 @@
+/*
+ * RingBuffer.java
+ *
+ * Copyright (C) 2011 Leo Osvald <leo.osvald@gmail.com>
+ *
+ * This file is part of SGLJ.
+ *
+ * SGLJ is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SGLJ is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sglj.util;
+
+import java.util.Collection;
+
+/**
+ * A bounded FIFO buffer intended for handing off elements between
+ * threads.<br>
+ * Implementations do not permit <code>null</code> elements and
+ * specify which threads are allowed to insert and remove elements
+ * concurrently.
+ *
+ * @author Leo Osvald
+ * @version 1.0
+ *
+ * @param <E> the type of elements held in the buffer
+ */
+public interface RingBuffer<E> {
+
+	/**
+	 * Inserts the specified element if there is space available.
+	 * @param e the element to insert
+	 * @return <code>true</code> if the element was inserted,
+	 * <code>false</code> if the buffer is full
+	 * @throws NullPointerException if the element is <code>null</code>
+	 */
+	boolean offer(E e);
+
+	/**
+	 * Inserts the specified element, waiting for the space to become
+	 * available if necessary.
+	 * @param e the element to insert
+	 * @throws InterruptedException if interrupted while waiting
+	 * @throws NullPointerException if the element is <code>null</code>
+	 */
+	void put(E e) throws InterruptedException;
+
+	/**
+	 * Retrieves and removes the first element.
+	 * @return the first element, or <code>null</code> if the buffer
+	 * is empty
+	 */
+	E poll();
+
+	/**
+	 * Retrieves and removes the first element, waiting for an element
+	 * to become available if necessary.
+	 * @return the first element
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	E take() throws InterruptedException;
+
+	/**
+	 * Retrieves, but does not remove, the first element.
+	 * @return the first element, or <code>null</code> if the buffer
+	 * is empty
+	 */
+	E peek();
+
+	/**
+	 * Removes at most the specified number of available elements and
+	 * adds them to the specified collection, in order.
+	 * @param c the collection to which the elements are added
+	 * @param maxElements the maximum number of elements to remove
+	 * @return the number of removed elements
+	 */
+	int drainTo(Collection<? super E> c, int maxElements);
+
+	/**
+	 * Removes all available elements and adds them to the specified
+	 * collection, in order.
+	 * @param c the collection to which the elements are added
+	 * @return the number of removed elements
+	 */
+	int drainTo(Collection<? super E> c);
+
+	/**
+	 * Returns the number of elements in the buffer. If the buffer
+	 * is being modified concurrently, the result is only an estimate.
+	 * @return the number of elements
+	 */
+	int size();
+
+	/**
+	 * Checks whether the buffer is empty. If the buffer
+	 * is being modified concurrently, the result is only an estimate.
+	 * @return <code>true</code> if it is, <code>false</code> otherwise
+	 */
+	boolean isEmpty();
+
+	/**
+	 * Returns the maximum number of elements the buffer can hold.
+	 * @return the capacity
+	 */
+	int capacity();
+}
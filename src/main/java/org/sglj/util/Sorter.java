@@ -21,6 +21,16 @@
 
 package org.sglj.util;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
 import org.sglj.math.BinaryPredicate.IntBinaryPredicate;
 
 /**
@@ -28,7 +38,7 @@ import org.sglj.math.BinaryPredicate.IntBinaryPredicate;
  * custom comparators.
  *
  * @author Leo Osvald
- * @version 0.7
+ * @version 0.8
  */
 public class Sorter {
 
@@ -56,8 +66,410 @@ public class Sorter {
 		IntSorter.heapSort(a, from, to, cmp);
 	}
 
+	/**
+	 * Sorts the range [from, to) of the array into ascending numerical
+	 * order using the LSD radix sort, which takes O(n) time and
+	 * O(n) additional memory.
+	 * 
+	 * @param a the array
+	 * @param from the index of the first element (inclusive)
+	 * @param to the index of the last element (exclusive)
+	 */
+	public static void radixSort(int[] a, int from, int to) {
+		rangeCheck(a.length, from, to);
+		if (to - from < RADIXSORT_THRESHOLD)
+			Arrays.sort(a, from, to);
+		else
+			IntSorter.radixSort(a, from, to, null, 1);
+	}
+
+	/**
+	 * Sorts the range [from, to) of the array the same way as the
+	 * {@link #radixSort(int[], int, int)} method does, but uses all
+	 * the available processors if the range is large enough.
+	 * 
+	 * @param a the array
+	 * @param from the index of the first element (inclusive)
+	 * @param to the index of the last element (exclusive)
+	 */
+	public static void parallelRadixSort(int[] a, int from, int to) {
+		rangeCheck(a.length, from, to);
+		if (runsSequentially(to - from, PARALLELISM)) {
+			radixSort(a, from, to);
+			return ;
+		}
+		ExecutorService executor = newExecutor(PARALLELISM);
+		try {
+			IntSorter.radixSort(a, from, to, executor, PARALLELISM);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Sorts the range [from, to) of the array the same way as the
+	 * {@link #radixSort(int[], int, int)} method does, splitting each
+	 * pass into the specified number of tasks run by the executor.
+	 * 
+	 * @param a the array
+	 * @param from the index of the first element (inclusive)
+	 * @param to the index of the last element (exclusive)
+	 * @param executor the executor which runs the tasks
+	 * @param parallelism the number of tasks per pass
+	 */
+	public static void parallelRadixSort(int[] a, int from, int to,
+			ExecutorService executor, int parallelism) {
+		rangeCheck(a.length, from, to);
+		if (runsSequentially(to - from, parallelism))
+			radixSort(a, from, to);
+		else
+			IntSorter.radixSort(a, from, to, executor, parallelism);
+	}
+
+	/**
+	 * Sorts the range [from, to) of the array into ascending numerical
+	 * order using the LSD radix sort, which takes O(n) time and
+	 * O(n) additional memory.
+	 * 
+	 * @param a the array
+	 * @param from the index of the first element (inclusive)
+	 * @param to the index of the last element (exclusive)
+	 */
+	public static void radixSort(long[] a, int from, int to) {
+		rangeCheck(a.length, from, to);
+		if (to - from < RADIXSORT_THRESHOLD)
+			Arrays.sort(a, from, to);
+		else
+			LongSorter.radixSort(a, from, to, null, 1);
+	}
+
+	/**
+	 * Sorts the range [from, to) of the array the same way as the
+	 * {@link #radixSort(long[], int, int)} method does, but uses all
+	 * the available processors if the range is large enough.
+	 * 
+	 * @param a the array
+	 * @param from the index of the first element (inclusive)
+	 * @param to the index of the last element (exclusive)
+	 */
+	public static void parallelRadixSort(long[] a, int from, int to) {
+		rangeCheck(a.length, from, to);
+		if (runsSequentially(to - from, PARALLELISM)) {
+			radixSort(a, from, to);
+			return ;
+		}
+		ExecutorService executor = newExecutor(PARALLELISM);
+		try {
+			LongSorter.radixSort(a, from, to, executor, PARALLELISM);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Sorts the range [from, to) of the array the same way as the
+	 * {@link #radixSort(long[], int, int)} method does, splitting each
+	 * pass into the specified number of tasks run by the executor.
+	 * 
+	 * @param a the array
+	 * @param from the index of the first element (inclusive)
+	 * @param to the index of the last element (exclusive)
+	 * @param executor the executor which runs the tasks
+	 * @param parallelism the number of tasks per pass
+	 */
+	public static void parallelRadixSort(long[] a, int from, int to,
+			ExecutorService executor, int parallelism) {
+		rangeCheck(a.length, from, to);
+		if (runsSequentially(to - from, parallelism))
+			radixSort(a, from, to);
+		else
+			LongSorter.radixSort(a, from, to, executor, parallelism);
+	}
+
+	/**
+	 * Sorts the range [from, to) of the array into ascending numerical
+	 * order using the LSD radix sort, which takes O(n) time and
+	 * O(n) additional memory.
+	 * The order is the one of {@link Float#compare(float, float)}:
+	 * -0.0f comes before 0.0f and all NaNs come last.
+	 * 
+	 * @param a the array
+	 * @param from the index of the first element (inclusive)
+	 * @param to the index of the last element (exclusive)
+	 */
+	public static void radixSort(float[] a, int from, int to) {
+		rangeCheck(a.length, from, to);
+		if (to - from < RADIXSORT_THRESHOLD)
+			Arrays.sort(a, from, to);
+		else
+			FloatSorter.radixSort(a, from, to, null, 1);
+	}
+
+	/**
+	 * Sorts the range [from, to) of the array the same way as the
+	 * {@link #radixSort(float[], int, int)} method does, but uses all
+	 * the available processors if the range is large enough.
+	 * 
+	 * @param a the array
+	 * @param from the index of the first element (inclusive)
+	 * @param to the index of the last element (exclusive)
+	 */
+	public static void parallelRadixSort(float[] a, int from, int to) {
+		rangeCheck(a.length, from, to);
+		if (runsSequentially(to - from, PARALLELISM)) {
+			radixSort(a, from, to);
+			return ;
+		}
+		ExecutorService executor = newExecutor(PARALLELISM);
+		try {
+			FloatSorter.radixSort(a, from, to, executor, PARALLELISM);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Sorts the range [from, to) of the array the same way as the
+	 * {@link #radixSort(float[], int, int)} method does, splitting each
+	 * pass into the specified number of tasks run by the executor.
+	 * 
+	 * @param a the array
+	 * @param from the index of the first element (inclusive)
+	 * @param to the index of the last element (exclusive)
+	 * @param executor the executor which runs the tasks
+	 * @param parallelism the number of tasks per pass
+	 */
+	public static void parallelRadixSort(float[] a, int from, int to,
+			ExecutorService executor, int parallelism) {
+		rangeCheck(a.length, from, to);
+		if (runsSequentially(to - from, parallelism))
+			radixSort(a, from, to);
+		else
+			FloatSorter.radixSort(a, from, to, executor, parallelism);
+	}
+
+	/**
+	 * Sorts the range [from, to) of the array into ascending numerical
+	 * order using the LSD radix sort, which takes O(n) time and
+	 * O(n) additional memory.
+	 * The order is the one of {@link Double#compare(double, double)}:
+	 * -0.0 comes before 0.0 and all NaNs come last.
+	 * 
+	 * @param a the array
+	 * @param from the index of the first element (inclusive)
+	 * @param to the index of the last element (exclusive)
+	 */
+	public static void radixSort(double[] a, int from, int to) {
+		rangeCheck(a.length, from, to);
+		if (to - from < RADIXSORT_THRESHOLD)
+			Arrays.sort(a, from, to);
+		else
+			DoubleSorter.radixSort(a, from, to, null, 1);
+	}
+
+	/**
+	 * Sorts the range [from, to) of the array the same way as the
+	 * {@link #radixSort(double[], int, int)} method does, but uses all
+	 * the available processors if the range is large enough.
+	 * 
+	 * @param a the array
+	 * @param from the index of the first element (inclusive)
+	 * @param to the index of the last element (exclusive)
+	 */
+	public static void parallelRadixSort(double[] a, int from, int to) {
+		rangeCheck(a.length, from, to);
+		if (runsSequentially(to - from, PARALLELISM)) {
+			radixSort(a, from, to);
+			return ;
+		}
+		ExecutorService executor = newExecutor(PARALLELISM);
+		try {
+			DoubleSorter.radixSort(a, from, to, executor, PARALLELISM);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Sorts the range [from, to) of the array the same way as the
+	 * {@link #radixSort(double[], int, int)} method does, splitting each
+	 * pass into the specified number of tasks run by the executor.
+	 * 
+	 * @param a the array
+	 * @param from the index of the first element (inclusive)
+	 * @param to the index of the last element (exclusive)
+	 * @param executor the executor which runs the tasks
+	 * @param parallelism the number of tasks per pass
+	 */
+	public static void parallelRadixSort(double[] a, int from, int to,
+			ExecutorService executor, int parallelism) {
+		rangeCheck(a.length, from, to);
+		if (runsSequentially(to - from, parallelism))
+			radixSort(a, from, to);
+		else
+			DoubleSorter.radixSort(a, from, to, executor, parallelism);
+	}
+
+	/**
+	 * Sorts the range [from, to) of the array into ascending order
+	 * using the merge sort on all the available processors, if the range
+	 * is large enough.
+	 * 
+	 * @param a the array
+	 * @param from the index of the first element (inclusive)
+	 * @param to the index of the last element (exclusive)
+	 */
+	public static void parallelMergeSort(int[] a, int from, int to) {
+		parallelMergeSort(a, from, to, null);
+	}
+
+	/**
+	 * Stably sorts the range [from, to) of the array into the order
+	 * induced by the comparator using the merge sort on all the
+	 * available processors, if the range is large enough.
+	 * 
+	 * @param a the array
+	 * @param from the index of the first element (inclusive)
+	 * @param to the index of the last element (exclusive)
+	 * @param cmp the predicate which holds if the first element
+	 * must come before the second one, or <code>null</code> for the
+	 * natural order
+	 */
+	public static void parallelMergeSort(int[] a, int from, int to,
+			IntBinaryPredicate cmp) {
+		rangeCheck(a.length, from, to);
+		if (runsSequentially(to - from, PARALLELISM)) {
+			parallelMergeSort(a, from, to, null, 1, cmp);
+			return ;
+		}
+		ExecutorService executor = newExecutor(PARALLELISM);
+		try {
+			parallelMergeSort(a, from, to, executor, PARALLELISM, cmp);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Stably sorts the range [from, to) of the array the same way as the
+	 * {@link #parallelMergeSort(int[], int, int, IntBinaryPredicate)}
+	 * method does, splitting the work into the specified number of tasks
+	 * run by the executor.
+	 * 
+	 * @param a the array
+	 * @param from the index of the first element (inclusive)
+	 * @param to the index of the last element (exclusive)
+	 * @param executor the executor which runs the tasks
+	 * @param parallelism the number of tasks
+	 * @param cmp the predicate which holds if the first element
+	 * must come before the second one, or <code>null</code> for the
+	 * natural order
+	 */
+	public static void parallelMergeSort(int[] a, int from, int to,
+			ExecutorService executor, int parallelism,
+			IntBinaryPredicate cmp) {
+		rangeCheck(a.length, from, to);
+		if (runsSequentially(to - from, parallelism)) {
+			if (cmp == null)
+				IntSorter.mergeSort(a, from, to);
+			else
+				IntSorter.mergeSort(a, from, to, cmp);
+		} else {
+			IntSorter.parallelMergeSort(a, from, to, executor, parallelism,
+					cmp);
+		}
+	}
+
+	/**
+	 * A function which maps an object to the int by which it is sorted.
+	 *
+	 * @param <T> type of objects
+	 */
+	public interface IntKey<T> {
+		int keyOf(T element);
+	}
+
+	/**
+	 * A function which maps an object to the long by which it is sorted.
+	 *
+	 * @param <T> type of objects
+	 */
+	public interface LongKey<T> {
+		long keyOf(T element);
+	}
+
+	/**
+	 * Stably sorts the range [from, to) of the array into ascending order
+	 * of the keys of its elements. The key of each element is computed only
+	 * once; the (key, index) pairs are packed into longs and radix sorted,
+	 * and finally the elements are permuted accordingly.
+	 * This takes O(n) time and O(n) additional memory.
+	 * 
+	 * @param a the array
+	 * @param from the index of the first element (inclusive)
+	 * @param to the index of the last element (exclusive)
+	 * @param key the function which returns the key of an element
+	 */
+	public static <T> void sortByIntKey(T[] a, int from, int to,
+			IntKey<? super T> key) {
+		rangeCheck(a.length, from, to);
+		int len = to - from;
+		long[] pairs = new long[len];
+		for (int i = 0; i < len; ++i)
+			pairs[i] = ((long) key.keyOf(a[from + i]) << 32) | i;
+		// the index in the lower half is unique, so no sort can reorder
+		// the elements with equal keys
+		if (len < RADIXSORT_THRESHOLD)
+			Arrays.sort(pairs);
+		else
+			LongSorter.radixSort(pairs, 0, len, null, 1, 32);
+		Object[] sorted = new Object[len];
+		for (int i = 0; i < len; ++i)
+			sorted[i] = a[from + (int) pairs[i]];
+		System.arraycopy(sorted, 0, a, from, len);
+	}
+
+	/**
+	 * Stably sorts the range [from, to) of the array into ascending order
+	 * of the keys of its elements. The key of each element is computed only
+	 * once; the keys are radix sorted along with the indices, and finally
+	 * the elements are permuted accordingly.
+	 * This takes O(n) time and O(n) additional memory.
+	 * 
+	 * @param a the array
+	 * @param from the index of the first element (inclusive)
+	 * @param to the index of the last element (exclusive)
+	 * @param key the function which returns the key of an element
+	 */
+	public static <T> void sortByLongKey(T[] a, int from, int to,
+			LongKey<? super T> key) {
+		rangeCheck(a.length, from, to);
+		int len = to - from;
+		long[] keys = new long[len];
+		int[] indices = new int[len];
+		for (int i = 0; i < len; ++i) {
+			keys[i] = key.keyOf(a[from + i]);
+			indices[i] = i;
+		}
+		indices = LongSorter.radixSort(keys, indices);
+		Object[] sorted = new Object[len];
+		for (int i = 0; i < len; ++i)
+			sorted[i] = a[from + indices[i]];
+		System.arraycopy(sorted, 0, a, from, len);
+	}
+
 	static final int INSERTIONSORT_THRESHOLD = 8;
 
+	static final int RADIXSORT_THRESHOLD = 64;
+
+	static final int PARALLEL_THRESHOLD = 1 << 16;
+
+	static final int PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+	static final int RADIX_BITS = 8;
+
+	static final int RADIX = 1 << RADIX_BITS;
+
 	static class TypeSorter {
 //		static <T> void countingSort0(int[] a, T min, T max, int first, int last) {
 //			int[] count = new int[max - min + 1];
@@ -259,9 +671,521 @@ public class Sorter {
 			a[p + first] = rootVal;
 		}
 
+		static void radixSort(final int[] a, int from, int to,
+				ExecutorService executor, int chunks) {
+			int len = to - from;
+			final int[] buf = new int[len];
+			final int[][] counts = new int[chunks][RADIX];
+			int[] src = a, dst = buf;
+			int srcOff = from, dstOff = 0;
+			for (int shift = 0; shift < 32; shift += RADIX_BITS) {
+				if (radixPass(src, srcOff, dst, dstOff, len, shift,
+						counts, executor)) {
+					int[] tmp = src; src = dst; dst = tmp;
+					int tmpOff = srcOff; srcOff = dstOff; dstOff = tmpOff;
+				}
+			}
+			if (src != a)
+				System.arraycopy(src, srcOff, a, from, len);
+		}
+
+		/**
+		 * Stably distributes the elements by the digit at the specified
+		 * shift, unless all of them have the same digit.
+		 * 
+		 * @return <code>true</code> if the elements were moved into the
+		 * destination array, <code>false</code> otherwise
+		 */
+		private static boolean radixPass(final int[] src, final int srcOff,
+				final int[] dst, int dstOff, int len, final int shift,
+				final int[][] counts, ExecutorService executor) {
+			// flip the sign bit so that negative numbers come first
+			final int flip = shift == 32 - RADIX_BITS ? 0x80 : 0;
+			forEachChunk(executor, counts.length, len, new ChunkTask() {
+				@Override
+				void run(int chunk, int from, int to) {
+					int[] count = counts[chunk];
+					Arrays.fill(count, 0);
+					for (int i = srcOff + from, end = srcOff + to; i < end; ++i) {
+						int x = src[i];
+						++count[((x >>> shift) & 0xff) ^ flip];
+					}
+				}
+			});
+			if (!computeOffsets(counts, len, dstOff))
+				return false;
+			forEachChunk(executor, counts.length, len, new ChunkTask() {
+				@Override
+				void run(int chunk, int from, int to) {
+					int[] count = counts[chunk];
+					for (int i = srcOff + from, end = srcOff + to; i < end; ++i) {
+						int x = src[i];
+						dst[count[((x >>> shift) & 0xff) ^ flip]++] = x;
+					}
+				}
+			});
+			return true;
+		}
+
+		static void parallelMergeSort(final int[] a, int from, int to,
+				ExecutorService executor, int parallelism,
+				final IntBinaryPredicate cmp) {
+			// sort the chunks independently
+			int len = to - from;
+			final int[] bounds = new int[parallelism + 1];
+			for (int i = 0; i <= parallelism; ++i)
+				bounds[i] = from + (int) ((long) len * i / parallelism);
+			forEachChunk(executor, parallelism, parallelism, new ChunkTask() {
+				@Override
+				void run(int chunk, int first, int last) {
+					for (int i = first; i < last; ++i) {
+						if (cmp == null)
+							mergeSort(a, bounds[i], bounds[i + 1]);
+						else
+							mergeSort(a, bounds[i], bounds[i + 1], cmp);
+					}
+				}
+			});
+
+			// merge the pairs of adjacent runs level by level; each merge is
+			// split into pieces proportional to its length, so that all
+			// the threads are busy even when only two runs are left
+			// the runs are relative to the range, which starts at the offset
+			// in the array it is in (the buffer holds just the range)
+			int[] src = a, dst = new int[len];
+			int srcOffset = from, dstOffset = 0;
+			int[] runs = new int[bounds.length];
+			for (int i = 0; i < runs.length; ++i)
+				runs[i] = bounds[i] - from;
+			while (runs.length > 2) {
+				List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+				int[] merged = new int[(runs.length >> 1) + 1];
+				for (int r = 0; r + 1 < runs.length; r += 2) {
+					int first = runs[r];
+					int mid = runs[r + 1];
+					int last = r + 2 < runs.length ? runs[r + 2] : mid;
+					int pieces = (int) Math.max(1,
+							(long) parallelism * (last - first) / len);
+					for (int p = 0; p < pieces; ++p) {
+						tasks.add(mergeTask(src, srcOffset, dst, dstOffset,
+								first, mid, last,
+								first + (int) ((long) (last - first) * p / pieces),
+								first + (int) ((long) (last - first) * (p + 1)
+										/ pieces),
+								cmp != null ? cmp : NATURAL_ORDER));
+					}
+					merged[r >> 1] = first;
+				}
+				merged[merged.length - 1] = len;
+				invokeAll(executor, tasks);
+				int[] tmp = src; src = dst; dst = tmp;
+				int offset = srcOffset; srcOffset = dstOffset; dstOffset = offset;
+				runs = merged;
+			}
+			if (src != a)
+				System.arraycopy(src, 0, a, from, len);
+		}
+
+		/**
+		 * Creates a task which writes the elements [outFirst, outLast) of
+		 * the merge of the sorted runs [first, mid) and [mid, last), where
+		 * all the indices are relative to the offsets of the range within
+		 * the source and the destination array.
+		 */
+		private static Callable<Void> mergeTask(final int[] src,
+				final int srcOffset, final int[] dst, final int dstOffset,
+				final int first, final int mid, final int last,
+				final int outFirst, final int outLast,
+				final IntBinaryPredicate cmp) {
+			return new Callable<Void>() {
+				@Override
+				public Void call() {
+					int runStart = srcOffset + first;
+					int runMid = srcOffset + mid, runEnd = srcOffset + last;
+					int p = runStart + coRank(src, runStart, runMid, runEnd,
+							outFirst - first, cmp);
+					int q = runMid + (outFirst - first) - (p - runStart);
+					for (int i = dstOffset + outFirst;
+							i < dstOffset + outLast; ++i) {
+						if (q >= runEnd
+								|| p < runMid && !cmp.holds(src[q], src[p]))
+							dst[i] = src[p++];
+						else
+							dst[i] = src[q++];
+					}
+					return null;
+				}
+			};
+		}
+
+		/**
+		 * Returns how many of the first k elements of the (stable) merge of
+		 * the sorted runs [first, mid) and [mid, last) come from the first run.
+		 */
+		private static int coRank(int[] a, int first, int mid, int last, int k,
+				IntBinaryPredicate cmp) {
+			int lo = Math.max(0, k - (last - mid));
+			int hi = Math.min(k, mid - first);
+			while (lo < hi) {
+				int i = (lo + hi) >>> 1;
+				int j = k - i;
+				// if a[first + i] precedes a[mid + j - 1], more elements
+				// have to be taken from the first run
+				if (!cmp.holds(a[mid + j - 1], a[first + i]))
+					lo = i + 1;
+				else
+					hi = i;
+			}
+			return lo;
+		}
+
+		private static final IntBinaryPredicate NATURAL_ORDER
+		= new IntBinaryPredicate() {
+			@Override
+			public boolean holds(int a, int b) {
+				return a < b;
+			}
+		};
+
 		private static void checkMinMax(int min, int max) {
 			if (min > max)
 				throw new IllegalArgumentException();
 		}
 	}
+
+	static class LongSorter {
+		static void radixSort(long[] a, int from, int to,
+				ExecutorService executor, int chunks) {
+			radixSort(a, from, to, executor, chunks, 0);
+		}
+
+		/**
+		 * Sorts the range as if the bits below the specified shift were
+		 * all zeros, that is, stably by the bits from that shift onwards.
+		 */
+		static void radixSort(final long[] a, int from, int to,
+				ExecutorService executor, int chunks, int firstShift) {
+			int len = to - from;
+			final long[] buf = new long[len];
+			final int[][] counts = new int[chunks][RADIX];
+			long[] src = a, dst = buf;
+			int srcOff = from, dstOff = 0;
+			for (int shift = firstShift; shift < 64; shift += RADIX_BITS) {
+				if (radixPass(src, srcOff, dst, dstOff, len, shift,
+						counts, executor)) {
+					long[] tmp = src; src = dst; dst = tmp;
+					int tmpOff = srcOff; srcOff = dstOff; dstOff = tmpOff;
+				}
+			}
+			if (src != a)
+				System.arraycopy(src, srcOff, a, from, len);
+		}
+
+		/**
+		 * Stably distributes the elements by the digit at the specified
+		 * shift, unless all of them have the same digit.
+		 * 
+		 * @return <code>true</code> if the elements were moved into the
+		 * destination array, <code>false</code> otherwise
+		 */
+		private static boolean radixPass(final long[] src, final int srcOff,
+				final long[] dst, int dstOff, int len, final int shift,
+				final int[][] counts, ExecutorService executor) {
+			// flip the sign bit so that negative numbers come first
+			final int flip = shift == 64 - RADIX_BITS ? 0x80 : 0;
+			forEachChunk(executor, counts.length, len, new ChunkTask() {
+				@Override
+				void run(int chunk, int from, int to) {
+					int[] count = counts[chunk];
+					Arrays.fill(count, 0);
+					for (int i = srcOff + from, end = srcOff + to; i < end; ++i) {
+						long x = src[i];
+						++count[((int) (x >>> shift) & 0xff) ^ flip];
+					}
+				}
+			});
+			if (!computeOffsets(counts, len, dstOff))
+				return false;
+			forEachChunk(executor, counts.length, len, new ChunkTask() {
+				@Override
+				void run(int chunk, int from, int to) {
+					int[] count = counts[chunk];
+					for (int i = srcOff + from, end = srcOff + to; i < end; ++i) {
+						long x = src[i];
+						dst[count[((int) (x >>> shift) & 0xff) ^ flip]++] = x;
+					}
+				}
+			});
+			return true;
+		}
+
+		/**
+		 * Stably sorts the keys together with the values.
+		 * 
+		 * @return the array (either the specified one or a new one)
+		 * which holds the values in the sorted order
+		 */
+		static int[] radixSort(long[] keys, int[] values) {
+			int len = keys.length;
+			long[] keyBuf = new long[len];
+			int[] valueBuf = new int[len];
+			int[][] counts = new int[1][RADIX];
+			int[] count = counts[0];
+			for (int shift = 0; shift < 64; shift += RADIX_BITS) {
+				int flip = shift == 64 - RADIX_BITS ? 0x80 : 0;
+				Arrays.fill(count, 0);
+				for (int i = 0; i < len; ++i)
+					++count[((int) (keys[i] >>> shift) & 0xff) ^ flip];
+				if (!computeOffsets(counts, len, 0))
+					continue;
+				for (int i = 0; i < len; ++i) {
+					long x = keys[i];
+					int pos = count[((int) (x >>> shift) & 0xff) ^ flip]++;
+					keyBuf[pos] = x;
+					valueBuf[pos] = values[i];
+				}
+				long[] tmpKeys = keys; keys = keyBuf; keyBuf = tmpKeys;
+				int[] tmpValues = values; values = valueBuf; valueBuf = tmpValues;
+			}
+			return values;
+		}
+	}
+
+	static class FloatSorter {
+		static void radixSort(final float[] a, int from, int to,
+				ExecutorService executor, int chunks) {
+			int len = to - from;
+			final float[] buf = new float[len];
+			final int[][] counts = new int[chunks][RADIX];
+			float[] src = a, dst = buf;
+			int srcOff = from, dstOff = 0;
+			for (int shift = 0; shift < 32; shift += RADIX_BITS) {
+				if (radixPass(src, srcOff, dst, dstOff, len, shift,
+						counts, executor)) {
+					float[] tmp = src; src = dst; dst = tmp;
+					int tmpOff = srcOff; srcOff = dstOff; dstOff = tmpOff;
+				}
+			}
+			if (src != a)
+				System.arraycopy(src, srcOff, a, from, len);
+		}
+
+		/**
+		 * Stably distributes the elements by the digit at the specified
+		 * shift, unless all of them have the same digit.
+		 * 
+		 * @return <code>true</code> if the elements were moved into the
+		 * destination array, <code>false</code> otherwise
+		 */
+		private static boolean radixPass(final float[] src, final int srcOff,
+				final float[] dst, int dstOff, int len, final int shift,
+				final int[][] counts, ExecutorService executor) {
+			forEachChunk(executor, counts.length, len, new ChunkTask() {
+				@Override
+				void run(int chunk, int from, int to) {
+					int[] count = counts[chunk];
+					Arrays.fill(count, 0);
+					for (int i = srcOff + from, end = srcOff + to; i < end; ++i) {
+						float x = src[i];
+						++count[(key(x) >>> shift) & 0xff];
+					}
+				}
+			});
+			if (!computeOffsets(counts, len, dstOff))
+				return false;
+			forEachChunk(executor, counts.length, len, new ChunkTask() {
+				@Override
+				void run(int chunk, int from, int to) {
+					int[] count = counts[chunk];
+					for (int i = srcOff + from, end = srcOff + to; i < end; ++i) {
+						float x = src[i];
+						dst[count[(key(x) >>> shift) & 0xff]++] = x;
+					}
+				}
+			});
+			return true;
+		}
+
+		/**
+		 * Maps the float to an int whose unsigned order is the order
+		 * of {@link Float#compare(float, float)}, that is, -0.0f comes
+		 * before 0.0f and all NaNs come last.
+		 */
+		static int key(float x) {
+			int bits = Float.floatToIntBits(x);
+			return bits ^ ((bits >> 31) | Integer.MIN_VALUE);
+		}
+	}
+
+	static class DoubleSorter {
+		static void radixSort(final double[] a, int from, int to,
+				ExecutorService executor, int chunks) {
+			int len = to - from;
+			final double[] buf = new double[len];
+			final int[][] counts = new int[chunks][RADIX];
+			double[] src = a, dst = buf;
+			int srcOff = from, dstOff = 0;
+			for (int shift = 0; shift < 64; shift += RADIX_BITS) {
+				if (radixPass(src, srcOff, dst, dstOff, len, shift,
+						counts, executor)) {
+					double[] tmp = src; src = dst; dst = tmp;
+					int tmpOff = srcOff; srcOff = dstOff; dstOff = tmpOff;
+				}
+			}
+			if (src != a)
+				System.arraycopy(src, srcOff, a, from, len);
+		}
+
+		/**
+		 * Stably distributes the elements by the digit at the specified
+		 * shift, unless all of them have the same digit.
+		 * 
+		 * @return <code>true</code> if the elements were moved into the
+		 * destination array, <code>false</code> otherwise
+		 */
+		private static boolean radixPass(final double[] src, final int srcOff,
+				final double[] dst, int dstOff, int len, final int shift,
+				final int[][] counts, ExecutorService executor) {
+			forEachChunk(executor, counts.length, len, new ChunkTask() {
+				@Override
+				void run(int chunk, int from, int to) {
+					int[] count = counts[chunk];
+					Arrays.fill(count, 0);
+					for (int i = srcOff + from, end = srcOff + to; i < end; ++i) {
+						double x = src[i];
+						++count[(int) (key(x) >>> shift) & 0xff];
+					}
+				}
+			});
+			if (!computeOffsets(counts, len, dstOff))
+				return false;
+			forEachChunk(executor, counts.length, len, new ChunkTask() {
+				@Override
+				void run(int chunk, int from, int to) {
+					int[] count = counts[chunk];
+					for (int i = srcOff + from, end = srcOff + to; i < end; ++i) {
+						double x = src[i];
+						dst[count[(int) (key(x) >>> shift) & 0xff]++] = x;
+					}
+				}
+			});
+			return true;
+		}
+
+		/**
+		 * Maps the double to a long whose unsigned order is the order
+		 * of {@link Double#compare(double, double)}, that is, -0.0 comes
+		 * before 0.0 and all NaNs come last.
+		 */
+		static long key(double x) {
+			long bits = Double.doubleToLongBits(x);
+			return bits ^ ((bits >> 63) | Long.MIN_VALUE);
+		}
+	}
+
+	/**
+	 * A part of the work which is done on the chunk [from, to)
+	 * of a range divided into equal chunks.
+	 */
+	static abstract class ChunkTask {
+		abstract void run(int chunk, int from, int to);
+	}
+
+	/**
+	 * Divides the range [0, len) into the specified number of chunks and
+	 * runs the task on each of them, using the executor if it is not
+	 * <code>null</code>. Returns when all the chunks have been processed.
+	 */
+	static void forEachChunk(ExecutorService executor, int chunks, int len,
+			final ChunkTask task) {
+		if (executor == null || chunks == 1) {
+			for (int c = 0; c < chunks; ++c)
+				task.run(c, (int) ((long) len * c / chunks),
+						(int) ((long) len * (c + 1) / chunks));
+			return ;
+		}
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(chunks);
+		for (int c = 0; c < chunks; ++c) {
+			final int chunk = c;
+			final int from = (int) ((long) len * c / chunks);
+			final int to = (int) ((long) len * (c + 1) / chunks);
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					task.run(chunk, from, to);
+					return null;
+				}
+			});
+		}
+		invokeAll(executor, tasks);
+	}
+
+	static void invokeAll(ExecutorService executor,
+			List<Callable<Void>> tasks) {
+		try {
+			for (Future<Void> f : executor.invokeAll(tasks))
+				f.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while sorting", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	/**
+	 * Turns the per-chunk digit counts into the positions at which each
+	 * chunk starts writing the elements with that digit, so that the
+	 * distribution is stable.
+	 * 
+	 * @return <code>false</code> if all the elements have the same digit,
+	 * in which case the counts are left unchanged
+	 */
+	static boolean computeOffsets(int[][] counts, int len, int offset) {
+		for (int d = 0; d < RADIX; ++d) {
+			int total = 0;
+			for (int[] count : counts)
+				total += count[d];
+			if (total == len)
+				return false;
+		}
+		for (int d = 0; d < RADIX; ++d) {
+			for (int[] count : counts) {
+				int c = count[d];
+				count[d] = offset;
+				offset += c;
+			}
+		}
+		return true;
+	}
+
+	static ExecutorService newExecutor(int parallelism) {
+		return Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "sorter");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	static boolean runsSequentially(int len, int parallelism) {
+		return len < PARALLEL_THRESHOLD || parallelism < 2;
+	}
+
+	private static void rangeCheck(int length, int from, int to) {
+		if (from > to)
+			throw new IllegalArgumentException("from(" + from + ") > to("
+					+ to + ")");
+		if (from < 0)
+			throw new ArrayIndexOutOfBoundsException(from);
+		if (to > length)
+			throw new ArrayIndexOutOfBoundsException(to);
+	}
 }
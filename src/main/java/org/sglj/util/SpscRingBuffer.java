@@ -0,0 +1,130 @@
+/*
+ * SpscRingBuffer.java
+ *
+ * Copyright (C) 2011 Leo Osvald <leo.osvald@gmail.com>
+ *
+ * This file is part of SGLJ.
+ *
+ * SGLJ is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SGLJ is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sglj.util;
+
+import java.util.Collection;
+
+/**
+ * A lock-free {@link RingBuffer} for exactly one producer thread and
+ * exactly one consumer thread.<br>
+ * Each side keeps a private cache of the other side's sequence and
+ * reads the shared sequence only when the cached one indicates that
+ * the buffer is full (or empty), so in the common case an operation
+ * touches only the cache lines it owns. Sequences are published with
+ * ordered (lazy) writes, which need no memory fence on most platforms.
+ * <br>
+ * The behavior is undefined if more than one thread inserts or
+ * more than one thread removes elements.
+ *
+ * @author Leo Osvald
+ * @version 1.0
+ *
+ * @param <E> the type of elements held in the buffer
+ */
+public class SpscRingBuffer<E> extends AbstractRingBuffer<E> {
+
+	// padding between the caches of the producer and the consumer
+	long p00, p01, p02, p03, p04, p05, p06, p07;
+	private long headCache; // accessed only by the producer
+	long p10, p11, p12, p13, p14, p15, p16, p17;
+	private long tailCache; // accessed only by the consumer
+	long p20, p21, p22, p23, p24, p25, p26, p27;
+
+	/**
+	 * Creates the buffer which can hold at least the specified number
+	 * of elements and waits according to the {@link WaitStrategy#BACK_OFF}
+	 * strategy.
+	 * @param capacity the minimum capacity (rounded up to a power of two)
+	 */
+	public SpscRingBuffer(int capacity) {
+		this(capacity, WaitStrategy.BACK_OFF);
+	}
+
+	/**
+	 * Creates the buffer which can hold at least the specified number
+	 * of elements.
+	 * @param capacity the minimum capacity (rounded up to a power of two)
+	 * @param waitStrategy the strategy used by blocking operations
+	 */
+	public SpscRingBuffer(int capacity, WaitStrategy waitStrategy) {
+		super(capacity, waitStrategy);
+	}
+
+	@Override
+	public boolean offer(E e) {
+		if (e == null)
+			throw new NullPointerException();
+		final long t = tail.get();
+		if (t - headCache > mask) {
+			headCache = head.get();
+			if (t - headCache > mask)
+				return false;
+		}
+		buffer.lazySet((int) t & mask, e);
+		tail.lazySet(t + 1);
+		return true;
+	}
+
+	@Override
+	public E poll() {
+		final long h = head.get();
+		if (h == tailCache) {
+			tailCache = tail.get();
+			if (h == tailCache)
+				return null;
+		}
+		final int index = (int) h & mask;
+		E e = buffer.get(index);
+		buffer.lazySet(index, null);
+		head.lazySet(h + 1);
+		return e;
+	}
+
+	@Override
+	public E peek() {
+		final long h = head.get();
+		if (h == tailCache) {
+			tailCache = tail.get();
+			if (h == tailCache)
+				return null;
+		}
+		return buffer.get((int) h & mask);
+	}
+
+	@Override
+	public int drainTo(Collection<? super E> c, int maxElements) {
+		final long h = head.get();
+		tailCache = tail.get();
+		long available = tailCache - h;
+		int n = available < maxElements ? (int) available
+				: Math.max(maxElements, 0);
+		for (int i = 0; i < n; ++i) {
+			final int index = (int) (h + i) & mask;
+			c.add(buffer.get(index));
+			buffer.lazySet(index, null);
+		}
+		// publish the whole batch at once
+		if (n > 0)
+			head.lazySet(h + n);
+		return n;
+	}
+}
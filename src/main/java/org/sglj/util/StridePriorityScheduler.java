@@ -0,0 +1,208 @@
+/*
+ * StridePriorityScheduler.java
+ * 
+ * Copyright (C) 2010 Leo Osvald <leo.osvald@gmail.com>
+ * 
+ * This file is part of SGLJ.
+ * 
+ * SGLJ is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * SGLJ is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sglj.util;
+
+import java.util.Arrays;
+
+/**
+ * <p>Implementation of {@link PriorityScheduler} interface which
+ * deterministically gives each "task" the share of the calls of the
+ * {@link #get()} method proportional to its priority (the higher
+ * the priority the greater the share), without the variance of
+ * the random choice (as in the {@link RandomPriorityScheduler}).</p>
+ * <p>This is the stride scheduling (Waldspurger and Weihl, 1995):
+ * each task has a stride inversely proportional to its priority,
+ * and a pass which is advanced by the stride whenever the task is
+ * chosen, and the task with the smallest pass is chosen next. Hence
+ * the passes of all the tasks stay within the largest stride of each
+ * other, and the number of times each task is chosen differs from its
+ * exact share by a bound which does not grow with the number of calls
+ * (whereas the error of the random choice grows as its square root).
+ * The tasks which are added start from the pass of the last
+ * chosen task, and a change of priority scales the remaining part of
+ * the pass, so neither can be used to gain a greater share.<br>
+ * The tasks are kept in a binary heap ordered by their passes, so all
+ * the methods take logarithmic time complexity (amortized, as the tables
+ * grow). Ties are broken by the order in which the tasks occupied their
+ * slots, so the schedule is reproducible.<br>
+ * Each task is scheduled at most once; adding a task which
+ * is already scheduled only changes its priority.</p>
+ * 
+ * @author Leo Osvald
+ * @version 1.0
+ * @param <T> type of "task"
+ */
+public class StridePriorityScheduler<T> extends AbstractPriorityScheduler<T> {
+	
+	/**
+	 * The stride of the task with the relative priority (weight) of one.
+	 * The passes are compared modulo 2<sup>64</sup>, so they can safely
+	 * overflow.
+	 */
+	private static final long STRIDE1 = 1L << 40;
+	
+	// the state of the tasks, by slot
+	private long[] passes = new long[INITIAL_CAPACITY];
+	private int[] positions = new int[INITIAL_CAPACITY];
+	// the binary heap of slots, ordered by the passes
+	private int[] heap = new int[INITIAL_CAPACITY];
+	private int size;
+	private final IntDeque freeSlots = new IntDeque();
+	private int usedSlots;
+	// the pass of the last chosen task
+	private long globalPass;
+	
+	/**
+	 * Gets the "task" whose turn it is, and advances its pass.
+	 * @return "task" or <code>null</code> there is none scheduled.
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public T get() {
+		if(size == 0)
+			return null;
+		int slot = heap[0];
+		globalPass = passes[slot];
+		passes[slot] += stride(weights[slot]);
+		siftDown(0);
+		return (T) tasks[slot];
+	}
+	
+	@Override
+	public void add(T task, short priority) {
+		if(slots.containsKey(task)) {
+			setPriority(task, priority);
+			return;
+		}
+		int slot;
+		if(!freeSlots.isEmpty()) {
+			slot = freeSlots.removeLast();
+		} else {
+			if(usedSlots == tasks.length)
+				grow();
+			slot = usedSlots++;
+		}
+		tasks[slot] = task;
+		weights[slot] = relativePriority(priority);
+		passes[slot] = globalPass + stride(weights[slot]);
+		totalWeight += weights[slot];
+		slots.addTo(task, slot + 1);
+		heap[size] = slot;
+		positions[slot] = size;
+		siftUp(size++);
+	}
+	
+	@Override
+	public void remove(T task) {
+		int slot = slots.remove(task) - 1;
+		if(slot != -1) {
+			// move the last slot of the heap into the vacated position
+			int pos = positions[slot];
+			int moved = heap[--size];
+			if(pos != size) {
+				heap[pos] = moved;
+				positions[moved] = pos;
+				siftUp(pos);
+				siftDown(positions[moved]);
+			}
+			totalWeight -= weights[slot];
+			tasks[slot] = null;
+			freeSlots.addLast(slot);
+		}
+	}
+	
+	@Override
+	public void setPriority(T task, short priority) {
+		int slot = slotOf(task);
+		if(slot != -1) {
+			int weight = relativePriority(priority);
+			long remaining = passes[slot] - globalPass;
+			passes[slot] = globalPass + (long) ((double) remaining 
+					* weights[slot] / weight);
+			totalWeight += weight - weights[slot];
+			weights[slot] = weight;
+			siftUp(positions[slot]);
+			siftDown(positions[slot]);
+		}
+	}
+	
+	/**
+	 * Returns the share of the calls of {@link #get()} which the task
+	 * receives.
+	 * @param task "task"
+	 * @return share (real number from range [0, 1])
+	 */
+	public double getShare(T task) {
+		return share(task);
+	}
+	
+	private static long stride(int weight) {
+		return STRIDE1 / weight;
+	}
+	
+	private boolean less(int slot1, int slot2) {
+		long d = passes[slot1] - passes[slot2];
+		return d < 0 || d == 0 && slot1 < slot2;
+	}
+	
+	private void siftUp(int pos) {
+		int slot = heap[pos];
+		while(pos > 0) {
+			int parent = (pos - 1) >>> 1;
+			if(!less(slot, heap[parent]))
+				break;
+			heap[pos] = heap[parent];
+			positions[heap[pos]] = pos;
+			pos = parent;
+		}
+		heap[pos] = slot;
+		positions[slot] = pos;
+	}
+	
+	private void siftDown(int pos) {
+		int slot = heap[pos];
+		while(true) {
+			int child = 2 * pos + 1;
+			if(child >= size)
+				break;
+			if(child + 1 < size && less(heap[child + 1], heap[child]))
+				++child;
+			if(!less(heap[child], slot))
+				break;
+			heap[pos] = heap[child];
+			positions[heap[pos]] = pos;
+			pos = child;
+		}
+		heap[pos] = slot;
+		positions[slot] = pos;
+	}
+	
+	private void grow() {
+		int capacity = tasks.length << 1;
+		tasks = Arrays.copyOf(tasks, capacity);
+		weights = Arrays.copyOf(weights, capacity);
+		passes = Arrays.copyOf(passes, capacity);
+		positions = Arrays.copyOf(positions, capacity);
+		heap = Arrays.copyOf(heap, capacity);
+	}
+	
+}
@@ -0,0 +1,343 @@
+/*
+ * TimeWindowAggregator.java
+ *
+ * Copyright (C) 2011 Leo Osvald <leo.osvald@gmail.com>
+ *
+ * This file is part of SGLJ.
+ *
+ * SGLJ is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SGLJ is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sglj.util;
+
+import java.util.NoSuchElementException;
+
+/**
+ * <p>Aggregates <code>long</code> samples which were added during the last
+ * {@link #getWindow()} milliseconds, that is, a combination of
+ * a {@link LazyTimeoutQueue} and a {@link org.sglj.util.struct.MinimumQueue}
+ * which maintains the count, the sum, the minimum and the maximum
+ * of the samples in the window.</p>
+ * <p>The samples and their time stamps are kept in a single pair of
+ * primitive ring buffers, and the minimum and the maximum are
+ * maintained by monotonic deques of sequence numbers which refer
+ * to that buffer, so no sample is boxed or stored twice.<br>
+ * Insertion, expiration and all aggregate queries take constant
+ * amortized time. Expired samples are removed lazily, whenever
+ * a sample is added or an aggregate is queried (similarly to the
+ * {@link LazyTimeoutQueue}).</p>
+ * <p>The current time is obtained from the {@link Clock} specified
+ * in the constructor.</p>
+ *
+ * @author Leo Osvald
+ * @version 1.0
+ */
+public class TimeWindowAggregator {
+
+	private static final int MIN_INITIAL_CAPACITY = 8;
+
+	private final Clock clock;
+	private long window;
+
+	/*
+	 * The sample with the sequence number s is stored at the index
+	 * (s & (times.length - 1)); the samples in the window are those
+	 * with sequence numbers in [headSeq, tailSeq).
+	 */
+	private long[] times;
+	private long[] values;
+	private long headSeq;
+	private long tailSeq;
+
+	private long sum;
+
+	// sequence numbers of the candidates for the minimum/maximum
+	private final SeqDeque minDeque;
+	private final SeqDeque maxDeque;
+
+	/**
+	 * Creates an aggregator over the specified window, which uses the
+	 * specified clock and has the specified initial capacity.
+	 * @param window the length of the window in milliseconds
+	 * @param clock the clock which determines the current time
+	 * @param initialCapacity the number of samples which can be held
+	 * before the internal buffers are resized
+	 */
+	public TimeWindowAggregator(long window, Clock clock,
+			int initialCapacity) {
+		if (clock == null)
+			throw new NullPointerException("Clock cannot be null");
+		this.clock = clock;
+		setWindow(window);
+		int capacity = capacityFor(initialCapacity);
+		this.times = new long[capacity];
+		this.values = new long[capacity];
+		this.minDeque = new SeqDeque(capacity);
+		this.maxDeque = new SeqDeque(capacity);
+	}
+
+	/**
+	 * Creates an aggregator over the specified window, which uses the
+	 * specified clock.
+	 * @param window the length of the window in milliseconds
+	 * @param clock the clock which determines the current time
+	 */
+	public TimeWindowAggregator(long window, Clock clock) {
+		this(window, clock, MIN_INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Creates an aggregator over the specified window, which uses the
+	 * system clock.
+	 * @param window the length of the window in milliseconds
+	 */
+	public TimeWindowAggregator(long window) {
+		this(window, Clock.SYSTEM);
+	}
+
+	/**
+	 * Sets the length of the window. Samples which are older than the
+	 * new window are removed on the next modification or query.
+	 * @param window the length of the window in milliseconds
+	 */
+	public void setWindow(long window) {
+		if (window <= 0)
+			throw new IllegalArgumentException("Window must be positive");
+		this.window = window;
+	}
+
+	/**
+	 * Returns the length of the window.
+	 * @return the length of the window in milliseconds
+	 */
+	public long getWindow() {
+		return window;
+	}
+
+	/**
+	 * Returns the clock used by this aggregator.
+	 * @return the clock
+	 */
+	public Clock getClock() {
+		return clock;
+	}
+
+	/**
+	 * Adds a sample with the current time stamp.
+	 * @param value the value of the sample
+	 */
+	public void add(long value) {
+		long now = clock.currentTimeMillis();
+		dequeExpired(now);
+		if (tailSeq - headSeq == times.length)
+			doubleCapacity();
+
+		final int mask = times.length - 1;
+		final long seq = tailSeq++;
+		times[(int) seq & mask] = now;
+		values[(int) seq & mask] = value;
+		sum += value;
+
+		while (!minDeque.isEmpty()
+				&& values[(int) minDeque.peekLast() & mask] >= value)
+			minDeque.pollLast();
+		minDeque.addLast(seq);
+		while (!maxDeque.isEmpty()
+				&& values[(int) maxDeque.peekLast() & mask] <= value)
+			maxDeque.pollLast();
+		maxDeque.addLast(seq);
+	}
+
+	/**
+	 * Removes all samples which are not in the window any more.
+	 * @return the number of removed samples
+	 */
+	public int dequeExpired() {
+		return dequeExpired(clock.currentTimeMillis());
+	}
+
+	/**
+	 * Returns the number of samples in the window.
+	 * @return the number of samples
+	 */
+	public int count() {
+		dequeExpired();
+		return (int) (tailSeq - headSeq);
+	}
+
+	/**
+	 * Checks whether there are no samples in the window.
+	 * @return <code>true</code> if there are no samples,
+	 * <code>false</code> otherwise
+	 */
+	public boolean isEmpty() {
+		return count() == 0;
+	}
+
+	/**
+	 * Returns the sum of the samples in the window.
+	 * @return the sum (0 if there are no samples)
+	 */
+	public long sum() {
+		dequeExpired();
+		return sum;
+	}
+
+	/**
+	 * Returns the least sample in the window.
+	 * @return the least sample
+	 * @throws NoSuchElementException if there are no samples
+	 */
+	public long min() {
+		dequeExpired();
+		if (minDeque.isEmpty())
+			throw new NoSuchElementException();
+		return values[(int) minDeque.peekFirst() & (values.length - 1)];
+	}
+
+	/**
+	 * Returns the greatest sample in the window.
+	 * @return the greatest sample
+	 * @throws NoSuchElementException if there are no samples
+	 */
+	public long max() {
+		dequeExpired();
+		if (maxDeque.isEmpty())
+			throw new NoSuchElementException();
+		return values[(int) maxDeque.peekFirst() & (values.length - 1)];
+	}
+
+	/**
+	 * Removes all samples.
+	 */
+	public void clear() {
+		headSeq = tailSeq;
+		sum = 0;
+		minDeque.clear();
+		maxDeque.clear();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("[");
+		final int mask = values.length - 1;
+		for (long seq = headSeq; seq != tailSeq; ++seq) {
+			if (seq != headSeq)
+				sb.append(", ");
+			sb.append(values[(int) seq & mask]).append('@')
+			.append(times[(int) seq & mask]);
+		}
+		return sb.append(']').toString();
+	}
+
+	private int dequeExpired(long now) {
+		final int mask = times.length - 1;
+		int popCount = 0;
+		while (headSeq != tailSeq
+				&& now - times[(int) headSeq & mask] >= window) {
+			sum -= values[(int) headSeq & mask];
+			if (minDeque.peekFirst() == headSeq)
+				minDeque.pollFirst();
+			if (maxDeque.peekFirst() == headSeq)
+				maxDeque.pollFirst();
+			++headSeq;
+			++popCount;
+		}
+		return popCount;
+	}
+
+	/**
+	 * Doubles the capacity of the buffers. Since the position of a sample
+	 * is determined by its sequence number, the samples are rehashed
+	 * rather than compacted.
+	 */
+	private void doubleCapacity() {
+		int n = times.length;
+		int newCapacity = n << 1;
+		if (newCapacity < 0)
+			throw new IllegalStateException("Sorry, window too big");
+		long[] newTimes = new long[newCapacity];
+		long[] newValues = new long[newCapacity];
+		for (long seq = headSeq; seq != tailSeq; ++seq) {
+			newTimes[(int) seq & (newCapacity - 1)] = times[(int) seq & (n - 1)];
+			newValues[(int) seq & (newCapacity - 1)] = values[(int) seq & (n - 1)];
+		}
+		times = newTimes;
+		values = newValues;
+		minDeque.resize(newCapacity);
+		maxDeque.resize(newCapacity);
+	}
+
+	private static int capacityFor(int numElements) {
+		if (numElements < 0)
+			throw new IllegalArgumentException();
+		int capacity = MIN_INITIAL_CAPACITY;
+		while (capacity < numElements && capacity > 0)
+			capacity <<= 1;
+		if (capacity < 0)
+			capacity >>>= 1;
+		return capacity;
+	}
+
+	/**
+	 * Bounded ring-buffer deque of sequence numbers. It never holds more
+	 * elements than the samples buffer, so it is resized along with it.
+	 */
+	private static final class SeqDeque {
+		long[] elements;
+		int head;
+		int size;
+
+		SeqDeque(int capacity) {
+			elements = new long[capacity];
+		}
+
+		boolean isEmpty() {
+			return size == 0;
+		}
+
+		long peekFirst() {
+			return size == 0 ? -1 : elements[head];
+		}
+
+		long peekLast() {
+			return elements[(head + size - 1) & (elements.length - 1)];
+		}
+
+		void pollFirst() {
+			head = (head + 1) & (elements.length - 1);
+			--size;
+		}
+
+		void pollLast() {
+			--size;
+		}
+
+		void addLast(long seq) {
+			elements[(head + size++) & (elements.length - 1)] = seq;
+		}
+
+		void clear() {
+			head = size = 0;
+		}
+
+		void resize(int capacity) {
+			long[] a = new long[capacity];
+			for (int i = 0; i < size; ++i)
+				a[i] = elements[(head + i) & (elements.length - 1)];
+			elements = a;
+			head = 0;
+		}
+	}
+}
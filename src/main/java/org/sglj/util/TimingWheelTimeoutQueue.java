@@ -0,0 +1,481 @@
+/*
+ * TimingWheelTimeoutQueue.java
+ *
+ * Copyright (C) 2011 Leo Osvald <leo.osvald@gmail.com>
+ *
+ * This file is part of SGLJ.
+ *
+ * SGLJ is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SGLJ is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sglj.util;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * <p>An implementation of the {@link LazyTimeoutQueue} based on the
+ * hashed hierarchical timing wheel (Varghese and Lauck, 1987), which
+ * supports a separate deadline for each element.</p>
+ * <p>The time is divided into ticks of the duration specified in the
+ * constructor. The elements are kept in {@value #LEVELS} wheels of
+ * {@value #WHEEL_SIZE} slots, where a slot of the wheel at the level
+ * <code>l</code> spans <code>WHEEL_SIZE<sup>l</sup></code> ticks; an
+ * element is put in the lowest wheel which spans its deadline, and
+ * moves to the lower wheels (cascades) as its deadline approaches.
+ * Hence insertion and removal (including cancellation through the
+ * {@link Timeout} handle) take constant time, and all the elements which
+ * expire in the same tick are expired together, as one batch. Ticks in
+ * which no element can expire are skipped, so the time it takes to
+ * expire elements does not depend on the time elapsed since the last
+ * expiration.
+ * An element expires within one tick after its deadline (never before).
+ * </p>
+ * <p>The queue also keeps the elements in the order of insertion, which
+ * is the order in which they are polled and iterated over.
+ * As specified by the {@link LazyTimeoutQueue}, the expired elements are
+ * removed when the queue is modified, or when the
+ * {@link #dequeExpired()} or the {@link #popExpired()} method is called.
+ * The current time is obtained from the {@link Clock} specified in the
+ * constructor.</p>
+ * <p>This class is not thread-safe.</p>
+ *
+ * @author Leo Osvald
+ * @version 1.0
+ *
+ * @param <E> the type of elements held in the queue
+ */
+public class TimingWheelTimeoutQueue<E> extends AbstractQueue<E>
+implements LazyTimeoutQueue<E> {
+
+	/**
+	 * The handle of an element in the queue, through which the element
+	 * can be removed before it expires.
+	 *
+	 * @param <E> the type of the element
+	 */
+	public interface Timeout<E> {
+
+		/**
+		 * Returns the element.
+		 * @return the element
+		 */
+		E get();
+
+		/**
+		 * Returns the time at which the element expires.
+		 * @return the deadline in milliseconds
+		 */
+		long getDeadline();
+
+		/**
+		 * Removes the element from the queue, if it is still there.
+		 * @return <code>true</code> if the element was removed,
+		 * <code>false</code> if it had already expired or been removed
+		 */
+		boolean cancel();
+	}
+
+	/**
+	 * The number of slots of each wheel.
+	 */
+	public static final int WHEEL_SIZE = 256;
+	/**
+	 * The number of wheels, which span 2<sup>32</sup> ticks together.
+	 * The elements which expire later than that are cascaded from the
+	 * highest wheel until their deadlines are spanned.
+	 */
+	public static final int LEVELS = 4;
+
+	private static final int WHEEL_BITS = 8;
+	private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+	private static final long MAX_SPAN = 1L << (WHEEL_BITS * LEVELS);
+
+	/**
+	 * The default duration of a tick, in milliseconds.
+	 */
+	public static final long DEFAULT_TICK_DURATION = 1;
+
+	private final Clock clock;
+	private final long tickDuration;
+	private long timeout;
+
+	// the heads of the lists of the slots; slot s of the level l
+	// is at the index (l * WHEEL_SIZE + s)
+	private final Node<E>[] slots;
+	private final int[] levelCounts = new int[LEVELS];
+	// the last tick which has been processed
+	private long currentTick;
+
+	// the sentinel of the list of all the elements, in insertion order
+	private final Node<E> header = new Node<E>(null, null, 0, 0);
+	private int size;
+	private int modCount;
+
+	/**
+	 * Creates the timeout queue with the specified default timeout,
+	 * which uses the specified clock and tick duration.
+	 * @param timeout the default timeout in milliseconds
+	 * @param tickDuration the duration of a tick in milliseconds
+	 * @param clock the clock which determines the current time
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public TimingWheelTimeoutQueue(long timeout, long tickDuration,
+			Clock clock) {
+		if (clock == null)
+			throw new NullPointerException("Clock cannot be null");
+		if (tickDuration <= 0)
+			throw new IllegalArgumentException(
+					"Tick duration must be positive");
+		this.clock = clock;
+		this.tickDuration = tickDuration;
+		setTimeout(timeout);
+		this.slots = new Node[LEVELS * WHEEL_SIZE];
+		this.currentTick = clock.currentTimeMillis() / tickDuration;
+		header.before = header.after = header;
+	}
+
+	/**
+	 * Creates the timeout queue with the specified default timeout,
+	 * which uses the specified clock.
+	 * @param timeout the default timeout in milliseconds
+	 * @param clock the clock which determines the current time
+	 */
+	public TimingWheelTimeoutQueue(long timeout, Clock clock) {
+		this(timeout, DEFAULT_TICK_DURATION, clock);
+	}
+
+	/**
+	 * Creates the timeout queue with the specified default timeout,
+	 * which uses the system clock.
+	 * @param timeout the default timeout in milliseconds
+	 */
+	public TimingWheelTimeoutQueue(long timeout) {
+		this(timeout, Clock.SYSTEM);
+	}
+
+	/**
+	 * Sets the default timeout, which applies to the elements inserted
+	 * afterwards.
+	 * @param timeout time interval in milliseconds
+	 */
+	@Override
+	public void setTimeout(long timeout) {
+		if (timeout < 0)
+			throw new IllegalArgumentException("Timeout cannot be negative");
+		this.timeout = timeout;
+	}
+
+	@Override
+	public long getTimeout() {
+		return timeout;
+	}
+
+	public long getTickDuration() {
+		return tickDuration;
+	}
+
+	public Clock getClock() {
+		return clock;
+	}
+
+	/**
+	 * Inserts the element with the default timeout.
+	 */
+	@Override
+	public boolean offer(E e) {
+		schedule(e, timeout);
+		return true;
+	}
+
+	/**
+	 * Inserts the element which expires after the specified timeout.
+	 * @param e the element
+	 * @param timeout the timeout in milliseconds
+	 * @return the handle through which the element can be removed
+	 */
+	public Timeout<E> schedule(E e, long timeout) {
+		if (timeout < 0)
+			throw new IllegalArgumentException("Timeout cannot be negative");
+		long now = clock.currentTimeMillis();
+		// saturate instead of overflowing for the very long timeouts
+		return scheduleAt(e, now + timeout >= now ? now + timeout
+				: Long.MAX_VALUE);
+	}
+
+	/**
+	 * Inserts the element which expires at the specified time.
+	 * @param e the element
+	 * @param deadline the time in milliseconds
+	 * @return the handle through which the element can be removed
+	 */
+	public Timeout<E> scheduleAt(E e, long deadline) {
+		if (e == null)
+			throw new NullPointerException();
+		dequeExpired();
+		// the first tick which starts at or after the deadline,
+		// but not one which has already been processed
+		long tick = Math.max(deadline / tickDuration
+				+ (deadline % tickDuration > 0 ? 1 : 0), currentTick + 1);
+		Node<E> node = new Node<E>(this, e, deadline, tick);
+		node.before = header.before;
+		node.after = header;
+		header.before.after = node;
+		header.before = node;
+		++size;
+		++modCount;
+		insert(node);
+		return node;
+	}
+
+	@Override
+	public E poll() {
+		dequeExpired();
+		if (size == 0)
+			return null;
+		Node<E> node = header.after;
+		unlink(node);
+		return node.element;
+	}
+
+	@Override
+	public E peek() {
+		return size != 0 ? header.after.element : null;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public void clear() {
+		for (Node<E> node = header.after; node != header; node = node.after)
+			node.queue = null;
+		for (int i = 0; i < slots.length; ++i)
+			slots[i] = null;
+		for (int l = 0; l < LEVELS; ++l)
+			levelCounts[l] = 0;
+		header.before = header.after = header;
+		size = 0;
+		++modCount;
+	}
+
+	@Override
+	public Iterator<E> iterator() {
+		return new Itr();
+	}
+
+	/**
+	 * Returns the handles of the elements, in insertion order.
+	 */
+	List<Timeout<E>> timeouts() {
+		List<Timeout<E>> timeouts = new ArrayList<Timeout<E>>(size);
+		for (Node<E> node = header.after; node != header; node = node.after)
+			timeouts.add(node);
+		return timeouts;
+	}
+
+	@Override
+	public int dequeExpired() {
+		return advance(null);
+	}
+
+	@Override
+	public List<E> popExpired() {
+		List<E> expired = new ArrayList<E>();
+		advance(expired);
+		return expired;
+	}
+
+	/**
+	 * Processes the ticks up to the current time, adding the expired
+	 * elements to the list (if it is not <code>null</code>).
+	 */
+	private int advance(List<E> expired) {
+		long targetTick = clock.currentTimeMillis() / tickDuration;
+		int expiredCount = 0;
+		while (currentTick < targetTick) {
+			int level = 0;
+			while (level < LEVELS && levelCounts[level] == 0)
+				++level;
+			if (level == LEVELS) {
+				currentTick = targetTick;
+				break;
+			}
+			if (level > 0) {
+				// nothing can happen until the next slot of that level
+				long mask = (1L << (WHEEL_BITS * level)) - 1;
+				currentTick = Math.min(currentTick | mask, targetTick);
+				if (currentTick == targetTick)
+					break;
+			}
+
+			long tick = ++currentTick;
+			for (int l = 1; l < LEVELS
+					&& (tick & ((1L << (WHEEL_BITS * l)) - 1)) == 0; ++l)
+				cascade(l, (int) (tick >>> (WHEEL_BITS * l)) & WHEEL_MASK);
+
+			// expire the whole slot at once
+			int index = (int) tick & WHEEL_MASK;
+			Node<E> node = slots[index];
+			if (node != null) {
+				slots[index] = null;
+				for (; node != null; node = node.next) {
+					--levelCounts[0];
+					unlinkOrder(node);
+					if (expired != null)
+						expired.add(node.element);
+					++expiredCount;
+				}
+			}
+		}
+		return expiredCount;
+	}
+
+	private void cascade(int level, int slot) {
+		int index = level * WHEEL_SIZE + slot;
+		Node<E> node = slots[index];
+		slots[index] = null;
+		while (node != null) {
+			Node<E> next = node.next;
+			--levelCounts[level];
+			insert(node);
+			node = next;
+		}
+	}
+
+	private void insert(Node<E> node) {
+		long delta = node.tick - currentTick;
+		long tick = node.tick;
+		int level = 0;
+		if (delta >= MAX_SPAN) {
+			level = LEVELS - 1;
+			tick = currentTick + MAX_SPAN - 1;
+		} else {
+			while (delta >= 1L << (WHEEL_BITS * (level + 1)))
+				++level;
+		}
+		int index = level * WHEEL_SIZE
+				+ ((int) (tick >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+		node.slot = index;
+		node.prev = null;
+		node.next = slots[index];
+		if (node.next != null)
+			node.next.prev = node;
+		slots[index] = node;
+		++levelCounts[level];
+	}
+
+	private void unlink(Node<E> node) {
+		if (node.prev != null)
+			node.prev.next = node.next;
+		else
+			slots[node.slot] = node.next;
+		if (node.next != null)
+			node.next.prev = node.prev;
+		--levelCounts[node.slot / WHEEL_SIZE];
+		unlinkOrder(node);
+	}
+
+	private void unlinkOrder(Node<E> node) {
+		node.before.after = node.after;
+		node.after.before = node.before;
+		node.queue = null;
+		--size;
+		++modCount;
+	}
+
+	private static final class Node<E> implements Timeout<E> {
+		// the queue which holds the node, or null if it has been removed
+		TimingWheelTimeoutQueue<E> queue;
+		final E element;
+		final long deadline;
+		final long tick;
+		int slot;
+		// the links within the slot
+		Node<E> prev, next;
+		// the links in insertion order
+		Node<E> before, after;
+
+		Node(TimingWheelTimeoutQueue<E> queue, E element, long deadline,
+				long tick) {
+			this.queue = queue;
+			this.element = element;
+			this.deadline = deadline;
+			this.tick = tick;
+		}
+
+		@Override
+		public E get() {
+			return element;
+		}
+
+		@Override
+		public long getDeadline() {
+			return deadline;
+		}
+
+		@Override
+		public boolean cancel() {
+			if (queue == null)
+				return false;
+			queue.unlink(this);
+			return true;
+		}
+
+		@Override
+		public String toString() {
+			return element + "@" + deadline;
+		}
+	}
+
+	private class Itr implements Iterator<E> {
+		private Node<E> next = header.after;
+		private Node<E> lastReturned;
+		private int expectedModCount = modCount;
+
+		@Override
+		public boolean hasNext() {
+			return next != header;
+		}
+
+		@Override
+		public E next() {
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+			if (next == header)
+				throw new NoSuchElementException();
+			lastReturned = next;
+			next = next.after;
+			return lastReturned.element;
+		}
+
+		@Override
+		public void remove() {
+			if (lastReturned == null)
+				throw new IllegalStateException();
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+			unlink(lastReturned);
+			lastReturned = null;
+			expectedModCount = modCount;
+		}
+	}
+
+}
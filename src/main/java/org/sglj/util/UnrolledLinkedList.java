@@ -0,0 +1,709 @@
+/*
+ * UnrolledLinkedList.java
+ *
+ * Copyright (C) 2011 Leo Osvald <leo.osvald@gmail.com>
+ *
+ * This file is part of SGLJ.
+ *
+ * SGLJ is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SGLJ is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sglj.util;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.util.AbstractSequentialList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A doubly linked list whose nodes hold up to a fixed number of
+ * elements (32 by default) in a small array, instead of one element each
+ * like the {@link LinkedList}.<br>
+ * 
+ * The elements of a node are kept contiguous, so iteration and
+ * the {@link #get(int)} and {@link #set(int, Object)} methods walk
+ * over arrays and skip whole nodes, and the per-element overhead is
+ * roughly that of an array slot instead of a link object.
+ * Adding and removing at the cursor of a {@link ListIterator}, as well as
+ * all the {@link Deque} operations at both ends, take constant
+ * time (at most one node is split, or two adjacent nodes are merged).
+ * Adjacent nodes are merged whenever they together hold no more than
+ * half a node worth of elements (also when the lists are concatenated),
+ * so on average the nodes are at least a quarter full.<br>
+ * 
+ * This implementation is not synchronized and
+ * its iterators are fail-fast.
+ * 
+ * @author Leo Osvald
+ * @version 1.0
+ * @param <E> type of elements
+ */
+public class UnrolledLinkedList<E> extends AbstractSequentialList<E>
+implements Deque<E>, Cloneable, Serializable {
+
+	private static final long serialVersionUID = -2385470161235823190L;
+	
+	private static final int DEFAULT_NODE_CAPACITY = 32;
+	
+	private final int nodeCapacity;
+	
+	private transient Node header;
+	
+	private transient int size;
+	
+	private static final class Node {
+		final Object[] elements;
+		int size;
+		Node previous, next;
+		
+		Node(int capacity) {
+			elements = new Object[capacity];
+		}
+	}
+	
+	public UnrolledLinkedList() {
+		this(DEFAULT_NODE_CAPACITY);
+	}
+	
+	/**
+	 * Constructs an empty list whose nodes hold at most the specified
+	 * number of elements. Values between 32 and 64 are recommended.
+	 * 
+	 * @param nodeCapacity the capacity of each node
+	 * @throws IllegalArgumentException if the capacity is less than 4
+	 */
+	public UnrolledLinkedList(int nodeCapacity) {
+		if (nodeCapacity < 4)
+			throw new IllegalArgumentException("Illegal node capacity: "
+					+ nodeCapacity);
+		this.nodeCapacity = nodeCapacity;
+		init();
+	}
+	
+	public UnrolledLinkedList(Collection<? extends E> c) {
+		this();
+		addAll(c);
+	}
+	
+	public int getNodeCapacity() {
+		return nodeCapacity;
+	}
+	
+	@Override
+	public int size() {
+		return size;
+	}
+	
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	@Override
+	public E get(int index) {
+		return access(index, null, false);
+	}
+	
+	@Override
+	public E set(int index, E element) {
+		return access(index, element, true);
+	}
+	
+	@Override
+	public boolean add(E e) {
+		addLast(e);
+		return true;
+	}
+	
+	@Override
+	public boolean addAll(Collection<? extends E> c) {
+		Object[] a = c.toArray();
+		for (int i = 0; i < a.length; ) {
+			Node last = header.previous;
+			if (last == header || last.size == nodeCapacity)
+				last = newNodeAfter(header.previous);
+			int n = Math.min(a.length - i, nodeCapacity - last.size);
+			System.arraycopy(a, i, last.elements, last.size, n);
+			last.size += n;
+			size += n;
+			i += n;
+		}
+		++modCount;
+		return a.length != 0;
+	}
+	
+	@Override
+	public void clear() {
+		init();
+		++modCount;
+	}
+	
+	@Override
+	public ListIterator<E> listIterator(int index) {
+		if (index < 0 || index > size)
+			throw new IndexOutOfBoundsException("Index: " + index
+					+ ", Size: " + size);
+		return new ListItr(index);
+	}
+	
+	@Override
+	public Iterator<E> iterator() {
+		return new ListItr(0);
+	}
+	
+	@Override
+	public Iterator<E> descendingIterator() {
+		final ListItr itr = new ListItr(size);
+		return new Iterator<E>() {
+			@Override
+			public boolean hasNext() {
+				return itr.hasPrevious();
+			}
+			
+			@Override
+			public E next() {
+				return itr.previous();
+			}
+			
+			@Override
+			public void remove() {
+				itr.remove();
+			}
+		};
+	}
+	
+	// Deque operations
+	
+	@Override
+	public void addFirst(E e) {
+		Node first = header.next;
+		if (first == header || first.size == nodeCapacity)
+			first = newNodeAfter(header);
+		insert(first, 0, e);
+	}
+	
+	@Override
+	public void addLast(E e) {
+		Node last = header.previous;
+		if (last == header || last.size == nodeCapacity)
+			last = newNodeAfter(last);
+		insert(last, last.size, e);
+	}
+	
+	@Override
+	public boolean offerFirst(E e) {
+		addFirst(e);
+		return true;
+	}
+	
+	@Override
+	public boolean offerLast(E e) {
+		addLast(e);
+		return true;
+	}
+	
+	@Override
+	public E removeFirst() {
+		Node first = header.next;
+		if (first == header)
+			throw new NoSuchElementException();
+		E ret = removeAt(first, 0);
+		if (first.size == 0)
+			unlink(first);
+		else if (mergeable(first, first.next))
+			mergeNext(first);
+		return ret;
+	}
+	
+	@Override
+	public E removeLast() {
+		Node last = header.previous;
+		if (last == header)
+			throw new NoSuchElementException();
+		E ret = removeAt(last, last.size - 1);
+		if (last.size == 0)
+			unlink(last);
+		else if (mergeable(last.previous, last))
+			mergeNext(last.previous);
+		return ret;
+	}
+	
+	@Override
+	public E pollFirst() {
+		return size != 0 ? removeFirst() : null;
+	}
+	
+	@Override
+	public E pollLast() {
+		return size != 0 ? removeLast() : null;
+	}
+	
+	@Override
+	@SuppressWarnings("unchecked")
+	public E getFirst() {
+		if (size == 0)
+			throw new NoSuchElementException();
+		return (E) header.next.elements[0];
+	}
+	
+	@Override
+	@SuppressWarnings("unchecked")
+	public E getLast() {
+		if (size == 0)
+			throw new NoSuchElementException();
+		Node last = header.previous;
+		return (E) last.elements[last.size - 1];
+	}
+	
+	@Override
+	public E peekFirst() {
+		return size != 0 ? getFirst() : null;
+	}
+	
+	@Override
+	public E peekLast() {
+		return size != 0 ? getLast() : null;
+	}
+	
+	@Override
+	public boolean removeFirstOccurrence(Object o) {
+		for (Iterator<E> it = iterator(); it.hasNext(); ) {
+			if (eq(o, it.next())) {
+				it.remove();
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	@Override
+	public boolean removeLastOccurrence(Object o) {
+		for (Iterator<E> it = descendingIterator(); it.hasNext(); ) {
+			if (eq(o, it.next())) {
+				it.remove();
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	@Override
+	public boolean offer(E e) {
+		return offerLast(e);
+	}
+	
+	@Override
+	public E remove() {
+		return removeFirst();
+	}
+	
+	@Override
+	public E poll() {
+		return pollFirst();
+	}
+	
+	@Override
+	public E element() {
+		return getFirst();
+	}
+	
+	@Override
+	public E peek() {
+		return peekFirst();
+	}
+	
+	@Override
+	public void push(E e) {
+		addFirst(e);
+	}
+	
+	@Override
+	public E pop() {
+		return removeFirst();
+	}
+	
+	/**
+	 * Moves all the elements of the specified list to the end of this
+	 * list. If both lists have the same node capacity, this takes
+	 * constant time. The specified list becomes empty.
+	 * 
+	 * @param list the list whose elements are moved
+	 * @throws IllegalArgumentException if the specified list is this list
+	 */
+	public void concatenate(UnrolledLinkedList<E> list) {
+		if (list == this)
+			throw new IllegalArgumentException("Cannot concatenate to itself");
+		if (list.size != 0) {
+			if (list.nodeCapacity == nodeCapacity) {
+				Node last = header.previous;
+				last.next = list.header.next;
+				list.header.next.previous = last;
+				header.previous = list.header.previous;
+				list.header.previous.next = header;
+				if (mergeable(last, last.next))
+					mergeNext(last);
+				size += list.size;
+				++modCount;
+			} else {
+				addAll(list);
+			}
+		}
+		list.init();
+		++list.modCount;
+	}
+	
+	@Override
+	public Object[] toArray() {
+		return toArray(new Object[size]);
+	}
+	
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> T[] toArray(T[] a) {
+		if (a.length < size)
+			a = (T[]) Array.newInstance(a.getClass().getComponentType(), size);
+		int index = 0;
+		for (Node node = header.next; node != header; node = node.next) {
+			System.arraycopy(node.elements, 0, a, index, node.size);
+			index += node.size;
+		}
+		if (index < a.length)
+			a[index] = null;
+		return a;
+	}
+	
+	@Override
+	@SuppressWarnings("unchecked")
+	public UnrolledLinkedList<E> clone() {
+		try {
+			UnrolledLinkedList<E> l = (UnrolledLinkedList<E>) super.clone();
+			l.init();
+			l.modCount = 0;
+			for (Node node = header.next; node != header; node = node.next) {
+				Node copy = l.newNodeAfter(l.header.previous);
+				System.arraycopy(node.elements, 0, copy.elements, 0,
+						node.size);
+				copy.size = node.size;
+			}
+			l.size = size;
+			return l;
+		} catch (CloneNotSupportedException e) {
+			throw new InternalError();
+		}
+	}
+	
+	/**
+	 * Returns the number of nodes (used by the tests).
+	 */
+	int nodeCount() {
+		int count = 0;
+		for (Node node = header.next; node != header; node = node.next)
+			++count;
+		return count;
+	}
+	
+	private void init() {
+		header = new Node(0);
+		header.previous = header.next = header;
+		size = 0;
+	}
+	
+	@SuppressWarnings("unchecked")
+	private E access(int index, E element, boolean replace) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Index: " + index
+					+ ", Size: " + size);
+		Node node;
+		int offset;
+		if (index < (size >> 1)) {
+			for (node = header.next; index >= node.size; node = node.next)
+				index -= node.size;
+			offset = index;
+		} else {
+			int remaining = size - index;
+			for (node = header; remaining > 0; remaining -= node.size)
+				node = node.previous;
+			offset = -remaining;
+		}
+		E ret = (E) node.elements[offset];
+		if (replace)
+			node.elements[offset] = element;
+		return ret;
+	}
+	
+	private Node newNodeAfter(Node node) {
+		Node n = new Node(nodeCapacity);
+		n.previous = node;
+		n.next = node.next;
+		node.next.previous = n;
+		node.next = n;
+		return n;
+	}
+	
+	private static void unlink(Node node) {
+		node.previous.next = node.next;
+		node.next.previous = node.previous;
+	}
+	
+	/**
+	 * Inserts the element into the specified node, which must not be full.
+	 */
+	private void insert(Node node, int offset, Object e) {
+		System.arraycopy(node.elements, offset, node.elements, offset + 1,
+				node.size - offset);
+		node.elements[offset] = e;
+		++node.size;
+		++size;
+		++modCount;
+	}
+	
+	/**
+	 * Removes the element from the specified node, leaving the node
+	 * in the list even if it becomes empty.
+	 */
+	@SuppressWarnings("unchecked")
+	private E removeAt(Node node, int offset) {
+		E ret = (E) node.elements[offset];
+		System.arraycopy(node.elements, offset + 1, node.elements, offset,
+				node.size - offset - 1);
+		node.elements[--node.size] = null;
+		--size;
+		++modCount;
+		return ret;
+	}
+	
+	/**
+	 * Moves the upper half of the elements of the specified node
+	 * into a new node which is linked after it.
+	 */
+	private Node split(Node node) {
+		Node n = newNodeAfter(node);
+		int half = node.size >> 1;
+		n.size = node.size - half;
+		System.arraycopy(node.elements, half, n.elements, 0, n.size);
+		Arrays.fill(node.elements, half, node.size, null);
+		node.size = half;
+		return n;
+	}
+	
+	/**
+	 * Moves all the elements of the node which follows the specified one
+	 * into it and unlinks the former.
+	 */
+	private static void mergeNext(Node node) {
+		Node next = node.next;
+		System.arraycopy(next.elements, 0, node.elements, node.size,
+				next.size);
+		node.size += next.size;
+		unlink(next);
+	}
+	
+	private boolean mergeable(Node a, Node b) {
+		return a != header && b != header
+				&& a.size + b.size <= (nodeCapacity >> 1);
+	}
+	
+	private static boolean eq(Object a, Object b) {
+		return a == null ? b == null : a.equals(b);
+	}
+	
+	private class ListItr implements ListIterator<E> {
+		// the node and the offset of the element returned by next(),
+		// or the header if the cursor is at the end of the list
+		private Node node;
+		private int offset;
+		private int nextIndex;
+		
+		private Node lastNode;
+		private int lastOffset;
+		private int lastIndex;
+		
+		private int expectedModCount = modCount;
+		
+		ListItr(int index) {
+			nextIndex = index;
+			if (index < (size >> 1)) {
+				for (node = header.next; index >= node.size; node = node.next)
+					index -= node.size;
+				offset = index;
+			} else {
+				int remaining = size - index;
+				for (node = header; remaining > 0; remaining -= node.size)
+					node = node.previous;
+				offset = -remaining;
+			}
+		}
+		
+		@Override
+		public boolean hasNext() {
+			return node != header;
+		}
+		
+		@Override
+		@SuppressWarnings("unchecked")
+		public E next() {
+			checkForComodification();
+			if (node == header)
+				throw new NoSuchElementException();
+			lastNode = node;
+			lastOffset = offset;
+			lastIndex = nextIndex++;
+			if (++offset == node.size) {
+				node = node.next;
+				offset = 0;
+			}
+			return (E) lastNode.elements[lastOffset];
+		}
+		
+		@Override
+		public boolean hasPrevious() {
+			return nextIndex > 0;
+		}
+		
+		@Override
+		@SuppressWarnings("unchecked")
+		public E previous() {
+			checkForComodification();
+			if (nextIndex == 0)
+				throw new NoSuchElementException();
+			if (offset == 0) {
+				node = node.previous;
+				offset = node.size;
+			}
+			lastNode = node;
+			lastOffset = --offset;
+			lastIndex = --nextIndex;
+			return (E) node.elements[offset];
+		}
+		
+		@Override
+		public int nextIndex() {
+			return nextIndex;
+		}
+		
+		@Override
+		public int previousIndex() {
+			return nextIndex - 1;
+		}
+		
+		@Override
+		public void remove() {
+			if (lastNode == null)
+				throw new IllegalStateException();
+			checkForComodification();
+			Node n = lastNode;
+			int off = lastOffset;
+			removeAt(n, off);
+			if (n.size == 0) {
+				Node next = n.next;
+				unlink(n);
+				n = next;
+				off = 0;
+				// the nodes around the removed one are adjacent now
+				if (mergeable(n.previous, n)) {
+					n = n.previous;
+					off = n.size;
+					mergeNext(n);
+				}
+			} else {
+				if (mergeable(n, n.next))
+					mergeNext(n);
+				if (mergeable(n.previous, n)) {
+					n = n.previous;
+					off += n.size;
+					mergeNext(n);
+				}
+				if (off == n.size) {
+					n = n.next;
+					off = 0;
+				}
+			}
+			node = n;
+			offset = off;
+			nextIndex = lastIndex;
+			lastNode = null;
+			expectedModCount = modCount;
+		}
+		
+		@Override
+		public void set(E e) {
+			if (lastNode == null)
+				throw new IllegalStateException();
+			checkForComodification();
+			lastNode.elements[lastOffset] = e;
+		}
+		
+		@Override
+		public void add(E e) {
+			checkForComodification();
+			Node previous = node.previous;
+			if (offset == 0 && previous != header
+					&& previous.size < nodeCapacity) {
+				// append to the previous node, the cursor stays the same
+				insert(previous, previous.size, e);
+			} else if (node != header && node.size < nodeCapacity) {
+				insert(node, offset++, e);
+			} else if (offset == 0) {
+				insert(newNodeAfter(previous), 0, e);
+			} else {
+				Node right = split(node);
+				if (offset <= node.size) {
+					insert(node, offset++, e);
+					if (offset == node.size) {
+						node = right;
+						offset = 0;
+					}
+				} else {
+					offset -= node.size;
+					insert(right, offset++, e);
+					node = right;
+				}
+			}
+			++nextIndex;
+			lastNode = null;
+			expectedModCount = modCount;
+		}
+		
+		private void checkForComodification() {
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+		}
+	}
+	
+	private void writeObject(ObjectOutputStream stream) throws IOException {
+		stream.defaultWriteObject();
+		stream.writeInt(size);
+		for (Node node = header.next; node != header; node = node.next)
+			for (int i = 0; i < node.size; ++i)
+				stream.writeObject(node.elements[i]);
+	}
+	
+	@SuppressWarnings("unchecked")
+	private void readObject(ObjectInputStream stream) throws IOException,
+			ClassNotFoundException {
+		stream.defaultReadObject();
+		init();
+		for (int i = stream.readInt(); i > 0; --i)
+			addLast((E) stream.readObject());
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * WaitStrategy.java
+ *
+ * Copyright (C) 2011 Leo Osvald <leo.osvald@gmail.com>
+ *
+ * This file is part of SGLJ.
+ *
+ * SGLJ is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SGLJ is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sglj.util;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A strategy of waiting for a condition which is expected to be
+ * satisfied by another thread soon, such as a free slot or an
+ * available element in a {@link RingBuffer}.<br>
+ * The waiting thread calls {@link #idle(int)} each time the condition
+ * is not satisfied, passing the value returned by the previous call
+ * (or 0 the first time), so that the strategy can back off gradually.
+ *
+ * @author Leo Osvald
+ * @version 1.0
+ */
+public interface WaitStrategy {
+
+	/**
+	 * The strategy which busy spins. It has the lowest latency,
+	 * but occupies a core while waiting.
+	 */
+	static final WaitStrategy BUSY_SPIN = new WaitStrategy() {
+		@Override
+		public int idle(int idleCount) {
+			return idleCount + 1;
+		}
+	};
+
+	/**
+	 * The strategy which yields the processor to other threads.
+	 */
+	static final WaitStrategy YIELDING = new WaitStrategy() {
+		@Override
+		public int idle(int idleCount) {
+			Thread.yield();
+			return idleCount + 1;
+		}
+	};
+
+	/**
+	 * The strategy which spins for a while, then yields for a while
+	 * and then parks for the shortest possible time. It trades latency
+	 * for the processor time when the waiting takes long.
+	 */
+	static final WaitStrategy BACK_OFF = new WaitStrategy() {
+		private static final int SPIN_TRIES = 100;
+		private static final int YIELD_TRIES = 200;
+
+		@Override
+		public int idle(int idleCount) {
+			if (idleCount >= YIELD_TRIES) {
+				LockSupport.parkNanos(1L);
+				return idleCount;
+			}
+			if (idleCount >= SPIN_TRIES)
+				Thread.yield();
+			return idleCount + 1;
+		}
+	};
+
+	/**
+	 * Waits for a while.
+	 * @param idleCount the value returned by the previous call
+	 * during the same wait, or 0 if this is the first call
+	 * @return the value which should be passed to the next call
+	 */
+	int idle(int idleCount);
+}
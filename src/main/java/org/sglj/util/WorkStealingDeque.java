@@ -0,0 +1,233 @@
+/*
+ * WorkStealingDeque.java
+ *
+ * Copyright (C) 2011 Leo Osvald <leo.osvald@gmail.com>
+ *
+ * This file is part of SGLJ.
+ *
+ * SGLJ is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SGLJ is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sglj.util;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <p>A work-stealing deque, as described by D. Chase and Y. Lev in
+ * "Dynamic Circular Work-Stealing Deque" (SPAA 2005).</p>
+ * <p>The deque has a single owner thread which pushes and pops elements
+ * at the bottom (LIFO order) without locking and, except when the deque
+ * holds a single element, without a compare-and-set. Any number of other
+ * threads (thieves) may concurrently steal elements from the top
+ * (FIFO order) by a compare-and-set of the top index.<br>
+ * The elements are stored in a circular array whose length is a power
+ * of two, using the same masking of indices as the
+ * {@link RandomAccessDeque}; unlike the latter, the indices are never
+ * wrapped, so they also serve as sequence numbers. The array grows
+ * when full, and the old array is left intact for thieves which might
+ * still be reading it.</p>
+ * <p>This collection does not permit <code>null</code> elements.</p>
+ *
+ * @author Leo Osvald
+ * @version 1.0
+ *
+ * @param <E> the type of elements held in the deque
+ */
+public class WorkStealingDeque<E> {
+
+	private static final int MIN_INITIAL_CAPACITY = 16;
+
+	/**
+	 * The index of the top element (the next one to be stolen),
+	 * modified only by a compare-and-set.
+	 */
+	private final PaddedAtomicLong top = new PaddedAtomicLong(0);
+
+	/**
+	 * The index at which the owner pushes the next element.
+	 */
+	private final PaddedAtomicLong bottom = new PaddedAtomicLong(0);
+
+	private volatile CircularArray<E> array;
+
+	/**
+	 * Constructs an empty deque with an initial capacity sufficient
+	 * to hold 16 elements.
+	 */
+	public WorkStealingDeque() {
+		this(MIN_INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Constructs an empty deque with an initial capacity sufficient
+	 * to hold the specified number of elements.
+	 *
+	 * @param numElements lower bound on initial capacity of the deque
+	 */
+	public WorkStealingDeque(int numElements) {
+		int capacity = MIN_INITIAL_CAPACITY;
+		while (capacity < numElements && capacity > 0)
+			capacity <<= 1;
+		if (capacity < 0)
+			capacity >>>= 1;
+		array = new CircularArray<E>(capacity);
+	}
+
+	/**
+	 * Pushes the specified element at the bottom of the deque.
+	 * May only be called by the owner thread.
+	 *
+	 * @param e the element to push
+	 * @throws NullPointerException if the specified element is null
+	 */
+	public void push(E e) {
+		if (e == null)
+			throw new NullPointerException();
+		final long b = bottom.get();
+		final long t = top.get();
+		CircularArray<E> a = array;
+		if (b - t >= a.capacity() - 1)
+			array = a = a.grow(t, b);
+		a.put(b, e);
+		bottom.lazySet(b + 1);
+	}
+
+	/**
+	 * Removes and returns the element at the bottom of the deque
+	 * (the one pushed most recently). May only be called by the owner
+	 * thread.
+	 *
+	 * @return the bottom element, or <code>null</code> if the deque
+	 * is empty (or the last element was stolen concurrently)
+	 */
+	public E pop() {
+		final long b = bottom.get() - 1;
+		final CircularArray<E> a = array;
+		// volatile write followed by a volatile read acts as a full fence
+		bottom.set(b);
+		final long t = top.get();
+		final long size = b - t;
+		if (size < 0) { // empty
+			bottom.set(t);
+			return null;
+		}
+		E e = a.get(b);
+		if (size > 0) {
+			a.put(b, null); // let GC do its work
+			return e;
+		}
+		// the last element, so compete with the thieves
+		if (!top.compareAndSet(t, t + 1))
+			e = null;
+		bottom.set(t + 1);
+		return e;
+	}
+
+	/**
+	 * Removes and returns the element at the top of the deque (the one
+	 * pushed least recently). May be called by any thread.<br>
+	 * Note that the method returns <code>null</code> not only if the deque
+	 * is empty, but also if it lost a race for the top element with
+	 * another thread, in which case the caller should try another victim
+	 * or try again.
+	 *
+	 * @return the top element, or <code>null</code> if the deque is empty
+	 * or the element was taken by another thread
+	 */
+	public E steal() {
+		final long t = top.get();
+		final long b = bottom.get();
+		final CircularArray<E> a = array;
+		if (b - t <= 0) // empty
+			return null;
+		E e = a.get(t);
+		if (!top.compareAndSet(t, t + 1))
+			return null; // lost the race
+		return e;
+	}
+
+	/**
+	 * Returns the number of elements in this deque. If the deque
+	 * is being modified concurrently, the result is only an estimate.
+	 *
+	 * @return the number of elements
+	 */
+	public int size() {
+		long size = bottom.get() - top.get();
+		return size > 0 ? (int) size : 0;
+	}
+
+	/**
+	 * Checks whether this deque is empty. If the deque
+	 * is being modified concurrently, the result is only an estimate.
+	 *
+	 * @return <code>true</code> if it is, <code>false</code> otherwise
+	 */
+	public boolean isEmpty() {
+		return bottom.get() - top.get() <= 0;
+	}
+
+	/**
+	 * Returns the length of the current underlying array.
+	 *
+	 * @return the capacity
+	 */
+	protected int capacity() {
+		return array.capacity();
+	}
+
+	@Override
+	public String toString() {
+		return "WorkStealingDeque[size = " + size() + "]";
+	}
+
+	/**
+	 * Power-of-two array indexed by unwrapped (long) indices.
+	 */
+	private static final class CircularArray<E> {
+		final AtomicReferenceArray<E> elements;
+		final int mask;
+
+		CircularArray(int capacity) {
+			elements = new AtomicReferenceArray<E>(capacity);
+			mask = capacity - 1;
+		}
+
+		int capacity() {
+			return mask + 1;
+		}
+
+		E get(long i) {
+			return elements.get((int) i & mask);
+		}
+
+		void put(long i, E e) {
+			elements.lazySet((int) i & mask, e);
+		}
+
+		/**
+		 * Returns a new array of double capacity, holding the elements
+		 * at the indices [t, b).
+		 */
+		CircularArray<E> grow(long t, long b) {
+			int newCapacity = capacity() << 1;
+			if (newCapacity < 0)
+				throw new IllegalStateException("Sorry, deque too big");
+			CircularArray<E> a = new CircularArray<E>(newCapacity);
+			for (long i = t; i < b; ++i)
+				a.put(i, get(i));
+			return a;
+		}
+	}
+}
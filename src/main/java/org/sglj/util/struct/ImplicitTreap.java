@@ -0,0 +1,579 @@
+/*
+ * ImplicitTreap.java
+ * 
+ * Copyright (C) 2010 Leo Osvald <leo.osvald@gmail.com>
+ * 
+ * This file is part of SGLJ.
+ * 
+ * SGLJ is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * SGLJ is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sglj.util.struct;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.sglj.math.discrete.CodomainMergeable;
+
+/**
+ * A sequence backed by a treap whose nodes are keyed implicitly by their
+ * position. Positional insertion, removal, access and modification,
+ * as well as splitting the sequence into two and concatenating two
+ * sequences, take O(log n) expected time.<br>
+ * 
+ * Each subtree keeps the merged codomain of its elements, so that
+ * the {@link #retrieveQuery(int, int)} method answers a query over
+ * an arbitrary range in O(log n) expected time. As with the
+ * {@link FenwickTree}, the data of a single element is obtained by
+ * the {@link #createData(Object)} method, whereas
+ * {@link #createData(Object)} called with <code>null</code> must
+ * return the neutral element (the result of a query over an empty range).
+ * The {@link #mergeCodomains(Object, Object)} method need not be
+ * commutative, but it must be associative; the codomain of the left
+ * range is always passed as the first argument.<br>
+ * 
+ * For example, a sequence of lines which can count the characters
+ * in any range of lines:<br>
+ * 
+ * <pre>
+ *	class Lines extends ImplicitTreap<String, Integer> {
+ *
+ *		//@Override
+ *		public Integer mergeCodomains(Integer a, Integer b) {
+ *			return a + b;
+ *		}
+ *
+ *		//@Override
+ *		protected Integer createData(String element) {
+ *			return element != null ? element.length() : 0;
+ *		}
+ *	}
+ * </pre>
+ * 
+ * Note that the {@link #split(int)}, {@link #cut(int, int)} and
+ * {@link #clone()} methods create the new instance by cloning this one,
+ * so the subclasses which have state of their own should override the
+ * {@link #clone()} method if that state must not be shared.
+ * 
+ * @author Leo Osvald
+ * @version 1.0
+ *
+ * @param <E>
+ * @param <T>
+ */
+public abstract class ImplicitTreap<E, T> extends AbstractList<E>
+implements RetrieveRangeQueryable<T>, CodomainMergeable<T>, Cloneable {
+
+	private Node<E, T> root;
+	private int seed = (int) System.nanoTime() | 1;
+	
+	public ImplicitTreap() {
+	}
+	
+	/**
+	 * Creates a sequence which contains the elements of the specified
+	 * collection, in the order they are returned by its iterator.
+	 * This takes O(n) time.
+	 * 
+	 * @param c the collection whose elements are to be placed into
+	 * this sequence
+	 */
+	public ImplicitTreap(Collection<? extends E> c) {
+		Object[] a = c.toArray();
+		root = build(a, 0, a.length);
+	}
+	
+	@Override
+	public E get(int index) {
+		rangeCheck(index, size());
+		Node<E, T> n = root;
+		for (;;) {
+			int leftSize = size(n.left);
+			if (index < leftSize) {
+				n = n.left;
+			} else if (index > leftSize) {
+				index -= leftSize + 1;
+				n = n.right;
+			} else {
+				return n.element;
+			}
+		}
+	}
+	
+	@Override
+	public E set(int index, E element) {
+		rangeCheck(index, size());
+		return set(root, index, element);
+	}
+	
+	@Override
+	public void add(int index, E element) {
+		rangeCheck(index, size() + 1);
+		Node<E, T> n = new Node<E, T>(element, nextPriority());
+		update(n);
+		Node<E, T>[] parts = split(root, index);
+		root = merge(merge(parts[0], n), parts[1]);
+		++modCount;
+	}
+	
+	@Override
+	public E remove(int index) {
+		rangeCheck(index, size());
+		Node<E, T>[] parts = split(root, index);
+		Node<E, T>[] rest = split(parts[1], 1);
+		root = merge(parts[0], rest[1]);
+		++modCount;
+		return rest[0].element;
+	}
+	
+	@Override
+	public boolean addAll(Collection<? extends E> c) {
+		return addAll(size(), c);
+	}
+	
+	/**
+	 * Inserts all of the elements of the specified collection
+	 * at the specified position. This takes O(m + log n) expected time,
+	 * where m is the number of elements inserted.
+	 */
+	@Override
+	public boolean addAll(int index, Collection<? extends E> c) {
+		rangeCheck(index, size() + 1);
+		Object[] a = c.toArray();
+		if (a.length == 0)
+			return false;
+		Node<E, T>[] parts = split(root, index);
+		root = merge(merge(parts[0], build(a, 0, a.length)), parts[1]);
+		++modCount;
+		return true;
+	}
+	
+	@Override
+	public int size() {
+		return size(root);
+	}
+	
+	@Override
+	public boolean isEmpty() {
+		return root == null;
+	}
+	
+	@Override
+	public void clear() {
+		root = null;
+		++modCount;
+	}
+	
+	/**
+	 * Removes the elements in range [fromIndex, toIndex)
+	 * in O(log n) expected time, which also makes the
+	 * <code>subList(fromIndex, toIndex).clear()</code> idiom efficient.
+	 */
+	@Override
+	protected void removeRange(int fromIndex, int toIndex) {
+		detach(fromIndex, toIndex);
+	}
+	
+	@Override
+	public Iterator<E> iterator() {
+		return new Itr();
+	}
+	
+	/**
+	 * Returns the merged codomain of the elements in range
+	 * [fromIndex, toIndex).
+	 * 
+	 * @param fromIndex the index of the first element (inclusive)
+	 * @param toIndex the index of the last element (exclusive)
+	 * @return the merged codomain, or <code>createData(null)</code>
+	 * if the range is empty
+	 * @throws IndexOutOfBoundsException if the range is invalid
+	 */
+	@Override
+	public T retrieveQuery(int fromIndex, int toIndex) {
+		rangeCheck(fromIndex, toIndex, size());
+		if (fromIndex == toIndex)
+			return createData(null);
+		return query(root, fromIndex, toIndex);
+	}
+	
+	/**
+	 * Returns the merged codomain of all the elements in constant time.
+	 * 
+	 * @return the merged codomain, or <code>createData(null)</code>
+	 * if this sequence is empty
+	 */
+	public T retrieveQuery() {
+		return root != null ? root.data : createData(null);
+	}
+	
+	/**
+	 * Splits this sequence at the specified position. The elements
+	 * from that position onwards are removed from this sequence and
+	 * returned as a new sequence.
+	 * 
+	 * @param index the index of the first element to move
+	 * @return the sequence of the removed elements
+	 * @throws IndexOutOfBoundsException if index is out of range
+	 * <code>(index < 0 || index > size())</code>
+	 */
+	public ImplicitTreap<E, T> split(int index) {
+		return cut(index, size());
+	}
+	
+	/**
+	 * Removes the elements in range [fromIndex, toIndex) and returns
+	 * them as a new sequence. This takes O(log n) expected time.
+	 * 
+	 * @param fromIndex the index of the first element (inclusive)
+	 * @param toIndex the index of the last element (exclusive)
+	 * @return the sequence of the removed elements
+	 * @throws IndexOutOfBoundsException if the range is invalid
+	 */
+	public ImplicitTreap<E, T> cut(int fromIndex, int toIndex) {
+		ImplicitTreap<E, T> ret = emptyCopy();
+		ret.root = detach(fromIndex, toIndex);
+		return ret;
+	}
+	
+	/**
+	 * Moves all the elements of the specified sequence to the end
+	 * of this sequence. The specified sequence becomes empty.
+	 * This takes O(log n) expected time.
+	 * 
+	 * @param other the sequence whose elements are moved
+	 * @throws IllegalArgumentException if the other sequence is
+	 * this sequence
+	 */
+	public void concat(ImplicitTreap<E, T> other) {
+		splice(size(), other);
+	}
+	
+	/**
+	 * Moves all the elements of the specified sequence into this
+	 * sequence, inserting them at the specified position. The specified
+	 * sequence becomes empty. This takes O(log n) expected time.
+	 * <br>
+	 * Both sequences are expected to compute the same codomain,
+	 * since the merged codomains of the moved subtrees are reused.
+	 * 
+	 * @param index the index at which the elements should be inserted
+	 * @param other the sequence whose elements are moved
+	 * @throws IllegalArgumentException if the other sequence is
+	 * this sequence
+	 * @throws IndexOutOfBoundsException if index is out of range
+	 * <code>(index < 0 || index > size())</code>
+	 */
+	public void splice(int index, ImplicitTreap<E, T> other) {
+		if (other == this)
+			throw new IllegalArgumentException("Cannot splice into itself");
+		rangeCheck(index, size() + 1);
+		if (other.root == null)
+			return ;
+		Node<E, T>[] parts = split(root, index);
+		root = merge(merge(parts[0], other.root), parts[1]);
+		other.root = null;
+		++modCount;
+		++other.modCount;
+	}
+	
+	/**
+	 * Returns a copy of this sequence. The elements themselves are
+	 * not cloned. This takes O(n) time.
+	 */
+	@Override
+	public ImplicitTreap<E, T> clone() {
+		ImplicitTreap<E, T> ret = emptyCopy();
+		ret.root = copy(root);
+		return ret;
+	}
+	
+	/**
+	 * Returns the data of the specified element, or the neutral element
+	 * of the {@link #mergeCodomains(Object, Object)} method
+	 * if the element is <code>null</code>.
+	 * 
+	 * @param element the element
+	 * @return the data
+	 */
+	protected abstract T createData(E element);
+	
+	@SuppressWarnings("unchecked")
+	private ImplicitTreap<E, T> emptyCopy() {
+		try {
+			ImplicitTreap<E, T> ret = (ImplicitTreap<E, T>) super.clone();
+			ret.root = null;
+			ret.modCount = 0;
+			return ret;
+		} catch (CloneNotSupportedException e) {
+			throw new InternalError();
+		}
+	}
+	
+	private Node<E, T> detach(int fromIndex, int toIndex) {
+		rangeCheck(fromIndex, toIndex, size());
+		if (fromIndex == toIndex)
+			return null;
+		Node<E, T>[] parts = split(root, toIndex);
+		Node<E, T>[] head = split(parts[0], fromIndex);
+		root = merge(head[0], parts[1]);
+		++modCount;
+		return head[1];
+	}
+	
+	@SuppressWarnings("unchecked")
+	private Node<E, T> build(Object[] a, int from, int to) {
+		if (from >= to)
+			return null;
+		int mid = (from + to) >>> 1;
+		Node<E, T> n = new Node<E, T>((E) a[mid], nextPriority());
+		n.left = build(a, from, mid);
+		n.right = build(a, mid + 1, to);
+		// the subtrees are already heaps, so sifting the priority down
+		// makes this one a heap too (the same way as in the heapsort)
+		for (Node<E, T> cur = n; ; ) {
+			Node<E, T> max = cur;
+			if (cur.left != null && cur.left.priority > max.priority)
+				max = cur.left;
+			if (cur.right != null && cur.right.priority > max.priority)
+				max = cur.right;
+			if (max == cur)
+				break;
+			int tmp = cur.priority;
+			cur.priority = max.priority;
+			max.priority = tmp;
+			cur = max;
+		}
+		update(n);
+		return n;
+	}
+	
+	private Node<E, T> copy(Node<E, T> n) {
+		if (n == null)
+			return null;
+		Node<E, T> ret = new Node<E, T>(n.element, n.priority);
+		ret.left = copy(n.left);
+		ret.right = copy(n.right);
+		ret.size = n.size;
+		ret.data = n.data;
+		return ret;
+	}
+	
+	private E set(Node<E, T> n, int index, E element) {
+		int leftSize = size(n.left);
+		E old;
+		if (index < leftSize) {
+			old = set(n.left, index, element);
+		} else if (index > leftSize) {
+			old = set(n.right, index - leftSize - 1, element);
+		} else {
+			old = n.element;
+			n.element = element;
+		}
+		update(n);
+		return old;
+	}
+	
+	private T query(Node<E, T> n, int fromIndex, int toIndex) {
+		if (fromIndex <= 0 && toIndex >= n.size)
+			return n.data;
+		int leftSize = size(n.left);
+		T ret = null;
+		boolean empty = true;
+		if (fromIndex < leftSize && n.left != null) {
+			ret = query(n.left, fromIndex, toIndex);
+			empty = false;
+		}
+		if (fromIndex <= leftSize && leftSize < toIndex) {
+			T data = createData(n.element);
+			ret = empty ? data : mergeCodomains(ret, data);
+			empty = false;
+		}
+		if (toIndex > leftSize + 1 && n.right != null) {
+			T data = query(n.right, fromIndex - leftSize - 1,
+					toIndex - leftSize - 1);
+			ret = empty ? data : mergeCodomains(ret, data);
+		}
+		return ret;
+	}
+	
+	/**
+	 * Splits the specified subtree so that the first <code>k</code>
+	 * elements end up in the left part.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private Node<E, T>[] split(Node<E, T> n, int k) {
+		Node<E, T>[] ret = new Node[2];
+		if (n == null)
+			return ret;
+		int leftSize = size(n.left);
+		if (k <= leftSize) {
+			Node<E, T>[] parts = split(n.left, k);
+			n.left = parts[1];
+			ret[0] = parts[0];
+			ret[1] = n;
+		} else {
+			Node<E, T>[] parts = split(n.right, k - leftSize - 1);
+			n.right = parts[0];
+			ret[0] = n;
+			ret[1] = parts[1];
+		}
+		update(n);
+		return ret;
+	}
+	
+	private Node<E, T> merge(Node<E, T> a, Node<E, T> b) {
+		if (a == null)
+			return b;
+		if (b == null)
+			return a;
+		if (a.priority > b.priority) {
+			a.right = merge(a.right, b);
+			update(a);
+			return a;
+		}
+		b.left = merge(a, b.left);
+		update(b);
+		return b;
+	}
+	
+	private void update(Node<E, T> n) {
+		T data = createData(n.element);
+		int size = 1;
+		if (n.left != null) {
+			data = mergeCodomains(n.left.data, data);
+			size += n.left.size;
+		}
+		if (n.right != null) {
+			data = mergeCodomains(data, n.right.data);
+			size += n.right.size;
+		}
+		n.data = data;
+		n.size = size;
+	}
+	
+	private int nextPriority() {
+		// xorshift
+		seed ^= seed << 13;
+		seed ^= seed >>> 17;
+		seed ^= seed << 5;
+		return seed;
+	}
+	
+	private static int size(Node<?, ?> n) {
+		return n != null ? n.size : 0;
+	}
+	
+	private static void rangeCheck(int index, int bound) {
+		if (index < 0 || index >= bound)
+			throw new IndexOutOfBoundsException("Index: " + index);
+	}
+	
+	private static void rangeCheck(int fromIndex, int toIndex, int size) {
+		if (fromIndex < 0 || toIndex > size || fromIndex > toIndex)
+			throw new IndexOutOfBoundsException("From index: " + fromIndex
+					+ ", to index: " + toIndex);
+	}
+	
+	private static final class Node<E, T> {
+		E element;
+		T data;
+		int size;
+		int priority;
+		Node<E, T> left, right;
+		
+		Node(E element, int priority) {
+			this.element = element;
+			this.priority = priority;
+		}
+	}
+	
+	private class Itr implements Iterator<E> {
+		// the nodes whose elements are yet to be returned, together with
+		// their right subtrees, the top one being the next
+		private Node<E, T>[] stack;
+		private int depth;
+		private int cursor;
+		private int lastRet = -1;
+		private int expectedModCount = modCount;
+		
+		Itr() {
+			seek(0);
+		}
+		
+		@Override
+		public boolean hasNext() {
+			return depth > 0;
+		}
+		
+		@Override
+		public E next() {
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+			if (depth == 0)
+				throw new NoSuchElementException();
+			Node<E, T> n = stack[--depth];
+			pushLeft(n.right);
+			lastRet = cursor++;
+			return n.element;
+		}
+		
+		@Override
+		public void remove() {
+			if (lastRet < 0)
+				throw new IllegalStateException();
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+			ImplicitTreap.this.remove(lastRet);
+			cursor = lastRet;
+			lastRet = -1;
+			expectedModCount = modCount;
+			seek(cursor);
+		}
+		
+		private void seek(int index) {
+			depth = 0;
+			for (Node<E, T> n = root; n != null; ) {
+				int leftSize = size(n.left);
+				if (index <= leftSize) {
+					push(n);
+					n = n.left;
+				} else {
+					index -= leftSize + 1;
+					n = n.right;
+				}
+			}
+		}
+		
+		private void pushLeft(Node<E, T> n) {
+			for (; n != null; n = n.left)
+				push(n);
+		}
+		
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		private void push(Node<E, T> n) {
+			if (stack == null)
+				stack = new Node[16];
+			else if (depth == stack.length) {
+				Node<E, T>[] newStack = new Node[depth << 1];
+				System.arraycopy(stack, 0, newStack, 0, depth);
+				stack = newStack;
+			}
+			stack[depth++] = n;
+		}
+	}
+}
@@ -0,0 +1,114 @@
+package org.sglj.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class BucketListTest {
+
+	static Random RANDOM = new Random(30);
+
+	@Test
+	public void testAddAll() {
+		BucketList<Integer> l = new BucketList<Integer>();
+		List<Integer> expected = new ArrayList<Integer>();
+		for (int i = 0; i < 50; ++i) {
+			l.add(i);
+			expected.add(i);
+		}
+		List<Integer> block = range(1000, 6000);
+		l.addAll(20, block);
+		expected.addAll(20, block);
+		check(expected, l);
+
+		l.addAll(block);
+		expected.addAll(block);
+		check(expected, l);
+	}
+
+	@Test
+	public void testRemoveRange() {
+		BucketList<Integer> l = new BucketList<Integer>();
+		l.addAll(range(0, 10000));
+		List<Integer> expected = range(0, 10000);
+
+		l.subList(100, 9000).clear();
+		expected.subList(100, 9000).clear();
+		check(expected, l);
+
+		l.subList(0, 3).clear();
+		expected.subList(0, 3).clear();
+		check(expected, l);
+
+		l.clear();
+		Assert.assertTrue(l.isEmpty());
+		l.add(0, 7);
+		Assert.assertEquals((Integer) 7, l.get(0));
+	}
+
+	@Test
+	public void testSplice() {
+		BucketList<Integer> l1 = new BucketList<Integer>();
+		l1.addAll(range(0, 16));
+		BucketList<Integer> l2 = new BucketList<Integer>();
+		l2.addAll(range(16, 30));
+		l1.splice(l1.size(), l2);
+		Assert.assertTrue(l2.isEmpty());
+		check(range(0, 30), l1);
+
+		l2.addAll(range(100, 300));
+		l1.splice(5, l2);
+		List<Integer> expected = range(0, 30);
+		expected.addAll(5, range(100, 300));
+		check(expected, l1);
+
+		l2.add(1);
+		Assert.assertEquals(1, l2.size());
+	}
+
+	@Test
+	public void testRandom() {
+		BucketList<Integer> l = new BucketList<Integer>();
+		List<Integer> expected = new ArrayList<Integer>();
+		for (int iter = 0; iter < 3000; ++iter) {
+			int op = RANDOM.nextInt(4);
+			int size = expected.size();
+			if (op == 0) {
+				int index = RANDOM.nextInt(size + 1);
+				List<Integer> block = range(iter, iter + RANDOM.nextInt(200));
+				l.addAll(index, block);
+				expected.addAll(index, block);
+			} else if (op == 1 && size > 0) {
+				int from = RANDOM.nextInt(size);
+				int to = from + RANDOM.nextInt(size - from + 1);
+				l.subList(from, to).clear();
+				expected.subList(from, to).clear();
+			} else if (op == 2) {
+				int index = RANDOM.nextInt(size + 1);
+				l.add(index, iter);
+				expected.add(index, iter);
+			} else if (size > 0) {
+				int index = RANDOM.nextInt(size);
+				Assert.assertEquals(expected.remove(index), l.remove(index));
+			}
+			check(expected, l);
+		}
+	}
+
+	static List<Integer> range(int from, int to) {
+		List<Integer> ret = new ArrayList<Integer>();
+		for (int i = from; i < to; ++i)
+			ret.add(i);
+		return ret;
+	}
+
+	static void check(List<Integer> expected, BucketList<Integer> actual) {
+		Assert.assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); ++i)
+			Assert.assertEquals(expected.get(i), actual.get(i));
+	}
+}
@@ -0,0 +1,164 @@
+package org.sglj.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.AbstractMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class CompactHashMultiMapTest {
+
+	@Test
+	public void testRepresentations() {
+		CompactHashMultiMap<String, Integer> m =
+			new CompactHashMultiMap<String, Integer>();
+		Assert.assertNull(m.put("a", 1));
+		Assert.assertNull(m.getAll("b"));
+		Assert.assertEquals((Integer) 1, m.get("a"));
+		for (int i = 2; i <= 20; ++i) {
+			m.put("a", i);
+			Assert.assertEquals(i, m.getValueCount("a"));
+		}
+		m.put("a", null);
+		Assert.assertTrue(m.containsEntry("a", null));
+		Assert.assertTrue(m.containsValue(null));
+		Assert.assertEquals(21, m.size());
+		for (int i = 20; i >= 1; --i)
+			Assert.assertTrue(m.removeEntry("a", i));
+		Assert.assertFalse(m.removeEntry("a", 1));
+		Assert.assertNull(m.get("a"));
+		Assert.assertTrue(m.removeEntry("a", null));
+		Assert.assertFalse(m.containsKey("a"));
+		Assert.assertTrue(m.isEmpty());
+		Assert.assertEquals(0, m.size());
+	}
+
+	@Test
+	public void testArrayValues() {
+		CompactHashMultiMap<Integer, Object> m =
+			new CompactHashMultiMap<Integer, Object>();
+		Object[] x = new Object[] {"x"};
+		m.put(1, x);
+		Assert.assertSame(x, m.get(1));
+		m.put(1, "y");
+		Assert.assertTrue(m.removeEntry(1, "y"));
+		Assert.assertSame(x, m.get(1));
+		Assert.assertEquals(1, m.getValueCount(1));
+	}
+
+	@Test
+	public void testEntrySet() {
+		CompactHashMultiMap<Integer, Integer> m =
+			new CompactHashMultiMap<Integer, Integer>();
+		// a singleton, an array and a hash set of values
+		m.put(1, 10);
+		for (int i = 0; i < 4; ++i)
+			m.put(2, 20 + i);
+		for (int i = 0; i < 12; ++i)
+			m.put(3, 30 + i);
+		Set<Map.Entry<Integer, Integer>> entries = m.entrySet();
+		Assert.assertEquals(17, entries.size());
+		Set<Map.Entry<Integer, Integer>> seen =
+			new HashSet<Map.Entry<Integer, Integer>>();
+		for (Map.Entry<Integer, Integer> e : entries) {
+			Assert.assertTrue(m.containsEntry(e.getKey(), e.getValue()));
+			seen.add(e);
+		}
+		Assert.assertEquals(17, seen.size());
+		Assert.assertTrue(entries.contains(
+				new AbstractMap.SimpleEntry<Integer, Integer>(2, 21)));
+		Assert.assertFalse(entries.contains(
+				new AbstractMap.SimpleEntry<Integer, Integer>(2, 31)));
+
+		// remove the even values, emptying the key 1
+		for (Iterator<Map.Entry<Integer, Integer>> it = entries.iterator();
+				it.hasNext(); ) {
+			if (it.next().getValue() % 2 == 0)
+				it.remove();
+		}
+		Assert.assertFalse(m.containsKey(1));
+		Assert.assertEquals(8, m.size());
+		Assert.assertEquals(2, m.getValueCount(2));
+		Assert.assertEquals(6, m.getValueCount(3));
+		Assert.assertTrue(entries.remove(
+				new AbstractMap.SimpleEntry<Integer, Integer>(2, 21)));
+		Assert.assertEquals(7, entries.size());
+		for (Iterator<Map.Entry<Integer, Integer>> it = entries.iterator();
+				it.hasNext(); ) {
+			it.next();
+			it.remove();
+		}
+		Assert.assertTrue(m.isEmpty());
+		Assert.assertEquals(0, m.size());
+	}
+
+	@Test
+	public void testRandom() throws IOException, ClassNotFoundException {
+		Random random = new Random(41);
+		CompactHashMultiMap<Integer, Integer> m =
+			new CompactHashMultiMap<Integer, Integer>();
+		HashMultiMap<Integer, Integer> expected =
+			new HashMultiMap<Integer, Integer>();
+		for (int iter = 0; iter < 100000; ++iter) {
+			Integer key = random.nextInt(50);
+			Integer value = random.nextInt(random.nextBoolean() ? 3 : 30);
+			int op = random.nextInt(6);
+			if (op <= 1) {
+				Assert.assertEquals(expected.put(key, value), m.put(key, value));
+			} else if (op == 2) {
+				Assert.assertEquals(expected.removeEntry(key, value),
+						m.removeEntry(key, value));
+				if (expected.getValueCount(key) == 0)
+					expected.removeAll(key);
+			} else if (op == 3 && m.containsKey(key)) {
+				Set<Integer> values = m.getAll(key);
+				Set<Integer> seen = new HashSet<Integer>();
+				for (Iterator<Integer> it = values.iterator(); it.hasNext(); ) {
+					Integer x = it.next();
+					seen.add(x);
+					if (random.nextInt(3) == 0) {
+						it.remove();
+						expected.removeEntry(key, x);
+					}
+				}
+				Assert.assertTrue(seen.containsAll(expected.getAll(key)));
+				if (expected.getValueCount(key) == 0)
+					expected.removeAll(key);
+			} else if (op == 4 && random.nextInt(10) == 0) {
+				Set<Integer> values = expected.getAll(key);
+				Assert.assertEquals(values == null ? null
+						: new HashSet<Integer>(values), m.removeAll(key));
+				expected.removeAll(key);
+			} else {
+				Assert.assertEquals(expected.containsEntry(key, value),
+						m.containsEntry(key, value));
+			}
+			Assert.assertEquals(expected.getValueCount(key),
+					m.getValueCount(key));
+			Assert.assertEquals(expected.containsKey(key), m.containsKey(key));
+		}
+		Assert.assertEquals(expected.keySet(), m.keySet());
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(m);
+		out.close();
+		@SuppressWarnings("unchecked")
+		CompactHashMultiMap<Integer, Integer> copy =
+			(CompactHashMultiMap<Integer, Integer>) new ObjectInputStream(
+					new ByteArrayInputStream(bytes.toByteArray())).readObject();
+		Assert.assertEquals(m.size(), copy.size());
+		for (Integer key : expected.keySet())
+			Assert.assertEquals(expected.getAll(key), copy.getAll(key));
+	}
+}
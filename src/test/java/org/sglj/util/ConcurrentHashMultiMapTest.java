@@ -0,0 +1,148 @@
+package org.sglj.util;
+
+import java.util.AbstractMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class ConcurrentHashMultiMapTest {
+
+	@Test
+	public void testSimple() {
+		ConcurrentHashMultiMap<String, Integer> m =
+			new ConcurrentHashMultiMap<String, Integer>();
+		Assert.assertNull(m.put("a", 1));
+		Assert.assertEquals((Integer) 2, m.put("a", 2));
+		Assert.assertFalse(m.putEntry("a", 2));
+		Set<Integer> view = m.getAll("a");
+		Assert.assertEquals(2, view.size());
+		Assert.assertNull(m.getAll("b"));
+
+		Assert.assertTrue(m.removeEntry("a", 1));
+		Assert.assertTrue(m.removeEntry("a", 2));
+		Assert.assertFalse(m.containsKey("a"));
+		Assert.assertTrue(view.isEmpty());
+		// the view reflects the key when it is mapped again
+		m.put("a", 3);
+		Assert.assertTrue(view.contains(3));
+		for (Iterator<Integer> it = view.iterator(); it.hasNext(); ) {
+			it.next();
+			it.remove();
+		}
+		Assert.assertTrue(m.isEmpty());
+		Assert.assertEquals(0, m.size());
+	}
+
+	@Test
+	public void testConcurrent() throws InterruptedException {
+		final ConcurrentHashMultiMap<Integer, Integer> m =
+			new ConcurrentHashMultiMap<Integer, Integer>();
+		final int keyCount = 8;
+		final int n = 20000;
+		// the first failure of the workers, rethrown by the test thread
+		final AtomicReference<Throwable> failure =
+			new AtomicReference<Throwable>();
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; ++t) {
+			final int id = t;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					Random random = new Random(id);
+					// each thread adds and removes its own values, so that
+					// the keys are frequently emptied and mapped again
+					try {
+						for (int i = 0; i < n; ++i) {
+							Integer key = random.nextInt(keyCount);
+							Integer value = id * n + i;
+							Assert.assertTrue(m.putEntry(key, value));
+							Assert.assertTrue(m.containsEntry(key, value));
+							if (i % 4 != 0)
+								Assert.assertTrue(m.removeEntry(key, value));
+						}
+					} catch (Throwable t) {
+						failure.compareAndSet(null, t);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+		if (failure.get() != null)
+			throw new AssertionError(failure.get());
+
+		int total = 0;
+		for (Integer key : m.keySet())
+			total += m.getValueCount(key);
+		Assert.assertEquals(threads.length * n / 4, total);
+		Assert.assertEquals(total, m.size());
+		for (int t = 0; t < threads.length; ++t) {
+			Random random = new Random(t);
+			for (int i = 0; i < n; ++i) {
+				Integer key = random.nextInt(keyCount);
+				Assert.assertEquals(i % 4 == 0, m.containsEntry(key, t * n + i));
+			}
+		}
+	}
+
+	@Test
+	public void testEntrySet() {
+		ConcurrentHashMultiMap<String, Integer> m =
+			new ConcurrentHashMultiMap<String, Integer>();
+		m.put("a", 1);
+		m.put("a", 2);
+		m.put("b", 3);
+		Set<Map.Entry<String, Integer>> entries = m.entrySet();
+		Assert.assertEquals(3, entries.size());
+		Set<Map.Entry<String, Integer>> expected =
+			new HashSet<Map.Entry<String, Integer>>();
+		expected.add(new AbstractMap.SimpleEntry<String, Integer>("a", 1));
+		expected.add(new AbstractMap.SimpleEntry<String, Integer>("a", 2));
+		expected.add(new AbstractMap.SimpleEntry<String, Integer>("b", 3));
+		Assert.assertEquals(expected, new HashSet<Map.Entry<String, Integer>>(
+				entries));
+		Assert.assertTrue(entries.contains(
+				new AbstractMap.SimpleEntry<String, Integer>("a", 2)));
+
+		for (Iterator<Map.Entry<String, Integer>> it = entries.iterator();
+				it.hasNext(); ) {
+			if (it.next().getValue() != 2)
+				it.remove();
+		}
+		Assert.assertEquals(1, m.size());
+		Assert.assertFalse(m.containsKey("b"));
+		Assert.assertTrue(entries.remove(
+				new AbstractMap.SimpleEntry<String, Integer>("a", 2)));
+		Assert.assertTrue(entries.isEmpty());
+	}
+
+	@Test
+	public void testRemoveAllRace() throws InterruptedException {
+		final ConcurrentHashMultiMap<Integer, Integer> m =
+			new ConcurrentHashMultiMap<Integer, Integer>();
+		final int n = 20000;
+		Thread remover = new Thread() {
+			@Override
+			public void run() {
+				for (int i = 0; i < n; ++i)
+					m.removeAll(0);
+			}
+		};
+		remover.start();
+		for (int i = 0; i < n; ++i) {
+			m.putEntry(0, i % 4);
+			m.removeEntry(0, (i + 2) % 4);
+			Assert.assertTrue(m.size() >= 0);
+		}
+		remover.join();
+		Assert.assertEquals(m.getValueCount(0), m.size());
+	}
+}
@@ -0,0 +1,71 @@
+package org.sglj.util;
+
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class ConcurrentOccurrenceCounterTest {
+
+	@Test
+	public void testSingleThread() {
+		ConcurrentOccurrenceCounter<String> counter
+		= new ConcurrentOccurrenceCounter<String>(2);
+		counter.increment("a");
+		counter.add("b", 3);
+		counter.add("c", 2);
+		List<Pair<String, Long>> top = counter.topK();
+		Assert.assertEquals(2, top.size());
+		Assert.assertEquals("b", top.get(0).first());
+		Assert.assertEquals("c", top.get(1).first());
+		counter.add("a", 5);
+		top = counter.topK();
+		Assert.assertEquals("a", top.get(0).first());
+		Assert.assertEquals((Long) 6L, top.get(0).second());
+		Assert.assertEquals("b", top.get(1).first());
+		Assert.assertEquals(2, counter.count("c"));
+		Assert.assertEquals(0, counter.count("d"));
+		Assert.assertEquals(3, counter.size());
+	}
+
+	@Test
+	public void testConcurrent() throws InterruptedException {
+		final ConcurrentOccurrenceCounter<Integer> counter
+		= new ConcurrentOccurrenceCounter<Integer>(5);
+		final int threadCount = 8;
+		final int perThread = 100000;
+		Thread[] threads = new Thread[threadCount];
+		for (int t = 0; t < threadCount; ++t) {
+			final Random random = new Random(t);
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < perThread; ++i) {
+						// keys 0..4 take 10%, 8%, 6%, 4% and 2% of the events
+						int r = random.nextInt(100);
+						int key = r < 10 ? 0 : r < 18 ? 1 : r < 24 ? 2
+								: r < 28 ? 3 : r < 30 ? 4
+								: 5 + random.nextInt(1000);
+						counter.increment(key);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+
+		long total = 0;
+		for (int key = 0; key < 1005; ++key)
+			total += counter.count(key);
+		Assert.assertEquals((long) threadCount * perThread, total);
+		List<Pair<Integer, Long>> top = counter.topK();
+		Assert.assertEquals(5, top.size());
+		for (int i = 0; i < 5; ++i) {
+			Assert.assertEquals((Integer) i, top.get(i).first());
+			Assert.assertEquals(counter.count(i), (long) top.get(i).second());
+		}
+	}
+}
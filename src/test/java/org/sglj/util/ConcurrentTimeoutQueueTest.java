@@ -0,0 +1,144 @@
+package org.sglj.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.sglj.util.ConcurrentTimeoutQueue.ExpirationListener;
+import org.sglj.util.TimingWheelTimeoutQueue.Timeout;
+
+public class ConcurrentTimeoutQueueTest {
+
+	static class ManualClock implements Clock {
+		volatile long time;
+
+		@Override
+		public long currentTimeMillis() {
+			return time;
+		}
+	}
+
+	@Test
+	public void testBatches() {
+		ManualClock clock = new ManualClock();
+		final List<List<String>> batches = new ArrayList<List<String>>();
+		ConcurrentTimeoutQueue<String> q = new ConcurrentTimeoutQueue<String>(
+				100, 10, clock, new ExpirationListener<String>() {
+					@Override
+					public void expired(List<String> elements) {
+						batches.add(elements);
+					}
+				});
+		// the expiration is driven by hand, the ticker is not started
+
+		q.offer("a");
+		q.offer("b");
+		Timeout<String> c = q.schedule("c", 100);
+		q.schedule("d", 150);
+		Assert.assertTrue(c.cancel());
+		clock.time = 99;
+		Assert.assertEquals(0, q.tick());
+		Assert.assertEquals(3, q.size());
+		clock.time = 100;
+		Assert.assertEquals(2, q.tick());
+		Assert.assertEquals(1, batches.size());
+		Assert.assertEquals(2, batches.get(0).size());
+		Assert.assertEquals("d", q.peek());
+		clock.time = 1000;
+		Assert.assertEquals(1, q.tick());
+		Assert.assertTrue(q.isEmpty());
+	}
+
+	@Test
+	public void testTicker() throws InterruptedException {
+		final int n = 20000;
+		final AtomicIntegerArray expired = new AtomicIntegerArray(n);
+		final ConcurrentTimeoutQueue<Integer> q =
+			new ConcurrentTimeoutQueue<Integer>(20, 2,
+					new ExpirationListener<Integer>() {
+				@Override
+				public void expired(List<Integer> elements) {
+					for (Integer e : elements)
+						expired.incrementAndGet(e);
+				}
+			});
+		q.start();
+		Thread[] producers = new Thread[4];
+		for (int t = 0; t < producers.length; ++t) {
+			final int id = t;
+			producers[t] = new Thread() {
+				@Override
+				public void run() {
+					for (int i = id; i < n; i += 4) {
+						Timeout<Integer> timeout = q.schedule(i, i % 50);
+						// every third element is cancelled
+						if (i % 3 == 0)
+							timeout.cancel();
+					}
+				}
+			};
+			producers[t].start();
+		}
+		for (Thread producer : producers)
+			producer.join();
+
+		for (int wait = 0; wait < 500 && !q.isEmpty(); ++wait)
+			Thread.sleep(10);
+		Thread.sleep(20);
+		q.shutdown();
+		Assert.assertTrue(q.isEmpty());
+		for (int i = 0; i < n; ++i) {
+			// a cancelled element may have expired before the cancellation
+			if (i % 3 != 0)
+				Assert.assertEquals("element " + i, 1, expired.get(i));
+			else
+				Assert.assertTrue(expired.get(i) <= 1);
+		}
+	}
+
+	@Test
+	public void testIteratorRemovesReturnedElement() {
+		ManualClock clock = new ManualClock();
+		final List<String> expired = new ArrayList<String>();
+		ConcurrentTimeoutQueue<String> q = new ConcurrentTimeoutQueue<String>(
+				100, 10, clock, new ExpirationListener<String>() {
+					@Override
+					public void expired(List<String> elements) {
+						expired.addAll(elements);
+					}
+				});
+		q.schedule("a", 100);
+		q.schedule("a", 200);
+		Iterator<String> it = q.iterator();
+		it.next();
+		it.next();
+		// removes the second element, although the first one is equal
+		it.remove();
+		Assert.assertFalse(it.hasNext());
+		clock.time = 100;
+		Assert.assertEquals(1, q.tick());
+		Assert.assertTrue(q.isEmpty());
+	}
+
+	@Test
+	public void testStart() {
+		ConcurrentTimeoutQueue<String> q = new ConcurrentTimeoutQueue<String>(
+				100, 10, new ExpirationListener<String>() {
+					@Override
+					public void expired(List<String> elements) {
+					}
+				});
+		q.start();
+		try {
+			q.start();
+			Assert.fail();
+		} catch (IllegalStateException e) {
+		}
+		q.shutdown();
+		Assert.assertTrue(q.isShutdown());
+	}
+}
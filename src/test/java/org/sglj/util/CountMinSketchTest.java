@@ -0,0 +1,84 @@
+package org.sglj.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class CountMinSketchTest {
+
+	@Test
+	public void testSimple() {
+		CountMinSketch sketch = new CountMinSketch(0.001, 0.01);
+		Assert.assertEquals(4096, sketch.getWidth());
+		Assert.assertEquals(5, sketch.getDepth());
+		Assert.assertEquals(0, sketch.count("a"));
+		Assert.assertTrue(sketch.increment("a"));
+		Assert.assertFalse(sketch.increment("a"));
+		Assert.assertEquals(12, sketch.add("b", 12));
+		Assert.assertEquals(2, sketch.count("a"));
+		Assert.assertEquals(12, sketch.count("b"));
+		Assert.assertEquals(14, sketch.total());
+		sketch.clear();
+		Assert.assertEquals(0, sketch.count("b"));
+		Assert.assertEquals(0, sketch.total());
+	}
+
+	@Test
+	public void testErrorBound() {
+		Random random = new Random(40);
+		double epsilon = 0.002;
+		CountMinSketch sketch = new CountMinSketch(epsilon, 0.001);
+		int[] counts = new int[100000];
+		for (int i = 0; i < 1000000; ++i) {
+			// skewed distribution
+			int key = (int) (counts.length * Math.pow(random.nextDouble(), 3));
+			++counts[key];
+			sketch.increment(key);
+		}
+		long bound = (long) (epsilon * sketch.total());
+		for (int key = 0; key < counts.length; ++key) {
+			long estimate = sketch.count(key);
+			Assert.assertTrue(estimate >= counts[key]);
+			Assert.assertTrue(estimate - counts[key] <= bound);
+		}
+	}
+
+	@Test
+	public void testMerge() throws IOException, ClassNotFoundException {
+		CountMinSketch a = new CountMinSketch(256, 4, 1);
+		CountMinSketch b = new CountMinSketch(256, 4, 1);
+		for (int i = 0; i < 100; ++i) {
+			a.add("x" + i, i);
+			b.add("x" + i, 2 * i);
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(b);
+		out.close();
+		b = (CountMinSketch) new ObjectInputStream(new ByteArrayInputStream(
+				bytes.toByteArray())).readObject();
+
+		a.merge(b);
+		Assert.assertEquals(3 * 99 * 100 / 2, a.total());
+		for (int i = 0; i < 100; ++i)
+			Assert.assertTrue(a.count("x" + i) >= 3 * i);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMergeIncompatible() {
+		new CountMinSketch(256, 4, 1).merge(new CountMinSketch(256, 4, 2));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTooManyCounters() {
+		new CountMinSketch(1 << 30, 2, 1);
+	}
+}
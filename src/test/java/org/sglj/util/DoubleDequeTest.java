@@ -0,0 +1,85 @@
+package org.sglj.util;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class DoubleDequeTest {
+
+	@Test
+	public void testWrapAround() {
+		DoubleDeque d = new DoubleDeque(4);
+		for (int i = 0; i < 5; ++i)
+			d.addLast(i);
+		for (int i = 0; i < 3; ++i)
+			Assert.assertEquals(i, d.removeFirst(), 0);
+		d.addAll(new double[] {5, 6, 7, 8, 9, 10});
+		d.addFirst(2);
+		Assert.assertEquals(9, d.size());
+		for (int i = 0; i < d.size(); ++i)
+			Assert.assertEquals(i + 2, d.get(i), 0);
+		Assert.assertEquals(10, d.removeLast(), 0);
+		Assert.assertEquals(6, d.indexOf(8));
+		Assert.assertEquals(-1, d.indexOf(10));
+	}
+
+	@Test
+	public void testBitwiseEquality() {
+		DoubleDeque d = new DoubleDeque(new double[] {1, Double.NaN, 0.0});
+		// NaN is found although NaN != NaN, and -0.0 is not 0.0
+		Assert.assertEquals(1, d.indexOf(Double.NaN));
+		Assert.assertTrue(d.contains(Double.NaN));
+		Assert.assertEquals(2, d.indexOf(0.0));
+		Assert.assertEquals(-1, d.indexOf(-0.0));
+		Assert.assertFalse(d.contains(-0.0));
+
+		DoubleDeque same = new DoubleDeque(new double[] {1, Double.NaN, 0.0});
+		Assert.assertEquals(d, same);
+		Assert.assertEquals(d.hashCode(), same.hashCode());
+		Assert.assertEquals(d, d.clone());
+		DoubleDeque negativeZero = new DoubleDeque(
+				new double[] {1, Double.NaN, -0.0});
+		Assert.assertFalse(d.equals(negativeZero));
+	}
+
+	@Test
+	public void testRandom() {
+		Random random = new Random(27);
+		DoubleDeque d = new DoubleDeque();
+		ArrayList<Double> expected = new ArrayList<Double>();
+		for (int iter = 0; iter < 100000; ++iter) {
+			int op = random.nextInt(6);
+			double x = random.nextGaussian();
+			if (op == 0) {
+				d.addFirst(x);
+				expected.add(0, x);
+			} else if (op == 1) {
+				d.addLast(x);
+				expected.add(x);
+			} else if (op == 2 && !expected.isEmpty()) {
+				Assert.assertEquals(expected.remove(0), d.removeFirst(), 0);
+			} else if (op == 3 && !expected.isEmpty()) {
+				Assert.assertEquals(expected.remove(expected.size() - 1),
+						d.removeLast(), 0);
+			} else if (op == 4) {
+				double[] a = new double[random.nextInt(20)];
+				for (int i = 0; i < a.length; ++i) {
+					a[i] = random.nextGaussian();
+					expected.add(a[i]);
+				}
+				d.addAll(a);
+			} else if (!expected.isEmpty()) {
+				int index = random.nextInt(expected.size());
+				Assert.assertEquals(expected.set(index, x),
+						d.set(index, x), 0);
+			}
+			Assert.assertEquals(expected.size(), d.size());
+		}
+		double[] a = d.toArray();
+		for (int i = 0; i < a.length; ++i)
+			Assert.assertEquals(expected.get(i), a[i], 0);
+	}
+}
@@ -0,0 +1,59 @@
+package org.sglj.util;
+
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class EnumLongCounterTest {
+
+	@Test
+	public void testConcurrentIncrement() throws InterruptedException {
+		final EnumLongCounter<TimeUnit> counter =
+			new EnumLongCounter<TimeUnit>(TimeUnit.class);
+		final int n = 100000;
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; ++t) {
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < n; ++i) {
+						counter.increment(TimeUnit.SECONDS);
+						counter.add(TimeUnit.values()[i % 3], 2);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+
+		Assert.assertEquals(threads.length * n, counter.get(TimeUnit.SECONDS));
+		Assert.assertEquals(3L * threads.length * n, counter.sum());
+		Assert.assertEquals(0, counter.get(TimeUnit.DAYS));
+		Assert.assertEquals((Long) counter.get(TimeUnit.NANOSECONDS),
+				counter.snapshot().get(TimeUnit.NANOSECONDS));
+		Assert.assertEquals(threads.length * n, counter.reset(TimeUnit.SECONDS));
+		counter.clear();
+		Assert.assertEquals(0, counter.sum());
+	}
+
+	@Test
+	public void testConcurrentEnumArrayMap() {
+		ConcurrentEnumArrayMap<TimeUnit, String> m =
+			new ConcurrentEnumArrayMap<TimeUnit, String>(TimeUnit.values().length);
+		Assert.assertFalse(m.containsKey(TimeUnit.DAYS));
+		Assert.assertNull(m.put(TimeUnit.DAYS, null));
+		Assert.assertTrue(m.containsKey(TimeUnit.DAYS));
+		Assert.assertFalse(m.putIfAbsent(TimeUnit.DAYS, "d"));
+		Assert.assertTrue(m.replace(TimeUnit.DAYS, null, "d"));
+		Assert.assertTrue(m.putIfAbsent(TimeUnit.HOURS, "h"));
+		Assert.assertEquals("d", m.get(TimeUnit.DAYS));
+		Assert.assertEquals("h", m.remove(TimeUnit.HOURS));
+		Assert.assertFalse(m.containsKey(TimeUnit.HOURS));
+		m.clear();
+		Assert.assertFalse(m.containsKey(TimeUnit.DAYS));
+		Assert.assertNull(m.get(TimeUnit.DAYS));
+	}
+}
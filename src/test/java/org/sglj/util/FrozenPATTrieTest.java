@@ -0,0 +1,163 @@
+package org.sglj.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class FrozenPATTrieTest {
+
+	private static <E> void assertSame(PATTrie<E> trie,
+			FrozenPATTrie<E> frozen, List<String> keys) {
+		Assert.assertEquals(trie.size(), frozen.size());
+		Assert.assertEquals(trie.nodeCount(), frozen.nodeCount());
+		for (String key : keys) {
+			Assert.assertEquals(new HashSet<E>(trie.getValues(key)),
+					new HashSet<E>(frozen.getValues(key)));
+			for (int len = 0; len <= key.length(); ++len) {
+				String prefix = key.substring(0, len);
+				List<E> expected = new ArrayList<E>();
+				List<E> actual = new ArrayList<E>();
+				trie.findPrefix(prefix, expected);
+				frozen.findPrefix(prefix, actual);
+				Assert.assertEquals(expected.size(), actual.size());
+				Assert.assertEquals(new HashSet<E>(expected),
+						new HashSet<E>(actual));
+			}
+		}
+	}
+
+	@Test
+	public void testRandom() throws IOException, ClassNotFoundException {
+		Random random = new Random(49);
+		PATTrie<Integer> trie = new PATTrie<Integer>();
+		List<String> keys = new ArrayList<String>();
+		for (int i = 0; i < 3000; ++i) {
+			String key = PATTrieTest.randomKey(random, "abcd", 8);
+			keys.add(key);
+			trie.put(key, random.nextInt(100));
+			if (random.nextInt(4) == 0)
+				trie.remove(keys.get(random.nextInt(keys.size())),
+						random.nextInt(100));
+		}
+		keys.add("zzz");
+		FrozenPATTrie<Integer> frozen = trie.freeze();
+		assertSame(trie, frozen, keys);
+		Assert.assertTrue(frozen.getValues("zzz").isEmpty());
+		Assert.assertFalse(frozen.findPrefix("abcdabcdx",
+				new ArrayList<Integer>()));
+
+		File file = File.createTempFile("frozen", ".trie");
+		try {
+			frozen.writeTo(file);
+			assertSame(trie, FrozenPATTrie.<Integer>map(file), keys);
+		} finally {
+			file.delete();
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(frozen);
+		out.close();
+		@SuppressWarnings("unchecked")
+		FrozenPATTrie<Integer> copy = (FrozenPATTrie<Integer>)
+				new ObjectInputStream(new ByteArrayInputStream(
+						bytes.toByteArray())).readObject();
+		assertSame(trie, copy, keys);
+	}
+
+	private static <E> void assertMapped(PATTrie<E> trie, List<String> keys)
+	throws IOException {
+		File file = File.createTempFile("frozen", ".trie");
+		try {
+			trie.freeze().writeTo(file);
+			assertSame(trie, FrozenPATTrie.<E>map(file), keys);
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testMapStrings() throws IOException {
+		Random random = new Random(4902);
+		PATTrie<String> trie = new PATTrie<String>();
+		List<String> keys = new ArrayList<String>();
+		for (int i = 0; i < 1000; ++i) {
+			String key = PATTrieTest.randomKey(random, "abc", 6);
+			keys.add(key);
+			// some of the values are longer than the initial buffer
+			trie.put(key, random.nextInt(10) == 0 
+					? PATTrieTest.randomKey(random, "xyz", 600) : key);
+		}
+		trie.put("empty", "");
+		keys.add("empty");
+		assertMapped(trie, keys);
+	}
+
+	@Test
+	public void testMapSerialized() throws IOException {
+		Random random = new Random(4903);
+		PATTrie<Object> trie = new PATTrie<Object>();
+		List<String> keys = new ArrayList<String>();
+		for (int i = 0; i < 1000; ++i) {
+			String key = PATTrieTest.randomKey(random, "abc", 6);
+			keys.add(key);
+			// neither all integers nor all strings
+			int value = random.nextInt(50);
+			trie.put(key, value % 3 == 0 ? (Object) Long.valueOf(value)
+					: value % 3 == 1 ? Integer.valueOf(value) : key);
+		}
+		assertMapped(trie, keys);
+	}
+
+	@Test
+	public void testMapTruncated() throws IOException {
+		// integers, strings and serialized values, respectively
+		Object[][] valueKinds = {
+				{ 1, 2, 3 }, { "one", "two", "" }, { 1L, 2L, 3L } };
+		for (Object[] values : valueKinds) {
+			PATTrie<Object> trie = new PATTrie<Object>();
+			trie.put("abc", values[0]);
+			trie.put("abd", values[1]);
+			trie.put("b", values[2]);
+			File file = File.createTempFile("frozen", ".trie");
+			try {
+				trie.freeze().writeTo(file);
+				long length = file.length();
+				for (long cut = length - 1; cut >= 0; --cut) {
+					RandomAccessFile raf = new RandomAccessFile(file, "rw");
+					raf.setLength(cut);
+					raf.close();
+					try {
+						FrozenPATTrie.map(file);
+						Assert.fail("Mapped a file truncated to " + cut
+								+ " of " + length + " bytes");
+					} catch (IOException e) {
+						// expected
+					}
+				}
+			} finally {
+				file.delete();
+			}
+		}
+	}
+
+	@Test
+	public void testEmpty() {
+		FrozenPATTrie<String> frozen = new PATTrie<String>().freeze();
+		Assert.assertTrue(frozen.isEmpty());
+		Assert.assertTrue(frozen.getValues("").isEmpty());
+		Assert.assertFalse(frozen.findPrefix("", new ArrayList<String>()));
+	}
+}
@@ -0,0 +1,66 @@
+package org.sglj.util;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class IntDequeTest {
+
+	@Test
+	public void testWrapAround() {
+		IntDeque d = new IntDeque(4);
+		for (int i = 0; i < 5; ++i)
+			d.addLast(i);
+		for (int i = 0; i < 3; ++i)
+			Assert.assertEquals(i, d.removeFirst());
+		d.addAll(new int[] {5, 6, 7, 8, 9, 10});
+		d.addFirst(2);
+		Assert.assertEquals(9, d.size());
+		for (int i = 0; i < d.size(); ++i)
+			Assert.assertEquals(i + 2, d.get(i));
+		Assert.assertEquals(10, d.removeLast());
+		Assert.assertEquals(6, d.indexOf(8));
+		Assert.assertEquals(-1, d.indexOf(10));
+	}
+
+	@Test
+	public void testRandom() {
+		Random random = new Random(27);
+		IntDeque d = new IntDeque();
+		ArrayList<Integer> expected = new ArrayList<Integer>();
+		for (int iter = 0; iter < 100000; ++iter) {
+			int op = random.nextInt(6);
+			int x = random.nextInt();
+			if (op == 0) {
+				d.addFirst(x);
+				expected.add(0, x);
+			} else if (op == 1) {
+				d.addLast(x);
+				expected.add(x);
+			} else if (op == 2 && !expected.isEmpty()) {
+				Assert.assertEquals((int) expected.remove(0), d.removeFirst());
+			} else if (op == 3 && !expected.isEmpty()) {
+				Assert.assertEquals((int) expected.remove(expected.size() - 1),
+						d.removeLast());
+			} else if (op == 4) {
+				int[] a = new int[random.nextInt(20)];
+				for (int i = 0; i < a.length; ++i) {
+					a[i] = random.nextInt();
+					expected.add(a[i]);
+				}
+				d.addAll(a);
+			} else if (!expected.isEmpty()) {
+				int index = random.nextInt(expected.size());
+				Assert.assertEquals((int) expected.set(index, x),
+						d.set(index, x));
+			}
+			Assert.assertEquals(expected.size(), d.size());
+		}
+		int[] a = d.toArray();
+		for (int i = 0; i < a.length; ++i)
+			Assert.assertEquals((int) expected.get(i), a[i]);
+	}
+}
@@ -1,6 +1,8 @@
 package org.sglj.util;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import junit.framework.Assert;
 
@@ -30,6 +32,99 @@ public class LinkedListTest {
 		checkConcatenation(create(), create());
 	}
 	
+	@Test
+	public void testHandles() {
+		LinkedList<Integer> l = create(1, 2);
+		LinkedList.Handle<Integer> h3 = l.addLastHandle(3);
+		LinkedList.Handle<Integer> h0 = l.addFirstHandle(0);
+		LinkedList.Handle<Integer> h4 = l.addLastHandle(4);
+		Assert.assertEquals(Arrays.asList(0, 1, 2, 3, 4), l);
+		Assert.assertEquals((Integer) 3, h3.get());
+
+		l.moveToFront(h3);
+		Assert.assertEquals(Arrays.asList(3, 0, 1, 2, 4), l);
+		l.moveToFront(h3);
+		l.moveToFront(h4);
+		Assert.assertEquals(Arrays.asList(4, 3, 0, 1, 2), l);
+
+		Assert.assertEquals((Integer) 0, l.remove(h0));
+		Assert.assertEquals(Arrays.asList(4, 3, 1, 2), l);
+		try {
+			l.remove(h0);
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+		}
+
+		// a stale handle does not alias a new element
+		LinkedList.Handle<Integer> h5 = l.addLastHandle(5);
+		Assert.assertNotSame(h0, h5);
+		try {
+			l.remove(h0);
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+		}
+		Assert.assertEquals(Arrays.asList(4, 3, 1, 2, 5), l);
+
+		// the handle of the least recently used element is reused
+		Assert.assertEquals((Integer) 5, l.set(h5, 6));
+		l.moveToFront(h5);
+		Assert.assertEquals(Arrays.asList(6, 4, 3, 1, 2), l);
+		Assert.assertEquals((Integer) 4, l.remove(h4));
+		Assert.assertEquals((Integer) 3, l.remove(h3));
+		Assert.assertEquals(Arrays.asList(6, 1, 2), l);
+		Assert.assertEquals(3, l.size());
+	}
+
+	@Test
+	public void testDoubleRemoveHandle() {
+		LinkedList<Integer> l = create();
+		List<LinkedList.Handle<Integer>> handles = 
+				new ArrayList<LinkedList.Handle<Integer>>();
+		for (int i = 0; i < 100; ++i)
+			handles.add(l.addLastHandle(i));
+		for (int i = 0; i < 70; ++i)
+			l.remove(handles.get(i));
+		for (int i = 0; i < 70; ++i) {
+			try {
+				l.remove(handles.get(i));
+				Assert.fail();
+			} catch (IllegalArgumentException e) {
+			}
+		}
+		Assert.assertEquals(30, l.size());
+		Assert.assertEquals(30, new ArrayList<Integer>(l).size());
+	}
+
+	@Test
+	public void testRemoveHandleAfterUnlink() {
+		LinkedList<Integer> l = create(1, 2);
+		LinkedList.Handle<Integer> first = l.addFirstHandle(0);
+		LinkedList.Handle<Integer> last = l.addLastHandle(3);
+		LinkedList.Handle<Integer> middle = l.addLastHandle(4);
+		l.moveToFront(middle);
+		Assert.assertEquals((Integer) 4, l.removeFirst());
+		Assert.assertEquals((Integer) 3, l.removeLast());
+		Assert.assertTrue(l.remove((Object) 0));
+		for (LinkedList.Handle<Integer> h : Arrays.asList(first, last, middle)) {
+			try {
+				l.remove(h);
+				Assert.fail();
+			} catch (IllegalArgumentException e) {
+			}
+		}
+		Assert.assertEquals(Arrays.asList(1, 2), l);
+		Assert.assertEquals(2, l.size());
+
+		LinkedList.Handle<Integer> h = l.addLastHandle(5);
+		l.clear();
+		try {
+			l.moveToFront(h);
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+		}
+		Assert.assertTrue(l.isEmpty());
+	}
+	
 	static void checkConcatenation(LinkedList<Integer> l1, 
 			LinkedList<Integer> l2) {
 		System.out.println("----------");
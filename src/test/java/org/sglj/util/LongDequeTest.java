@@ -0,0 +1,94 @@
+package org.sglj.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class LongDequeTest {
+
+	@Test
+	public void testWrapAround() {
+		LongDeque d = new LongDeque(4);
+		for (int i = 0; i < 5; ++i)
+			d.addLast(i);
+		for (int i = 0; i < 3; ++i)
+			Assert.assertEquals(i, d.removeFirst());
+		d.addAll(new long[] {5, 6, 7, 8, 9, 1L << 40});
+		d.addFirst(2);
+		Assert.assertEquals(9, d.size());
+		for (int i = 0; i < d.size() - 1; ++i)
+			Assert.assertEquals(i + 2, d.get(i));
+		Assert.assertEquals(1L << 40, d.removeLast());
+		Assert.assertEquals(6, d.indexOf(8));
+		Assert.assertEquals(-1, d.indexOf(1L << 40));
+		// the values which differ in the upper half only
+		Assert.assertEquals(-1, d.indexOf(8 + (1L << 32)));
+	}
+
+	@Test
+	public void testCopies() throws IOException, ClassNotFoundException {
+		LongDeque d = new LongDeque(new long[] {1, Long.MIN_VALUE, -1});
+		d.addFirst(Long.MAX_VALUE);
+		LongDeque clone = d.clone();
+		Assert.assertEquals(d, clone);
+		Assert.assertEquals(d.hashCode(), clone.hashCode());
+		clone.set(0, 0);
+		Assert.assertFalse(d.equals(clone));
+		Assert.assertEquals(Long.MAX_VALUE, d.getFirst());
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(d);
+		out.close();
+		LongDeque copy = (LongDeque) new ObjectInputStream(
+				new ByteArrayInputStream(bytes.toByteArray())).readObject();
+		Assert.assertEquals(d, copy);
+		Assert.assertEquals(-1, copy.removeLast());
+	}
+
+	@Test
+	public void testRandom() {
+		Random random = new Random(27);
+		LongDeque d = new LongDeque();
+		ArrayList<Long> expected = new ArrayList<Long>();
+		for (int iter = 0; iter < 100000; ++iter) {
+			int op = random.nextInt(6);
+			long x = random.nextLong();
+			if (op == 0) {
+				d.addFirst(x);
+				expected.add(0, x);
+			} else if (op == 1) {
+				d.addLast(x);
+				expected.add(x);
+			} else if (op == 2 && !expected.isEmpty()) {
+				Assert.assertEquals((long) expected.remove(0), d.removeFirst());
+			} else if (op == 3 && !expected.isEmpty()) {
+				Assert.assertEquals((long) expected.remove(expected.size() - 1),
+						d.removeLast());
+			} else if (op == 4) {
+				long[] a = new long[random.nextInt(20)];
+				for (int i = 0; i < a.length; ++i) {
+					a[i] = random.nextLong();
+					expected.add(a[i]);
+				}
+				d.addAll(a);
+			} else if (!expected.isEmpty()) {
+				int index = random.nextInt(expected.size());
+				Assert.assertEquals((long) expected.set(index, x),
+						d.set(index, x));
+			}
+			Assert.assertEquals(expected.size(), d.size());
+		}
+		long[] a = d.toArray();
+		for (int i = 0; i < a.length; ++i)
+			Assert.assertEquals((long) expected.get(i), a[i]);
+	}
+}
@@ -0,0 +1,93 @@
+package org.sglj.util;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class NthOrderStatisticTest {
+
+	static final Random RANDOM = new Random(36);
+
+	static void checkSelected(int[] a, int[] sorted, int from, int to,
+			int[] ranks, int[] selected) {
+		for (int i = 0; i < ranks.length; ++i) {
+			int index = from + ranks[i];
+			Assert.assertEquals(sorted[index], selected[i]);
+			Assert.assertEquals(sorted[index], a[index]);
+			for (int j = from; j < index; ++j)
+				Assert.assertTrue(a[j] <= a[index]);
+			for (int j = index + 1; j < to; ++j)
+				Assert.assertTrue(a[j] >= a[index]);
+		}
+	}
+
+	@Test
+	public void testMultiSelectInt() {
+		for (int n : new int[] {1, 10, 17, 1000, 100000}) {
+			for (int bound : new int[] {3, n, Integer.MAX_VALUE}) {
+				int[] a = new int[n + 2];
+				for (int i = 0; i < a.length; ++i)
+					a[i] = RANDOM.nextInt(bound);
+				int[] sorted = a.clone();
+				Arrays.sort(sorted, 1, n + 1);
+				int[] ranks = {0, n / 2, n * 9 / 10, n * 99 / 100, n - 1};
+				int[] selected = NthOrderStatistic.multiSelect(a, 1, n + 1,
+						ranks);
+				checkSelected(a, sorted, 1, n + 1, ranks, selected);
+			}
+		}
+	}
+
+	@Test
+	public void testMultiSelectLongDouble() {
+		int n = 5000;
+		long[] l = new long[n];
+		double[] d = new double[n];
+		for (int i = 0; i < n; ++i) {
+			l[i] = RANDOM.nextLong();
+			d[i] = i % 100 == 0 ? Double.NaN : RANDOM.nextGaussian();
+		}
+		long[] ls = l.clone();
+		double[] ds = d.clone();
+		Arrays.sort(ls);
+		Arrays.sort(ds);
+		int[] ranks = {7, 7, 2500, 4949, 4950, 4999};
+		long[] lsel = NthOrderStatistic.multiSelect(l, 0, n, ranks);
+		double[] dsel = NthOrderStatistic.multiSelect(d, 0, n, ranks);
+		for (int i = 0; i < ranks.length; ++i) {
+			Assert.assertEquals(ls[ranks[i]], lsel[i]);
+			Assert.assertEquals(ds[ranks[i]], dsel[i]);
+		}
+		Assert.assertEquals(ls[123], NthOrderStatistic.nthElement(l, 123));
+		Assert.assertEquals(ls[123], l[123]);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnsortedRanks() {
+		NthOrderStatistic.multiSelect(new int[10], 0, 10, 5, 4);
+	}
+
+	@Test
+	public void testParallelMultiSelect() {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			int n = 3 * NthOrderStatistic.PARALLEL_THRESHOLD;
+			int[] a = new int[n];
+			for (int i = 0; i < n; ++i)
+				a[i] = RANDOM.nextInt(n / 2);
+			int[] sorted = a.clone();
+			Arrays.sort(sorted);
+			int[] ranks = {n / 2, n * 9 / 10, n * 99 / 100, n * 999 / 1000};
+			int[] selected = NthOrderStatistic.parallelMultiSelect(a, 0, n,
+					executor, 4, ranks);
+			checkSelected(a, sorted, 0, n, ranks, selected);
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package org.sglj.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class ObjectIntCounterTest {
+
+	@Test
+	public void testOccurrenceMapSemantics() {
+		ObjectIntCounter<String> counter = new ObjectIntCounter<String>();
+		Assert.assertTrue(counter.increment("an"));
+		Assert.assertFalse(counter.increment("an"));
+		Assert.assertTrue(counter.increment("example"));
+		Assert.assertEquals(2, counter.count("an"));
+		Assert.assertTrue(counter.decrement("example"));
+		Assert.assertEquals(0, counter.count("example"));
+		Assert.assertFalse(counter.decrement("example"));
+		Assert.assertFalse(counter.decrement("an"));
+		Assert.assertTrue(counter.decrement("an"));
+		Assert.assertTrue(counter.isEmpty());
+		Assert.assertEquals(5, counter.addTo("x", 5));
+		Assert.assertEquals("{x=5}", counter.toString());
+	}
+
+	@Test
+	public void testRandom() {
+		Random random = new Random(38);
+		ObjectIntCounter<Integer> counter = new ObjectIntCounter<Integer>(0);
+		IntIntCounter intCounter = new IntIntCounter(0);
+		Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+		for (int iter = 0; iter < 200000; ++iter) {
+			// multiples of a large power of two collide without mixing
+			Integer key = (random.nextInt(500) - 250) << 20;
+			int delta = random.nextInt(5) - 2;
+			Integer old = expected.get(key);
+			int count = (old != null ? old : 0) + delta;
+			if (count == 0)
+				expected.remove(key);
+			else
+				expected.put(key, count);
+			if (random.nextInt(50) == 0) {
+				Assert.assertEquals(old != null ? old : 0, counter.remove(key));
+				Assert.assertEquals(old != null ? old : 0,
+						intCounter.remove(key));
+				expected.remove(key);
+			} else if (delta == -1 && old != null) {
+				Assert.assertEquals(count == 0, counter.decrement(key));
+				Assert.assertEquals(count == 0, intCounter.decrement(key));
+				Assert.assertEquals(count, counter.count(key));
+				Assert.assertEquals(count, intCounter.count(key));
+			} else {
+				Assert.assertEquals(count, counter.addTo(key, delta));
+				Assert.assertEquals(count, intCounter.addTo(key, delta));
+			}
+			Assert.assertEquals(expected.size(), counter.size());
+			Assert.assertEquals(expected.size(), intCounter.size());
+		}
+		Set<Integer> keys = new HashSet<Integer>();
+		for (Integer key : counter) {
+			Assert.assertTrue(keys.add(key));
+			Assert.assertEquals((int) expected.get(key), counter.count(key));
+		}
+		Assert.assertEquals(expected.keySet(), keys);
+		int[] intKeys = intCounter.keys();
+		Arrays.sort(intKeys);
+		Assert.assertEquals(expected.size(), intKeys.length);
+		for (int key : intKeys)
+			Assert.assertEquals((int) expected.get(key), intCounter.count(key));
+		counter.clear();
+		intCounter.clear();
+		Assert.assertEquals(0, counter.count(intKeys[0]));
+		Assert.assertEquals(0, intCounter.count(intKeys[0]));
+	}
+}
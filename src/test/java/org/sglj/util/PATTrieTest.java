@@ -0,0 +1,191 @@
+package org.sglj.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class PATTrieTest {
+
+	static String randomKey(Random random, String alphabet, int maxLength) {
+		int length = random.nextInt(maxLength + 1);
+		StringBuilder sb = new StringBuilder(length);
+		for (int i = 0; i < length; ++i)
+			sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+		return sb.toString();
+	}
+
+	static Set<Integer> expectedPrefix(Map<String, Set<Integer>> expected,
+			String prefix) {
+		Set<Integer> values = new HashSet<Integer>();
+		for (Map.Entry<String, Set<Integer>> e : expected.entrySet())
+			if (e.getKey().startsWith(prefix))
+				values.addAll(e.getValue());
+		return values;
+	}
+
+	private void testRandom(long seed, String alphabet, int maxLength) {
+		Random random = new Random(seed);
+		PATTrie<Integer> trie = new PATTrie<Integer>();
+		Map<String, Set<Integer>> expected = new TreeMap<String, Set<Integer>>();
+		List<String> keys = new ArrayList<String>();
+		int size = 0;
+		for (int iter = 0; iter < 20000; ++iter) {
+			String key = !keys.isEmpty() && random.nextBoolean()
+					? keys.get(random.nextInt(keys.size()))
+					: randomKey(random, alphabet, maxLength);
+			Integer value = random.nextInt(3);
+			Set<Integer> values = expected.get(key);
+			int op = random.nextInt(5);
+			if (op <= 1) {
+				if (values == null) {
+					expected.put(key, values = new HashSet<Integer>());
+					keys.add(key);
+				}
+				boolean added = values.add(value);
+				Assert.assertEquals(added, trie.put(key, value));
+				if (added)
+					++size;
+			} else if (op <= 3) {
+				boolean removed = values != null && values.remove(value);
+				Assert.assertEquals(removed, trie.remove(key, value));
+				if (removed) {
+					--size;
+					if (values.isEmpty())
+						expected.remove(key);
+				}
+			} else {
+				String prefix = key.substring(0, random.nextInt(key.length() + 1));
+				List<Integer> result = new ArrayList<Integer>();
+				trie.findPrefix(prefix, result);
+				Assert.assertEquals(expectedPrefix(expected, prefix),
+						new HashSet<Integer>(result));
+			}
+			values = expected.get(key);
+			Assert.assertEquals(values != null ? values : new HashSet<Integer>(),
+					new HashSet<Integer>(trie.getValues(key)));
+			Assert.assertEquals(values != null && values.contains(value),
+					trie.contains(key, value));
+			Assert.assertEquals(size, trie.size());
+		}
+		for (String key : expected.keySet())
+			Assert.assertEquals(expected.get(key),
+					new HashSet<Integer>(trie.getValues(key)));
+	}
+
+	@Test
+	public void testSmallAlphabet() {
+		testRandom(48, "ab", 12);
+	}
+
+	@Test
+	public void testLargeFanout() {
+		// dense fan-outs use tables, the sparse ones stay sorted
+		StringBuilder alphabet = new StringBuilder();
+		for (char c = 'a'; c <= 'z'; ++c)
+			alphabet.append(c);
+		alphabet.append("\u0100\u4e00\uffff");
+		testRandom(480, alphabet.toString(), 4);
+	}
+
+	@Test
+	public void testTopK() {
+		PATTrie<String> trie = new PATTrie<String>(3);
+		trie.put("car", "car", 5);
+		trie.put("cart", "cart", 9);
+		trie.put("care", "care", 7);
+		trie.put("cat", "cat", 8);
+		trie.put("dog", "dog", 10);
+		Assert.assertEquals(Arrays.asList("cart", "cat", "care"),
+				trie.topK("ca", 3));
+		Assert.assertEquals(Arrays.asList("cart", "care"), trie.topK("car", 2));
+		Assert.assertEquals(Arrays.asList("dog", "cart"), trie.topK("", 2));
+		Assert.assertTrue(trie.topK("cb", 3).isEmpty());
+
+		trie.put("car", "car", 11);
+		trie.remove("cart", "cart");
+		Assert.assertEquals(Arrays.asList("car", "cat", "care"),
+				trie.topK("ca", 3));
+		Assert.assertTrue(trie.put("cab", "cab"));
+		trie.remove("car", "car");
+		trie.remove("care", "care");
+		Assert.assertEquals(Arrays.asList("cat", "cab"), trie.topK("ca", 3));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTopKTooMany() {
+		new PATTrie<String>(3).topK("a", 4);
+	}
+
+	@Test
+	public void testTopKRandom() {
+		Random random = new Random(50);
+		final int k = 5;
+		PATTrie<Integer> trie = new PATTrie<Integer>(k);
+		// the scores are distinct, so the order of the completions is unique
+		Map<String, Map<Integer, Long>> expected = 
+				new HashMap<String, Map<Integer, Long>>();
+		List<String> keys = new ArrayList<String>();
+		for (int iter = 0; iter < 20000; ++iter) {
+			String key = !keys.isEmpty() && random.nextBoolean()
+					? keys.get(random.nextInt(keys.size()))
+					: randomKey(random, "abc", 8);
+			Integer value = random.nextInt(3);
+			Map<Integer, Long> scores = expected.get(key);
+			if (random.nextInt(3) != 0) {
+				long score = ((long) random.nextInt() << 16) + iter;
+				if (scores == null) {
+					expected.put(key, scores = new HashMap<Integer, Long>());
+					keys.add(key);
+				}
+				Assert.assertEquals(!scores.containsKey(value),
+						trie.put(key, value, score));
+				scores.put(value, score);
+			} else {
+				boolean removed = scores != null && scores.remove(value) != null;
+				Assert.assertEquals(removed, trie.remove(key, value));
+				if (removed && scores.isEmpty())
+					expected.remove(key);
+			}
+
+			String prefix = key.substring(0, random.nextInt(key.length() + 1));
+			List<Long> best = new ArrayList<Long>();
+			Map<Long, Integer> valueOf = new HashMap<Long, Integer>();
+			for (Map.Entry<String, Map<Integer, Long>> e : expected.entrySet()) {
+				if (!e.getKey().startsWith(prefix))
+					continue;
+				for (Map.Entry<Integer, Long> v : e.getValue().entrySet()) {
+					best.add(v.getValue());
+					valueOf.put(v.getValue(), v.getKey());
+				}
+			}
+			Collections.sort(best, Collections.reverseOrder());
+			List<Integer> top = new ArrayList<Integer>();
+			for (int i = 0; i < Math.min(k, best.size()); ++i)
+				top.add(valueOf.get(best.get(i)));
+			Assert.assertEquals(top, trie.topK(prefix, k));
+		}
+	}
+
+	@Test
+	public void testClear() {
+		PATTrie<Integer> trie = new PATTrie<Integer>();
+		trie.put("abc", 1);
+		trie.put("abd", 2);
+		trie.clear();
+		Assert.assertTrue(trie.isEmpty());
+		Assert.assertTrue(trie.getValues("abc").isEmpty());
+		trie.put("abc", 3);
+		Assert.assertTrue(trie.contains("abc", 3));
+	}
+}
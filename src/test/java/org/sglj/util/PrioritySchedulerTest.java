@@ -0,0 +1,116 @@
+package org.sglj.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class PrioritySchedulerTest {
+
+	private static Map<String, Integer> count(PriorityScheduler<String> s,
+			int n) {
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+		for (int i = 0; i < n; ++i) {
+			String task = s.get();
+			Integer c = counts.get(task);
+			counts.put(task, c == null ? 1 : c + 1);
+		}
+		return counts;
+	}
+
+	private static void addTasks(PriorityScheduler<String> s) {
+		s.add("max", PriorityScheduler.MAX_PRIORITY);
+		s.add("high", PriorityScheduler.HIGH_PRIORITY);
+		s.add("normal", PriorityScheduler.NORMAL_PRIORITY);
+		s.add("low", PriorityScheduler.LOW_PRIORITY);
+		s.add("min", PriorityScheduler.MIN_PRIORITY);
+		s.add("removed", PriorityScheduler.NORMAL_PRIORITY);
+		s.remove("removed");
+	}
+
+	@Test
+	public void testAlias() {
+		AliasPriorityScheduler<String> s =
+			new AliasPriorityScheduler<String>(new Random(47));
+		Assert.assertNull(s.get());
+		addTasks(s);
+		Assert.assertEquals(5, s.size());
+		int n = 500000;
+		Map<String, Integer> counts = count(s, n);
+		Assert.assertFalse(counts.containsKey("removed"));
+		for (String task : counts.keySet())
+			Assert.assertEquals(s.getProbability(task),
+					(double) counts.get(task) / n, 0.005);
+
+		// the table is rebuilt after a change
+		s.setPriority("min", PriorityScheduler.MAX_PRIORITY);
+		s.remove("max");
+		Assert.assertEquals(PriorityScheduler.MAX_PRIORITY,
+				s.getPriority("min"));
+		counts = count(s, n);
+		Assert.assertFalse(counts.containsKey("max"));
+		for (String task : counts.keySet())
+			Assert.assertEquals(s.getProbability(task),
+					(double) counts.get(task) / n, 0.005);
+	}
+
+	@Test
+	public void testStride() {
+		StridePriorityScheduler<String> s =
+			new StridePriorityScheduler<String>();
+		Assert.assertNull(s.get());
+		addTasks(s);
+		Assert.assertEquals(5, s.size());
+		// the weight of the "max" task is 65535 times that of "min"
+		int n = 65535 * 4;
+		Map<String, Integer> counts = count(s, n);
+		Assert.assertFalse(counts.containsKey("removed"));
+		for (String task : counts.keySet())
+			Assert.assertEquals(s.getShare(task) * n, counts.get(task), 1.5);
+
+		s.setPriority("max", PriorityScheduler.NORMAL_PRIORITY);
+		s.remove("min");
+		s.add("new", PriorityScheduler.HIGH_PRIORITY);
+		counts = count(s, 100000);
+		for (String task : counts.keySet())
+			Assert.assertEquals(s.getShare(task) * 100000,
+					counts.get(task), 2.5);
+	}
+
+	@Test
+	public void testStrideRandom() {
+		Random random = new Random(470);
+		StridePriorityScheduler<Integer> s =
+			new StridePriorityScheduler<Integer>();
+		Map<Integer, Short> expected = new HashMap<Integer, Short>();
+		for (int iter = 0; iter < 50000; ++iter) {
+			Integer task = random.nextInt(300);
+			short priority = (short) random.nextInt();
+			int op = random.nextInt(4);
+			if (op == 0) {
+				s.add(task, priority);
+				expected.put(task, priority);
+			} else if (op == 1) {
+				s.remove(task);
+				expected.remove(task);
+			} else if (op == 2) {
+				s.setPriority(task, priority);
+				if (expected.containsKey(task))
+					expected.put(task, priority);
+			} else {
+				Integer got = s.get();
+				Assert.assertEquals(expected.isEmpty(), got == null);
+				if (got != null)
+					Assert.assertTrue(expected.containsKey(got));
+			}
+			Assert.assertEquals(expected.size(), s.size());
+		}
+		double totalShare = 0;
+		for (Integer task : expected.keySet())
+			totalShare += s.getShare(task);
+		Assert.assertEquals(1, totalShare, 1e-9);
+	}
+}
@@ -0,0 +1,101 @@
+package org.sglj.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class QuantileSketchTest {
+
+	static final double[] QUANTILES = {0.01, 0.1, 0.5, 0.9, 0.99, 0.999};
+
+	static void checkRankError(QuantileSketch sketch, double[] sorted,
+			double maxError) {
+		Assert.assertEquals(sorted.length, sketch.count());
+		Assert.assertEquals(sorted[0], sketch.min());
+		Assert.assertEquals(sorted[sorted.length - 1], sketch.max());
+		for (double q : QUANTILES) {
+			double estimate = sketch.quantile(q);
+			// the range of ranks the estimate has in the exact data
+			int lo = Arrays.binarySearch(sorted, estimate);
+			Assert.assertTrue(lo >= 0);
+			while (lo > 0 && sorted[lo - 1] == estimate)
+				--lo;
+			int hi = lo;
+			while (hi + 1 < sorted.length && sorted[hi + 1] == estimate)
+				++hi;
+			double target = q * (sorted.length - 1);
+			double error = Math.max(0, Math.max(lo - target, target - hi))
+					/ sorted.length;
+			Assert.assertTrue("q=" + q + ", error=" + error, error <= maxError);
+			Assert.assertEquals(q, sketch.rank(estimate), maxError + 0.001);
+		}
+	}
+
+	@Test
+	public void testAccuracy() {
+		Random random = new Random(37);
+		QuantileSketch sketch = new QuantileSketch(200, new Random(1));
+		double[] samples = new double[1000000];
+		for (int i = 0; i < samples.length; ++i) {
+			// heavy tailed, like latencies
+			samples[i] = Math.exp(random.nextGaussian() * 2);
+			sketch.add(samples[i]);
+		}
+		Assert.assertTrue(sketch.retained() <= 3 * 200 + 64);
+		Arrays.sort(samples);
+		checkRankError(sketch, samples, 0.01);
+	}
+
+	@Test
+	public void testMergeAndSerialize() throws Exception {
+		Random random = new Random(137);
+		QuantileSketch merged = new QuantileSketch(100, new Random(2));
+		double[] samples = new double[400000];
+		for (int t = 0; t < 4; ++t) {
+			QuantileSketch sketch = new QuantileSketch(100, new Random(t));
+			for (int i = t; i < samples.length; i += 4) {
+				samples[i] = random.nextInt(100000);
+				sketch.add(samples[i]);
+			}
+			merged.merge(sketch);
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(merged);
+		out.close();
+		QuantileSketch copy = (QuantileSketch) new ObjectInputStream(
+				new ByteArrayInputStream(bytes.toByteArray())).readObject();
+
+		Arrays.sort(samples);
+		checkRankError(merged, samples, 0.02);
+		for (double q : QUANTILES)
+			Assert.assertEquals(merged.quantile(q), copy.quantile(q));
+	}
+
+	@Test
+	public void testSmall() {
+		QuantileSketch sketch = new QuantileSketch();
+		for (int i = 10; i >= 1; --i)
+			sketch.add(i);
+		// nothing has been compacted yet, so the result is exact
+		Assert.assertEquals(1.0, sketch.quantile(0));
+		Assert.assertEquals(5.0, sketch.quantile(0.5));
+		Assert.assertEquals(10.0, sketch.quantile(1));
+		Assert.assertEquals(0.3, sketch.rank(3.5));
+		sketch.clear();
+		Assert.assertTrue(sketch.isEmpty());
+	}
+
+	@Test(expected = NoSuchElementException.class)
+	public void testEmpty() {
+		new QuantileSketch().quantile(0.5);
+	}
+}
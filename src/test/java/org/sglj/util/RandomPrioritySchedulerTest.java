@@ -0,0 +1,80 @@
+package org.sglj.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class RandomPrioritySchedulerTest {
+
+	@Test
+	public void testDistribution() {
+		RandomPriorityScheduler<String> s =
+			new RandomPriorityScheduler<String>(new Random(46));
+		Assert.assertNull(s.get());
+		s.add("high", PriorityScheduler.HIGH_PRIORITY);
+		s.add("normal", PriorityScheduler.NORMAL_PRIORITY);
+		s.add("low", PriorityScheduler.LOW_PRIORITY);
+		s.add("removed", PriorityScheduler.MAX_PRIORITY);
+		s.remove("removed");
+		Assert.assertEquals(3, s.size());
+		Assert.assertEquals(PriorityScheduler.LOW_PRIORITY, s.getPriority("low"));
+		Assert.assertEquals(0.0, s.getProbability("removed"));
+
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+		int n = 300000;
+		for (int i = 0; i < n; ++i) {
+			String task = s.get();
+			Integer c = counts.get(task);
+			counts.put(task, c == null ? 1 : c + 1);
+		}
+		Assert.assertEquals(3, counts.size());
+		for (String task : counts.keySet())
+			Assert.assertEquals(s.getProbability(task),
+					(double) counts.get(task) / n, 0.005);
+	}
+
+	@Test
+	public void testRandom() {
+		Random random = new Random(460);
+		RandomPriorityScheduler<Integer> s =
+			new RandomPriorityScheduler<Integer>(random);
+		Map<Integer, Short> expected = new HashMap<Integer, Short>();
+		for (int iter = 0; iter < 50000; ++iter) {
+			Integer task = random.nextInt(1000);
+			short priority = (short) random.nextInt();
+			int op = random.nextInt(4);
+			if (op == 0) {
+				s.add(task, priority);
+				expected.put(task, priority);
+			} else if (op == 1) {
+				s.remove(task);
+				expected.remove(task);
+			} else if (op == 2) {
+				s.setPriority(task, priority);
+				if (expected.containsKey(task))
+					expected.put(task, priority);
+			} else {
+				Integer got = s.get();
+				Assert.assertEquals(expected.isEmpty(), got == null);
+				if (got != null)
+					Assert.assertTrue(expected.containsKey(got));
+			}
+			Short p = expected.get(task);
+			Assert.assertEquals(p != null ? p : PriorityScheduler.NORMAL_PRIORITY,
+					s.getPriority(task));
+			Assert.assertEquals(expected.size(), s.size());
+		}
+
+		long total = 0;
+		for (Integer task : expected.keySet())
+			total += (int) -expected.get(task) - Short.MIN_VALUE;
+		for (Integer task : expected.keySet())
+			Assert.assertEquals(
+					(double) ((int) -expected.get(task) - Short.MIN_VALUE) / total,
+					s.getProbability(task), 1e-12);
+	}
+}
@@ -0,0 +1,104 @@
+package org.sglj.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class RingBufferTest {
+
+	@Test
+	public void testSpscSingleThread() {
+		SpscRingBuffer<Integer> rb = new SpscRingBuffer<Integer>(5);
+		Assert.assertEquals(8, rb.capacity());
+		for (int i = 0; i < 8; ++i)
+			Assert.assertTrue(rb.offer(i));
+		Assert.assertFalse(rb.offer(8));
+		Assert.assertEquals(8, rb.size());
+		Assert.assertEquals((Integer) 0, rb.poll());
+		Assert.assertTrue(rb.offer(8));
+
+		List<Integer> drained = new ArrayList<Integer>();
+		Assert.assertEquals(0, rb.drainTo(drained, -1));
+		Assert.assertTrue(drained.isEmpty());
+		Assert.assertEquals(3, rb.drainTo(drained, 3));
+		Assert.assertEquals(5, rb.drainTo(drained));
+		for (int i = 0; i < drained.size(); ++i)
+			Assert.assertEquals((Integer) (i + 1), drained.get(i));
+		Assert.assertNull(rb.poll());
+		Assert.assertTrue(rb.isEmpty());
+	}
+
+	@Test
+	public void testSpscConcurrent() throws InterruptedException {
+		final SpscRingBuffer<Integer> rb = new SpscRingBuffer<Integer>(64);
+		final int n = 200000;
+		Thread producer = new Thread() {
+			@Override
+			public void run() {
+				try {
+					for (int i = 0; i < n; ++i)
+						rb.put(i);
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		};
+		producer.start();
+		List<Integer> batch = new ArrayList<Integer>();
+		for (int expected = 0; expected < n; ) {
+			if (expected % 3 == 0) {
+				Assert.assertEquals((Integer) expected++, rb.take());
+			} else {
+				batch.clear();
+				rb.drainTo(batch, 10);
+				for (Integer x : batch)
+					Assert.assertEquals((Integer) expected++, x);
+			}
+		}
+		producer.join();
+		Assert.assertTrue(rb.isEmpty());
+	}
+
+	@Test
+	public void testMpscConcurrent() throws InterruptedException {
+		final MpscRingBuffer<int[]> rb = new MpscRingBuffer<int[]>(128);
+		final int producerCount = 4;
+		final int n = 100000;
+		Thread[] producers = new Thread[producerCount];
+		for (int p = 0; p < producerCount; ++p) {
+			final int id = p;
+			producers[p] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						for (int i = 0; i < n; ++i)
+							rb.put(new int[] {id, i});
+					} catch (InterruptedException e) {
+						throw new RuntimeException(e);
+					}
+				}
+			};
+			producers[p].start();
+		}
+
+		// elements of each producer must arrive in order
+		int[] next = new int[producerCount];
+		List<int[]> batch = new ArrayList<int[]>();
+		for (int received = 0; received < producerCount * n; ) {
+			batch.clear();
+			if (rb.drainTo(batch, 32) == 0)
+				batch.add(rb.take());
+			for (int[] e : batch) {
+				Assert.assertEquals(next[e[0]]++, e[1]);
+				++received;
+			}
+		}
+		for (Thread producer : producers)
+			producer.join();
+		Assert.assertTrue(rb.isEmpty());
+		Assert.assertNull(rb.poll());
+	}
+}
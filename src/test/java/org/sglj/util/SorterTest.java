@@ -0,0 +1,171 @@
+package org.sglj.util;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.sglj.math.BinaryPredicate.IntBinaryPredicate;
+
+public class SorterTest {
+
+	static final Random RANDOM = new Random(34);
+
+	static int[] randomInts(int n, int bound) {
+		int[] a = new int[n];
+		for (int i = 0; i < n; ++i)
+			a[i] = bound > 0 ? RANDOM.nextInt(bound) - bound / 2
+					: RANDOM.nextInt();
+		return a;
+	}
+
+	@Test
+	public void testRadixSortInt() {
+		for (int n : new int[] {0, 1, 10, 100, 1000, 100000}) {
+			for (int bound : new int[] {0, 10, 1 << 20}) {
+				int[] a = randomInts(n, bound);
+				int[] expected = a.clone();
+				Arrays.sort(expected, n / 4, n - n / 4);
+				Sorter.radixSort(a, n / 4, n - n / 4);
+				Assert.assertTrue(Arrays.equals(expected, a));
+			}
+		}
+	}
+
+	@Test
+	public void testRadixSortLong() {
+		long[] a = new long[50000];
+		for (int i = 0; i < a.length; ++i)
+			a[i] = i % 3 == 0 ? RANDOM.nextLong() : RANDOM.nextInt(100) - 50;
+		a[0] = Long.MIN_VALUE;
+		a[1] = Long.MAX_VALUE;
+		long[] expected = a.clone();
+		Arrays.sort(expected);
+		Sorter.radixSort(a, 0, a.length);
+		Assert.assertTrue(Arrays.equals(expected, a));
+	}
+
+	@Test
+	public void testRadixSortFloatDouble() {
+		float[] f = new float[20000];
+		double[] d = new double[20000];
+		for (int i = 0; i < f.length; ++i) {
+			d[i] = (RANDOM.nextDouble() - 0.5) * Math.pow(10, RANDOM.nextInt(20));
+			f[i] = (float) d[i];
+		}
+		float[] fs = {Float.NaN, Float.NEGATIVE_INFINITY,
+				Float.POSITIVE_INFINITY, -0.0f, 0.0f, Float.MIN_VALUE,
+				-Float.MAX_VALUE};
+		double[] ds = {Double.NaN, Double.NEGATIVE_INFINITY,
+				Double.POSITIVE_INFINITY, -0.0, 0.0, Double.MIN_VALUE,
+				-Double.MAX_VALUE};
+		System.arraycopy(fs, 0, f, 100, fs.length);
+		System.arraycopy(ds, 0, d, 100, ds.length);
+		float[] fe = f.clone();
+		double[] de = d.clone();
+		Arrays.sort(fe);
+		Arrays.sort(de);
+		Sorter.radixSort(f, 0, f.length);
+		Sorter.parallelRadixSort(d, 0, d.length, null, 1);
+		Assert.assertTrue(Arrays.equals(fe, f));
+		Assert.assertTrue(Arrays.equals(de, d));
+	}
+
+	@Test
+	public void testParallel() {
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try {
+			for (int parallelism : new int[] {2, 3, 5, 8}) {
+				int[] a = randomInts(300001, parallelism == 3 ? 1000 : 0);
+				int[] b = a.clone();
+				int[] expected = a.clone();
+				Arrays.sort(expected, 1, a.length - 1);
+				Sorter.parallelRadixSort(a, 1, a.length - 1, executor,
+						parallelism);
+				Sorter.parallelMergeSort(b, 1, b.length - 1, executor,
+						parallelism, null);
+				Assert.assertTrue(Arrays.equals(expected, a));
+				Assert.assertTrue(Arrays.equals(expected, b));
+			}
+
+			long[] l = new long[200000];
+			for (int i = 0; i < l.length; ++i)
+				l[i] = RANDOM.nextLong();
+			long[] expected = l.clone();
+			Arrays.sort(expected);
+			Sorter.parallelRadixSort(l, 0, l.length, executor, 4);
+			Assert.assertTrue(Arrays.equals(expected, l));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testParallelMergeSortSubrange() {
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try {
+			// both an odd and an even number of merge levels
+			for (int parallelism : new int[] {2, 3, 4}) {
+				int[] a = randomInts(1000000, 0);
+				int from = 300001, to = 500001;
+				int[] expected = a.clone();
+				Arrays.sort(expected, from, to);
+				Sorter.parallelMergeSort(a, from, to, executor,
+						parallelism, null);
+				// the elements outside the range are compared as well
+				Assert.assertTrue(Arrays.equals(expected, a));
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testParallelMergeSortStable() {
+		// sort by the upper half only, the lower half is the original index
+		int[] a = new int[200000];
+		for (int i = 0; i < a.length; ++i)
+			a[i] = (RANDOM.nextInt(100) << 18) | i;
+		Sorter.parallelMergeSort(a, 0, a.length, new IntBinaryPredicate() {
+			@Override
+			public boolean holds(int x, int y) {
+				return (x >>> 18) > (y >>> 18);
+			}
+		});
+		for (int i = 1; i < a.length; ++i) {
+			Assert.assertTrue((a[i - 1] >>> 18) >= (a[i] >>> 18));
+			if ((a[i - 1] >>> 18) == (a[i] >>> 18))
+				Assert.assertTrue((a[i - 1] & 0x3ffff) < (a[i] & 0x3ffff));
+		}
+	}
+
+	@Test
+	public void testSortByKey() {
+		for (int n : new int[] {0, 10, 50000}) {
+			Long[] a = new Long[n];
+			for (int i = 0; i < n; ++i)
+				a[i] = ((long) (RANDOM.nextInt(200) - 100) << 32) | i;
+			Long[] b = a.clone();
+			Long[] expected = a.clone();
+			// the index in the lower half makes the expected order stable
+			Arrays.sort(expected);
+			Sorter.sortByIntKey(a, 0, n, new Sorter.IntKey<Long>() {
+				@Override
+				public int keyOf(Long element) {
+					return (int) (element >> 32);
+				}
+			});
+			Sorter.sortByLongKey(b, 0, n, new Sorter.LongKey<Number>() {
+				@Override
+				public long keyOf(Number element) {
+					return element.longValue() >> 32;
+				}
+			});
+			Assert.assertTrue(Arrays.equals(expected, a));
+			Assert.assertTrue(Arrays.equals(expected, b));
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package org.sglj.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class TimeWindowAggregatorTest {
+
+	static class ManualClock implements Clock {
+		long time;
+
+		@Override
+		public long currentTimeMillis() {
+			return time;
+		}
+	}
+
+	@Test
+	public void testSimple() {
+		ManualClock clock = new ManualClock();
+		TimeWindowAggregator agg = new TimeWindowAggregator(10, clock);
+		Assert.assertEquals(0, agg.count());
+		Assert.assertEquals(0, agg.sum());
+
+		agg.add(5);
+		clock.time = 3;
+		agg.add(2);
+		clock.time = 6;
+		agg.add(7);
+		Assert.assertEquals(3, agg.count());
+		Assert.assertEquals(14, agg.sum());
+		Assert.assertEquals(2, agg.min());
+		Assert.assertEquals(7, agg.max());
+
+		clock.time = 10; // 5 expires
+		Assert.assertEquals(2, agg.count());
+		Assert.assertEquals(9, agg.sum());
+
+		clock.time = 13; // 2 expires
+		Assert.assertEquals(7, agg.min());
+		Assert.assertEquals(7, agg.max());
+
+		clock.time = 16; // 7 expires
+		Assert.assertTrue(agg.isEmpty());
+		Assert.assertEquals(0, agg.sum());
+	}
+
+	@Test(expected = NoSuchElementException.class)
+	public void testMinEmpty() {
+		new TimeWindowAggregator(10, new ManualClock()).min();
+	}
+
+	@Test
+	public void testRandom() {
+		Random random = new Random(26);
+		ManualClock clock = new ManualClock();
+		final long window = 50;
+		TimeWindowAggregator agg = new TimeWindowAggregator(window, clock, 1);
+		List<long[]> samples = new ArrayList<long[]>();
+		for (int iter = 0; iter < 20000; ++iter) {
+			clock.time += random.nextInt(3) == 0 ? random.nextInt(20) : 0;
+			if (random.nextInt(4) != 0) {
+				long value = random.nextInt(2001) - 1000;
+				agg.add(value);
+				samples.add(new long[] {clock.time, value});
+			}
+
+			int count = 0;
+			long sum = 0, min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+			for (long[] s : samples) {
+				if (clock.time - s[0] < window) {
+					++count;
+					sum += s[1];
+					min = Math.min(min, s[1]);
+					max = Math.max(max, s[1]);
+				}
+			}
+			Assert.assertEquals(count, agg.count());
+			Assert.assertEquals(sum, agg.sum());
+			if (count > 0) {
+				Assert.assertEquals(min, agg.min());
+				Assert.assertEquals(max, agg.max());
+			}
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package org.sglj.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class TimingWheelTimeoutQueueTest {
+
+	static class ManualClock implements Clock {
+		long time;
+
+		@Override
+		public long currentTimeMillis() {
+			return time;
+		}
+	}
+
+	@Test
+	public void testSimple() {
+		ManualClock clock = new ManualClock();
+		TimingWheelTimeoutQueue<String> q =
+			new TimingWheelTimeoutQueue<String>(100, 10, clock);
+		q.offer("a");
+		TimingWheelTimeoutQueue.Timeout<String> b = q.schedule("b", 5);
+		q.schedule("c", 1000);
+		TimingWheelTimeoutQueue.Timeout<String> d = q.schedule("d", 50);
+		Assert.assertEquals(4, q.size());
+		Assert.assertEquals("a", q.peek());
+		Assert.assertTrue(d.cancel());
+		Assert.assertFalse(d.cancel());
+
+		clock.time = 9;
+		Assert.assertEquals(0, q.dequeExpired());
+		clock.time = 10;
+		Assert.assertEquals(1, q.dequeExpired());
+		Assert.assertFalse(b.cancel());
+		clock.time = 105;
+		List<String> expired = q.popExpired();
+		Assert.assertEquals(1, expired.size());
+		Assert.assertEquals("a", expired.get(0));
+		Assert.assertEquals("c", q.poll());
+		Assert.assertNull(q.poll());
+		Assert.assertTrue(q.isEmpty());
+	}
+
+	@Test
+	public void testIteratorRemove() {
+		ManualClock clock = new ManualClock();
+		TimingWheelTimeoutQueue<Integer> q =
+			new TimingWheelTimeoutQueue<Integer>(100, clock);
+		for (int i = 0; i < 10; ++i)
+			q.offer(i);
+		for (Iterator<Integer> it = q.iterator(); it.hasNext(); )
+			if (it.next() % 2 == 0)
+				it.remove();
+		Assert.assertEquals(5, q.size());
+		clock.time = 100;
+		Assert.assertEquals(5, q.dequeExpired());
+		Assert.assertTrue(q.isEmpty());
+	}
+
+	@Test
+	public void testRandom() {
+		Random random = new Random(44);
+		ManualClock clock = new ManualClock();
+		clock.time = 123456789;
+		final long tickDuration = 3;
+		TimingWheelTimeoutQueue<Integer> q =
+			new TimingWheelTimeoutQueue<Integer>(0, tickDuration, clock);
+		Map<Integer, Long> expiryTicks = new HashMap<Integer, Long>();
+		Map<Integer, TimingWheelTimeoutQueue.Timeout<Integer>> handles =
+			new HashMap<Integer, TimingWheelTimeoutQueue.Timeout<Integer>>();
+		long[] ranges = {10, 1000, 100000, 10000000, 1L << 34};
+		int next = 0;
+		for (int iter = 0; iter < 20000; ++iter) {
+			int op = random.nextInt(10);
+			if (op < 5) {
+				long timeout = (long) (random.nextDouble()
+						* ranges[random.nextInt(ranges.length)]);
+				// the tick of the insertion is the last processed one
+				long now = clock.time / tickDuration;
+				long deadline = clock.time + timeout;
+				long tick = (deadline + tickDuration - 1) / tickDuration;
+				expiryTicks.put(next, Math.max(tick, now + 1));
+				handles.put(next, q.schedule(next, timeout));
+				++next;
+			} else if (op < 6 && !handles.isEmpty()) {
+				Integer e = handles.keySet().iterator().next();
+				Assert.assertEquals(expiryTicks.containsKey(e),
+						handles.remove(e).cancel());
+				expiryTicks.remove(e);
+			} else {
+				clock.time += (long) (random.nextDouble()
+						* ranges[random.nextInt(ranges.length)] / 100);
+				long now = clock.time / tickDuration;
+				Set<Integer> expected = new HashSet<Integer>();
+				for (Map.Entry<Integer, Long> e : expiryTicks.entrySet())
+					if (e.getValue() <= now)
+						expected.add(e.getKey());
+				List<Integer> expired = q.popExpired();
+				Assert.assertEquals(expected, new HashSet<Integer>(expired));
+				Assert.assertEquals(expected.size(), expired.size());
+				expiryTicks.keySet().removeAll(expected);
+			}
+			Assert.assertEquals(expiryTicks.size(), q.size());
+		}
+		List<Integer> remaining = new ArrayList<Integer>(q);
+		Assert.assertEquals(expiryTicks.keySet(),
+				new HashSet<Integer>(remaining));
+	}
+}
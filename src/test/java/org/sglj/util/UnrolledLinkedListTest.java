@@ -0,0 +1,149 @@
+package org.sglj.util;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.ListIterator;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class UnrolledLinkedListTest {
+
+	@Test
+	public void testDeque() {
+		UnrolledLinkedList<Integer> l = new UnrolledLinkedList<Integer>(4);
+		for (int i = 0; i < 10; ++i) {
+			l.addLast(i);
+			l.addFirst(-i);
+		}
+		Assert.assertEquals(20, l.size());
+		Assert.assertEquals((Integer) (-9), l.getFirst());
+		Assert.assertEquals((Integer) 9, l.getLast());
+		Assert.assertEquals((Integer) 0, l.get(9));
+		Assert.assertEquals((Integer) 0, l.get(10));
+		for (int i = 9; i >= 0; --i) {
+			Assert.assertEquals((Integer) i, l.removeLast());
+			Assert.assertEquals((Integer) (-i), l.pop());
+		}
+		Assert.assertTrue(l.isEmpty());
+		Assert.assertNull(l.pollFirst());
+		Assert.assertNull(l.peekLast());
+	}
+
+	@Test
+	public void testConcatenate() {
+		UnrolledLinkedList<Integer> l1 = new UnrolledLinkedList<Integer>(
+				Arrays.asList(1, 2, 3));
+		UnrolledLinkedList<Integer> l2 = new UnrolledLinkedList<Integer>(
+				Arrays.asList(4, 5));
+		l1.concatenate(l2);
+		Assert.assertEquals(Arrays.asList(1, 2, 3, 4, 5), l1);
+		Assert.assertTrue(l2.isEmpty());
+		l2.add(6);
+		l1.concatenate(l2);
+		Assert.assertEquals(Arrays.asList(1, 2, 3, 4, 5, 6), l1);
+		Assert.assertEquals(Arrays.asList(1, 2, 3, 4, 5, 6), l1.clone());
+	}
+
+	@Test
+	public void testNodesQuarterFull() {
+		final int capacity = 8;
+		UnrolledLinkedList<Integer> l = new UnrolledLinkedList<Integer>(capacity);
+		for (int i = 0; i < 100; ++i) {
+			UnrolledLinkedList<Integer> single =
+				new UnrolledLinkedList<Integer>(capacity);
+			single.add(i);
+			l.concatenate(single);
+			assertQuarterFull(l);
+		}
+		Iterator<Integer> it = l.iterator();
+		for (int i = 0; i < 100; ++i) {
+			it.next();
+			if (i % 3 != 0)
+				it.remove();
+			assertQuarterFull(l);
+		}
+		while (!l.isEmpty()) {
+			if (l.size() % 2 == 0)
+				l.removeFirst();
+			else
+				l.removeLast();
+			assertQuarterFull(l);
+		}
+	}
+
+	static void assertQuarterFull(UnrolledLinkedList<?> l) {
+		// any two adjacent nodes are together more than half full
+		Assert.assertTrue(l.nodeCount() <= 1
+				|| (l.nodeCount() - 1) * l.getNodeCapacity() / 4 < l.size());
+	}
+
+	@Test
+	public void testRandom() {
+		Random random = new Random(32);
+		UnrolledLinkedList<Integer> l = new UnrolledLinkedList<Integer>(4);
+		java.util.LinkedList<Integer> expected
+		= new java.util.LinkedList<Integer>();
+		for (int iter = 0; iter < 3000; ++iter) {
+			int op = random.nextInt(7);
+			int x = random.nextInt(100);
+			if (op == 0) {
+				l.addFirst(x);
+				expected.addFirst(x);
+			} else if (op == 1) {
+				l.addLast(x);
+				expected.addLast(x);
+			} else if (op == 2) {
+				Assert.assertEquals(expected.pollFirst(), l.pollFirst());
+				Assert.assertEquals(expected.pollLast(), l.pollLast());
+			} else if (op == 3 && !expected.isEmpty()) {
+				int index = random.nextInt(expected.size());
+				Assert.assertEquals(expected.set(index, x), l.set(index, x));
+			} else {
+				// walk with both iterators, mixing adds, removes and sets
+				int index = random.nextInt(expected.size() + 1);
+				ListIterator<Integer> it = l.listIterator(index);
+				ListIterator<Integer> eit = expected.listIterator(index);
+				for (int step = random.nextInt(40); step > 0; --step) {
+					int action = random.nextInt(op == 6 ? 3 : 5);
+					if (action == 0) {
+						it.add(x);
+						eit.add(x);
+						continue;
+					}
+					boolean forward = action != 1;
+					if (forward ? !eit.hasNext() : !eit.hasPrevious()) {
+						Assert.assertEquals(eit.hasNext(), it.hasNext());
+						Assert.assertEquals(eit.hasPrevious(),
+								it.hasPrevious());
+						continue;
+					}
+					Assert.assertEquals(forward ? eit.next() : eit.previous(),
+							forward ? it.next() : it.previous());
+					if (action == 2) {
+						it.remove();
+						eit.remove();
+					} else if (action == 3) {
+						it.set(-x);
+						eit.set(-x);
+					}
+					Assert.assertEquals(eit.nextIndex(), it.nextIndex());
+				}
+			}
+			Assert.assertEquals(expected.size(), l.size());
+			if (!expected.isEmpty()) {
+				int index = random.nextInt(expected.size());
+				Assert.assertEquals(expected.get(index), l.get(index));
+			}
+		}
+		Assert.assertEquals(expected, l);
+		Assert.assertTrue(Arrays.equals(expected.toArray(), l.toArray()));
+		Iterator<Integer> it = l.descendingIterator();
+		for (Iterator<Integer> eit = expected.descendingIterator();
+				eit.hasNext(); )
+			Assert.assertEquals(eit.next(), it.next());
+		Assert.assertFalse(it.hasNext());
+	}
+}
@@ -0,0 +1,67 @@
+package org.sglj.util;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class WorkStealingDequeTest {
+
+	@Test
+	public void testOwnerOnly() {
+		WorkStealingDeque<Integer> d = new WorkStealingDeque<Integer>();
+		Assert.assertNull(d.pop());
+		Assert.assertNull(d.steal());
+		for (int i = 0; i < 100; ++i)
+			d.push(i);
+		Assert.assertEquals(100, d.size());
+		Assert.assertEquals((Integer) 99, d.pop());
+		Assert.assertEquals((Integer) 0, d.steal());
+		Assert.assertEquals((Integer) 98, d.pop());
+		Assert.assertEquals((Integer) 1, d.steal());
+		Assert.assertEquals(96, d.size());
+		for (int i = 97; i >= 2; --i)
+			Assert.assertEquals((Integer) i, d.pop());
+		Assert.assertTrue(d.isEmpty());
+		Assert.assertNull(d.pop());
+	}
+
+	@Test
+	public void testConcurrentSteal() throws InterruptedException {
+		final WorkStealingDeque<Integer> d = new WorkStealingDeque<Integer>(2);
+		final int n = 300000;
+		final AtomicIntegerArray taken = new AtomicIntegerArray(n);
+		final AtomicBoolean done = new AtomicBoolean();
+		Thread[] thieves = new Thread[3];
+		for (int i = 0; i < thieves.length; ++i) {
+			thieves[i] = new Thread() {
+				@Override
+				public void run() {
+					while (!done.get() || !d.isEmpty()) {
+						Integer e = d.steal();
+						if (e != null)
+							taken.incrementAndGet(e);
+					}
+				}
+			};
+			thieves[i].start();
+		}
+
+		for (int i = 0; i < n; ++i) {
+			d.push(i);
+			if (i % 3 == 0) {
+				Integer e = d.pop();
+				if (e != null)
+					taken.incrementAndGet(e);
+			}
+		}
+		done.set(true);
+		for (Thread thief : thieves)
+			thief.join();
+
+		for (int i = 0; i < n; ++i)
+			Assert.assertEquals("element " + i, 1, taken.get(i));
+	}
+}
@@ -0,0 +1,133 @@
+package org.sglj.util.struct;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class ImplicitTreapTest {
+
+	/** Concatenates the letters, which is not commutative. */
+	static class Letters extends ImplicitTreap<Character, String> {
+
+		public Letters() {
+		}
+
+		public Letters(List<Character> list) {
+			super(list);
+		}
+
+		@Override
+		public String mergeCodomains(String a, String b) {
+			return a + b;
+		}
+
+		@Override
+		protected String createData(Character element) {
+			return element != null ? element.toString() : "";
+		}
+	}
+
+	static String concat(List<Character> list, int fromIndex, int toIndex) {
+		StringBuilder sb = new StringBuilder();
+		for (Character c : list.subList(fromIndex, toIndex))
+			sb.append(c);
+		return sb.toString();
+	}
+
+	@Test
+	public void testSplitConcat() {
+		Letters t = new Letters(Arrays.asList('a', 'b', 'c', 'd', 'e'));
+		Assert.assertEquals("abcde", t.retrieveQuery());
+		ImplicitTreap<Character, String> tail = t.split(2);
+		Assert.assertEquals("ab", t.retrieveQuery());
+		Assert.assertEquals("cde", tail.retrieveQuery());
+		Assert.assertEquals("de", tail.retrieveQuery(1, 3));
+		tail.concat(t);
+		Assert.assertTrue(t.isEmpty());
+		Assert.assertEquals("cdeab", tail.retrieveQuery(0, 5));
+		Assert.assertEquals("", tail.retrieveQuery(2, 2));
+		ImplicitTreap<Character, String> mid = tail.cut(1, 3);
+		Assert.assertEquals("de", mid.retrieveQuery());
+		tail.splice(2, mid);
+		Assert.assertEquals(Arrays.asList('c', 'a', 'd', 'e', 'b'), tail);
+	}
+
+	@Test
+	public void testRandom() {
+		Random random = new Random(31);
+		Letters t = new Letters();
+		List<Character> expected = new ArrayList<Character>();
+		for (int iter = 0; iter < 20000; ++iter) {
+			int op = random.nextInt(8);
+			char c = (char) ('a' + random.nextInt(26));
+			if (op <= 1) {
+				int index = random.nextInt(expected.size() + 1);
+				t.add(index, c);
+				expected.add(index, c);
+			} else if (op == 2 && !expected.isEmpty()) {
+				int index = random.nextInt(expected.size());
+				Assert.assertEquals(expected.remove(index), t.remove(index));
+			} else if (op == 3 && !expected.isEmpty()) {
+				int index = random.nextInt(expected.size());
+				Assert.assertEquals(expected.set(index, c), t.set(index, c));
+			} else if (op == 4) {
+				List<Character> list = new ArrayList<Character>();
+				for (int i = random.nextInt(10); i > 0; --i)
+					list.add((char) ('a' + random.nextInt(26)));
+				int index = random.nextInt(expected.size() + 1);
+				t.addAll(index, list);
+				expected.addAll(index, list);
+			} else if (op == 5) {
+				int from = random.nextInt(expected.size() + 1);
+				int to = from + random.nextInt(expected.size() - from + 1);
+				ImplicitTreap<Character, String> cut = t.cut(from, to);
+				List<Character> expectedCut = new ArrayList<Character>(
+						expected.subList(from, to));
+				expected.subList(from, to).clear();
+				Assert.assertEquals(expectedCut, cut);
+				int index = random.nextInt(expected.size() + 1);
+				t.splice(index, cut);
+				expected.addAll(index, expectedCut);
+			} else if (op == 6 && !expected.isEmpty()) {
+				int from = random.nextInt(expected.size());
+				int to = Math.min(expected.size(), from + random.nextInt(3));
+				t.subList(from, to).clear();
+				expected.subList(from, to).clear();
+			} else {
+				int from = random.nextInt(expected.size() + 1);
+				int to = from + random.nextInt(expected.size() - from + 1);
+				Assert.assertEquals(concat(expected, from, to),
+						t.retrieveQuery(from, to));
+			}
+			Assert.assertEquals(expected.size(), t.size());
+			if (!expected.isEmpty()) {
+				int index = random.nextInt(expected.size());
+				Assert.assertEquals(expected.get(index), t.get(index));
+			}
+		}
+		Assert.assertEquals(expected, t);
+		Assert.assertEquals(concat(expected, 0, expected.size()),
+				t.clone().retrieveQuery());
+	}
+
+	@Test
+	public void testIteratorRemove() {
+		List<Character> list = new ArrayList<Character>();
+		for (int i = 0; i < 1000; ++i)
+			list.add((char) ('a' + i % 26));
+		Letters t = new Letters(list);
+		for (Iterator<Character> it = t.iterator(); it.hasNext(); )
+			if (it.next() != 'a')
+				it.remove();
+		Assert.assertEquals(39, t.size());
+		Assert.assertEquals(39, t.retrieveQuery().length());
+		for (Character c : t)
+			Assert.assertEquals((Character) 'a', c);
+	}
+}